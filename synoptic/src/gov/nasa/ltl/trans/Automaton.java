@@ -121,10 +121,11 @@ class Automaton {
             }
         }
 
-        if (Node.accepting_conds == 0) {
+        int acceptingConds = Node.getAcceptingConds();
+        if (acceptingConds == 0) {
             g.setIntAttribute("nsets", 1);
         } else {
-            g.setIntAttribute("nsets", Node.accepting_conds);
+            g.setIntAttribute("nsets", acceptingConds);
         }
 
         return g;
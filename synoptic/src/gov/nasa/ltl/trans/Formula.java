@@ -24,14 +24,14 @@
 package gov.nasa.ltl.trans;
 
 import java.util.BitSet;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TreeSet;
 
 /**
  * DOCUMENT ME!
  */
 public class Formula implements Comparable<Formula> {
-    private static int nId = 0;
     private static final int P_ALL = 0;
     private static final int P_IMPLIES = 1;
     private static final int P_OR = 2;
@@ -44,8 +44,6 @@ public class Formula implements Comparable<Formula> {
     private static final int P_NEXT = 6;
     private static final int P_ALWAYS = 6;
     private static final int P_EVENTUALLY = 6;
-    private static Hashtable<String, Formula> ht = new Hashtable<String, Formula>();
-    private static Hashtable<String, Formula> matches = new Hashtable<String, Formula>();
     private final char content;
     private final boolean literal;
     private Formula left;
@@ -58,7 +56,7 @@ public class Formula implements Comparable<Formula> {
     private boolean has_been_visited;
 
     private Formula(char c, boolean l, Formula sx, Formula dx, String n) {
-        id = nId++;
+        id = TranslationState.get().nextFormulaId++;
         content = c;
         literal = l;
         left = sx;
@@ -578,11 +576,11 @@ public class Formula implements Comparable<Formula> {
     }
 
     private static void clearHT() {
-        ht = new Hashtable<String, Formula>();
+        TranslationState.get().formulas.clear();
     }
 
     private static void clearMatches() {
-        matches = new Hashtable<String, Formula>();
+        TranslationState.get().matches.clear();
     }
 
     private static Formula parse(Input i, int precedence)
@@ -877,6 +875,7 @@ public class Formula implements Comparable<Formula> {
 
     private static Formula unique(Formula f) {
         String s = f.toString();
+        Map<String, Formula> ht = TranslationState.get().formulas;
 
         if (ht.containsKey(s)) {
             return ht.get(s);
@@ -888,14 +887,13 @@ public class Formula implements Comparable<Formula> {
     }
 
     private Formula getMatch(String strName) {
-        return matches.get(strName);
+        return TranslationState.get().matches.get(strName);
     }
 
     private void addMatch(String strName, Formula expr) {
-        matches.put(strName, expr);
+        TranslationState.get().matches.put(strName, expr);
     }
 
-    @SuppressWarnings("unchecked")
     private boolean match(Formula rule) {
         if (rule.content == 'p') {
             Formula match = getMatch(rule.name);
@@ -913,8 +911,9 @@ public class Formula implements Comparable<Formula> {
             return false;
         }
 
-        Hashtable<String, Formula> saved = (Hashtable<String, Formula>) matches
-                .clone();
+        TranslationState state = TranslationState.get();
+        Map<String, Formula> saved = new HashMap<String, Formula>(
+                state.matches);
 
         switch (content) {
         case 'A':
@@ -924,13 +923,13 @@ public class Formula implements Comparable<Formula> {
                 return true;
             }
 
-            matches = saved;
+            state.matches = saved;
 
             if (right.match(rule.left) && left.match(rule.right)) {
                 return true;
             }
 
-            matches = saved;
+            state.matches = saved;
 
             return false;
 
@@ -942,7 +941,7 @@ public class Formula implements Comparable<Formula> {
                 return true;
             }
 
-            matches = saved;
+            state.matches = saved;
 
             return false;
 
@@ -953,7 +952,7 @@ public class Formula implements Comparable<Formula> {
                 return true;
             }
 
-            matches = saved;
+            state.matches = saved;
 
             return false;
 
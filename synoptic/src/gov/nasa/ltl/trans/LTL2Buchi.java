@@ -144,14 +144,32 @@ public class LTL2Buchi {
         }
     }
 
+    /**
+     * Resets the translation state of the calling thread.
+     */
     public static void reset_all_static() {
         Node.reset_static();
         Formula.reset_static();
         Pool.reset_static();
     }
 
+    /**
+     * Translates an LTL formula into a Buchi automaton. Each translation runs
+     * in a translation state of its own, so translations may run concurrently
+     * on different threads.
+     */
     public static Graph translate(String formulaIn, boolean rewrite,
             boolean bisim, boolean fair_sim) throws ParseErrorException {
+        TranslationState previous = TranslationState.begin();
+        try {
+            return translateInState(formulaIn, rewrite, bisim, fair_sim);
+        } finally {
+            TranslationState.end(previous);
+        }
+    }
+
+    private static Graph translateInState(String formulaIn, boolean rewrite,
+            boolean bisim, boolean fair_sim) throws ParseErrorException {
         logger.fine("Translating formula: " + formulaIn);
         String formula = "";
         final boolean superset = true;
@@ -258,8 +276,6 @@ public class LTL2Buchi {
 
         // logger.fine("***********************\n");
 
-        reset_all_static();
-
         return ba;
     }
 
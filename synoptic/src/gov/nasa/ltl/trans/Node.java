@@ -28,8 +28,6 @@ import java.util.TreeSet;
  * DOCUMENT ME!
  */
 class Node implements Comparable<Node> {
-    public static int accepting_conds = 0;
-    private static boolean init_collapsed = false;
     private int nodeId;
     private final TreeSet<Node> incoming;
     private final TreeSet<Formula> toBeDone;
@@ -47,8 +45,8 @@ class Node implements Comparable<Node> {
         old = new TreeSet<Formula>();
         next = new TreeSet<Formula>();
         OtherTransitionSource = null;
-        accepting = new BitSet(accepting_conds);
-        right_of_untils = new BitSet(accepting_conds);
+        accepting = new BitSet(getAcceptingConds());
+        right_of_untils = new BitSet(getAcceptingConds());
     }
 
     public Node(TreeSet<Node> in, TreeSet<Formula> newForm,
@@ -59,19 +57,19 @@ class Node implements Comparable<Node> {
         old = new TreeSet<Formula>(done);
         next = new TreeSet<Formula>(nx);
         OtherTransitionSource = null;
-        accepting = new BitSet(accepting_conds);
+        accepting = new BitSet(getAcceptingConds());
         accepting.or(acc);
-        right_of_untils = new BitSet(accepting_conds);
+        right_of_untils = new BitSet(getAcceptingConds());
         right_of_untils.or(rous);
     }
 
     public static int getAcceptingConds() {
-        return accepting_conds;
+        return TranslationState.get().acceptingConds;
     }
 
     public static Node createInitial(Formula form) {
-        accepting_conds = form.initialize(); // first mark right forms of
-                                             // untils;
+        // First mark right forms of untils.
+        TranslationState.get().acceptingConds = form.initialize();
 
         // System.out.println("Accepting conditions: " + accepting_conds);
         Node init = new Node();
@@ -85,8 +83,9 @@ class Node implements Comparable<Node> {
     }
 
     public static void reset_static() {
-        accepting_conds = 0;
-        init_collapsed = false;
+        TranslationState state = TranslationState.get();
+        state.acceptingConds = 0;
+        state.initCollapsed = false;
     }
 
     public TreeSet<Formula> getField_next() {
@@ -156,7 +155,7 @@ class Node implements Comparable<Node> {
     public boolean compare_accepting(Node nd) {
         // if (nodeId == 0)
         // System.out.println("Has it been collapsed yet? : " + init_collapsed);
-        if ((nodeId == 0) && !init_collapsed) {
+        if ((nodeId == 0) && !TranslationState.get().initCollapsed) {
             // System.out.println("Potentially collapse " + nodeId + " with " +
             // nd.nodeId);
             return true;
@@ -214,7 +213,7 @@ class Node implements Comparable<Node> {
 
         // no contradiction
         // look in tech report why we do this even when ita is redundant
-        if (ita.is_right_of_until(accepting_conds)) {
+        if (ita.is_right_of_until(getAcceptingConds())) {
             right_of_untils.or(ita.get_rightOfWhichUntils());
         }
 
@@ -335,9 +334,9 @@ class Node implements Comparable<Node> {
         Node Tail = this;
         Node Alternative = this;
 
-        if ((this.nodeId == 0) && !init_collapsed) {
+        if ((this.nodeId == 0) && !TranslationState.get().initCollapsed) {
             accepting = current.accepting;
-            init_collapsed = true;
+            TranslationState.get().initCollapsed = true;
         }
 
         while (Alternative != null) {
@@ -24,25 +24,25 @@ package gov.nasa.ltl.trans;
  * DOCUMENT ME!
  */
 class Pool {
-    private static int last_assigned = 0;
-    private static boolean stopped = false;
-
     public static int assign() {
-        if (!stopped) {
+        TranslationState state = TranslationState.get();
+        if (!state.poolStopped) {
             // System.out.println("Value of last_assigned " +last_assigned);
-            return (last_assigned++);
+            return (state.lastAssigned++);
         }
         // System.out.println("Value of last_assigned " + last_assigned);
-        return last_assigned;
+        return state.lastAssigned;
     }
 
     public static void reset_static() {
-        last_assigned = 0;
-        stopped = false;
+        TranslationState state = TranslationState.get();
+        state.lastAssigned = 0;
+        state.poolStopped = false;
     }
 
     public static void stop() {
-        stopped = true;
-        last_assigned--;
+        TranslationState state = TranslationState.get();
+        state.poolStopped = true;
+        state.lastAssigned--;
     }
 }
@@ -87,12 +87,13 @@ class Transition {
       System.out.print(act + "{");
     }
 
-    if (Node.accepting_conds == 0) {
+    int acceptingConds = Node.getAcceptingConds();
+    if (acceptingConds == 0) {
       if (safe_accepting == true) {
         System.out.print("0");
       }
     } else {
-      for (int i = 0; i < Node.accepting_conds; i++) {
+      for (int i = 0; i < acceptingConds; i++) {
         if (!accepting.get(i)) {
           System.out.print(i);
         }
@@ -150,7 +151,8 @@ class Transition {
 
     Edge e = new Edge(node, nodes[pointsTo], guard, action);
 
-    if (Node.accepting_conds == 0) {
+    int acceptingConds = Node.getAcceptingConds();
+    if (acceptingConds == 0) {
       //  Dimitra - Jan 10 2003
       // Believe there is a bug with the way we decided whether node was safety accepting
       // with example !<>(Xa \/ <>c)
@@ -161,7 +163,7 @@ class Transition {
 
       //      }
     } else {
-      for (int i = 0; i < Node.accepting_conds; i++) {
+      for (int i = 0; i < acceptingConds; i++) {
         if (!accepting.get(i)) {
           e.setBooleanAttribute("acc" + i, true);
 
@@ -0,0 +1,58 @@
+package gov.nasa.ltl.trans;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The mutable state of an LTL to Buchi translation: the ids assigned to
+ * formulas and nodes so far, the interned formulas, and the accepting
+ * conditions of the automaton being built. This state used to live in static
+ * fields of Formula, Node, and Pool, so that two translations could not run at
+ * the same time. Every thread now has its own current state, and
+ * LTL2Buchi.translate() runs each translation in a fresh one.
+ */
+class TranslationState {
+    private static final ThreadLocal<TranslationState> current = new ThreadLocal<TranslationState>() {
+        @Override
+        protected TranslationState initialValue() {
+            return new TranslationState();
+        }
+    };
+
+    // Formula state.
+    int nextFormulaId = 0;
+    final Map<String, Formula> formulas = new HashMap<String, Formula>();
+    Map<String, Formula> matches = new HashMap<String, Formula>();
+
+    // Node state.
+    int acceptingConds = 0;
+    boolean initCollapsed = false;
+
+    // Pool state.
+    int lastAssigned = 0;
+    boolean poolStopped = false;
+
+    /**
+     * Returns the current state of the calling thread.
+     */
+    static TranslationState get() {
+        return current.get();
+    }
+
+    /**
+     * Makes a fresh state current for the calling thread, and returns the
+     * state that was current before, to be restored with end().
+     */
+    static TranslationState begin() {
+        TranslationState previous = current.get();
+        current.set(new TranslationState());
+        return previous;
+    }
+
+    /**
+     * Makes previous, as returned by begin(), current again.
+     */
+    static void end(TranslationState previous) {
+        current.set(previous);
+    }
+}
@@ -11,6 +11,7 @@
 package synoptic.algorithms;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,8 +19,10 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.logging.Logger;
 
 import synoptic.algorithms.graphops.IOperation;
@@ -28,14 +31,21 @@ import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.main.AbstractMain;
+import synoptic.model.DenseGraphView;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
+import synoptic.model.event.EventType;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 
@@ -69,6 +79,20 @@ public class Bisimulation {
      *            the partition graph to refine\split
      */
     public static void splitUntilAllInvsSatisfied(PartitionGraph pGraph) {
+        // Model check the invariants of every round in the same pool of
+        // threads, if they are model checked concurrently.
+        ExecutorService checkerPool = TemporalInvariantSet.newCheckerPool();
+        try {
+            splitUntilAllInvsSatisfied(pGraph, checkerPool);
+        } finally {
+            if (checkerPool != null) {
+                checkerPool.shutdownNow();
+            }
+        }
+    }
+
+    private static void splitUntilAllInvsSatisfied(PartitionGraph pGraph,
+            ExecutorService checkerPool) {
         // TODO: assert that the pGraph represents totally ordered traces.
 
         TimedTask refinement = PerformanceMetrics.createTask("refinement",
@@ -88,10 +112,25 @@ public class Bisimulation {
 
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
+        // In incremental mode, the counter-examples found in the previous round
+        // (indexed by invariant), and the partitions that were split since.
+        Map<ITemporalInvariant, CExamplePath<Partition>> prevCounterExamples = new LinkedHashMap<ITemporalInvariant, CExamplePath<Partition>>();
+        Set<Partition> splitPartitions = new LinkedHashSet<Partition>();
+
         while (true) {
             // Recompute the counter-examples for the unsatisfied invariants.
-            counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            if (main.options.incrementalRefinement) {
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph,
+                        getUnaffectedCounterExamples(prevCounterExamples,
+                                splitPartitions), checkerPool);
+            } else {
+                Map<ITemporalInvariant, CExamplePath<Partition>> noKnownCExamples = Collections
+                        .emptyMap();
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph,
+                        noKnownCExamples, checkerPool);
+            }
             logger.fine("Counter-examples: " + counterExampleTraces);
 
             if (counterExampleTraces == null
@@ -112,8 +151,10 @@ public class Bisimulation {
             // satisfied/unsatisfied invariants.
 
             unsatisfiedInvariants.clear();
+            prevCounterExamples.clear();
             for (CExamplePath<Partition> relPath : counterExampleTraces) {
                 unsatisfiedInvariants.add(relPath.invariant);
+                prevCounterExamples.put(relPath.invariant, relPath);
             }
             satisfiedInvariants.clear();
             satisfiedInvariants.addAll(pGraph.getInvariants().getSet());
@@ -124,8 +165,9 @@ public class Bisimulation {
 
             // Perform the splitting.
             prevNumSplitSteps = numSplitSteps;
+            splitPartitions.clear();
             numSplitSteps = performSplits(numSplitSteps, pGraph,
-                    counterExampleTraces);
+                    counterExampleTraces, splitPartitions);
 
             if (numSplitSteps == prevNumSplitSteps) {
                 // No splits were performed, which means that we could not
@@ -148,6 +190,9 @@ public class Bisimulation {
         }
 
         PerformanceMetrics.get().record("numOfSplitSteps", numSplitSteps);
+        if (pGraph.hasDenseView()) {
+            pGraph.getDenseView().recordAdjacencyStats();
+        }
         refinement.stop();
     }
 
@@ -168,6 +213,17 @@ public class Bisimulation {
      */
     public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
             List<CExamplePath<Partition>> counterExampleTraces) {
+        return performSplits(numSplitSteps, pGraph, counterExampleTraces, null);
+    }
+
+    /**
+     * Same as performSplits above, but also records every partition that was
+     * split into splitPartitions (when it is non-null).
+     */
+    private static int performSplits(int numSplitSteps,
+            PartitionGraph pGraph,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            Set<Partition> splitPartitions) {
 
         // Stores all splits that cause an invariant to be satisfied, indexed by
         // partition to which they are applied.
@@ -210,12 +266,19 @@ public class Bisimulation {
             // + arbitrarySplit;
 
             pGraph.apply(arbitrarySplit);
+            if (splitPartitions != null) {
+                splitPartitions.add(((PartitionSplit) arbitrarySplit)
+                        .getPartition());
+            }
 
         } else {
             // We have splits that resolve invariants, perform all of them.
             // int i = 0;
             for (PartitionMultiSplit split : splitsToDoByPartition.values()) {
                 pGraph.apply(split);
+                if (splitPartitions != null) {
+                    splitPartitions.add(split.getPartition());
+                }
                 // logger.fine("split[" + numSplitSteps + "." + i + "] : " +
                 // split);
                 // i++;
@@ -237,6 +300,45 @@ public class Bisimulation {
 
     }
 
+    /**
+     * Returns those counter-examples from the previous refinement round that
+     * are guaranteed to remain counter-examples in the refined graph. A
+     * counter-example is unaffected if none of the partitions along the path
+     * that the checker found (before the invariant shortened it) were split:
+     * the transitions between these partitions are unchanged, so the path
+     * still exists and still violates the invariant. And because splitting can
+     * only remove paths from the graph, it also remains a shortest
+     * counter-example. Splitting never orders the paths through the new
+     * partitions before the paths that they replace (see
+     * HistoryNode.compareCanonically()), so it is also the counter-example
+     * that re-checking the graph would return. All other invariants have to
+     * be re-checked.
+     * 
+     * @param prevCounterExamples
+     *            counter-examples from the previous round, keyed by invariant
+     * @param splitPartitions
+     *            partitions that were split in the previous round
+     * @return the subset of prevCounterExamples that can be re-used
+     */
+    private static Map<ITemporalInvariant, CExamplePath<Partition>> getUnaffectedCounterExamples(
+            Map<ITemporalInvariant, CExamplePath<Partition>> prevCounterExamples,
+            Set<Partition> splitPartitions) {
+        Map<ITemporalInvariant, CExamplePath<Partition>> unaffected = new LinkedHashMap<ITemporalInvariant, CExamplePath<Partition>>();
+        for (Entry<ITemporalInvariant, CExamplePath<Partition>> entry : prevCounterExamples
+                .entrySet()) {
+            CExamplePath<Partition> cExample = entry.getValue();
+            List<Partition> checkedPath = cExample.checkedPath != null
+                    ? cExample.checkedPath
+                    : cExample.path;
+            if (Collections.disjoint(checkedPath, splitPartitions)) {
+                unaffected.put(entry.getKey(), entry.getValue());
+            }
+        }
+        PerformanceMetrics.get().record("numReusedCounterExamples",
+                unaffected.size());
+        return unaffected;
+    }
+
     /**
      * Merge partitions in pGraph that are k-equal (kTails equality), with k=0
      * without unsatisfying any of the pGraph invariants..
@@ -244,8 +346,11 @@ public class Bisimulation {
      * @param pGraph
      */
     public static void mergePartitions(PartitionGraph pGraph) {
+        TimedTask coarsening = PerformanceMetrics.createTask("coarsening",
+                false);
         TemporalInvariantSet invariants = pGraph.getInvariants();
         mergePartitions(pGraph, invariants, 1);
+        coarsening.stop();
     }
 
     /**************************************************************************/
@@ -782,6 +887,16 @@ public class Bisimulation {
         Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
 
         AbstractMain syn = AbstractMain.getInstance();
+
+        // A merge only adds paths to the graph, so if the graph satisfies all
+        // the invariants to begin with, then a merge can only violate the
+        // invariants that are local to the merged partition.
+        LocalInvariantIndex localInvariants = null;
+        if (invariants != null && syn.options.localMergeChecks
+                && invariants.getFirstCounterExample(pGraph) == null) {
+            localInvariants = new LocalInvariantIndex(invariants);
+        }
+
         while (true) {
             if (syn.options.dumpIntermediateStages) {
                 syn.exportNonInitialGraph(
@@ -791,7 +906,8 @@ public class Bisimulation {
             outerItters++;
 
             logger.fine("--------------------------------");
-            if (!mergePartitions(pGraph, mergeBlacklist, invariants, k)) {
+            if (!mergePartitions(pGraph, mergeBlacklist, invariants,
+                    localInvariants, k)) {
                 break;
             }
         }
@@ -804,26 +920,55 @@ public class Bisimulation {
 
     /**
      * Attempts to merge partitions that are k-equivalent, while respecting
-     * invariants. Tries all pairs of partitions from pGraph, except for those
-     * that are in the mergeBlacklist (these have been attempted previously and
-     * are known to violate invariants). Returns true if at least one merge was
-     * performed, otherwise returns false.
+     * invariants. Tries all pairs of k-equivalent partitions from pGraph,
+     * except for those that are in the mergeBlacklist (these have been
+     * attempted previously and are known to violate invariants). Returns true
+     * if at least one merge was performed, otherwise returns false.
+     * <p>
+     * The partitions are bucketed by their k-tail signature first, so that
+     * only the pairs of partitions in the same bucket (which are exactly the
+     * k-equivalent pairs) are considered. The pairs are tried in the same
+     * order as when iterating over all pairs of partitions.
+     * </p>
      * 
      * @param pGraph
      * @param mergeBlacklist
      * @param invariants
+     * @param localInvariants
+     *            if not null, only the invariants that are local to a merge
+     *            are checked after it
      * @param k
      * @return
      */
     private static boolean mergePartitions(PartitionGraph pGraph,
             Map<Partition, Set<Partition>> mergeBlacklist,
-            TemporalInvariantSet invariants, int k) {
+            TemporalInvariantSet invariants,
+            LocalInvariantIndex localInvariants, int k) {
         ArrayList<Partition> partitions = new ArrayList<Partition>();
         partitions.addAll(pGraph.getNodes());
 
-        // Attempt to merge all pairs of partitions in the current graph.
+        // Bucket the partitions by their k-tail signature.
+        KTailSignatures signatures = new KTailSignatures(pGraph, k);
+        Map<Integer, List<Partition>> buckets = new HashMap<Integer, List<Partition>>();
+        List<List<Partition>> partitionBuckets = new ArrayList<List<Partition>>(
+                partitions.size());
         for (Partition p : partitions) {
-            for (Partition q : partitions) {
+            Integer signature = signatures.getSignature(p);
+            List<Partition> bucket = buckets.get(signature);
+            if (bucket == null) {
+                bucket = new ArrayList<Partition>();
+                buckets.put(signature, bucket);
+            }
+            bucket.add(p);
+            partitionBuckets.add(bucket);
+        }
+        PerformanceMetrics.get().record("numMergeBuckets", buckets.size());
+
+        // Attempt to merge all pairs of k-equivalent partitions in the current
+        // graph.
+        for (int i = 0; i < partitions.size(); i++) {
+            Partition p = partitions.get(i);
+            for (Partition q : partitionBuckets.get(i)) {
                 // 1. Can't merge a partition with itself
                 if (p == q) {
                     continue;
@@ -833,13 +978,7 @@ public class Bisimulation {
                         + p.hashCode() + ") + " + q + "(hash: " + q.hashCode()
                         + ")");
 
-                // 2. Only merge partitions that are k-equivalent
-                if (!KTails.kEquals(p, q, k)) {
-                    logger.fine("Partitions are not k-equivalent(k=" + k + ")");
-                    continue;
-                }
-
-                // 3. Ignore partition pairs that were previously tried (are
+                // 2. Ignore partition pairs that were previously tried (are
                 // in blacklist)
                 if ((mergeBlacklist.containsKey(p) && mergeBlacklist.get(p)
                         .contains(q))
@@ -853,10 +992,14 @@ public class Bisimulation {
                 parts.addAll(pGraph.getNodes());
                 IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
                         q));
+                PerformanceMetrics.get().record("numMergeAttempts", 1);
 
                 CExamplePath<Partition> cExample = null;
 
-                if (invariants != null) {
+                if (localInvariants != null) {
+                    cExample = localInvariants.getLocalInvariants(pGraph, p)
+                            .getFirstCounterExample(pGraph);
+                } else if (invariants != null) {
                     cExample = invariants.getFirstCounterExample(pGraph);
                 }
 
@@ -900,4 +1043,133 @@ public class Bisimulation {
         // Unable to find any k-equivalent partitions; we're done.
         return false;
     }
+
+    /**
+     * Indexes invariants by the event types that they predicate on, to find
+     * the invariants that a merge may violate. A merge only adds paths to the
+     * graph, all of which pass through the merged partition, and a path can
+     * only violate an AFby, AP, NFby, NIFby, or IntrBy invariant (constrained
+     * or not) if it contains one of the invariant's predicates. So in a graph
+     * that satisfied these invariants before the merge, the merge can only
+     * violate those with a predicate that is the event type of a partition
+     * connected to the merged partition. Invariants of other types are always
+     * considered local.
+     */
+    private static class LocalInvariantIndex {
+        private final Map<EventType, List<ITemporalInvariant>> byPredicate = new HashMap<EventType, List<ITemporalInvariant>>();
+        private final List<ITemporalInvariant> alwaysLocal = new ArrayList<ITemporalInvariant>();
+
+        LocalInvariantIndex(TemporalInvariantSet invariants) {
+            for (ITemporalInvariant inv : invariants) {
+                if (!isPathLocal(inv)) {
+                    alwaysLocal.add(inv);
+                    continue;
+                }
+                for (EventType eType : inv.getPredicates()) {
+                    List<ITemporalInvariant> invs = byPredicate.get(eType);
+                    if (invs == null) {
+                        invs = new ArrayList<ITemporalInvariant>();
+                        byPredicate.put(eType, invs);
+                    }
+                    invs.add(inv);
+                }
+            }
+        }
+
+        private static boolean isPathLocal(ITemporalInvariant inv) {
+            return inv instanceof AlwaysFollowedInvariant
+                    || inv instanceof AlwaysPrecedesInvariant
+                    || inv instanceof NeverFollowedInvariant
+                    || inv instanceof NeverImmediatelyFollowedInvariant
+                    || inv instanceof InterruptedByInvariant
+                    || inv instanceof TempConstrainedInvariant<?>;
+        }
+
+        /**
+         * Returns the invariants that a merge into the partition merged of
+         * pGraph may have violated.
+         */
+        TemporalInvariantSet getLocalInvariants(PartitionGraph pGraph,
+                Partition merged) {
+            Set<EventType> eTypes = new HashSet<EventType>();
+            if (pGraph.hasDenseView()) {
+                DenseGraphView view = pGraph.getDenseView();
+                BitSet connected = view.getConnectedIds(view
+                        .getPartitionId(merged));
+                for (int id = connected.nextSetBit(0); id >= 0; id =
+                        connected.nextSetBit(id + 1)) {
+                    eTypes.add(view.getPartition(id).getEType());
+                }
+            } else {
+                for (Partition p : getConnectedPartitions(pGraph, merged)) {
+                    eTypes.add(p.getEType());
+                }
+            }
+
+            Set<ITemporalInvariant> local = new LinkedHashSet<ITemporalInvariant>(
+                    alwaysLocal);
+            for (EventType eType : eTypes) {
+                List<ITemporalInvariant> invs = byPredicate.get(eType);
+                if (invs != null) {
+                    local.addAll(invs);
+                }
+            }
+            PerformanceMetrics.get().record("numLocalMergeInvariants",
+                    local.size());
+            return new TemporalInvariantSet(local);
+        }
+
+        /**
+         * Returns the partitions of pGraph that lie on some path through
+         * merged: merged itself, the partitions that it can reach, and the
+         * partitions that can reach it.
+         */
+        private static Set<Partition> getConnectedPartitions(
+                PartitionGraph pGraph, Partition merged) {
+            Map<Partition, List<Partition>> preds = new HashMap<Partition, List<Partition>>();
+            for (Partition p : pGraph.getNodes()) {
+                for (Partition succ : pGraph.getAdjacentNodes(p)) {
+                    List<Partition> succPreds = preds.get(succ);
+                    if (succPreds == null) {
+                        succPreds = new ArrayList<Partition>();
+                        preds.put(succ, succPreds);
+                    }
+                    succPreds.add(p);
+                }
+            }
+
+            // Partitions reachable from merged.
+            Set<Partition> connected = new HashSet<Partition>();
+            List<Partition> stack = new ArrayList<Partition>();
+            connected.add(merged);
+            stack.add(merged);
+            while (!stack.isEmpty()) {
+                for (Partition next : pGraph.getAdjacentNodes(stack
+                        .remove(stack.size() - 1))) {
+                    if (connected.add(next)) {
+                        stack.add(next);
+                    }
+                }
+            }
+
+            // Partitions that reach merged.
+            Set<Partition> seen = new HashSet<Partition>();
+            seen.add(merged);
+            stack.add(merged);
+            while (!stack.isEmpty()) {
+                List<Partition> prevs = preds.get(stack
+                        .remove(stack.size() - 1));
+                if (prevs == null) {
+                    continue;
+                }
+                for (Partition next : prevs) {
+                    if (seen.add(next)) {
+                        stack.add(next);
+                    }
+                }
+            }
+            connected.addAll(seen);
+            return connected;
+        }
+    }
 }
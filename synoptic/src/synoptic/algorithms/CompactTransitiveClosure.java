@@ -0,0 +1,235 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * A transitive closure that, unlike {@link TransitiveClosure}, takes space
+ * linear rather than quadratic in the number of nodes of totally ordered
+ * traces.<br/>
+ * <br/>
+ * The transitions of the relations are decomposed into chains: paths of
+ * transitions, such that every node is on exactly one chain. Within a chain,
+ * a node reaches exactly the nodes at later positions. A trace (a connected
+ * component of the transitions) that is a single chain needs nothing more, so
+ * that reachability in a totally ordered trace is a comparison of positions.
+ * For the other traces, every node keeps, for every chain of its trace, the
+ * first position in the chain that it reaches; so that a node m reaches a node
+ * n if the first position that m reaches in n's chain is at or before n's
+ * position. This takes space proportional to the number of nodes times the
+ * number of chains per trace, which is about the number of processes in a
+ * partially ordered trace.<br/>
+ * <br/>
+ * Like the transitive closures that TraceGraphs compute, this closure ignores
+ * INITIAL and TERMINAL nodes.
+ */
+public class CompactTransitiveClosure implements ITransitiveClosure {
+    private static final int unreachable = Integer.MAX_VALUE;
+
+    private final Set<String> relations;
+
+    /** Ids of the non-special nodes, which index the arrays below. */
+    private final Map<EventNode, Integer> ids = new HashMap<EventNode, Integer>();
+    /** The trace (connected component) of every node. */
+    private final int[] components;
+    /** The chain of every node, numbered within its trace. */
+    private final int[] chains;
+    /** The position of every node in its chain. */
+    private final int[] positions;
+    /**
+     * For every node, the first position that it reaches in every chain of its
+     * trace, or null if its trace is a single chain.
+     */
+    private final int[][] reaches;
+
+    private int numChains = 0;
+
+    /**
+     * Creates the transitive closure of the transitions of graph with exactly
+     * the given relations.
+     */
+    public CompactTransitiveClosure(IGraph<EventNode> graph,
+            Set<String> relations) {
+        this.relations = relations;
+
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        for (EventNode node : graph.getNodes()) {
+            if (!node.getEType().isSpecialEventType()) {
+                ids.put(node, nodes.size());
+                nodes.add(node);
+            }
+        }
+        int n = nodes.size();
+
+        // The successors of every node, and the number of its predecessors.
+        int[][] succs = new int[n][];
+        int[] numPreds = new int[n];
+        for (int v = 0; v < n; v++) {
+            List<? extends ITransition<EventNode>> transitions = nodes.get(v)
+                    .getTransitionsWithExactRelations(relations);
+            int[] succ = new int[transitions.size()];
+            int numSuccs = 0;
+            for (ITransition<EventNode> trans : transitions) {
+                Integer id = ids.get(trans.getTarget());
+                if (id != null) {
+                    succ[numSuccs++] = id;
+                    numPreds[id]++;
+                }
+            }
+            succs[v] = numSuccs == succ.length ? succ : Arrays.copyOf(succ,
+                    numSuccs);
+        }
+
+        int[] topoOrder = topologicalOrder(succs, numPreds.clone());
+        components = connectedComponents(succs);
+
+        // Decompose the transitions into chains, by starting a chain at every
+        // node, in topological order, that is not on a chain yet, and
+        // extending the chain with successors that are not on a chain yet.
+        // Extending a chain with the successor with the fewest predecessors
+        // follows the events of a process rather than the messages it sends,
+        // which tends to result in a chain per process.
+        chains = new int[n];
+        positions = new int[n];
+        Arrays.fill(chains, -1);
+        int[] numComponentChains = new int[n];
+        for (int i = 0; i < n; i++) {
+            int v = topoOrder[i];
+            if (chains[v] >= 0) {
+                continue;
+            }
+            int chain = numComponentChains[components[v]]++;
+            numChains++;
+            int position = 0;
+            while (v >= 0) {
+                chains[v] = chain;
+                positions[v] = position++;
+                int next = -1;
+                for (int s : succs[v]) {
+                    if (chains[s] < 0
+                            && (next < 0 || numPreds[s] < numPreds[next])) {
+                        next = s;
+                    }
+                }
+                v = next;
+            }
+        }
+
+        // Compute the first reachable positions in reverse topological order,
+        // from those of the successors.
+        reaches = new int[n][];
+        for (int i = n - 1; i >= 0; i--) {
+            int v = topoOrder[i];
+            int numVChains = numComponentChains[components[v]];
+            if (numVChains == 1) {
+                continue;
+            }
+            int[] reach = new int[numVChains];
+            Arrays.fill(reach, unreachable);
+            for (int s : succs[v]) {
+                reach[chains[s]] = Math.min(reach[chains[s]], positions[s]);
+                for (int c = 0; c < numVChains; c++) {
+                    reach[c] = Math.min(reach[c], reaches[s][c]);
+                }
+            }
+            reaches[v] = reach;
+        }
+    }
+
+    @Override
+    public boolean isReachable(EventNode m, EventNode n) {
+        Integer i = ids.get(m);
+        Integer j = ids.get(n);
+        if (i == null || j == null || components[i] != components[j]) {
+            return false;
+        }
+        if (reaches[i] == null) {
+            return positions[i] < positions[j];
+        }
+        return reaches[i][chains[j]] <= positions[j];
+    }
+
+    /**
+     * Returns the total number of chains in the traces, which is the number of
+     * traces for totally ordered traces.
+     */
+    public int getNumChains() {
+        return numChains;
+    }
+
+    public Set<String> getRelations() {
+        return relations;
+    }
+
+    /**
+     * Returns the nodes in a topological order of the graph with the given
+     * successors, by Kahn's algorithm.
+     */
+    private int[] topologicalOrder(int[][] succs, int[] numPreds) {
+        int n = succs.length;
+        int[] order = new int[n];
+        int head = 0;
+        int tail = 0;
+        for (int v = 0; v < n; v++) {
+            if (numPreds[v] == 0) {
+                order[tail++] = v;
+            }
+        }
+        while (head < tail) {
+            for (int s : succs[order[head++]]) {
+                if (--numPreds[s] == 0) {
+                    order[tail++] = s;
+                }
+            }
+        }
+        if (tail != n) {
+            throw new InternalSynopticException("The transitions with "
+                    + relations + " relations have a cycle.");
+        }
+        return order;
+    }
+
+    /**
+     * Returns the connected component of every node of the graph with the
+     * given successors, as the smallest node in the component.
+     */
+    private static int[] connectedComponents(int[][] succs) {
+        int n = succs.length;
+        int[] parents = new int[n];
+        for (int v = 0; v < n; v++) {
+            parents[v] = v;
+        }
+        for (int v = 0; v < n; v++) {
+            for (int s : succs[v]) {
+                int rv = find(parents, v);
+                int rs = find(parents, s);
+                if (rv < rs) {
+                    parents[rs] = rv;
+                } else if (rs < rv) {
+                    parents[rv] = rs;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            parents[v] = find(parents, v);
+        }
+        return parents;
+    }
+
+    private static int find(int[] parents, int v) {
+        while (parents[v] != v) {
+            parents[v] = parents[parents[v]];
+            v = parents[v];
+        }
+        return v;
+    }
+}
@@ -0,0 +1,21 @@
+package synoptic.algorithms;
+
+import synoptic.model.EventNode;
+
+/**
+ * The reachability relation of a transitive closure of a trace graph, over
+ * some set of relations.
+ */
+public interface ITransitiveClosure {
+    /**
+     * Check whether there is an edge in the transitive closure between
+     * {@code m} and {@code n}.
+     * 
+     * @param m
+     *            a node
+     * @param n
+     *            a node
+     * @return true if {@code m} can reach {@code n}
+     */
+    boolean isReachable(EventNode m, EventNode n);
+}
@@ -0,0 +1,234 @@
+package synoptic.algorithms;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.EventType;
+
+/**
+ * Computes a canonical k-tail signature for every partition of a partition
+ * graph, such that two partitions have the same signature exactly if they are
+ * k-equal (as determined by KTails.kEquals): if the sets of strings of length
+ * <= k that can be constructed by starting at the two partitions are equal.
+ * <p>
+ * A set of strings of bounded length is represented by the trie of its
+ * strings, and the tries are hash-consed, so that equal tries have the same
+ * int id. The trie of the strings of length <= j that start at a set of
+ * partitions X maps every event type e of a partition in X to the trie of the
+ * strings of length <= j - 1 that start at the successors of the partitions in
+ * X of type e. The trie of every such (j, X) is computed once, so the tries of
+ * the successors of a partition are re-used by all of its predecessors,
+ * instead of the strings being re-enumerated for every pair of partitions.
+ * </p>
+ */
+public class KTailSignatures {
+    /**
+     * The id of the empty trie, which represents the set of strings of length
+     * <= 0.
+     */
+    private static final int emptyTrie = 0;
+
+    private final PartitionGraph pGraph;
+    private final int k;
+
+    /**
+     * The partitions of the graph, by id. Partitions are numbered in the
+     * order of pGraph.getNodes().
+     */
+    private final Partition[] partitions;
+    private final Map<Partition, Integer> partitionIds = new HashMap<Partition, Integer>();
+
+    /**
+     * The ids of the successors of each partition, by partition id, or null if
+     * not yet computed.
+     */
+    private final int[][] successorIds;
+
+    /**
+     * Dense ids of the event types, which order the children of tries.
+     */
+    private final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+
+    /**
+     * Maps the children of each trie -- pairs of an event type id and a trie
+     * id, ordered by event type id -- to the id of the trie.
+     */
+    private final Map<IntArrayKey, Integer> tries = new HashMap<IntArrayKey, Integer>();
+
+    /**
+     * Maps a length bound j followed by the sorted ids of a set of partitions
+     * to the id of the trie of strings of length <= j that start at the
+     * partitions.
+     */
+    private final Map<IntArrayKey, Integer> setTries = new HashMap<IntArrayKey, Integer>();
+
+    /**
+     * The signatures of partitions, by partition id, or -1 if not yet
+     * computed.
+     */
+    private final int[] signatures;
+
+    public KTailSignatures(PartitionGraph pGraph, int k) {
+        // Note: at k == 0, all "states" should be considered equal, but an
+        // event-based model cannot express this, thus the assert.
+        assert (k > 0);
+        this.pGraph = pGraph;
+        this.k = k;
+        this.partitions = pGraph.getNodes().toArray(new Partition[0]);
+        for (int id = 0; id < partitions.length; id++) {
+            partitionIds.put(partitions[id], id);
+        }
+        this.successorIds = new int[partitions.length][];
+        this.signatures = new int[partitions.length];
+        Arrays.fill(signatures, -1);
+        tries.put(new IntArrayKey(new int[0]), emptyTrie);
+    }
+
+    /**
+     * Returns the k-tail signature of a partition of the graph.
+     */
+    public int getSignature(Partition partition) {
+        return getSignature(partitionIds.get(partition));
+    }
+
+    /**
+     * Returns the k-tail signature of the partition with the given id.
+     */
+    private int getSignature(int id) {
+        if (signatures[id] < 0) {
+            signatures[id] = getTrie(k, new int[] { id });
+        }
+        return signatures[id];
+    }
+
+    /**
+     * Returns the number of distinct tries computed so far, including those of
+     * the tails shorter than k.
+     */
+    public int getNumTries() {
+        return tries.size();
+    }
+
+    /**
+     * Returns the id of the trie of strings of length <= j that start at the
+     * partitions with the given ids, which must be sorted and distinct.
+     */
+    private int getTrie(int j, int[] ids) {
+        if (j == 0) {
+            return emptyTrie;
+        }
+        int[] key = new int[ids.length + 1];
+        key[0] = j;
+        System.arraycopy(ids, 0, key, 1, ids.length);
+        IntArrayKey setKey = new IntArrayKey(key);
+        Integer trie = setTries.get(setKey);
+        if (trie != null) {
+            return trie;
+        }
+
+        // Group the partitions by event type, ordered by event type id.
+        int[] eTypes = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            eTypes[i] = getETypeId(partitions[ids[i]].getEType());
+        }
+        int[] distinctETypes = distinct(eTypes.clone());
+
+        int[] children = new int[2 * distinctETypes.length];
+        for (int e = 0; e < distinctETypes.length; e++) {
+            // The union of the successors of the partitions of this type.
+            int numSuccs = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (eTypes[i] == distinctETypes[e]) {
+                    numSuccs += getSuccessorIds(ids[i]).length;
+                }
+            }
+            int[] succs = new int[numSuccs];
+            numSuccs = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (eTypes[i] == distinctETypes[e]) {
+                    int[] succ = getSuccessorIds(ids[i]);
+                    System.arraycopy(succ, 0, succs, numSuccs, succ.length);
+                    numSuccs += succ.length;
+                }
+            }
+            children[2 * e] = distinctETypes[e];
+            children[2 * e + 1] = getTrie(j - 1, distinct(succs));
+        }
+
+        IntArrayKey trieKey = new IntArrayKey(children);
+        trie = tries.get(trieKey);
+        if (trie == null) {
+            trie = tries.size();
+            tries.put(trieKey, trie);
+        }
+        setTries.put(setKey, trie);
+        return trie;
+    }
+
+    /**
+     * Returns the ids of the successors of the partition with the given id.
+     */
+    private int[] getSuccessorIds(int id) {
+        if (successorIds[id] == null) {
+            Set<Partition> succs = pGraph.getAdjacentNodes(partitions[id]);
+            int[] succIds = new int[succs.size()];
+            int i = 0;
+            for (Partition succ : succs) {
+                succIds[i++] = partitionIds.get(succ);
+            }
+            successorIds[id] = succIds;
+        }
+        return successorIds[id];
+    }
+
+    private int getETypeId(EventType eType) {
+        Integer id = eTypeIds.get(eType);
+        if (id == null) {
+            id = eTypeIds.size();
+            eTypeIds.put(eType, id);
+        }
+        return id;
+    }
+
+    /**
+     * Sorts values in place, and returns its distinct values.
+     */
+    private static int[] distinct(int[] values) {
+        Arrays.sort(values);
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (n == 0 || values[i] != values[n - 1]) {
+                values[n++] = values[i];
+            }
+        }
+        return n == values.length ? values : Arrays.copyOf(values, n);
+    }
+
+    /**
+     * An int array with value-based equality, for use as a map key.
+     */
+    private static final class IntArrayKey {
+        private final int[] values;
+        private final int hash;
+
+        IntArrayKey(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof IntArrayKey
+                    && Arrays.equals(values, ((IntArrayKey) other).values);
+        }
+    }
+}
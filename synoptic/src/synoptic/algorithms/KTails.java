@@ -50,83 +50,29 @@ public class KTails {
         // Keeps track of the merges that we want to perform.
         Set<PartitionMultiMerge> merges = new LinkedHashSet<PartitionMultiMerge>();
 
-        // List of all partitions -- needed for ordering partitions in the loops
-        // below.
-        List<Partition> partitions = new ArrayList<Partition>(pGraph.getNodes());
-
-        // Partitions that belong to a merge.
-        List<Partition> mergedPartitions = new ArrayList<Partition>();
-
-        // Maps a partition to the set of strings of length <= k reachable from
-        // the partition.
-        // TODO: this is inefficient, ideally we would Map sets of strings to
-        // partitions with those sets!
-        Map<Partition, Set<List<EventType>>> kStringsMap = new LinkedHashMap<Partition, Set<List<EventType>>>();
-
-        // int remaining = partitions.size();
-        // Build the kStringsMap
-        logger.fine("Pre-computing [node -> ktail set] map");
-        for (Partition P : partitions) {
-            // logger.info("Remaining kTails pre-mining = " + remaining);
-            // remaining -= 1;
-
-            Set<List<EventType>> ret = getNodeKStrings(P, k);
-            kStringsMap.put(P, ret);
-        }
-
-        logger.fine("Pre-computed map: " + kStringsMap.toString());
-
-        // remaining = partitions.size();
-        logger.fine("Finding sets of nodes that are k-equivalent.");
-        for (int i = 0; i < partitions.size(); i++) {
-            // logger.info("Remaining kTails n^2 checking = " + remaining);
-            // remaining -= 1;
-            Partition Pi = partitions.get(i);
-
-            // Skip partition Pi if it has already been merged previously.
-            // Since k-equivalence is transitive, this merge already contains
-            // all the k-equivalent partitions.
-            if (mergedPartitions.contains(Pi)) {
-                continue;
+        // Group the partitions by their k-tail signature, which is computed
+        // once per partition. Partitions are k-equivalent exactly if their
+        // signatures are equal.
+        logger.fine("Grouping nodes by k-tail signature.");
+        KTailSignatures signatures = new KTailSignatures(pGraph, k);
+        Map<Integer, List<Partition>> groups = new LinkedHashMap<Integer, List<Partition>>();
+        for (Partition P : pGraph.getNodes()) {
+            Integer signature = signatures.getSignature(P);
+            List<Partition> group = groups.get(signature);
+            if (group == null) {
+                group = new ArrayList<Partition>();
+                groups.put(signature, group);
             }
+            group.add(P);
+        }
 
-            // m will track all partitions to be merged with Pi.
-            PartitionMultiMerge m = null;
-
-            Set<List<EventType>> PiKStrings = kStringsMap.get(Pi);
-
-            // Can't merge a partition with itself. So skip i=j. Also, merging
-            // is commutative so if we've tried merge(p1,p2), then we don't have
-            // to try/check merge(p2,p1). So skip j < i.
-            for (int j = i + 1; j < partitions.size(); j++) {
-                Partition Pj = partitions.get(j);
-                // If we merged p1 and p2 previously, and now we are merging
-                // p2 and p3, then p3 _must_ be in the p1+p2 partition, since we
-                // must have already compared the ktails of p1 and p3
-                // previously.
-                if (mergedPartitions.contains(Pj)) {
-                    continue;
-                }
-
-                Set<List<EventType>> PjKStrings = kStringsMap.get(Pj);
-                if (!PiKStrings.equals(PjKStrings)) {
-                    continue;
-                }
-
-                logger.fine("Merging " + Pi + " and " + Pj);
-
-                if (m == null) {
-                    List<Partition> list = new ArrayList<Partition>();
-                    list.add(Pj);
-                    m = new PartitionMultiMerge(Pi, list);
-                    merges.add(m);
-                } else {
-                    m.addToMerge(Pj);
-                }
-
-                // We don't need to add Pi to mergedPartitions, since we
-                // will never come back to it in the check above.
-                mergedPartitions.add(Pj);
+        // Merge every group into its first partition.
+        for (List<Partition> group : groups.values()) {
+            if (group.size() > 1) {
+                logger.fine("Merging " + group);
+                List<Partition> others = new ArrayList<Partition>(
+                        group.subList(1, group.size()));
+                merges.add(new PartitionMultiMerge(group.get(0), others));
             }
         }
 
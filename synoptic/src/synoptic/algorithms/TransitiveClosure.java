@@ -12,7 +12,7 @@ import synoptic.model.EventNode;
  * http://www.cs.princeton.edu/courses/archive/fall05/cos226/lectures
  * /digraph.pdf
  */
-public class TransitiveClosure {
+public class TransitiveClosure implements ITransitiveClosure {
     // Reachability map.
     // If y is reachable from x then tc.get(x).contains(y) == true,
     // otherwise tc.get(x).contains(y) == false
@@ -0,0 +1,62 @@
+package synoptic.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A histogram of the durations of a timed task, in milliseconds. Durations
+ * are counted in buckets whose upper bounds are powers of two: the bucket with
+ * bound 2^i counts the durations d with 2^(i-1) < d <= 2^i, and the bucket
+ * with bound 1 counts the durations of at most 1ms. Not thread-safe: the
+ * histograms of a PerformanceMetrics are only updated while holding its lock.
+ */
+public class DurationHistogram {
+    private final long[] buckets = new long[64];
+    private long count = 0;
+    private long total = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    /**
+     * Adds a duration to the histogram.
+     */
+    public void add(long duration) {
+        int bucket = duration <= 1 ? 0 : 64 - Long
+                .numberOfLeadingZeros(duration - 1);
+        buckets[bucket]++;
+        count++;
+        total += duration;
+        min = Math.min(min, duration);
+        max = Math.max(max, duration);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the number of durations in each non-empty bucket, by the upper
+     * bound of the bucket, in increasing order of bounds.
+     */
+    public Map<Long, Long> getBuckets() {
+        Map<Long, Long> nonEmpty = new LinkedHashMap<Long, Long>();
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] != 0) {
+                nonEmpty.put(1L << i, buckets[i]);
+            }
+        }
+        return nonEmpty;
+    }
+}
@@ -0,0 +1,246 @@
+package synoptic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.AFbyInvFsms;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Compares the FSM checker's packed-word state sets, which transition and
+ * merge in place, against the BitSet state sets that they replaced, which
+ * were copied (and their BitSets cloned) for every edge traversal. Both
+ * propagate a set of AFby machines -- one for every pair of event types --
+ * over the initial partition graph of a randomly generated log, until a
+ * fixpoint is reached. The benchmark argument is the number of event types.
+ * Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.FsmCheckerBenchmark [numEventTypes ...]
+ * </pre>
+ */
+public class FsmCheckerBenchmark extends
+        Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int numTraces = 200;
+    private static final int traceLength = 50;
+    private static final int numChecks = 20;
+
+    public static void main(String[] args) {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        List<Integer> numEventTypes = new ArrayList<Integer>();
+        for (String arg : args) {
+            numEventTypes.add(Integer.valueOf(arg));
+        }
+        if (numEventTypes.isEmpty()) {
+            numEventTypes.addAll(Arrays.asList(10, 20, 40));
+        }
+        new Benchmark<Integer>(3, new FsmCheckerBenchmark()).run(numEventTypes);
+    }
+
+    @Override
+    protected void run(Integer numEventTypes) {
+        PartitionGraph graph = genInitialPartitionGraph(numEventTypes);
+
+        List<BinaryInvariant> invariants = new ArrayList<BinaryInvariant>();
+        for (int i = 0; i < numEventTypes; i++) {
+            for (int j = 0; j < numEventTypes; j++) {
+                invariants.add(new AlwaysFollowedInvariant("e" + i, "e" + j,
+                        Event.defTimeRelationStr));
+            }
+        }
+
+        TimedTask bitSets = PerformanceMetrics.createTask("bitSetCopyPerEdge");
+        for (int i = 0; i < numChecks; i++) {
+            runBitSetChecker(new BitSetAFbyStates(invariants), graph);
+        }
+        bitSets.stop();
+
+        TimedTask packed = PerformanceMetrics.createTask("packedInPlace");
+        for (int i = 0; i < numChecks; i++) {
+            FsmModelChecker.runFsmChecker(new AFbyInvFsms<Partition>(
+                    invariants), graph);
+        }
+        packed.stop();
+    }
+
+    /**
+     * Generates a log of numTraces traces of traceLength events each, drawn
+     * uniformly from numEventTypes event types, and returns its initial
+     * partition graph.
+     */
+    private static PartitionGraph genInitialPartitionGraph(int numEventTypes) {
+        Random random = new Random(numEventTypes);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.append("--\n");
+            }
+            for (int e = 0; e < traceLength; e++) {
+                log.append("e" + random.nextInt(numEventTypes) + "\n");
+            }
+        }
+
+        try {
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<TYPE>)$");
+            parser.addPartitionsSeparator("^--$");
+            ArrayList<EventNode> events = parser.parseTraceString(
+                    log.toString(), "benchmark", -1);
+            return new PartitionGraph(parser.generateDirectTORelation(events),
+                    true, new TemporalInvariantSet());
+        } catch (ParseException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+
+    /**
+     * The fixpoint computation of FsmModelChecker.runChecker(), which copies
+     * the states of a node for every outgoing edge.
+     */
+    private static Map<Partition, BitSetAFbyStates> runBitSetChecker(
+            BitSetAFbyStates initial, PartitionGraph graph) {
+        Queue<Partition> workList = new LinkedList<Partition>();
+        Map<Partition, BitSetAFbyStates> states = new LinkedHashMap<Partition, BitSetAFbyStates>();
+        for (Partition node : graph.getNodes()) {
+            states.put(node, initial.copy());
+        }
+
+        Partition node = graph.getDummyInitialNode();
+        workList.add(node);
+        states.get(node).setInitial(node.getEType());
+
+        while (!workList.isEmpty()) {
+            node = workList.remove();
+            BitSetAFbyStates current = states.get(node);
+            for (Partition target : graph.getAdjacentNodes(node)) {
+                BitSetAFbyStates oldTargetStates = states.get(target);
+                BitSetAFbyStates updatesToTargetStates = current.copy();
+                updatesToTargetStates.transition(target.getEType());
+                boolean isSubset = updatesToTargetStates
+                        .isSubset(oldTargetStates);
+                oldTargetStates.mergeWith(updatesToTargetStates);
+                if (!isSubset && !workList.contains(target)) {
+                    workList.add(target);
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * AFby state sets in the BitSet representation that AFbyInvFsms used to
+     * have: a list of BitSets, cloned on every copy, with inputs looked up
+     * per event type and combined into freshly allocated BitSets.
+     */
+    private static class BitSetAFbyStates {
+        private List<BitSet> sets;
+        private final int count;
+        private final Map<EventType, BitSet> aMap;
+        private final Map<EventType, BitSet> bMap;
+
+        BitSetAFbyStates(List<BinaryInvariant> invariants) {
+            count = invariants.size();
+            sets = new ArrayList<BitSet>(2);
+            sets.add(new BitSet());
+            sets.add(new BitSet());
+            aMap = new LinkedHashMap<EventType, BitSet>();
+            bMap = new LinkedHashMap<EventType, BitSet>();
+            for (int i = 0; i < count; i++) {
+                getOrCreate(aMap, invariants.get(i).getFirst()).set(i);
+                getOrCreate(bMap, invariants.get(i).getSecond()).set(i);
+            }
+        }
+
+        private BitSetAFbyStates(BitSetAFbyStates other) {
+            count = other.count;
+            aMap = other.aMap;
+            bMap = other.bMap;
+            sets = new ArrayList<BitSet>(2);
+            for (BitSet set : other.sets) {
+                sets.add((BitSet) set.clone());
+            }
+        }
+
+        private static BitSet getOrCreate(Map<EventType, BitSet> map,
+                EventType e) {
+            BitSet set = map.get(e);
+            if (set == null) {
+                set = new BitSet();
+                map.put(e, set);
+            }
+            return set;
+        }
+
+        private static BitSet getInput(Map<EventType, BitSet> map, EventType e) {
+            BitSet set = map.get(e);
+            return set == null ? new BitSet() : set;
+        }
+
+        BitSetAFbyStates copy() {
+            return new BitSetAFbyStates(this);
+        }
+
+        void setInitial(EventType e) {
+            BitSet isA = (BitSet) getInput(aMap, e).clone();
+            sets.set(1, (BitSet) isA.clone());
+            isA.flip(0, count);
+            sets.set(0, isA);
+        }
+
+        void transition(EventType e) {
+            BitSet isA = getInput(aMap, e);
+            BitSet isB = getInput(bMap, e);
+            BitSet neither = (BitSet) isA.clone();
+            neither.or(isB);
+            neither.flip(0, count);
+
+            sets.get(0).and(neither);
+            sets.get(0).or(isB);
+            sets.get(1).and(neither);
+            sets.get(1).or(isA);
+        }
+
+        void mergeWith(BitSetAFbyStates other) {
+            for (int i = 0; i < sets.size(); i++) {
+                sets.get(i).or(other.sets.get(i));
+            }
+        }
+
+        boolean isSubset(BitSetAFbyStates other) {
+            for (int j = 0; j < sets.size(); j++) {
+                BitSet s = (BitSet) sets.get(j).clone();
+                s.and(other.sets.get(j));
+                s.xor(sets.get(j));
+                if (!s.isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
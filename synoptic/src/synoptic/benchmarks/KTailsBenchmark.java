@@ -0,0 +1,151 @@
+package synoptic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import synoptic.algorithms.KTailSignatures;
+import synoptic.algorithms.KTails;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Compares two ways of finding the groups of k-equal partitions, as
+ * KTails.performKTails does: comparing every pair of partitions with
+ * KTails.kEquals, which enumerates the k-strings of both partitions for every
+ * comparison, and grouping the partitions by their KTailSignatures, which are
+ * computed once per partition. Like the graphs in KTailsTests, the graph has
+ * a partition per event of a randomly generated log, so that its partitions
+ * form chains. The benchmark argument is k. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.KTailsBenchmark [k ...]
+ * </pre>
+ */
+public class KTailsBenchmark extends Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int numTraces = 60;
+    private static final int traceLength = 12;
+    private static final int numEventTypes = 4;
+
+    public static void main(String[] args) {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        List<Integer> ks = new ArrayList<Integer>();
+        for (String arg : args) {
+            ks.add(Integer.valueOf(arg));
+        }
+        if (ks.isEmpty()) {
+            ks.addAll(Arrays.asList(1, 2, 3, 4, 5));
+        }
+        new Benchmark<Integer>(3, new KTailsBenchmark()).run(ks);
+    }
+
+    @Override
+    protected void run(Integer k) {
+        PartitionGraph graph = genPerEventPartitionGraph();
+
+        TimedTask pairwise = PerformanceMetrics.createTask("pairwiseKEquals");
+        Set<Set<Partition>> pairwiseGroups = groupPairwise(graph, k);
+        pairwise.stop();
+
+        TimedTask signatures = PerformanceMetrics.createTask("signatures");
+        Set<Set<Partition>> signatureGroups = groupBySignature(graph, k);
+        signatures.stop();
+
+        if (!pairwiseGroups.equals(signatureGroups)) {
+            throw new InternalSynopticException(
+                    "k-tail signatures disagree with kEquals for k=" + k);
+        }
+        PerformanceMetrics.get().record("numGroups", signatureGroups.size());
+    }
+
+    /**
+     * Groups the partitions of graph as KTails.performKTails did before
+     * signatures: by comparing every partition with every later partition
+     * that is not yet in a group.
+     */
+    private static Set<Set<Partition>> groupPairwise(PartitionGraph graph,
+            int k) {
+        List<Partition> partitions = new ArrayList<Partition>(graph.getNodes());
+        Set<Partition> grouped = new LinkedHashSet<Partition>();
+        Set<Set<Partition>> groups = new LinkedHashSet<Set<Partition>>();
+        for (int i = 0; i < partitions.size(); i++) {
+            Partition pi = partitions.get(i);
+            if (grouped.contains(pi)) {
+                continue;
+            }
+            Set<Partition> group = new LinkedHashSet<Partition>();
+            group.add(pi);
+            for (int j = i + 1; j < partitions.size(); j++) {
+                Partition pj = partitions.get(j);
+                if (!grouped.contains(pj) && KTails.kEquals(pi, pj, k)) {
+                    group.add(pj);
+                    grouped.add(pj);
+                }
+            }
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private static Set<Set<Partition>> groupBySignature(PartitionGraph graph,
+            int k) {
+        KTailSignatures signatures = new KTailSignatures(graph, k);
+        Map<Integer, Set<Partition>> groups = new LinkedHashMap<Integer, Set<Partition>>();
+        for (Partition p : graph.getNodes()) {
+            Integer signature = signatures.getSignature(p);
+            Set<Partition> group = groups.get(signature);
+            if (group == null) {
+                group = new LinkedHashSet<Partition>();
+                groups.put(signature, group);
+            }
+            group.add(p);
+        }
+        return new LinkedHashSet<Set<Partition>>(groups.values());
+    }
+
+    /**
+     * Generates a log of numTraces traces of traceLength events each, drawn
+     * uniformly from numEventTypes event types, and returns the partition
+     * graph with a partition per event of the log.
+     */
+    private static PartitionGraph genPerEventPartitionGraph() {
+        Random random = new Random(numTraces);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.append("--\n");
+            }
+            for (int e = 0; e < traceLength; e++) {
+                log.append("e" + random.nextInt(numEventTypes) + "\n");
+            }
+        }
+
+        try {
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<TYPE>)$");
+            parser.addPartitionsSeparator("^--$");
+            ArrayList<EventNode> events = parser.parseTraceString(
+                    log.toString(), "benchmark", -1);
+            return new PartitionGraph(parser.generateDirectTORelation(events),
+                    false, null);
+        } catch (ParseException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package synoptic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DenseChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Compares ChainWalkingTOInvMiner, which counts event type pairs in nested
+ * maps, serially and with the traces split across numThreads threads, against
+ * DenseChainWalkingTOInvMiner, which counts them in int matrices indexed by
+ * interned event types, on the trace graph of a randomly generated log. The benchmark argument is the number of event types. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.MinerBenchmark [numEventTypes ...]
+ * </pre>
+ */
+public class MinerBenchmark extends Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int numTraces = 500;
+    private static final int traceLength = 100;
+    private static final int numThreads = 4;
+
+    public static void main(String[] args) {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        List<Integer> numEventTypes = new ArrayList<Integer>();
+        for (String arg : args) {
+            numEventTypes.add(Integer.valueOf(arg));
+        }
+        if (numEventTypes.isEmpty()) {
+            numEventTypes.addAll(Arrays.asList(10, 50, 200));
+        }
+        new Benchmark<Integer>(3, new MinerBenchmark()).run(numEventTypes);
+    }
+
+    @Override
+    protected void run(Integer numEventTypes) {
+        ChainsTraceGraph graph = genTraceGraph(numEventTypes);
+
+        TemporalInvariantSet maps = mine(new ChainWalkingTOInvMiner(), graph,
+                "nestedMaps");
+        TemporalInvariantSet parallel = mine(new ChainWalkingTOInvMiner(
+                numThreads), graph, "parallelNestedMaps");
+        TemporalInvariantSet dense = mine(new DenseChainWalkingTOInvMiner(),
+                graph, "intMatrices");
+        if (!maps.sameInvariants(parallel) || !maps.sameInvariants(dense)) {
+            throw new InternalSynopticException(
+                    "The miners mined different invariants.");
+        }
+        PerformanceMetrics.get().record("numInvariants",
+                dense.numInvariants());
+    }
+
+    private static TemporalInvariantSet mine(ITOInvariantMiner miner,
+            ChainsTraceGraph graph, String name) {
+        TimedTask mining = PerformanceMetrics.createTask(name);
+        TemporalInvariantSet invariants = miner.computeInvariants(graph,
+                false, false);
+        mining.stop();
+        return invariants;
+    }
+
+    /**
+     * Generates a log of numTraces traces of traceLength events each, drawn
+     * uniformly from numEventTypes event types, and returns its trace graph.
+     */
+    private static ChainsTraceGraph genTraceGraph(int numEventTypes) {
+        Random random = new Random(numEventTypes);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.append("--\n");
+            }
+            for (int e = 0; e < traceLength; e++) {
+                log.append("e" + random.nextInt(numEventTypes) + "\n");
+            }
+        }
+
+        try {
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<TYPE>)$");
+            parser.addPartitionsSeparator("^--$");
+            ArrayList<EventNode> events = parser.parseTraceString(
+                    log.toString(), "benchmark", -1);
+            return parser.generateDirectTORelation(events);
+        } catch (ParseException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+}
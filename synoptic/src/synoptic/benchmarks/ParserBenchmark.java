@@ -0,0 +1,147 @@
+package synoptic.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.TraceParser;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Measures the throughput of TraceParser, in lines per second, on the logs in
+ * the traces/ directory, with each log parsed with the regular expressions of
+ * its args file. Every log is parsed both with every regular expression's
+ * matcher tried in turn until one matches, and with the regular expressions
+ * that cannot match a line ruled out by their literal prefilters first. The
+ * benchmark arguments are pairs of an args file and a log file. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.ParserBenchmark [argsFile logFile ...]
+ * </pre>
+ */
+public class ParserBenchmark extends
+        Benchmark.ConfigureableBenchmark<ParserBenchmark.TraceInput> {
+    private static final int numParses = 5;
+
+    /**
+     * A log file and the args file with the regular expressions to parse it
+     * with.
+     */
+    static class TraceInput {
+        final String argsFilename;
+        final String logFilename;
+
+        TraceInput(String argsFilename, String logFilename) {
+            this.argsFilename = argsFilename;
+            this.logFilename = logFilename;
+        }
+
+        @Override
+        public String toString() {
+            return new File(logFilename).getName();
+        }
+    }
+
+    public static void main(String[] args) {
+        List<TraceInput> inputs = new ArrayList<TraceInput>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            inputs.add(new TraceInput(args[i], args[i + 1]));
+        }
+        if (inputs.isEmpty()) {
+            String traces = new File("traces").isDirectory() ? "traces"
+                    : ".." + File.separator + "traces";
+            inputs.add(traceInput(traces, "HTTP_Nasa_1995", "args.txt",
+                    "traces_5000.log"));
+            inputs.add(traceInput(traces, "ApacheLogs", "args.txt",
+                    "short142"));
+            inputs.add(traceInput(traces, "TwoPhaseCommit",
+                    "twopc-synoptic.args", "2pc_3nodes_100tx.log"));
+            inputs.add(traceInput(traces, "strace", "args.txt", "ping.txt"));
+        }
+        new Benchmark<TraceInput>(3, new ParserBenchmark()).run(inputs);
+    }
+
+    private static TraceInput traceInput(String traces, String dir,
+            String argsFilename, String logFilename) {
+        String path = traces + File.separator + dir + File.separator;
+        return new TraceInput(path + argsFilename, path + logFilename);
+    }
+
+    @Override
+    protected void run(TraceInput input) {
+        AbstractOptions options = processArgs(input);
+        File log = new File(input.logFilename);
+        long numLines = countLines(log);
+
+        for (boolean usePrefilters : new boolean[] { false, true }) {
+            String name = usePrefilters ? "prefiltered" : "allRegexes";
+            long start = System.currentTimeMillis();
+            TimedTask parse = PerformanceMetrics.createTask(name);
+            for (int i = 0; i < numParses; i++) {
+                TraceParser parser = newTraceParser(options);
+                parser.setUseLiteralPrefilters(usePrefilters);
+                try {
+                    parser.parseTraceFile(log, -1);
+                } catch (Exception e) {
+                    throw InternalSynopticException.wrap(e);
+                }
+            }
+            parse.stop();
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            PerformanceMetrics.get().record(name + "LinesPerSec",
+                    numLines * numParses * 1000 / millis);
+        }
+    }
+
+    /**
+     * Sets up a new SynopticMain with the options in the args file of input,
+     * and returns these options.
+     */
+    private static AbstractOptions processArgs(TraceInput input) {
+        AbstractMain.instance = null;
+        try {
+            SynopticMain main = SynopticMain.processArgs(new String[] { "-c",
+                    input.argsFilename, input.logFilename });
+            if (main == null) {
+                throw new InternalSynopticException(
+                        "Unable to process args file " + input.argsFilename);
+            }
+            return main.options;
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+
+    private static TraceParser newTraceParser(AbstractOptions options) {
+        try {
+            return new TraceParser(options.regExps,
+                    AbstractOptions.partitionRegExp,
+                    AbstractOptions.separatorRegExp, options.dateFormat);
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+
+    private static long countLines(File file) {
+        long numLines = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                while (reader.readLine() != null) {
+                    numLines++;
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+        return numLines;
+    }
+}
@@ -1,29 +1,39 @@
 package synoptic.benchmarks;
 
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import org.json.simple.JSONValue;
+
 import synoptic.main.AbstractMain;
 
 /**
  * A class to record performance metrics. It is a key value store, that keeps
  * record of the number of updates to each value. An update to a value (using
- * record) will add the value to the previously recorded one. This also keeps
- * track of a hierarchy of tasks: createTask adds a task to the task stack, and
- * a call to the task's stop method pops it.
+ * record) will add the value to the previously recorded one. The durations of
+ * timed tasks are also kept in a DurationHistogram per task. This also keeps
+ * track of a hierarchy of tasks for each thread: createTask adds a task to the
+ * calling thread's task stack, and a call to the task's stop method pops it.
+ * Values and tasks may be recorded from multiple threads. The recorded metrics
+ * can be written out as a JSON or CSV report.
  */
 public class PerformanceMetrics {
     private static Logger logger = Logger.getLogger("Performance Metrics");
     /**
      * A global performance metric instance to record statistics.
      */
-    private static PerformanceMetrics globalPerformanceMetrics = new PerformanceMetrics();
+    private static volatile PerformanceMetrics globalPerformanceMetrics = new PerformanceMetrics();
     /**
-     * The last created timed task. This is used to create a hierarchy of tasks.
+     * The last created timed task of each thread. This is used to create a
+     * hierarchy of tasks per thread.
      */
-    private static TimedTask previousTask = null;
+    private static final ThreadLocal<TimedTask> previousTask = new ThreadLocal<TimedTask>();
     /**
      * Holds the values measured for each metric. Consecutive measurements will
      * be accumulated by addition here.
@@ -42,18 +52,30 @@ public class PerformanceMetrics {
      */
     LinkedHashMap<String, Boolean> accumulativity = new LinkedHashMap<String, Boolean>();
 
+    /**
+     * Holds the histogram of the durations of each task.
+     */
+    LinkedHashMap<String, DurationHistogram> durations = new LinkedHashMap<String, DurationHistogram>();
+
     /**
      * Record the task t. This will increment the number of measurements for
-     * that task name, and pop previousTask from the task stack.
+     * that task name, and pop t from the calling thread's task stack.
      * 
      * @param t
      *            the task to record
      */
     public void record(TimedTask t) {
-        // t.stop();
-        record(t.getTask(), t.getTime());
-        accumulativity.put(t.getTask(), t.getAccumulativity());
-        previousTask = t.getParent();
+        synchronized (this) {
+            record(t.getTask(), t.getTime());
+            accumulativity.put(t.getTask(), t.getAccumulativity());
+            DurationHistogram histogram = durations.get(t.getTask());
+            if (histogram == null) {
+                histogram = new DurationHistogram();
+                durations.put(t.getTask(), histogram);
+            }
+            histogram.add(t.getTime());
+        }
+        previousTask.set(t.getParent());
     }
 
     /**
@@ -76,7 +98,7 @@ public class PerformanceMetrics {
      * @param value
      *            the measured value
      */
-    public void record(String key, long value) {
+    public synchronized void record(String key, long value) {
         if (!getAccumulativity(key)) {
             // Print all recorded values.
             if (AbstractMain.getInstance().options.doBenchmarking) {
@@ -122,9 +144,10 @@ public class PerformanceMetrics {
      * @return the created timed task
      */
     public static TimedTask createTask(String taskName, boolean accumulativity) {
-        previousTask = new TimedTask(taskName, previousTask,
+        TimedTask task = new TimedTask(taskName, previousTask.get(),
                 globalPerformanceMetrics, accumulativity);
-        return previousTask;
+        previousTask.set(task);
+        return task;
     }
 
     /**
@@ -133,7 +156,7 @@ public class PerformanceMetrics {
      * 
      * @return the data in alphabetic order
      */
-    public String getDataRelative() {
+    public synchronized String getDataRelative() {
         ArrayList<String> keys = new ArrayList<String>(values.keySet());
         Collections.sort(keys);
         StringBuilder str = new StringBuilder();
@@ -150,7 +173,7 @@ public class PerformanceMetrics {
      *            the number to divide each measurement through (use for avg)
      * @return data in alphabetic order
      */
-    public String getDataDividedBy(int divisor) {
+    public synchronized String getDataDividedBy(int divisor) {
         ArrayList<String> keys = new ArrayList<String>(values.keySet());
         Collections.sort(keys);
         StringBuilder str = new StringBuilder();
@@ -165,7 +188,7 @@ public class PerformanceMetrics {
      * 
      * @return keys in alphabetic order
      */
-    public String getHeader() {
+    public synchronized String getHeader() {
         ArrayList<String> keys = new ArrayList<String>(values.keySet());
         Collections.sort(keys);
         StringBuilder str = new StringBuilder();
@@ -176,9 +199,115 @@ public class PerformanceMetrics {
     }
 
     /**
-     * Resets the global performance metrics object.
+     * Returns a JSON report of the metrics: an object with a "values" object,
+     * which maps each key that is not a task to its total and number of
+     * measurements, and a "tasks" object, which maps each task to the number,
+     * total, minimum and maximum of its durations in ms, and the counts of its
+     * duration histogram by bucket bound.
+     */
+    public synchronized String getJsonReport() {
+        Map<String, Object> valuesJson = new LinkedHashMap<String, Object>();
+        for (String key : values.keySet()) {
+            if (!durations.containsKey(key)) {
+                Map<String, Object> valueJson = new LinkedHashMap<String, Object>();
+                valueJson.put("total", values.get(key));
+                valueJson.put("count", numberOfMesurements.get(key));
+                valuesJson.put(key, valueJson);
+            }
+        }
+
+        Map<String, Object> tasksJson = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, DurationHistogram> entry : durations.entrySet()) {
+            DurationHistogram histogram = entry.getValue();
+            Map<String, Object> taskJson = new LinkedHashMap<String, Object>();
+            taskJson.put("count", histogram.getCount());
+            taskJson.put("totalMs", histogram.getTotal());
+            taskJson.put("minMs", histogram.getMin());
+            taskJson.put("maxMs", histogram.getMax());
+            Map<String, Object> bucketsJson = new LinkedHashMap<String, Object>();
+            for (Map.Entry<Long, Long> bucket : histogram.getBuckets()
+                    .entrySet()) {
+                bucketsJson.put(bucket.getKey().toString(), bucket.getValue());
+            }
+            taskJson.put("histogram", bucketsJson);
+            tasksJson.put(entry.getKey(), taskJson);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("values", valuesJson);
+        report.put("tasks", tasksJson);
+        return JSONValue.toJSONString(report);
+    }
+
+    /**
+     * Returns a CSV report of the metrics, with a row per key and the columns
+     * key, count, total, minMs, maxMs, and histogram. The last three are only
+     * filled for tasks, and the histogram is a list of bound:count pairs
+     * separated by spaces.
+     */
+    public synchronized String getCsvReport() {
+        StringBuilder csv = new StringBuilder(
+                "key,count,total,minMs,maxMs,histogram\n");
+        for (String key : values.keySet()) {
+            csv.append(csvField(key) + "," + numberOfMesurements.get(key)
+                    + "," + values.get(key));
+            DurationHistogram histogram = durations.get(key);
+            if (histogram == null) {
+                csv.append(",,,\n");
+                continue;
+            }
+            List<String> buckets = new ArrayList<String>();
+            for (Map.Entry<Long, Long> bucket : histogram.getBuckets()
+                    .entrySet()) {
+                buckets.add(bucket.getKey() + ":" + bucket.getValue());
+            }
+            csv.append("," + histogram.getMin() + "," + histogram.getMax()
+                    + "," + csvField(join(buckets, " ")) + "\n");
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Writes the CSV report to filename if it ends with ".csv", and the JSON
+     * report otherwise.
+     */
+    public void writeReport(String filename) {
+        String report = filename.endsWith(".csv") ? getCsvReport()
+                : getJsonReport();
+        try {
+            PrintWriter output = new PrintWriter(filename);
+            output.print(report);
+            output.close();
+        } catch (FileNotFoundException e) {
+            logger.severe("Error writing the metrics report to " + filename
+                    + ": " + e.getMessage());
+        }
+    }
+
+    private static String csvField(String field) {
+        if (field.contains(",") || field.contains("\"")) {
+            return "\"" + field.replace("\"", "\"\"") + "\"";
+        }
+        return field;
+    }
+
+    private static String join(List<String> strings, String separator) {
+        StringBuilder joined = new StringBuilder();
+        for (String s : strings) {
+            if (joined.length() != 0) {
+                joined.append(separator);
+            }
+            joined.append(s);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * Resets the global performance metrics object, and discards any tasks of
+     * the calling thread that were never stopped.
      */
     public static void clear() {
         globalPerformanceMetrics = new PerformanceMetrics();
+        previousTask.remove();
     }
 }
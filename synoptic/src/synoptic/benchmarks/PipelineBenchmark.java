@@ -0,0 +1,145 @@
+package synoptic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.KTails;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Times each stage of the Synoptic pipeline on a log produced by
+ * SyntheticLogGenerator: parsing with TraceParser, mining with
+ * ChainWalkingTOInvMiner, checking the mined invariants of each invariant type
+ * against the initial partition graph with FsmModelChecker, refinement with
+ * Bisimulation.splitUntilAllInvsSatisfied, coarsening with
+ * Bisimulation.mergePartitions, and KTails. The benchmark argument is the
+ * number of traces in the log, so running it on increasing arguments shows how
+ * every stage scales, and running it before and after a change shows which
+ * stages regressed. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.PipelineBenchmark [numTraces ...]
+ * </pre>
+ * 
+ * or, from the synoptic directory:
+ * 
+ * <pre>
+ * ant -Dbenchmark.args="numTraces ..." benchmark
+ * </pre>
+ */
+public class PipelineBenchmark extends
+        Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int traceLength = 20;
+    private static final int numEventTypes = 10;
+    private static final int numStates = 8;
+    private static final int kTailsK = 2;
+
+    public static void main(String[] args) {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        List<Integer> numTraces = new ArrayList<Integer>();
+        for (String arg : args) {
+            numTraces.add(Integer.valueOf(arg));
+        }
+        if (numTraces.isEmpty()) {
+            numTraces.addAll(Arrays.asList(100, 1000, 5000));
+        }
+        new Benchmark<Integer>(3, new PipelineBenchmark()).run(numTraces);
+    }
+
+    @Override
+    protected void run(Integer numTraces) {
+        String log = new SyntheticLogGenerator(numEventTypes, numStates, 0)
+                .generate(numTraces, traceLength);
+
+        TimedTask parsing = PerformanceMetrics.createTask("parse");
+        ChainsTraceGraph traceGraph = parse(log);
+        parsing.stop();
+        PerformanceMetrics.get().record("numEvents",
+                traceGraph.getNodes().size());
+
+        TimedTask mining = PerformanceMetrics.createTask("mine");
+        TemporalInvariantSet invs = new ChainWalkingTOInvMiner()
+                .computeInvariants(traceGraph, false, false);
+        mining.stop();
+        PerformanceMetrics.get().record("numInvariants", invs.numInvariants());
+
+        PartitionGraph pGraph = new PartitionGraph(traceGraph, true, invs);
+        check(invs, pGraph);
+
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        PerformanceMetrics.get().record("numRefinedPartitions",
+                pGraph.getNodes().size());
+        Bisimulation.mergePartitions(pGraph);
+        PerformanceMetrics.get().record("numCoarsenedPartitions",
+                pGraph.getNodes().size());
+
+        TimedTask kTails = PerformanceMetrics.createTask("kTails");
+        PartitionGraph kTailsGraph = KTails.performKTails(traceGraph, kTailsK);
+        kTails.stop();
+        PerformanceMetrics.get().record("numKTailsPartitions",
+                kTailsGraph.getNodes().size());
+    }
+
+    private static ChainsTraceGraph parse(String log) {
+        try {
+            TraceParser parser = new TraceParser();
+            parser.addRegex(SyntheticLogGenerator.regex);
+            parser.addPartitionsSeparator(SyntheticLogGenerator.separatorRegex);
+            ArrayList<EventNode> events = parser.parseTraceString(log,
+                    "benchmark", -1);
+            return parser.generateDirectTORelation(events);
+        } catch (ParseException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+
+    /**
+     * Model checks the invariants of each invariant type in invs against
+     * pGraph, timing each type as a separate task.
+     */
+    private static void check(TemporalInvariantSet invs,
+            PartitionGraph pGraph) {
+        Map<String, List<BinaryInvariant>> invsByType = new LinkedHashMap<String, List<BinaryInvariant>>();
+        for (ITemporalInvariant inv : invs) {
+            String type = inv.getShortName();
+            List<BinaryInvariant> typeInvs = invsByType.get(type);
+            if (typeInvs == null) {
+                typeInvs = new ArrayList<BinaryInvariant>();
+                invsByType.put(type, typeInvs);
+            }
+            typeInvs.add((BinaryInvariant) inv);
+        }
+
+        TimedTask checking = PerformanceMetrics.createTask("check");
+        for (Map.Entry<String, List<BinaryInvariant>> entry : invsByType
+                .entrySet()) {
+            TimedTask type = PerformanceMetrics.createTask(entry.getKey());
+            for (BinaryInvariant inv : entry.getValue()) {
+                FsmModelChecker.getCounterExample(inv, pGraph);
+            }
+            type.stop();
+        }
+        checking.stop();
+    }
+}
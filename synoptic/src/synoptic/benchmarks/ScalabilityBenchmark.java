@@ -0,0 +1,124 @@
+package synoptic.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.model.PartitionGraph;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Runs the full Synoptic pipeline, as SynopticMain does, on logs of increasing
+ * size written by SyntheticLogGenerator, and records the time it takes and the
+ * peak heap it uses. The peak heap is the sum of the peak usages of the heap
+ * memory pools during the run, measured from a freshly collected heap. The
+ * benchmark argument is the number of traces in the log. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.ScalabilityBenchmark [numTraces ...]
+ * </pre>
+ * 
+ * or, from the synoptic directory:
+ * 
+ * <pre>
+ * ant -Dscalability.sizes="numTraces ..." scalability
+ * </pre>
+ */
+public class ScalabilityBenchmark extends
+        Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int minTraceLength = 10;
+    private static final int maxTraceLength = 40;
+    private static final int numEventTypes = 12;
+    private static final int numStates = 10;
+    private static final int outDegree = 2;
+    /**
+     * The seed of Synoptic's random choices, fixed so that runs on the same
+     * log refine the same way and are comparable.
+     */
+    private static final String randomSeed = "0";
+
+    public static void main(String[] args) {
+        List<Integer> numTraces = new ArrayList<Integer>();
+        for (String arg : args) {
+            numTraces.add(Integer.valueOf(arg));
+        }
+        if (numTraces.isEmpty()) {
+            numTraces.addAll(Arrays.asList(250, 500, 1000, 2000, 4000));
+        }
+        new Benchmark<Integer>(1, new ScalabilityBenchmark()).run(numTraces);
+    }
+
+    @Override
+    protected void run(Integer numTraces) {
+        File logFile = null;
+        File argsFile = null;
+        try {
+            logFile = File.createTempFile("synthetic", ".log");
+            argsFile = File.createTempFile("synthetic", ".args");
+            new SyntheticLogGenerator(numEventTypes, numStates, outDegree, 0,
+                    0).write(logFile, argsFile, numTraces, minTraceLength,
+                    maxTraceLength);
+
+            resetPeakHeap();
+            TimedTask pipeline = PerformanceMetrics.createTask("pipeline");
+            AbstractMain.instance = null;
+            SynopticMain main = SynopticMain.processArgs(new String[] { "-c",
+                    argsFile.getPath(), "--randomSeed", randomSeed,
+                    logFile.getPath() });
+            PartitionGraph pGraph = main.createInitialPartitionGraph();
+            main.runSynoptic(pGraph);
+            pipeline.stop();
+
+            PerformanceMetrics.get().record("peakHeapMB",
+                    getPeakHeap() / (1024 * 1024));
+            PerformanceMetrics.get().record("numPartitions",
+                    pGraph.getNodes().size());
+        } catch (Exception e) {
+            throw InternalSynopticException.wrap(e);
+        } finally {
+            delete(logFile);
+            delete(argsFile);
+        }
+    }
+
+    private static void delete(File file) {
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Collects the garbage on the heap, and resets the peak usages of the heap
+     * memory pools to their current usages.
+     */
+    private static void resetPeakHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the peak usages of the heap memory pools, in bytes.
+     */
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
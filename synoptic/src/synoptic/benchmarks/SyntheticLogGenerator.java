@@ -0,0 +1,222 @@
+package synoptic.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Generates logs of a configurable size by walking a hidden, randomly
+ * generated finite state machine. Each of the numStates states of the machine
+ * has outDegree outgoing transitions, to random states, labeled with event
+ * types drawn from numEventTypes event types named e0, e1, ... Every trace is
+ * a random walk from state 0 whose length is drawn uniformly between a minimum
+ * and a maximum trace length, so the traces share the structure of the
+ * machine and Synoptic mines non-trivial invariants from them.
+ * <p>
+ * By default the generated logs are totally ordered, with one event type per
+ * line. If numProcesses is positive, the events of a trace are instead spread
+ * across numProcesses processes and each line has the vector timestamp, the
+ * process, and the event type of an event. An event receives a message from
+ * the last event at another process with probability 1/4, so the traces are
+ * partially ordered. In both cases traces are separated by "--" lines, and a
+ * log is parsed with getRegex() and separatorRegex. The machine and the walks
+ * only depend on the seed, so a generator always produces the same logs.
+ * Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.SyntheticLogGenerator logFile numTraces
+ *     [minTraceLength maxTraceLength [numEventTypes numStates outDegree
+ *     [numProcesses [seed]]]]
+ * </pre>
+ * 
+ * which writes the log to logFile, and the Synoptic arguments to parse it to
+ * logFile.args, so that the log can be processed with:
+ * 
+ * <pre>
+ * java synoptic.main.SynopticMain -c logFile.args logFile
+ * </pre>
+ */
+public class SyntheticLogGenerator {
+    /**
+     * The regular expression that parses the events of a totally ordered log.
+     */
+    public static final String regex = "^(?<TYPE>)$";
+    /**
+     * The regular expression that parses the events of a partially ordered
+     * log.
+     */
+    public static final String vectorTimeRegex =
+            "^(?<VTIME>)(?<PID>)(?<TYPE>)$";
+    /** The regular expression that separates the traces of a generated log. */
+    public static final String separatorRegex = "^--$";
+
+    private final int numProcesses;
+    private final long seed;
+    /** The target state of every transition, by source state. */
+    private final int[][] targets;
+    /** The event type of every transition, by source state. */
+    private final String[][] eventTypes;
+
+    /**
+     * Creates a generator of totally ordered logs whose hidden machine has
+     * numStates states, each with two transitions labeled with numEventTypes
+     * event types.
+     */
+    public SyntheticLogGenerator(int numEventTypes, int numStates, long seed) {
+        this(numEventTypes, numStates, 2, 0, seed);
+    }
+
+    /**
+     * Creates a generator whose hidden machine has numStates states, each with
+     * outDegree transitions labeled with numEventTypes event types, and whose
+     * logs are partially ordered across numProcesses processes if numProcesses
+     * is positive, and totally ordered otherwise.
+     */
+    public SyntheticLogGenerator(int numEventTypes, int numStates,
+            int outDegree, int numProcesses, long seed) {
+        assert numEventTypes > 0 && numStates > 0 && outDegree > 0;
+        this.numProcesses = numProcesses;
+        this.seed = seed;
+        targets = new int[numStates][outDegree];
+        eventTypes = new String[numStates][outDegree];
+
+        Random random = new Random(seed);
+        for (int s = 0; s < numStates; s++) {
+            for (int i = 0; i < outDegree; i++) {
+                targets[s][i] = random.nextInt(numStates);
+                eventTypes[s][i] = "e" + random.nextInt(numEventTypes);
+            }
+        }
+    }
+
+    /**
+     * Returns the regular expression that parses the events of the logs of
+     * this generator.
+     */
+    public String getRegex() {
+        return numProcesses > 0 ? vectorTimeRegex : regex;
+    }
+
+    /**
+     * Returns a log of numTraces traces of traceLength events each.
+     */
+    public String generate(int numTraces, int traceLength) {
+        return generate(numTraces, traceLength, traceLength);
+    }
+
+    /**
+     * Returns a log of numTraces traces of minTraceLength to maxTraceLength
+     * events each.
+     */
+    public String generate(int numTraces, int minTraceLength,
+            int maxTraceLength) {
+        StringBuilder log = new StringBuilder();
+        try {
+            generate(log, numTraces, minTraceLength, maxTraceLength);
+        } catch (IOException e) {
+            // StringBuilder does not throw IOExceptions.
+            throw InternalSynopticException.wrap(e);
+        }
+        return log.toString();
+    }
+
+    /**
+     * Writes a log of numTraces traces of minTraceLength to maxTraceLength
+     * events each to logFile, and the Synoptic arguments that parse it to
+     * argsFile.
+     */
+    public void write(File logFile, File argsFile, int numTraces,
+            int minTraceLength, int maxTraceLength) throws IOException {
+        Writer log = new FileWriter(logFile);
+        try {
+            generate(log, numTraces, minTraceLength, maxTraceLength);
+        } finally {
+            log.close();
+        }
+
+        Writer args = new FileWriter(argsFile);
+        try {
+            args.append("-r " + getRegex() + "\n");
+            args.append("-s " + separatorRegex + "\n");
+        } finally {
+            args.close();
+        }
+    }
+
+    private void generate(Appendable log, int numTraces, int minTraceLength,
+            int maxTraceLength) throws IOException {
+        assert minTraceLength > 0 && minTraceLength <= maxTraceLength;
+        Random random = new Random(seed);
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.append("--\n");
+            }
+            int traceLength = minTraceLength;
+            if (maxTraceLength > minTraceLength) {
+                traceLength += random.nextInt(maxTraceLength - minTraceLength
+                        + 1);
+            }
+            int[][] clocks = new int[numProcesses][numProcesses];
+            int state = 0;
+            for (int e = 0; e < traceLength; e++) {
+                int i = random.nextInt(eventTypes[state].length);
+                if (numProcesses > 0) {
+                    appendVectorTime(log, clocks, random);
+                }
+                log.append(eventTypes[state][i]).append('\n');
+                state = targets[state][i];
+            }
+        }
+    }
+
+    /**
+     * Ticks the clock of a random process, after receiving a message from the
+     * last event at another random process with probability 1/4, and appends
+     * the resulting vector timestamp and the process to log.
+     */
+    private void appendVectorTime(Appendable log, int[][] clocks,
+            Random random) throws IOException {
+        int p = random.nextInt(numProcesses);
+        if (random.nextInt(4) == 0) {
+            int sender = random.nextInt(numProcesses);
+            for (int q = 0; q < numProcesses; q++) {
+                clocks[p][q] = Math.max(clocks[p][q], clocks[sender][q]);
+            }
+        }
+        clocks[p][p]++;
+        for (int q = 0; q < numProcesses; q++) {
+            log.append(q == 0 ? "" : ",").append(
+                    Integer.toString(clocks[p][q]));
+        }
+        log.append(" " + p + " ");
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err
+                    .println("Usage: SyntheticLogGenerator logFile numTraces "
+                            + "[minTraceLength maxTraceLength [numEventTypes "
+                            + "numStates outDegree [numProcesses [seed]]]]");
+            System.exit(1);
+        }
+        File logFile = new File(args[0]);
+        int numTraces = Integer.parseInt(args[1]);
+        int minTraceLength = args.length > 3 ? Integer.parseInt(args[2]) : 20;
+        int maxTraceLength = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int numEventTypes = args.length > 6 ? Integer.parseInt(args[4]) : 10;
+        int numStates = args.length > 6 ? Integer.parseInt(args[5]) : 8;
+        int outDegree = args.length > 6 ? Integer.parseInt(args[6]) : 2;
+        int numProcesses = args.length > 7 ? Integer.parseInt(args[7]) : 0;
+        long seed = args.length > 8 ? Long.parseLong(args[8]) : 0;
+
+        File argsFile = new File(logFile.getPath() + ".args");
+        new SyntheticLogGenerator(numEventTypes, numStates, outDegree,
+                numProcesses, seed).write(logFile, argsFile, numTraces,
+                minTraceLength, maxTraceLength);
+        System.out.println("Wrote " + logFile + " and " + argsFile);
+    }
+}
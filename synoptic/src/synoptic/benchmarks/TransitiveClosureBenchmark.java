@@ -0,0 +1,137 @@
+package synoptic.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import synoptic.algorithms.CompactTransitiveClosure;
+import synoptic.algorithms.TransitiveClosure;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.event.Event;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Compares the time and memory taken by the transitive closure that
+ * DAGsTraceGraph computes, which keeps the set of reachable nodes of every
+ * node, with those taken by CompactTransitiveClosure, on the DAG of a randomly
+ * generated partially ordered log. The memory of a closure is measured as the
+ * growth of the used heap while it is referenced. The benchmark argument is
+ * the number of events per trace. Usage:
+ * 
+ * <pre>
+ * java synoptic.benchmarks.TransitiveClosureBenchmark [numEvents ...]
+ * </pre>
+ */
+public class TransitiveClosureBenchmark extends
+        Benchmark.ConfigureableBenchmark<Integer> {
+    private static final int numTraces = 10;
+    private static final int numProcesses = 4;
+
+    public static void main(String[] args) {
+        AbstractMain.instance = null;
+        new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                new DotExportFormatter());
+
+        List<Integer> numEvents = new ArrayList<Integer>();
+        for (String arg : args) {
+            numEvents.add(Integer.valueOf(arg));
+        }
+        if (numEvents.isEmpty()) {
+            numEvents.addAll(Arrays.asList(100, 200, 400));
+        }
+        new Benchmark<Integer>(3, new TransitiveClosureBenchmark())
+                .run(numEvents);
+    }
+
+    @Override
+    protected void run(Integer numEvents) {
+        DAGsTraceGraph graph = genDAG(numEvents);
+        Set<String> relations = Collections
+                .singleton(Event.defTimeRelationStr);
+
+        long before = usedHeap();
+        TimedTask sets = PerformanceMetrics.createTask("reachableSets");
+        TransitiveClosure tc = graph.getTransitiveClosure(relations);
+        sets.stop();
+        PerformanceMetrics.get().record("reachableSetsKB",
+                (usedHeap() - before) / 1024);
+
+        before = usedHeap();
+        TimedTask chains = PerformanceMetrics.createTask("chains");
+        CompactTransitiveClosure compact = new CompactTransitiveClosure(graph,
+                relations);
+        chains.stop();
+        PerformanceMetrics.get().record("chainsKB",
+                (usedHeap() - before) / 1024);
+        PerformanceMetrics.get().record("numChains", compact.getNumChains());
+
+        for (EventNode m : graph.getNodes()) {
+            for (EventNode n : graph.getNodes()) {
+                if (tc.isReachable(m, n) != compact.isReachable(m, n)) {
+                    throw new InternalSynopticException(
+                            "The closures disagree on " + m + " -> " + n);
+                }
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Generates a log of numTraces traces of numEvents events each, at
+     * numProcesses processes, in which an event receives a message from the
+     * last event at another process with probability 1/4, and returns its DAG.
+     */
+    private static DAGsTraceGraph genDAG(int numEvents) {
+        Random random = new Random(numEvents);
+        StringBuilder log = new StringBuilder();
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.append("--\n");
+            }
+            int[][] clocks = new int[numProcesses][numProcesses];
+            for (int i = 0; i < numEvents; i++) {
+                int p = random.nextInt(numProcesses);
+                if (random.nextInt(4) == 0) {
+                    int sender = random.nextInt(numProcesses);
+                    for (int q = 0; q < numProcesses; q++) {
+                        clocks[p][q] = Math.max(clocks[p][q],
+                                clocks[sender][q]);
+                    }
+                }
+                clocks[p][p]++;
+                for (int q = 0; q < numProcesses; q++) {
+                    log.append(q == 0 ? "" : ",").append(clocks[p][q]);
+                }
+                log.append(" " + p + " e" + random.nextInt(5) + "\n");
+            }
+        }
+
+        try {
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+            parser.addPartitionsSeparator("^--$");
+            ArrayList<EventNode> events = parser.parseTraceString(
+                    log.toString(), "benchmark", -1);
+            return parser.generateDirectPORelation(events);
+        } catch (ParseException e) {
+            throw InternalSynopticException.wrap(e);
+        }
+    }
+}
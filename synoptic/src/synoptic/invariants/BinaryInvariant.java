@@ -5,9 +5,9 @@ import java.util.Set;
 import java.util.logging.Logger;
 
 import gov.nasa.ltl.graph.Graph;
-import gov.nasa.ltl.trans.LTL2Buchi;
 import gov.nasa.ltl.trans.ParseErrorException;
 
+import synoptic.invariants.ltlcheck.BuchiAutomatonCache;
 import synoptic.invariants.ltlchecker.LTLFormula;
 import synoptic.model.event.EventType;
 import synoptic.util.InternalSynopticException;
@@ -34,7 +34,7 @@ public abstract class BinaryInvariant implements ITemporalInvariant {
     protected String relation;
 
     // CACHE:
-    private Graph automaton;
+    private volatile Graph automaton;
 
     private BinaryInvariant(EventType typeFirst, EventType typeSecond) {
         first = typeFirst;
@@ -181,7 +181,8 @@ public abstract class BinaryInvariant implements ITemporalInvariant {
             if (automaton == null) {
                 String formula = LTLFormula.prepare(getLTLString());
                 logger.fine("Prepared formula: " + formula);
-                automaton = LTL2Buchi.translate("! (" + formula + ")");
+                automaton = BuchiAutomatonCache.getAutomaton("! (" + formula
+                        + ")");
                 logger.fine("Translated formula: " + automaton);
             }
             return automaton;
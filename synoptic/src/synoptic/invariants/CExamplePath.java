@@ -22,6 +22,13 @@ public class CExamplePath<T> {
     public int violationStart;
     public int violationEnd;
 
+    /**
+     * The path that the model checker found, before the invariant shortened it
+     * to path, or null if it is not known. Refinement re-uses this
+     * counter-example only while the graph still contains all of this path.
+     */
+    public List<T> checkedPath = null;
+
     /**
      * Create a counter-example path
      * 
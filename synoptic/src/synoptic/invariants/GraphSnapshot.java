@@ -0,0 +1,87 @@
+package synoptic.invariants;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * A read-only copy of the node and adjacency structure of a graph. Graphs such
+ * as PartitionGraph lazily populate internal caches when their adjacency is
+ * queried, which makes them unsafe to share between threads. A snapshot
+ * materializes the adjacency once, up front, so that any number of model
+ * checking threads can then traverse it concurrently.
+ *
+ * @param <T>
+ *            the type of nodes in the graph
+ */
+class GraphSnapshot<T extends INode<T>> implements IGraph<T> {
+    private final Set<T> nodes;
+    private final Set<String> relations;
+    private final T dummyInitialNode;
+    private final Map<T, Set<T>> adjacency;
+
+    /**
+     * Creates a snapshot of graph. Must be called from the thread that owns
+     * graph.
+     */
+    public GraphSnapshot(IGraph<T> graph) {
+        nodes = Collections.unmodifiableSet(new LinkedHashSet<T>(graph
+                .getNodes()));
+        relations = Collections.unmodifiableSet(new LinkedHashSet<String>(
+                graph.getRelations()));
+        dummyInitialNode = graph.getDummyInitialNode();
+
+        // Record the adjacency of every node in the graph, as well as of any
+        // node that is reachable but not reported by getNodes().
+        adjacency = new LinkedHashMap<T, Set<T>>();
+        LinkedList<T> toVisit = new LinkedList<T>();
+        if (dummyInitialNode != null) {
+            toVisit.add(dummyInitialNode);
+        }
+        toVisit.addAll(nodes);
+        while (!toVisit.isEmpty()) {
+            T node = toVisit.removeFirst();
+            if (adjacency.containsKey(node)) {
+                continue;
+            }
+            Set<T> adjacent = new LinkedHashSet<T>(graph.getAdjacentNodes(node));
+            adjacency.put(node, Collections.unmodifiableSet(adjacent));
+            toVisit.addAll(adjacent);
+        }
+    }
+
+    @Override
+    public Set<T> getNodes() {
+        return nodes;
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return relations;
+    }
+
+    @Override
+    public T getDummyInitialNode() {
+        return dummyInitialNode;
+    }
+
+    @Override
+    public Set<T> getAdjacentNodes(T node) {
+        Set<T> adjacent = adjacency.get(node);
+        if (adjacent == null) {
+            return Collections.emptySet();
+        }
+        return adjacent;
+    }
+
+    @Override
+    public void add(T node) {
+        throw new UnsupportedOperationException();
+    }
+}
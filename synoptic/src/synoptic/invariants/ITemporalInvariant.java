@@ -30,8 +30,9 @@ public interface ITemporalInvariant {
     <T extends INode<T>> List<T> shorten(List<T> path);
 
     /**
-     * Get the Buchi-automaton that corresponds to this LTL property. This
-     * method should cache the automaton.
+     * Get the Buchi-automaton that corresponds to this LTL property, with
+     * parsed transition labels. This method should cache the automaton, and
+     * the returned automaton must not be modified, as it may be shared.
      * 
      * @return a Buchi-automaton represented as a graph
      */
@@ -8,10 +8,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -22,6 +29,7 @@ import synoptic.invariants.ltlchecker.GraphLTLChecker;
 import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.util.InternalSynopticException;
 
 /**
  * Maintains a set of temporal invariants.
@@ -159,31 +167,117 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
      */
     public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
             IGraph<T> graph) {
+        Map<ITemporalInvariant, CExamplePath<T>> noKnownCExamples = Collections
+                .emptyMap();
+        return getAllCounterExamples(graph, noKnownCExamples);
+    }
+
+    /**
+     * Returns a list of paths, each of which violates an invariant maintained
+     * by this invariant set. Invariants that have an entry in
+     * knownCounterExamples are not model checked -- the known path is used as
+     * their counter-example instead. The caller is responsible for making sure
+     * that these known paths are still valid (and shortest) counter-examples
+     * in graph.
+     * 
+     * @param <T>
+     *            the type of nodes in graph g
+     * @param graph
+     *            the graph within which the violating paths must be found
+     * @param knownCounterExamples
+     *            counter-examples that are known to exist in graph, keyed by
+     *            the invariant they violate
+     * @return a list of violating paths, sorted by path length
+     */
+    public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
+            IGraph<T> graph,
+            Map<ITemporalInvariant, CExamplePath<T>> knownCounterExamples) {
+        return getAllCounterExamples(graph, knownCounterExamples, null);
+    }
+
+    /**
+     * Returns a pool of numCheckerThreads threads, in which a series of
+     * getAllCounterExamples() calls (e.g., the rounds of refinement) can model
+     * check invariants, or null if invariants are not model checked
+     * concurrently. The caller must shut the pool down.
+     */
+    public static ExecutorService newCheckerPool() {
+        int numThreads = AbstractMain.getInstance().options.numCheckerThreads;
+        if (numThreads <= 1) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(numThreads);
+    }
+
+    /**
+     * Same as getAllCounterExamples(graph, knownCounterExamples), but if
+     * invariants are model checked concurrently, they are checked in pool (see
+     * newCheckerPool()). If pool is null, a pool is created for this call.
+     */
+    public <T extends INode<T>> List<CExamplePath<T>> getAllCounterExamples(
+            IGraph<T> graph,
+            Map<ITemporalInvariant, CExamplePath<T>> knownCounterExamples,
+            ExecutorService pool) {
         TimedTask violations = PerformanceMetrics.createTask(
                 "getAllCounterExamples", false);
         AbstractMain main = AbstractMain.getInstance();
         try {
-            List<CExamplePath<T>> paths = null;
-            if (main.options.useFSMChecker) {
-                paths = new ArrayList<CExamplePath<T>>();
-                for (ITemporalInvariant tinv : invariants) {
+            List<CExamplePath<T>> paths = new ArrayList<CExamplePath<T>>();
+            GraphLTLChecker<T> checker = null;
+            if (!main.options.useFSMChecker) {
+                // Use the LTL checker instead.
+                checker = new GraphLTLChecker<T>();
+            }
+
+            List<ITemporalInvariant> toCheck = new ArrayList<ITemporalInvariant>();
+            for (ITemporalInvariant inv : invariants) {
+                if (!knownCounterExamples.containsKey(inv)) {
+                    toCheck.add(inv);
+                }
+            }
+
+            Map<ITemporalInvariant, CExamplePath<T>> checked = null;
+            if (checker == null && main.options.bitSetPrecheck) {
+                // Rule out satisfied invariants in bulk, then only trace
+                // counter-examples for the remaining ones.
+                List<ITemporalInvariant> violated = FsmModelChecker
+                        .filterPossiblyViolated(toCheck, graph);
+                PerformanceMetrics.get().record(
+                        "numInvariantsRuledOutByPrecheck",
+                        toCheck.size() - violated.size());
+                toCheck = violated;
+                checked = new LinkedHashMap<ITemporalInvariant, CExamplePath<T>>();
+            }
+            if (main.options.numCheckerThreads > 1 && toCheck.size() > 1) {
+                checked = getCounterExamplesConcurrently(graph, toCheck,
+                        checker, pool, main.options.numCheckerThreads);
+            } else if (checked != null) {
+                for (ITemporalInvariant inv : toCheck) {
                     CExamplePath<T> path = FsmModelChecker.getCounterExample(
-                            (BinaryInvariant) tinv, graph);
+                            (BinaryInvariant) inv, graph);
                     if (path != null) {
-                        paths.add(path);
+                        checked.put(inv, path);
                     }
                 }
-            } else {
-                // Use the LTL checker instead.
-                paths = new ArrayList<CExamplePath<T>>();
-                GraphLTLChecker<T> checker = new GraphLTLChecker<T>();
-                for (ITemporalInvariant inv : invariants) {
-                    CExamplePath<T> path = checker
-                            .getCounterExample(inv, graph);
-                    if (path != null) {
-                        paths.add(path);
+            }
+
+            // Assemble the paths in the iteration order of invariants, so that
+            // the result does not depend on how the checks were scheduled.
+            for (ITemporalInvariant inv : invariants) {
+                CExamplePath<T> path = knownCounterExamples.get(inv);
+                if (path == null) {
+                    if (checked != null) {
+                        path = checked.get(inv);
+                    } else if (checker == null) {
+                        path = FsmModelChecker.getCounterExample(
+                                (BinaryInvariant) inv, graph);
+                    } else {
+                        path = checker.getCounterExample(inv, graph);
                     }
                 }
+                if (path != null) {
+                    paths.add(path);
+                }
             }
 
             if (paths.size() == 0) {
@@ -208,6 +302,74 @@ public class TemporalInvariantSet implements Iterable<ITemporalInvariant> {
         }
     }
 
+    /**
+     * Model checks each of the invariants in toCheck against graph using the
+     * FSM checker, or the LTL checker if checker is not null, distributing the
+     * invariants over the threads of pool, or of a pool of numThreads threads
+     * created for this call if pool is null. The FSM checker threads
+     * traverse a snapshot of graph, since graph itself may not be safe to read
+     * concurrently; the LTL checker serializes its own traversals of graph.
+     * 
+     * @return a map from each violated invariant in toCheck to its shortest
+     *         counter-example path
+     */
+    private static <T extends INode<T>> Map<ITemporalInvariant, CExamplePath<T>> getCounterExamplesConcurrently(
+            final IGraph<T> graph, List<ITemporalInvariant> toCheck,
+            final GraphLTLChecker<T> checker, ExecutorService pool,
+            int numThreads) {
+        final IGraph<T> snapshot = checker == null ? new GraphSnapshot<T>(
+                graph) : null;
+
+        ExecutorService ownPool = null;
+        if (pool == null) {
+            ownPool = Executors.newFixedThreadPool(Math.min(numThreads,
+                    toCheck.size()));
+            pool = ownPool;
+        }
+        List<Future<CExamplePath<T>>> futures = new ArrayList<Future<CExamplePath<T>>>(
+                toCheck.size());
+        try {
+            for (final ITemporalInvariant inv : toCheck) {
+                futures.add(pool.submit(new Callable<CExamplePath<T>>() {
+                    @Override
+                    public CExamplePath<T> call() {
+                        if (checker != null) {
+                            return checker.getCounterExample(inv, graph);
+                        }
+                        return FsmModelChecker.getCounterExample(
+                                (BinaryInvariant) inv, snapshot);
+                    }
+                }));
+            }
+
+            Map<ITemporalInvariant, CExamplePath<T>> checked = new LinkedHashMap<ITemporalInvariant, CExamplePath<T>>();
+            for (int i = 0; i < toCheck.size(); i++) {
+                CExamplePath<T> path = futures.get(i).get();
+                if (path != null) {
+                    checked.put(toCheck.get(i), path);
+                }
+            }
+            return checked;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new InternalSynopticException(e);
+        } finally {
+            // Stop the checks that are left if a check failed, since pool may
+            // be used again.
+            for (Future<CExamplePath<T>> future : futures) {
+                future.cancel(true);
+            }
+            if (ownPool != null) {
+                ownPool.shutdownNow();
+            }
+        }
+    }
+
     /**
      * Returns the first counter-example encountered in the graph g. The order
      * of exploration is unspecified.
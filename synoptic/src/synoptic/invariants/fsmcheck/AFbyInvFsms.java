@@ -31,14 +31,23 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 2);
     }
 
+    protected AFbyInvFsms(AFbyInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public AFbyInvFsms<T> copy() {
+        return new AFbyInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
-        return !sets.get(1).isEmpty();
+        return !isEmpty(1);
     }
 
     @Override
     public BitSet whichFail() {
-        return (BitSet) sets.get(1).clone();
+        return getState(1);
     }
 
     @Override
@@ -47,32 +56,19 @@ public class AFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
     }
 
     @Override
-    public void setInitial(T input) {
-        BitSet isA = getInputCopy(0, input);
-
-        sets.set(1, (BitSet) isA.clone());
-        // Modify isA to be the complement of itself.
-        isA.flip(0, count);
-        sets.set(0, isA);
+    protected void initialWord(long[] states, long isA, long isB, long mask) {
+        states[1] = isA;
+        states[0] = ~isA & mask;
     }
 
     @Override
-    public void transition(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
-        BitSet neither = nor(isA, isB, count);
-        BitSet s1 = sets.get(0);
-        BitSet s2 = sets.get(1);
-
+    protected void transitionWord(long[] states, long isA, long isB) {
         /*
          * neither = !(isA | isB) (simultaneous assignment - order not
          * significant) s1 = (s1 & neither) | isB s2 = (s2 & neither) | isA
          */
-
-        s1.and(neither);
-        s1.or(isB);
-
-        s2.and(neither);
-        s2.or(isA);
+        long neither = ~(isA | isB);
+        states[0] = (states[0] & neither) | isB;
+        states[1] = (states[1] & neither) | isA;
     }
 }
@@ -82,17 +82,8 @@ public class AFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         AFbyTracingSet<T> casted = (AFbyTracingSet<T>) other;
-        if (casted.wasA == null) {
-            if (wasA != null) {
-                return false;
-            }
-        }
-        if (casted.wasB == null) {
-            if (wasB != null) {
-                return false;
-            }
-        }
-        return true;
+        return isCovered(wasA, casted.wasA)
+                && isCovered(wasB, casted.wasB);
     }
 
     @Override
@@ -32,52 +32,46 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    protected APInvFsms(APInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public APInvFsms<T> copy() {
+        return new APInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
-        return !sets.get(2).isEmpty();
+        return !isEmpty(2);
     }
 
     @Override
     public BitSet whichFail() {
-        return (BitSet) sets.get(2).clone();
+        return getState(2);
     }
 
     @Override
     public BitSet whichPermanentFail() {
-        return (BitSet) sets.get(2).clone();
+        return getState(2);
     }
 
     @Override
-    public void setInitial(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
-        BitSet neither = nor(isA, isB, count);
-        sets.set(0, neither);
-        sets.set(1, isA);
-        sets.set(2, isB);
+    protected void initialWord(long[] states, long isA, long isB, long mask) {
+        states[0] = ~(isA | isB) & mask;
+        states[1] = isA;
+        states[2] = isB;
     }
 
     @Override
-    public void transition(T input) {
-        // Inputs cloned so that they can be mutated.
-        BitSet isA = getInputCopy(0, input);
-        BitSet isB = getInputCopy(1, input);
-        BitSet neither = nor(isA, isB, count);
-        BitSet s1 = sets.get(0);
-        BitSet s2 = sets.get(1);
-        BitSet s3 = sets.get(2);
-
+    protected void transitionWord(long[] states, long isA, long isB) {
         /*
          * n = !(isA | isB) (simultaneous assignment - order not significant) s1
          * = s1 & n s2 = s2 | (s1 & isA) s3 = s3 | (s1 & isB)
          */
-
-        isA.and(s1); // isA = s1 & isA
-        s2.or(isA); // s2 = s2 | (s1 & isA)
-
-        isB.and(s1); // isB = s1 & isA
-        s3.or(isB); // s3 = s3 | (s1 & isB)
-
-        s1.and(neither);
+        long s1 = states[0];
+        states[1] |= s1 & isA;
+        states[2] |= s1 & isB;
+        states[0] = s1 & ~(isA | isB);
     }
 }
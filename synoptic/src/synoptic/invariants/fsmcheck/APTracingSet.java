@@ -86,22 +86,9 @@ public class APTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         APTracingSet<T> casted = (APTracingSet<T>) other;
-        if (casted.neitherSeen == null) {
-            if (neitherSeen != null) {
-                return false;
-            }
-        }
-        if (casted.firstA == null) {
-            if (firstA != null) {
-                return false;
-            }
-        }
-        if (casted.firstB == null) {
-            if (firstB != null) {
-                return false;
-            }
-        }
-        return true;
+        return isCovered(neitherSeen, casted.neitherSeen)
+                && isCovered(firstA, casted.firstA)
+                && isCovered(firstB, casted.firstB);
     }
 
     @Override
@@ -0,0 +1,287 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.time.ITime;
+import synoptic.util.time.TotalTimeType;
+
+/**
+ * The paths of the ConstrainedTracingSets of one model checker run, stored in
+ * parallel arrays instead of as ConstrainedHistoryNode objects. A path is
+ * referred to by the index of its last node, and every node refers to the
+ * index of the node before it, so paths share prefixes as history node chains
+ * do. Running time deltas are stored encoded (see TotalTimeType).
+ * <p>
+ * Nodes are never removed, so an arena should be shared only by the copies of
+ * the tracing set that a run starts from. FsmModelChecker creates that tracing
+ * set for each check, so an arena lives as long as one check.
+ * ConstrainedHistoryNodes are only created by toHistoryNode(), for paths that
+ * are reported.
+ * <p>
+ * The event transitions of a node that extends a path are not stored, as they
+ * are the min or max time transitions between the node and the node before it
+ * (see ConstrainedTracingSet.transition()). toHistoryNode() finds them again.
+ * 
+ * @param <T>
+ *            The node type stored in the paths.
+ */
+final class ConstrainedHistoryArena<T extends INode<T>> {
+    /** The index of no node, used for states that are not inhabited. */
+    static final int NONE = -1;
+
+    final TotalTimeType timeType;
+
+    /** The relation of the invariant */
+    private final Set<String> relation;
+
+    /** Whether nodes extend paths along the max (or min) time transitions */
+    private final boolean findMax;
+
+    private Object[] nodes;
+    private int[] previous;
+    private int[] counts;
+    /** The node that each extending node was transitioned to from, or null */
+    private Object[] sources;
+    private Object[] transitions;
+    private long[] tDeltas;
+    private int[] violationStarts;
+    private int[] violationEnds;
+    private int size;
+
+    // Scratch arrays for ConstrainedTracingSet.transition(). They are shared,
+    // as the copies of a tracing set are transitioned one at a time.
+    private boolean[] outOfBound;
+    private int[] statesOld;
+
+    ConstrainedHistoryArena(TotalTimeType timeType, Set<String> relation,
+            boolean findMax) {
+        this.timeType = timeType;
+        this.relation = relation;
+        this.findMax = findMax;
+        int capacity = 64;
+        nodes = new Object[capacity];
+        previous = new int[capacity];
+        counts = new int[capacity];
+        sources = new Object[capacity];
+        transitions = new Object[capacity];
+        tDeltas = new long[capacity];
+        violationStarts = new int[capacity];
+        violationEnds = new int[capacity];
+        size = 0;
+        outOfBound = new boolean[0];
+        statesOld = new int[0];
+    }
+
+    /**
+     * Returns a scratch array for the out of bound flags of numStates states.
+     */
+    boolean[] getOutOfBound(int numStates) {
+        if (outOfBound.length != numStates) {
+            outOfBound = new boolean[numStates];
+        }
+        return outOfBound;
+    }
+
+    /**
+     * Returns a scratch array for the paths of numStates states.
+     */
+    int[] getStatesOld(int numStates) {
+        if (statesOld.length != numStates) {
+            statesOld = new int[numStates];
+        }
+        return statesOld;
+    }
+
+    /**
+     * Adds the first node of a path, with the given running time delta.
+     */
+    int addInitial(T node, long tDelta) {
+        return add(node, NONE, 0, null, null, tDelta, 0, 0);
+    }
+
+    /**
+     * Adds a node, transitioned to from source, that extends the path ending
+     * at prior, or returns NONE if prior is NONE. The violation subpath of the
+     * new path is that of prior.
+     */
+    int extend(T node, int prior, T source, long tDelta) {
+        if (prior == NONE) {
+            return NONE;
+        }
+        return add(node, prior, counts[prior] + 1, source, null, tDelta,
+                violationStarts[prior], violationEnds[prior]);
+    }
+
+    private int add(T node, int prev, int count, T source,
+            List<ITransition<EventNode>> trans, long tDelta,
+            int violationStart, int violationEnd) {
+        if (size == nodes.length) {
+            int capacity = 2 * size;
+            nodes = Arrays.copyOf(nodes, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            sources = Arrays.copyOf(sources, capacity);
+            transitions = Arrays.copyOf(transitions, capacity);
+            tDeltas = Arrays.copyOf(tDeltas, capacity);
+            violationStarts = Arrays.copyOf(violationStarts, capacity);
+            violationEnds = Arrays.copyOf(violationEnds, capacity);
+        }
+        nodes[size] = node;
+        previous[size] = prev;
+        counts[size] = count;
+        sources[size] = source;
+        transitions[size] = trans;
+        tDeltas[size] = tDelta;
+        violationStarts[size] = violationStart;
+        violationEnds[size] = violationEnd;
+        return size++;
+    }
+
+    long getTDelta(int i) {
+        return tDeltas[i];
+    }
+
+    /**
+     * Sets the start of the violation subpath of the path ending at i to its
+     * last node (see ConstrainedHistoryNode.startViolationHere()).
+     */
+    void startViolationHere(int i) {
+        violationStarts[i] = counts[i];
+    }
+
+    /**
+     * Sets the end of the violation subpath of the path ending at i to its
+     * last node (see ConstrainedHistoryNode.endViolationHere()).
+     */
+    void endViolationHere(int i) {
+        violationEnds[i] = counts[i];
+    }
+
+    /**
+     * Adds the path ending at history, whose running time deltas must be of
+     * the type of this arena, and returns the index of its last node.
+     */
+    int addHistory(ConstrainedHistoryNode<T> history) {
+        if (history == null) {
+            return NONE;
+        }
+        int prev = addHistory(history.previousConst);
+        return add(history.node, prev, history.count, null,
+                history.transitions,
+                timeType.encode(history.tDelta), history.violationStart,
+                history.violationEnd);
+    }
+
+    /**
+     * Returns the path ending at i as a chain of ConstrainedHistoryNodes, or
+     * null if i is NONE.
+     */
+    @SuppressWarnings("unchecked")
+    ConstrainedHistoryNode<T> toHistoryNode(int i) {
+        if (i == NONE) {
+            return null;
+        }
+        List<Integer> path = new ArrayList<Integer>(counts[i] + 1);
+        for (int cur = i; cur != NONE; cur = previous[cur]) {
+            path.add(cur);
+        }
+
+        ConstrainedHistoryNode<T> history = null;
+        for (int j = path.size() - 1; j >= 0; j--) {
+            int cur = path.get(j);
+            T node = (T) nodes[cur];
+            if (sources[cur] != null && transitions[cur] == null) {
+                transitions[cur] = getMinMaxTransitions(
+                        (Partition) sources[cur], (Partition) node);
+            }
+            if (history == null) {
+                history = new ConstrainedHistoryNode<T>(node,
+                        timeType.decode(tDeltas[cur]));
+                history.count = counts[cur];
+                history.transitions = (List<ITransition<EventNode>>) transitions[cur];
+            } else {
+                history = new ConstrainedHistoryNode<T>(node, history,
+                        counts[cur],
+                        (List<ITransition<EventNode>>) transitions[cur],
+                        timeType.decode(tDeltas[cur]));
+            }
+            history.violationStart = violationStarts[cur];
+            history.violationEnd = violationEnds[cur];
+        }
+        return history;
+    }
+
+    /**
+     * Get transition(s) with min or max time delta from the event transitions
+     * between the source and target partitions
+     */
+    private List<ITransition<EventNode>> getMinMaxTransitions(
+            Partition source, Partition target) {
+
+        // Min/max transitions to be returned
+        List<ITransition<EventNode>> minMaxTransitions = new ArrayList<ITransition<EventNode>>();
+
+        // Find and store transitions with min or max time delta
+        for (ITransition<EventNode> curTrans : source
+                .getEventTransitionsWithExactRelations(target, relation)) {
+
+            // Check if there is no min/max yet
+            if (minMaxTransitions.isEmpty()
+                    || minMaxTransitions.get(0).getTimeDelta() == null) {
+
+                minMaxTransitions.clear();
+                minMaxTransitions.add(curTrans);
+
+            } else {
+
+                // Compare current transition's time with min/max time
+                ITime curTime = curTrans.getTimeDelta();
+                ITime minMaxTime = minMaxTransitions.get(0).getTimeDelta();
+                int timeComparison = curTime.compareTo(minMaxTime);
+
+                // Finding MAX time delta
+                if (findMax) {
+                    // Current time is less than max: ignore
+                    if (timeComparison < 0) {
+                        continue;
+                    }
+                    // Current time ties the max: add to list
+                    else if (timeComparison == 0) {
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time is more than max: replace list
+                    else {
+                        minMaxTransitions.clear();
+                        minMaxTransitions.add(curTrans);
+                    }
+                }
+
+                // Finding MIN time delta
+                else {
+                    // Current time is less than min: replace list
+                    if (timeComparison < 0) {
+                        minMaxTransitions.clear();
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time ties the min: add to list
+                    else if (timeComparison == 0) {
+                        minMaxTransitions.add(curTrans);
+                    }
+                    // Current time is more than min: ignore
+                    else {
+                        continue;
+                    }
+                }
+            }
+        }
+
+        return minMaxTransitions;
+    }
+}
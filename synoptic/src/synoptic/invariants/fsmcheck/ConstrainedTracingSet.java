@@ -1,6 +1,6 @@
 package synoptic.invariants.fsmcheck;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -9,15 +9,25 @@ import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
+import synoptic.model.Transition;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.INode;
-import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 import synoptic.util.time.ITime;
+import synoptic.util.time.TotalTimeType;
+import synoptic.util.time.WrongTimeTypeException;
 
 /**
  * NFA state set superclass for all time-constrained invariants. It keeps the
  * shortest path justifying a given state being inhabited.
+ * <p>
+ * The paths are kept in a ConstrainedHistoryArena that is shared by the copies
+ * of a tracing set, and the states and running times are arrays of arena
+ * indexes and encoded times. So transitioning, copying and merging tracing
+ * sets allocates no history nodes or time objects, and transitioning uses the
+ * scratch arrays of the arena. ConstrainedHistoryNodes, and the lists of
+ * transitions of their paths, are only created for the paths returned by
+ * failpath().
  * 
  * @param <T>
  *            The node type, used as an input, and stored in path-history.
@@ -25,11 +35,14 @@ import synoptic.util.time.ITime;
 public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         TracingStateSet<T> {
 
+    /** The index of a state that is not inhabited. */
+    static final int NONE = ConstrainedHistoryArena.NONE;
+
     /**
-     * Running time stored by the state machine from when t=0 state was first
-     * encountered
+     * Running time (encoded, see TotalTimeType) stored by the state machine
+     * from when t=0 state was first encountered
      */
-    List<ITime> tRunning;
+    long[] tRunning;
 
     /**
      * Upper- or lower-bound time constraint
@@ -37,18 +50,28 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
     ITime tBound;
     public EventType a, b;
 
+    /**
+     * The encoded tBound
+     */
+    long bound;
+
     /**
      * Number of states in the state machine
      */
     int numStates;
 
     /**
-     * A path for each state in the appropriate state machine. An explanation
-     * for each state should be included in the documentation for any
-     * subclasses. States are stored this way due to some constrained FSM states
-     * lacking concise and descriptive names.
+     * The paths of the states, shared with the copies of this tracing set
+     */
+    ConstrainedHistoryArena<T> arena;
+
+    /**
+     * The index in arena of a path for each state in the appropriate state
+     * machine, or NONE. An explanation for each state should be included in
+     * the documentation for any subclasses. States are stored this way due to
+     * some constrained FSM states lacking concise and descriptive names.
      */
-    List<ConstrainedHistoryNode<T>> states;
+    int[] states;
 
     /**
      * The node (usually Partition) being transitioned _from_
@@ -61,57 +84,41 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
     Set<String> relation;
 
     /**
-     * Extends this node with another
+     * Extends the path at prior with node, transitioned to from the previous
+     * node, or returns NONE if prior is NONE
      */
-    public ConstrainedHistoryNode<T> extend(T node,
-            ConstrainedHistoryNode<T> prior,
-            List<ITransition<EventNode>> transitions, ITime tDelta) {
-
-        if (prior == null) {
-            return null;
-        }
-
-        // Make new node extended from prior
-        ConstrainedHistoryNode<T> extendedNode = new ConstrainedHistoryNode<T>(
-                node, prior, prior.count + 1, transitions, tDelta);
-        extendedNode.violationStart = prior.violationStart;
-        extendedNode.violationEnd = prior.violationEnd;
-
-        return extendedNode;
+    int extend(T node, int prior, long tDelta) {
+        return arena.extend(node, prior, previous, tDelta);
     }
 
     /**
-     * Return the non-null path with the smaller running time delta
+     * Return the inhabited path with the smaller running time delta
      */
-    public ConstrainedHistoryNode<T> preferMinTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second) {
+    int preferMinTime(int first, int second) {
         return preferMinMaxTime(first, second, false);
     }
 
     /**
-     * Return the non-null path with the larger running time delta
+     * Return the inhabited path with the larger running time delta
      */
-    public ConstrainedHistoryNode<T> preferMaxTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second) {
+    int preferMaxTime(int first, int second) {
         return preferMinMaxTime(first, second, true);
     }
 
     /**
-     * Return the non-null path with the smaller or larger (whichever is
+     * Return the inhabited path with the smaller or larger (whichever is
      * requested) running time delta
      * 
      * @param findMax
      *            If TRUE, find path with larger time delta. If FALSE, smaller.
      */
-    private ConstrainedHistoryNode<T> preferMinMaxTime(
-            ConstrainedHistoryNode<T> first, ConstrainedHistoryNode<T> second,
-            boolean findMax) {
+    private int preferMinMaxTime(int first, int second, boolean findMax) {
 
-        // If one path is null, return the other
-        if (second == null) {
+        // If one path is NONE, return the other
+        if (second == NONE) {
             return first;
         }
-        if (first == null) {
+        if (first == NONE) {
             return second;
         }
 
@@ -119,7 +126,8 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         // was requested
 
         // "Second" running time is greater
-        if (first.tDelta.lessThan(second.tDelta)) {
+        if (arena.timeType.lessThan(arena.getTDelta(first),
+                arena.getTDelta(second))) {
             if (findMax) {
                 return second;
             }
@@ -135,6 +143,31 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         }
     }
 
+    /**
+     * Returns the running time delta of the path at state
+     */
+    long tDelta(int state) {
+        return arena.getTDelta(state);
+    }
+
+    /**
+     * Set the start of the violation subpath to the last node of the path at
+     * state. This node's label should always be the invariant's first
+     * predicate.
+     */
+    void startViolationHere(int state) {
+        arena.startViolationHere(state);
+    }
+
+    /**
+     * Set the end of the violation subpath to the last node of the path at
+     * state. This node's label should always be the invariant's second
+     * predicate.
+     */
+    void endViolationHere(int state) {
+        arena.endViolationHere(state);
+    }
+
     /**
      * Set the states inhabited by this tracing state set. Should generally be
      * used only for testing
@@ -144,8 +177,24 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
      *            tracing state set
      */
     public void setStates(List<ConstrainedHistoryNode<T>> states) {
-        this.states = states;
         numStates = states.size();
+        if (arena == null) {
+            ITime zero = tBound;
+            for (ConstrainedHistoryNode<T> state : states) {
+                if (zero == null && state != null) {
+                    zero = state.tDelta;
+                }
+            }
+            arena = new ConstrainedHistoryArena<T>(getTimeType(zero),
+                    relation, isUpperBoundType());
+        }
+        if (tRunning == null || tRunning.length != numStates) {
+            tRunning = new long[numStates];
+        }
+        this.states = new int[numStates];
+        for (int i = 0; i < numStates; ++i) {
+            this.states[i] = arena.addHistory(states.get(i));
+        }
     }
 
     /**
@@ -181,14 +230,24 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         relation = new HashSet<String>(1);
         relation.add(inv.getRelation());
 
-        states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
-        tRunning = new ArrayList<ITime>(numStates);
+        arena = new ConstrainedHistoryArena<T>(getTimeType(tBound), relation,
+                isUpperBoundType());
+        bound = arena.timeType.encode(tBound);
 
         // Set up states and state times
-        for (int i = 0; i < numStates; ++i) {
-            states.add(null);
-            tRunning.add(tBound.getZeroTime());
+        states = new int[numStates];
+        Arrays.fill(states, NONE);
+        tRunning = new long[numStates];
+        Arrays.fill(tRunning, arena.timeType.getZeroTime());
+    }
+
+    private static TotalTimeType getTimeType(ITime t) {
+        TotalTimeType type = t == null ? TotalTimeType.INT : TotalTimeType
+                .of(t);
+        if (type == null) {
+            throw new WrongTimeTypeException();
         }
+        return type;
     }
 
     @Override
@@ -197,11 +256,8 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         // Should only be called on INITIAL nodes
         assert (input.isInitial());
 
-        ConstrainedHistoryNode<T> newHistory = new ConstrainedHistoryNode<T>(
-                input, tBound.getZeroTime());
-
         // Always start on State0
-        states.set(0, newHistory);
+        states[0] = arena.addInitial(input, arena.timeType.getZeroTime());
 
         // This node is our new previous node (for future transitions)
         previous = input;
@@ -243,171 +299,87 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
             isB = true;
         }
 
-        // Get all time deltas from the transition between "previous" and
-        // "input" nodes
-        Set<ITransition<EventNode>> evTransitions = null;
+        boolean isUpper = isUpperBoundType();
+
+        // Find the max (if upper constraint) or min (if lower constraint) time
+        // delta of the transitions between "previous" and "input" nodes. The
+        // transitions with this time delta are found again only for paths that
+        // are reported (see ConstrainedHistoryArena).
+        TotalTimeType timeType = arena.timeType;
+        boolean hasTransitions = false;
+        boolean hasTime = false;
+        long minMax = timeType.getZeroTime();
         if (previous != null) {
-            // Get transitions
-            evTransitions = ((Partition) previous)
-                    .getEventTransitionsWithExactRelations((Partition) input,
-                            relation);
-
-            // Transitions should not be empty or null
-            if (evTransitions == null || evTransitions.size() == 0) {
-                throw new InternalSynopticException(
-                        "Model-checker transitioned along non-existent edge");
+            for (EventNode ev : ((Partition) previous).getEventNodes()) {
+                for (Transition<EventNode> trans : ev.getAllTransitions()) {
+                    if (!trans.getRelation().equals(relation)
+                            || !trans.getTarget().getParent().equals(input)) {
+                        continue;
+                    }
+                    hasTransitions = true;
+
+                    ITime delta = trans.getTimeDelta();
+                    if (delta == null) {
+                        continue;
+                    }
+                    long t = timeType.encode(delta);
+                    int cmp = timeType.compare(t, minMax);
+                    if (!hasTime || isUpper && cmp > 0 || !isUpper && cmp < 0) {
+                        minMax = t;
+                        hasTime = true;
+                    }
+                }
             }
         }
 
-        boolean isUpper = isUpperBoundType();
-
-        // Get transition(s) with min (if lower constraint) or max (if upper
-        // constraint) time delta
-        List<ITransition<EventNode>> minMaxTrans = null;
-        if (isUpper) {
-            minMaxTrans = getMaxTransitions(evTransitions);
-        } else {
-            minMaxTrans = getMinTransitions(evTransitions);
+        // Transitions should not be empty
+        if (!hasTransitions) {
+            throw new InternalSynopticException(
+                    "Model-checker transitioned along non-existent edge");
         }
 
-        // Store min/max time for convenience
-        ITime minMaxTime = minMaxTrans.get(0).getTimeDelta();
-
         // Whether current running time will be outside the time bound at each
         // state
-        List<Boolean> outOfBound = new ArrayList<Boolean>(numStates);
-
-        for (int i = 0; i < numStates; ++i) {
-            outOfBound.add(null);
-        }
+        boolean[] outOfBound = arena.getOutOfBound(numStates);
 
         // Check for times outside time bound
         for (int i = 0; i < numStates; ++i) {
 
             // Increment running time and compare to time bound
-            ITime newTime = tRunning.get(i).incrBy(minMaxTime);
-            int tComparison = newTime.compareTo(tBound);
-
-            // Within bound if upper and <= bound or if lower >= bound
-            if (isUpper && tComparison <= 0 || !isUpper && tComparison >= 0) {
-                outOfBound.set(i, false);
+            long newTime = tRunning[i];
+            if (hasTime) {
+                newTime = timeType.incrBy(newTime, minMax);
             }
+            int tComparison = timeType.compare(newTime, bound);
 
-            // Outside of bound
-            else {
-                outOfBound.set(i, true);
-            }
+            // Within bound if upper and <= bound or if lower >= bound
+            outOfBound[i] = !(isUpper && tComparison <= 0 || !isUpper
+                    && tComparison >= 0);
         }
 
         // Keep old paths before this transition
-        List<ConstrainedHistoryNode<T>> statesOld = states;
+        int[] statesOld = arena.getStatesOld(numStates);
+        System.arraycopy(states, 0, statesOld, 0, numStates);
 
-        // Final state nodes after the transition will be stored in s
-        states = new ArrayList<ConstrainedHistoryNode<T>>(numStates);
-        for (int i = 0; i < numStates; ++i) {
-            states.add(null);
-        }
+        // Final state nodes after the transition will be stored in states
+        Arrays.fill(states, NONE);
 
         // Call transition code specific to each invariant
-        transition(input, minMaxTrans, isA, isB, outOfBound, statesOld);
+        transition(input, minMax, isA, isB, outOfBound, statesOld);
 
         // The node we just transitioned _to_ is our new previous node (for
         // future transitions)
         previous = input;
     }
 
-    protected abstract void transition(T input,
-            List<ITransition<EventNode>> transitions, boolean isA, boolean isB,
-            List<Boolean> outOfBound, List<ConstrainedHistoryNode<T>> sOld);
-
-    /**
-     * Get the event transition(s) with the smallest time delta
-     * 
-     * @param transitions
-     *            The event transitions
-     * @return Smallest time delta transitions
-     */
-    private List<ITransition<EventNode>> getMinTransitions(
-            Set<ITransition<EventNode>> transitions) {
-        return getMinMaxTransitions(transitions, false);
-    }
-
-    /**
-     * Get the event transition(s) with the largest time delta
-     * 
-     * @param transitions
-     *            The event transitions
-     * @return Largest time delta transitions
-     */
-    private List<ITransition<EventNode>> getMaxTransitions(
-            Set<ITransition<EventNode>> transitions) {
-        return getMinMaxTransitions(transitions, true);
-    }
-
     /**
-     * Get transition(s) with min or max time delta
+     * @param tMinMax
+     *            The encoded max (if upper constraint) or min (if lower
+     *            constraint) time delta of the transitions to input, or zero if
+     *            they have no time deltas
      */
-    private List<ITransition<EventNode>> getMinMaxTransitions(
-            Set<ITransition<EventNode>> transitions, boolean findMax) {
-
-        // Min/max transitions to be returned
-        List<ITransition<EventNode>> minMaxTransitions = new ArrayList<ITransition<EventNode>>();
-
-        // Find and store transitions with min or max time delta
-        for (ITransition<EventNode> curTrans : transitions) {
-
-            // Check if there is no min/max yet
-            if (minMaxTransitions.isEmpty()
-                    || minMaxTransitions.get(0).getTimeDelta() == null) {
-
-                minMaxTransitions.clear();
-                minMaxTransitions.add(curTrans);
-
-            } else {
-
-                // Compare current transition's time with min/max time
-                ITime curTime = curTrans.getTimeDelta();
-                ITime minMaxTime = minMaxTransitions.get(0).getTimeDelta();
-                int timeComparison = curTime.compareTo(minMaxTime);
-
-                // Finding MAX time delta
-                if (findMax) {
-                    // Current time is less than max: ignore
-                    if (timeComparison < 0) {
-                        continue;
-                    }
-                    // Current time ties the max: add to list
-                    else if (timeComparison == 0) {
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time is more than max: replace list
-                    else {
-                        minMaxTransitions.clear();
-                        minMaxTransitions.add(curTrans);
-                    }
-                }
-
-                // Finding MIN time delta
-                else {
-                    // Current time is less than min: replace list
-                    if (timeComparison < 0) {
-                        minMaxTransitions.clear();
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time ties the min: add to list
-                    else if (timeComparison == 0) {
-                        minMaxTransitions.add(curTrans);
-                    }
-                    // Current time is more than min: ignore
-                    else {
-                        continue;
-                    }
-                }
-            }
-        }
-
-        return minMaxTransitions;
-    }
+    protected abstract void transition(T input, long tMinMax, boolean isA,
+            boolean isB, boolean[] outOfBound, int[] sOld);
 
     @Override
     public void mergeWith(TracingStateSet<T> other) {
@@ -421,26 +393,50 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
             previous = casted.previous;
         }
 
+        // Paths of tracing sets that do not share this set's arena (only
+        // those set up with setStates()) are copied into it
+        int[] otherStates = casted.states;
+        if (casted.arena != arena) {
+            otherStates = new int[numStates];
+            for (int i = 0; i < numStates; ++i) {
+                otherStates[i] = arena.addHistory(casted.arena
+                        .toHistoryNode(casted.states[i]));
+            }
+        }
+
         for (int i = 0; i < numStates; ++i) {
             // For upper-bound types, keep the state with the higher time
             if (isUpper) {
-                states.set(i,
-                        preferMaxTime(states.get(i), casted.states.get(i)));
+                states[i] = preferMaxTime(states[i], otherStates[i]);
             }
 
             // For lower-bound types, keep the state with the lower time
             else {
-                states.set(i,
-                        preferMinTime(states.get(i), casted.states.get(i)));
+                states[i] = preferMinTime(states[i], otherStates[i]);
             }
 
             // Update the running time at this state
-            if (states.get(i) != null) {
-                tRunning.set(i, states.get(i).tDelta);
+            if (states[i] != NONE) {
+                tRunning[i] = tDelta(states[i]);
             }
         }
     }
 
+    /**
+     * Returns the index of the permanent reject state of the state machine
+     */
+    protected abstract int getFailState();
+
+    @Override
+    public HistoryNode<T> failpath() {
+        return arena.toHistoryNode(states[getFailState()]);
+    }
+
+    @Override
+    public boolean isFail() {
+        return states[getFailState()] != NONE;
+    }
+
     /**
      * Return a new, empty ConstrainedTracingSet object of the same subtype as
      * the current object
@@ -454,9 +450,11 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
         result.a = a;
         result.b = b;
         result.tBound = tBound;
+        result.bound = bound;
         result.numStates = numStates;
-        result.states = new ArrayList<ConstrainedHistoryNode<T>>(states);
-        result.tRunning = new ArrayList<ITime>(tRunning);
+        result.arena = arena;
+        result.states = states.clone();
+        result.tRunning = tRunning.clone();
         result.previous = previous;
         result.relation = relation;
 
@@ -470,13 +468,9 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
 
         // Interate over all of this tracing set's states
         for (int i = 0; i < numStates; ++i) {
-            ConstrainedHistoryNode<T> thisState = states.get(i);
-
             // Check if this state is inhabited
-            if (thisState != null) {
-                ConstrainedHistoryNode<T> otherState = other.states.get(i);
-
-                if (otherState == null) {
+            if (states[i] != NONE) {
+                if (other.states[i] == NONE) {
                     // This tracing set inhabits a state 'other' doesn't and
                     // therefore is NOT a subset of 'other'
                     return false;
@@ -496,11 +490,11 @@ public abstract class ConstrainedTracingSet<T extends INode<T>> extends
                 + ": ");
 
         // Print all current FSM states
-        for (int i = 0; i < states.size(); ++i) {
-            appendWNull(result, states.get(i));
+        for (int i = 0; i < numStates; ++i) {
+            appendWNull(result, arena.toHistoryNode(states[i]));
 
             // Print separator after all but the last state
-            if (i < states.size() - 1) {
+            if (i < numStates - 1) {
                 result.append(" | ");
             }
         }
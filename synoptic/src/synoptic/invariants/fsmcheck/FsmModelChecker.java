@@ -2,14 +2,14 @@ package synoptic.invariants.fsmcheck;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 
+import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
@@ -21,6 +21,9 @@ import synoptic.invariants.constraints.IThresholdConstraint;
 import synoptic.invariants.constraints.LowerBoundConstraint;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.model.DenseGraphView;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 
@@ -52,7 +55,7 @@ public class FsmModelChecker {
             boolean earlyExit) {
 
         // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
+        NodeWorkList<Node> workList = NodeWorkList.fifo(graph);
 
         // Maps a node to a set of states.
         Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
@@ -91,26 +94,154 @@ public class FsmModelChecker {
                 oldTargetStates.mergeWith(updatesToTargetStates);
                 if (earlyExit && oldTargetStates.isFail()
                         && target.isTerminal()) {
+                    workList.recordVisits("checker");
                     return states;
                 }
 
                 // If updatesToTargetStates is subset of targetStates, then NOT
                 // re-exploring the graph starting from the current node
                 // prevents infinitely traversing loops
-                if (!isSubset && !workList.contains(target)) {
+                if (!isSubset) {
                     workList.add(target);
                 }
             }
         }
 
+        workList.recordVisits("checker");
         return states;
     }
 
-    // Helper which invokes runChecker given an fsm state set, and process the
-    // resulting states into a summary failure-indicating BitSet.
+    /**
+     * A version of runChecker specialized to FsmStateSets. Instead of copying
+     * the states of a node for every outgoing edge, transitioning the copy, and
+     * merging it into the target's states, each edge is processed with
+     * FsmStateSet.transitionInto(), which does all three in place. Apart from
+     * the initial per-node state sets, the fixpoint computation therefore
+     * does not allocate. Since the fixpoint does not depend on the order in
+     * which nodes are processed, nodes are processed in reverse postorder,
+     * which reduces the number of re-visits.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     * @return The associations between node and stateset.
+     */
+    public static <T extends INode<T>> Map<T, FsmStateSet<T>> runFsmChecker(
+            FsmStateSet<T> initial, IGraph<T> graph) {
+
+        // The nodes that we should process.
+        NodeWorkList<T> workList = NodeWorkList.reversePostorder(graph);
+
+        // Maps a node to a set of states.
+        Map<T, FsmStateSet<T>> states = new LinkedHashMap<T, FsmStateSet<T>>();
+
+        // Populate the state map with initial states.
+        for (T node : graph.getNodes()) {
+            states.put(node, initial.copy());
+        }
+
+        // Add initial node to the worklist.
+        T node = graph.getDummyInitialNode();
+        workList.add(node);
+        states.get(node).setInitial(node);
+
+        // See runChecker: a target is re-explored only if merging the
+        // transitioned states changed the states at the target.
+        while (!workList.isEmpty()) {
+            node = workList.remove();
+            FsmStateSet<T> current = states.get(node);
+
+            for (T target : graph.getAdjacentNodes(node)) {
+                if (current.transitionInto(target, states.get(target))) {
+                    workList.add(target);
+                }
+            }
+        }
+
+        workList.recordVisits("fsmChecker");
+        return states;
+    }
+
+    /**
+     * A version of runFsmChecker that runs over the dense view of a partition
+     * graph. The states of a partition are stored at its id, successors are
+     * read from the view's int arrays, and the worklist is a bitmap over the
+     * partitions' reverse postorder ranks, so that the fixpoint computation
+     * performs no hash lookups.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param view
+     *            The dense view of the graph to analyze.
+     * @return The states of each partition, indexed by partition id. Unused
+     *         ids map to null.
+     */
+    public static List<FsmStateSet<Partition>> runDenseFsmChecker(
+            FsmStateSet<Partition> initial, DenseGraphView view) {
+        int idBound = view.getPartitionIdBound();
+        int[] order = view.getReversePostorder();
+        int[] rank = new int[idBound];
+        for (int r = 0; r < order.length; r++) {
+            rank[order[r]] = r;
+        }
+
+        List<FsmStateSet<Partition>> states = new ArrayList<FsmStateSet<Partition>>(
+                idBound);
+        for (int id = 0; id < idBound; id++) {
+            states.add(view.getPartition(id) == null ? null : initial.copy());
+        }
+
+        Partition initialNode = view.getDummyInitialNode();
+        int initialId = view.getPartitionId(initialNode);
+        states.get(initialId).setInitial(initialNode);
+
+        // The ranks of the partitions on the worklist.
+        BitSet workList = new BitSet(order.length);
+        workList.set(rank[initialId]);
+        BitSet visited = new BitSet(order.length);
+        long numVisits = 0;
+        long numRevisits = 0;
+
+        while (!workList.isEmpty()) {
+            int r = workList.nextSetBit(0);
+            workList.clear(r);
+            numVisits++;
+            if (visited.get(r)) {
+                numRevisits++;
+            } else {
+                visited.set(r);
+            }
+
+            FsmStateSet<Partition> current = states.get(order[r]);
+            for (int target : view.getSuccessorIds(order[r])) {
+                if (current.transitionInto(view.getPartition(target),
+                        states.get(target))) {
+                    workList.set(rank[target]);
+                }
+            }
+        }
+
+        PerformanceMetrics.get().record("fsmCheckerNodeVisits", numVisits);
+        PerformanceMetrics.get().record("fsmCheckerNodeRevisits", numRevisits);
+        return states;
+    }
+
+    // Helper which invokes runFsmChecker given an fsm state set, and process
+    // the resulting states into a summary failure-indicating BitSet.
     protected static <T extends INode<T>> BitSet whichFail(
             FsmStateSet<T> initial, IGraph<T> graph) {
-        Map<T, FsmStateSet<T>> states = runChecker(initial, graph, false);
+        if (initial.count == 0) {
+            // No machines, so nothing can fail.
+            return new BitSet();
+        }
+        if (graph instanceof PartitionGraph
+                && ((PartitionGraph) graph).hasDenseView()) {
+            @SuppressWarnings("unchecked")
+            FsmStateSet<Partition> pInitial = (FsmStateSet<Partition>) initial;
+            return whichFail(pInitial, ((PartitionGraph) graph).getDenseView());
+        }
+        Map<T, FsmStateSet<T>> states = runFsmChecker(initial, graph);
         BitSet result = new BitSet();
         for (Entry<T, FsmStateSet<T>> entry : states.entrySet()) {
             if (entry.getKey().isTerminal()) {
@@ -120,6 +251,21 @@ public class FsmModelChecker {
         return result;
     }
 
+    // Helper which invokes runDenseFsmChecker over the dense view of a
+    // partition graph, and processes the resulting states as above.
+    protected static BitSet whichFail(FsmStateSet<Partition> initial,
+            DenseGraphView view) {
+        List<FsmStateSet<Partition>> states = runDenseFsmChecker(initial, view);
+        BitSet result = new BitSet();
+        for (int id = 0; id < states.size(); id++) {
+            Partition partition = view.getPartition(id);
+            if (partition != null && partition.isTerminal()) {
+                result.or(states.get(id).whichFail());
+            }
+        }
+        return result;
+    }
+
     // Helper to append the elements of a list corresponding to 1s in a BitSet
     // to another list, which is accumulating results.
     protected static <E> void bitFilter(BitSet set, List<E> list,
@@ -146,6 +292,7 @@ public class FsmModelChecker {
         List<BinaryInvariant> alwaysFollowed = new ArrayList<BinaryInvariant>();
         List<BinaryInvariant> alwaysPrecedes = new ArrayList<BinaryInvariant>();
         List<BinaryInvariant> neverFollowed = new ArrayList<BinaryInvariant>();
+        List<BinaryInvariant> interruptedBy = new ArrayList<BinaryInvariant>();
         for (ITemporalInvariant inv : invariants) {
             @SuppressWarnings("unchecked")
             Class<Object> invClass = (Class) inv.getClass();
@@ -155,17 +302,62 @@ public class FsmModelChecker {
                 alwaysPrecedes.add((BinaryInvariant) inv);
             } else if (invClass.equals(NeverFollowedInvariant.class)) {
                 neverFollowed.add((BinaryInvariant) inv);
+            } else if (invClass.equals(InterruptedByInvariant.class)) {
+                interruptedBy.add((BinaryInvariant) inv);
             }
         }
 
         BitSet afs = whichFail(new AFbyInvFsms<T>(alwaysFollowed), graph);
         BitSet aps = whichFail(new APInvFsms<T>(alwaysPrecedes), graph);
         BitSet nfs = whichFail(new NFbyInvFsms<T>(neverFollowed), graph);
+        BitSet ibs = whichFail(new IntrByInvFsms<T>(interruptedBy), graph);
 
         List<BinaryInvariant> results = new ArrayList<BinaryInvariant>();
         bitFilter(afs, alwaysFollowed, results);
         bitFilter(aps, alwaysPrecedes, results);
         bitFilter(nfs, neverFollowed, results);
+        bitFilter(ibs, interruptedBy, results);
+        return results;
+    }
+
+    /**
+     * Whether runBitSetChecker can check inv. This is the case for the
+     * untimed AFby, AP, NFby, and IntrBy invariants. Constrained invariants
+     * depend on the time deltas along a path, which cannot be tracked by the
+     * bit-parallel state machines.
+     */
+    public static boolean isBitSetCheckable(ITemporalInvariant inv) {
+        Class<?> invClass = inv.getClass();
+        return invClass.equals(AlwaysFollowedInvariant.class)
+                || invClass.equals(AlwaysPrecedesInvariant.class)
+                || invClass.equals(NeverFollowedInvariant.class)
+                || invClass.equals(InterruptedByInvariant.class);
+    }
+
+    /**
+     * Uses a single pass of the BitSet checker to rule out invariants that are
+     * satisfied in graph. Returns, in their original order, the invariants
+     * that the BitSet checker found to be violated, along with all invariants
+     * that it cannot check (see isBitSetCheckable). All invariants that are
+     * not returned are satisfied in graph.
+     */
+    public static <T extends INode<T>> List<ITemporalInvariant> filterPossiblyViolated(
+            Iterable<ITemporalInvariant> invariants, IGraph<T> graph) {
+        List<BinaryInvariant> checkable = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : invariants) {
+            if (isBitSetCheckable(inv)) {
+                checkable.add((BinaryInvariant) inv);
+            }
+        }
+        Set<BinaryInvariant> violated = new HashSet<BinaryInvariant>(
+                runBitSetChecker(checkable, graph));
+
+        List<ITemporalInvariant> results = new ArrayList<ITemporalInvariant>();
+        for (ITemporalInvariant inv : invariants) {
+            if (!isBitSetCheckable(inv) || violated.contains(inv)) {
+                results.add(inv);
+            }
+        }
         return results;
     }
 
@@ -235,10 +427,16 @@ public class FsmModelChecker {
         }
 
         // Return the shortest path, ending on a final node, which causes the
-        // invariant to fail.
+        // invariant to fail. Of the shortest such paths, the first in
+        // HistoryNode.compareCanonically() order is returned. The checker runs
+        // to a fixpoint, rather than exiting at the first failing path it
+        // finds, so that the returned path does not depend on the order in
+        // which the graph is explored. In particular, a counter-example that
+        // survives a refinement round unchanged is the one that checking the
+        // refined graph returns.
         HistoryNode<Node> shortestPath = null;
         Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
+                graph, false).entrySet();
         for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
             TracingStateSet<Node> stateSet = e.getValue();
             Node node = e.getKey();
@@ -248,11 +446,9 @@ public class FsmModelChecker {
             // 1. We must have ended up at the terminal node.
             // 2. Invariant is not satisfied, so we have a history path for it.
             // 3. If we had counter-example path in the past, that path is
-            // longer (because we want the shortest).
-            if (node.isTerminal()
-                    && path != null
-                    && (shortestPath == null || shortestPath.count > path.count)) {
-                shortestPath = path;
+            // longer, or as long and after this one in canonical order.
+            if (node.isTerminal() && path != null) {
+                shortestPath = stateSet.preferShorter(path, shortestPath);
             }
         }
 
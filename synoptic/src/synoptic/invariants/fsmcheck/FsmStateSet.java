@@ -1,22 +1,21 @@
 package synoptic.invariants.fsmcheck;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 
 import synoptic.invariants.BinaryInvariant;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.INode;
-import synoptic.util.InternalSynopticException;
 
 /**
  * <p>
  * Abstract class to provide functionality for simulating nondeterministic
- * finite state machines, utilizing BitSets as a method for evaluating the
+ * finite state machines, utilizing bit vectors as a method for evaluating the
  * transitions of many instances in parallel.
  * </p>
  * <p>
@@ -26,15 +25,17 @@ import synoptic.util.InternalSynopticException;
  * initial node).
  * </p>
  * <p>
- * If you imagine the BitSets as creating a matrix, where each row is a set,
- * then each row corresponds to a state of the machine, and each column
+ * If you imagine the bit vectors as creating a matrix, where each row is a
+ * set, then each row corresponds to a state of the machine, and each column
  * corresponds to an individual state machine. 1 in this matrix indicates that
- * that particular state is active in that particular machine.
+ * that particular state is active in that particular machine. Each row is
+ * packed into an array of 64-bit words, so that a transition updates 64
+ * machines with a handful of word operations.
  * </p>
  * <p>
  * The input which drives the transition of the state machines consists of a
- * list of BitSets, each corresponding to a logical input of the machine. With
- * all of the current implementations of this interface (AlwaysFollowedSet,
+ * list of bit vectors, each corresponding to a logical input of the machine.
+ * With all of the current implementations of this interface (AlwaysFollowedSet,
  * AlwaysPrecedesSet, NeverFollowedSet), there are two inputs, as these are
  * binary synoptic.invariants. In other words, each individual machine being
  * simulated is watching for just two events. 1 in the nth bit of the first
@@ -48,6 +49,13 @@ import synoptic.util.InternalSynopticException;
  * A is a singleton in the traces. Furthermore, if all input bits are 0, then
  * the corresponding machines should not change state.
  * </p>
+ * <p>
+ * Subclasses describe their machines one word at a time, through
+ * initialWord() and transitionWord(), and act as factories for their own
+ * copies. Transitions are applied in place, and transitionInto() fuses a
+ * transition with a merge into another state set, so that the model checker
+ * does not allocate anything while propagating states along edges.
+ * </p>
  * 
  * @see AFbyInvFsms
  * @see APInvFsms
@@ -55,9 +63,18 @@ import synoptic.util.InternalSynopticException;
  */
 public abstract class FsmStateSet<T extends INode<T>> implements
         IStateSet<T, FsmStateSet<T>> {
-    protected List<BitSet> sets;
+    /**
+     * The state vectors: sets[s][w] holds the bits of machines 64*w through
+     * 64*w+63 for state s.
+     */
+    protected long[][] sets;
     protected int count;
 
+    /**
+     * The number of words in each state vector.
+     */
+    protected final int numWords;
+
     /**
      * A bitset encoding of invariants between event types. This list has
      * exactly two elements (because we only consider binary invariants). Its
@@ -82,16 +99,33 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     protected List<Map<EventType, BitSet>> invariantsMap;
 
     /**
-     * Initializes the bitsets, and assigns the input mapping, based on the
-     * passed synoptic.invariants. NOTE: this assumes that all of the passed
+     * The invariantsMap, with each BitSet packed into numWords words. Shared
+     * (and never modified) by all copies of a state set.
+     */
+    private List<Map<EventType, long[]>> inputWordsMap;
+
+    /**
+     * The input words for event types that do not appear in any invariant.
+     */
+    private long[] zeroWords;
+
+    /**
+     * Scratch space holding one word of every state vector during a
+     * transition. Each state set has its own, so that transitions do not
+     * allocate.
+     */
+    private final long[] scratch;
+
+    /**
+     * Initializes the state vectors, and assigns the input mapping, based on
+     * the passed synoptic.invariants. NOTE: this assumes that all of the passed
      * synoptic.invariants are of the appropriate type.
      */
     protected FsmStateSet(List<BinaryInvariant> invariants, int numStates) {
         this.count = invariants.size();
-        sets = new ArrayList<BitSet>(numStates);
-        for (int i = 0; i < numStates; i++) {
-            sets.add(new BitSet());
-        }
+        this.numWords = (count + 63) / 64;
+        sets = new long[numStates][numWords];
+        scratch = new long[numStates];
 
         invariantsMap = new ArrayList<Map<EventType, BitSet>>(2);
         Map<EventType, BitSet> amap = new LinkedHashMap<EventType, BitSet>();
@@ -114,8 +148,55 @@ public abstract class FsmStateSet<T extends INode<T>> implements
             aset.set(i);
             bset.set(i);
         }
+
+        inputWordsMap = new ArrayList<Map<EventType, long[]>>(2);
+        for (Map<EventType, BitSet> map : invariantsMap) {
+            Map<EventType, long[]> wordsMap = new LinkedHashMap<EventType, long[]>();
+            for (Entry<EventType, BitSet> entry : map.entrySet()) {
+                wordsMap.put(entry.getKey(),
+                        Arrays.copyOf(entry.getValue().toLongArray(), numWords));
+            }
+            inputWordsMap.add(wordsMap);
+        }
+        zeroWords = new long[numWords];
+    }
+
+    /**
+     * Creates a copy of other, with its own state vectors. The input mapping
+     * is shared with other.
+     */
+    protected FsmStateSet(FsmStateSet<T> other) {
+        this.count = other.count;
+        this.numWords = other.numWords;
+        sets = new long[other.sets.length][];
+        for (int i = 0; i < sets.length; i++) {
+            sets[i] = other.sets[i].clone();
+        }
+        scratch = new long[sets.length];
+        invariantsMap = other.invariantsMap;
+        inputWordsMap = other.inputWordsMap;
+        zeroWords = other.zeroWords;
     }
 
+    /**
+     * Computes the initial value of word w of every state vector, given the
+     * corresponding input words. states holds the current value of word w of
+     * every state vector, and is updated in place.
+     * 
+     * @param mask
+     *            1s at the positions of machines that exist in word w (only the
+     *            last word is partially filled)
+     */
+    protected abstract void initialWord(long[] states, long isA, long isB,
+            long mask);
+
+    /**
+     * Transitions word w of every state vector, given the corresponding input
+     * words. states holds the current value of word w of every state vector,
+     * and is updated in place.
+     */
+    protected abstract void transitionWord(long[] states, long isA, long isB);
+
     /**
      * At final states (partitions which contain ending nodes of some sample
      * traces), this indicates which of the synoptic.invariants maintained by
@@ -130,6 +211,69 @@ public abstract class FsmStateSet<T extends INode<T>> implements
      */
     public abstract BitSet whichPermanentFail();
 
+    /**
+     * Returns a copy of this state set, of the same concrete type.
+     */
+    @Override
+    public abstract FsmStateSet<T> copy();
+
+    @Override
+    public void setInitial(T input) {
+        long[] isA = getInputWords(0, input);
+        long[] isB = getInputWords(1, input);
+        for (int w = 0; w < numWords; w++) {
+            loadWord(w);
+            initialWord(scratch, isA[w], isB[w], wordMask(w));
+            storeWord(w);
+        }
+    }
+
+    @Override
+    public void transition(T input) {
+        long[] isA = getInputWords(0, input);
+        long[] isB = getInputWords(1, input);
+        for (int w = 0; w < numWords; w++) {
+            loadWord(w);
+            transitionWord(scratch, isA[w], isB[w]);
+            storeWord(w);
+        }
+    }
+
+    /**
+     * Transitions a copy of this stateset with input, and merges the result
+     * into target, without modifying this stateset or allocating a copy. This
+     * is equivalent to
+     * 
+     * <pre>
+     * FsmStateSet&lt;T&gt; updates = copy();
+     * updates.transition(input);
+     * boolean changed = !updates.isSubset(target);
+     * target.mergeWith(updates);
+     * </pre>
+     * 
+     * @return true if target changed as a result of the merge
+     */
+    public boolean transitionInto(T input, FsmStateSet<T> target) {
+        assert target.numWords == numWords
+                && target.sets.length == sets.length;
+        long[] isA = getInputWords(0, input);
+        long[] isB = getInputWords(1, input);
+        boolean changed = false;
+        for (int w = 0; w < numWords; w++) {
+            loadWord(w);
+            transitionWord(scratch, isA[w], isB[w]);
+            for (int s = 0; s < scratch.length; s++) {
+                long old = target.sets[s][w];
+                long merged = old | scratch[s];
+                if (merged != old) {
+                    target.sets[s][w] = merged;
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
     /**
      * Merges this stateset with another, by ORing all of the state vectors.
      * Exceptions are thrown if - statesets have different sizes - statesets
@@ -139,9 +283,13 @@ public abstract class FsmStateSet<T extends INode<T>> implements
      */
     @Override
     public void mergeWith(FsmStateSet<T> other) {
-        assert other.invariantsMap == invariantsMap;
-        for (int i = 0; i < sets.size(); i++) {
-            sets.get(i).or(other.sets.get(i));
+        assert other.numWords == numWords && other.sets.length == sets.length;
+        for (int s = 0; s < sets.length; s++) {
+            long[] thisSet = sets[s];
+            long[] otherSet = other.sets[s];
+            for (int w = 0; w < numWords; w++) {
+                thisSet[w] |= otherSet[w];
+            }
         }
     }
 
@@ -161,59 +309,19 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         if (other == null) {
             return false;
         }
-        assert other.invariantsMap == invariantsMap;
-        for (int j = 0; j < sets.size(); j++) {
-            BitSet thisSet = sets.get(j);
-            BitSet s = (BitSet) thisSet.clone();
-            s.and(other.sets.get(j));
-            s.xor(thisSet); // (intersection != this) == 0 for subset
-            if (!s.isEmpty()) {
-                return false;
+        assert other.numWords == numWords && other.sets.length == sets.length;
+        for (int s = 0; s < sets.length; s++) {
+            long[] thisSet = sets[s];
+            long[] otherSet = other.sets[s];
+            for (int w = 0; w < numWords; w++) {
+                if ((thisSet[w] & ~otherSet[w]) != 0) {
+                    return false;
+                }
             }
         }
         return true;
     }
 
-    /**
-     * Clones this set of states, using reflection to ascertain the actual type
-     * to construct.
-     * 
-     * @see java.lang.Object#clone()
-     */
-    @Override
-    @SuppressWarnings("unchecked")
-    public FsmStateSet<T> copy() {
-        FsmStateSet<T> result;
-
-        Constructor<?> cons = null;
-        for (Constructor<?> c : this.getClass().getConstructors()) {
-            Class<?>[] params = c.getParameterTypes();
-            if (params.length == 1 && params[0].toString().equals("int")) {
-                cons = c;
-            }
-        }
-        try {
-            result = (FsmStateSet<T>) cons.newInstance(sets.size());
-        } catch (IllegalArgumentException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InstantiationException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (IllegalAccessException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InvocationTargetException e) {
-            throw InternalSynopticException.wrap(e);
-        }
-
-        result.count = count;
-        ArrayList<BitSet> newSets = new ArrayList<BitSet>();
-        for (int i = 0; i < sets.size(); i++) {
-            newSets.add((BitSet) sets.get(i).clone());
-        }
-        result.sets = newSets;
-        result.invariantsMap = invariantsMap;
-        return result;
-    }
-
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object otherObj) {
@@ -243,57 +351,70 @@ public abstract class FsmStateSet<T extends INode<T>> implements
             return false;
         }
 
-        if (this.sets == null) {
-            if (other.sets != null) {
-                return false;
-            }
-        } else {
-            if (!this.sets.equals(other.sets)) {
+        return Arrays.deepEquals(this.sets, other.sets);
+    }
+
+    /**
+     * @return true if no machine inhabits the given state
+     */
+    protected boolean isEmpty(int state) {
+        for (long word : sets[state]) {
+            if (word != 0) {
                 return false;
             }
         }
         return true;
     }
 
-    public BitSet getInputInvariantsDependencies(int mappingIndex, T input) {
-        BitSet result = invariantsMap.get(mappingIndex).get(input.getEType());
-        if (result == null) {
-            return new BitSet();
-        }
-        return result;
+    /**
+     * @return the machines that inhabit the given state, as a new BitSet
+     */
+    protected BitSet getState(int state) {
+        return BitSet.valueOf(sets[state]);
     }
 
-    public BitSet getInputCopy(int ix, T input) {
-        EventType label = input.getEType();
-        BitSet result = invariantsMap.get(ix).get(label);
+    /**
+     * Returns the words of input vector ix for the label of input. The
+     * returned array is shared and must not be modified.
+     */
+    private long[] getInputWords(int ix, T input) {
+        long[] result = inputWordsMap.get(ix).get(input.getEType());
         if (result == null) {
-            return new BitSet();
+            return zeroWords;
         }
-        return (BitSet) result.clone();
+        return result;
     }
 
     /**
-     * Helper to perform nor, for (neither = input[0] nor input[1]) A B result 0
-     * 0 1 0 1 0 1 0 0 1 1 0
+     * Returns a mask of the machines that exist in word w.
      */
-    public static BitSet nor(BitSet a, BitSet b, int count) {
-        BitSet result = (BitSet) a.clone();
-        result.or(b);
-        result.flip(0, count);
-        return result;
+    private long wordMask(int w) {
+        int bits = count - 64 * w;
+        if (bits >= 64) {
+            return -1L;
+        }
+        return (1L << bits) - 1;
     }
 
-    /*
-     * Helpers for dealing with mapping from some event representation to
-     * BitSets, which indicate which boolean inputs to provide to each of the
-     * machines which are being simulated.
-     */
+    private void loadWord(int w) {
+        for (int s = 0; s < scratch.length; s++) {
+            scratch[s] = sets[s][w];
+        }
+    }
 
-    public static final BitSet zero = new BitSet();
+    private void storeWord(int w) {
+        for (int s = 0; s < scratch.length; s++) {
+            sets[s][w] = scratch[s];
+        }
+    }
 
     @Override
     public String toString() {
+        List<BitSet> states = new ArrayList<BitSet>(sets.length);
+        for (int s = 0; s < sets.length; s++) {
+            states.add(getState(s));
+        }
         return "Invariants: " + invariantsMap.toString() + ", states: "
-                + sets.toString();
+                + states.toString();
     }
 }
@@ -5,6 +5,8 @@ import java.util.Collections;
 
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
@@ -47,6 +49,56 @@ public class HistoryNode<T extends INode<T>> implements
         return this.count - other.count;
     }
 
+    /**
+     * Compares this path to another path of the same length, node by node from
+     * the last node backwards, by the log positions of the nodes (see
+     * compareNodes()). Unlike the iteration order of a graph, this order does
+     * not depend on how the graph was built: if a path does not pass through
+     * any partition that is split, then the paths that the split creates are
+     * ordered after it exactly if the paths that they replace were.
+     */
+    public int compareCanonically(HistoryNode<T> other) {
+        HistoryNode<T> cur = this;
+        HistoryNode<T> otherCur = other;
+        // Paths that share a node share the whole prefix before it.
+        while (cur != otherCur && cur != null && otherCur != null) {
+            int nodeCmp = compareNodes(cur.node, otherCur.node);
+            if (nodeCmp != 0) {
+                return nodeCmp;
+            }
+            cur = cur.previous;
+            otherCur = otherCur.previous;
+        }
+        return 0;
+    }
+
+    /**
+     * Orders event nodes by their positions in the log, and partitions by the
+     * positions of their first event nodes. Nodes at the same position are
+     * ordered by event type.
+     */
+    private static <T extends INode<T>> int compareNodes(T node, T other) {
+        if (node == other) {
+            return 0;
+        }
+        EventNode event = null;
+        EventNode otherEvent = null;
+        if (node instanceof Partition) {
+            event = ((Partition) node).getFirstEventNode();
+            otherEvent = ((Partition) other).getFirstEventNode();
+        } else if (node instanceof EventNode) {
+            event = (EventNode) node;
+            otherEvent = (EventNode) other;
+        }
+        if (event != null && otherEvent != null) {
+            int posCmp = event.compareLogPosition(otherEvent);
+            if (posCmp != 0) {
+                return posCmp;
+            }
+        }
+        return node.getEType().compareTo(other.getEType());
+    }
+
     /**
      * Converts this chain into a RelationPath list.
      */
@@ -73,6 +125,7 @@ public class HistoryNode<T extends INode<T>> implements
         Collections.reverse(path);
 
         CExamplePath<T> rpath = new CExamplePath<T>(inv, inv.shorten(path));
+        rpath.checkedPath = path;
 
         if (rpath.path == null) {
             throw new InternalSynopticException(
@@ -0,0 +1,79 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.BitSet;
+import java.util.List;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.model.interfaces.INode;
+
+/**
+ * FSM for a set of invariants of the form "A interrupted by B". The FSM counts
+ * the number of As seen since the last B, and enters a permanent failure state
+ * when a second A is encountered before a B. NOTE: ensure this documentation
+ * stays consistent with IntrByTracingSet.
+ * 
+ * @see IntrByTracingSet
+ * @see FsmStateSet
+ */
+public class IntrByInvFsms<T extends INode<T>> extends FsmStateSet<T> {
+    /**
+     * <pre>
+     * State 1: Accept state (no A seen since the last B)
+     * State 2: Accept state (one A seen since the last B)
+     * State 3: Permanent fail state (two As seen without a B in between)
+     * 
+     * (non-a/b preserves state) 1 -a-> 2, 1 -b-> 1, 2 -a-> 3, 2 -b-> 1
+     * </pre>
+     */
+
+    public IntrByInvFsms(List<BinaryInvariant> invs) {
+        super(invs, 3);
+    }
+
+    protected IntrByInvFsms(IntrByInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public IntrByInvFsms<T> copy() {
+        return new IntrByInvFsms<T>(this);
+    }
+
+    @Override
+    public boolean isFail() {
+        return !isEmpty(2);
+    }
+
+    @Override
+    public BitSet whichFail() {
+        return getState(2);
+    }
+
+    @Override
+    public BitSet whichPermanentFail() {
+        return getState(2);
+    }
+
+    @Override
+    protected void initialWord(long[] states, long isA, long isB, long mask) {
+        states[1] = isA;
+        states[0] = ~isA & mask;
+    }
+
+    @Override
+    protected void transitionWord(long[] states, long isA, long isB) {
+        /*
+         * isA and isB are never simultaneously 1, since "A IntrBy A" cannot
+         * hold. On A: s3 = s3 | (s2 & isA), s2 = (s2 & !isA) | (s1 & isA), s1 =
+         * s1 & !isA. On B: s1 = s1 | (s2 & isB), s2 = s2 & !isB.
+         */
+        long s1 = states[0];
+        long s2 = states[1];
+        states[2] |= s2 & isA;
+        s2 = (s2 & ~isA) | (s1 & isA);
+        s1 &= ~isA;
+
+        states[0] = s1 | (s2 & isB);
+        states[1] = s2 & ~isB;
+    }
+}
@@ -81,22 +81,9 @@ public class IntrByTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         IntrByTracingSet<T> casted = (IntrByTracingSet<T>) other;
-        if (casted.aNotSeen == null) {
-            if (aNotSeen != null) {
-                return false;
-            }
-        }
-        if (casted.aSeenOnce == null) {
-            if (aSeenOnce != null) {
-                return false;
-            }
-        }
-        if (casted.aSeenMoreThanOnce == null) {
-            if (aSeenMoreThanOnce != null) {
-                return false;
-            }
-        }
-        return true;
+        return isCovered(aNotSeen, casted.aNotSeen)
+                && isCovered(aSeenOnce, casted.aSeenOnce)
+                && isCovered(aSeenMoreThanOnce, casted.aSeenMoreThanOnce);
     }
 
     @Override
@@ -1,23 +1,18 @@
 package synoptic.invariants.fsmcheck;
 
-import java.util.List;
-
 import synoptic.invariants.BinaryInvariant;
-import synoptic.model.EventNode;
 import synoptic.model.interfaces.INode;
-import synoptic.model.interfaces.ITransition;
-import synoptic.util.time.ITime;
 
 /**
  * NFA state set for the IntrByUpper constrained invariant which keeps the
  * highest timed path justifying a given state being inhabited. <br />
  * <br />
- * State0 = states.get(0): A not seen <br />
- * State1 = states.get(1): First A seen (very first time only) <br />
- * State2 = states.get(2): First A seen, or second A seen after B within time
+ * State0 = states[0]: A not seen <br />
+ * State1 = states[1]: First A seen (very first time only) <br />
+ * State2 = states[2]: First A seen, or second A seen after B within time
  * bound (potentially a new "first A") <br />
- * State3 = states.get(3): B seen after A <br />
- * State4 = states.get(4): Two A's seen without B, or A then B then A seen out
+ * State3 = states[3]: B seen after A <br />
+ * State4 = states[4]: Two A's seen without B, or A then B then A seen out
  * of time bound (permanent reject state)
  * 
  * @param <T>
@@ -38,109 +33,101 @@ public class IntrByUpperTracingSet<T extends INode<T>> extends
     }
 
     @Override
-    protected void transition(T input,
-            List<ITransition<EventNode>> transitions, boolean isA, boolean isB,
-            List<Boolean> outOfBound, List<ConstrainedHistoryNode<T>> statesOld) {
+    protected void transition(T input, long tMax, boolean isA,
+            boolean isB, boolean[] outOfBound, int[] statesOld) {
 
         // State0 -> State0
-        if (statesOld.get(0) != null && !isA) {
-            states.set(0, statesOld.get(0));
+        if (statesOld[0] != NONE && !isA) {
+            states[0] = statesOld[0];
         }
 
         // State0 -> State1
-        if (statesOld.get(0) != null && isA) {
-            states.set(1, statesOld.get(0));
+        if (statesOld[0] != NONE && isA) {
+            states[1] = statesOld[0];
         }
 
         // State1 -> State2
-        if (statesOld.get(1) != null && !isA && !isB) {
-            states.set(2, statesOld.get(1));
+        if (statesOld[1] != NONE && !isA && !isB) {
+            states[2] = statesOld[1];
         }
 
         // State2 -> State2
-        if (statesOld.get(2) != null && !isA && !isB) {
-            states.set(2, preferMaxTime(statesOld.get(2), states.get(2)));
+        if (statesOld[2] != NONE && !isA && !isB) {
+            states[2] = preferMaxTime(statesOld[2], states[2]);
         }
 
         // State3 -> State2
-        if (statesOld.get(3) != null && isA && !outOfBound.get(3)) {
-            states.set(2, preferMaxTime(statesOld.get(3), states.get(2)));
+        if (statesOld[3] != NONE && isA && !outOfBound[3]) {
+            states[2] = preferMaxTime(statesOld[3], states[2]);
         }
 
         // State1 -> State3
-        if (statesOld.get(1) != null && isB) {
-            states.set(3, statesOld.get(1));
+        if (statesOld[1] != NONE && isB) {
+            states[3] = statesOld[1];
         }
 
         // State2 -> State3
-        if (statesOld.get(2) != null && isB) {
-            states.set(3, preferMaxTime(statesOld.get(2), states.get(3)));
+        if (statesOld[2] != NONE && isB) {
+            states[3] = preferMaxTime(statesOld[2], states[3]);
         }
 
         // State3 -> State3
-        if (statesOld.get(3) != null && !isA) {
-            states.set(3, preferMaxTime(statesOld.get(3), states.get(3)));
+        if (statesOld[3] != NONE && !isA) {
+            states[3] = preferMaxTime(statesOld[3], states[3]);
         }
 
         // State1 -> State4
-        if (statesOld.get(1) != null && isA) {
-            states.set(4, statesOld.get(1));
+        if (statesOld[1] != NONE && isA) {
+            states[4] = statesOld[1];
         }
 
         // State2 -> State4
-        if (statesOld.get(2) != null && isA) {
-            states.set(4, preferMaxTime(statesOld.get(2), states.get(4)));
+        if (statesOld[2] != NONE && isA) {
+            states[4] = preferMaxTime(statesOld[2], states[4]);
         }
 
         // State3 -> State4
-        if (statesOld.get(3) != null && isA && outOfBound.get(3)) {
-            states.set(4, preferMaxTime(statesOld.get(3), states.get(4)));
+        if (statesOld[3] != NONE && isA && outOfBound[3]) {
+            states[4] = preferMaxTime(statesOld[3], states[4]);
         }
 
         // State4 -> State4
-        if (statesOld.get(4) != null) {
-            states.set(4, preferMaxTime(statesOld.get(4), states.get(4)));
-        }
-
-        // Retrieve the previously-found max time delta
-        ITime tMax = transitions.get(0).getTimeDelta();
-        if (tMax == null) {
-            tMax = tBound.getZeroTime();
+        if (statesOld[4] != NONE) {
+            states[4] = preferMaxTime(statesOld[4], states[4]);
         }
 
         // Update the running time deltas of any states which require it. State0
         // disregards time. State1 sets time to 0, which is the default value.
         // State2,3,4 require updates.
-        if (states.get(2) != null) {
-            tRunning.set(2, tMax.incrBy(states.get(2).tDelta));
+        if (states[2] != NONE) {
+            tRunning[2] = arena.timeType.incrBy(tMax, tDelta(states[2]));
         }
-        if (states.get(3) != null) {
-            tRunning.set(3, tMax.incrBy(states.get(3).tDelta));
+        if (states[3] != NONE) {
+            tRunning[3] = arena.timeType.incrBy(tMax, tDelta(states[3]));
         }
-        if (states.get(4) != null) {
-            tRunning.set(4, tMax.incrBy(states.get(4).tDelta));
+        if (states[4] != NONE) {
+            tRunning[4] = arena.timeType.incrBy(tMax, tDelta(states[4]));
         }
 
         // Extend histories for each state
-        for (int i = 0; i < states.size(); ++i) {
-            states.set(i,
-                    extend(input, states.get(i), transitions, tRunning.get(i)));
+        for (int i = 0; i < numStates; ++i) {
+            states[i] = extend(input, states[i], tRunning[i]);
         }
 
         // The violation subpath started if we just reached State1
-        if (states.get(1) != null && statesOld.get(1) == null) {
-            states.get(1).startViolationHere();
+        if (states[1] != NONE && statesOld[1] == NONE) {
+            startViolationHere(states[1]);
         }
 
         // The violation subpath ended if we just reached State4
-        if (states.get(4) != null && statesOld.get(4) == null) {
-            states.get(4).endViolationHere();
+        if (states[4] != NONE && statesOld[4] == NONE) {
+            endViolationHere(states[4]);
         }
     }
 
     @Override
-    public HistoryNode<T> failpath() {
-        return states.get(4);
+    protected int getFailState() {
+        return 4;
     }
 
     @Override
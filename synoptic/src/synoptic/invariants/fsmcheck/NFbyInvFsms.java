@@ -30,55 +30,47 @@ public class NFbyInvFsms<T extends INode<T>> extends FsmStateSet<T> {
         super(invs, 3);
     }
 
+    protected NFbyInvFsms(NFbyInvFsms<T> other) {
+        super(other);
+    }
+
+    @Override
+    public NFbyInvFsms<T> copy() {
+        return new NFbyInvFsms<T>(this);
+    }
+
     @Override
     public boolean isFail() {
-        return !sets.get(2).isEmpty();
+        return !isEmpty(2);
     }
 
     @Override
     public BitSet whichFail() {
-        return (BitSet) sets.get(2).clone();
+        return getState(2);
     }
 
     @Override
     public BitSet whichPermanentFail() {
-        return (BitSet) sets.get(2).clone();
+        return getState(2);
     }
 
     @Override
-    public void setInitial(T input) {
-        BitSet isA = getInputCopy(0, input);
-        sets.set(1, (BitSet) isA.clone());
-        isA.flip(0, count);
-        sets.set(0, isA);
+    protected void initialWord(long[] states, long isA, long isB, long mask) {
+        states[1] = isA;
+        states[0] = ~isA & mask;
     }
 
     @Override
-    public void transition(T input) {
+    protected void transitionWord(long[] states, long isA, long isB) {
         /*
          * NOTE: unlike the other synoptic.invariants, isA and isB can be
          * simultaneously 1 (simultaneous assignment - order not significant) s1
          * = s1 & !isA s2 = (s1 & isA) | (s2 & !isB) s3 = s3 | (s2 & isB)
          */
-
-        // isA is cloned so that it can be mutated.
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
-        BitSet s1 = sets.get(0);
-        BitSet s2 = sets.get(1);
-        BitSet s3 = sets.get(2);
-
-        // var = expression in terms of original values
-
-        BitSet t = (BitSet) s2.clone();
-        t.and(isB); // t = s2 & isB
-        s3.or(t); // s3 = s3 | (s2 & isB)
-
-        t = (BitSet) s1.clone();
-        t.and(isA); // t = s1 & isA
-        s2.andNot(isB); // s2 = s2 & !isB
-        s2.or(t); // s2 = (s1 & isA) | (s2 & !isB)
-
-        s1.andNot(isA); // s1 = s1 & !isA
+        long s1 = states[0];
+        long s2 = states[1];
+        states[2] |= s2 & isB;
+        states[1] = (s1 & isA) | (s2 & ~isB);
+        states[0] = s1 & ~isA;
     }
 }
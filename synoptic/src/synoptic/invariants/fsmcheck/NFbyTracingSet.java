@@ -89,22 +89,9 @@ public class NFbyTracingSet<T extends INode<T>> extends TracingStateSet<T> {
     @Override
     public boolean isSubset(TracingStateSet<T> other) {
         NFbyTracingSet<T> casted = (NFbyTracingSet<T>) other;
-        if (casted.aNotSeen == null) {
-            if (aNotSeen != null) {
-                return false;
-            }
-        }
-        if (casted.aSeen == null) {
-            if (aSeen != null) {
-                return false;
-            }
-        }
-        if (casted.bSeenAfter == null) {
-            if (bSeenAfter != null) {
-                return false;
-            }
-        }
-        return true;
+        return isCovered(aNotSeen, casted.aNotSeen)
+                && isCovered(aSeen, casted.aSeen)
+                && isCovered(bSeenAfter, casted.bSeenAfter);
     }
 
     @Override
@@ -0,0 +1,179 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * The worklist of nodes used by the model checkers' fixpoint computations.
+ * Every node of the graph is assigned a dense integer id up front, and an
+ * in-queue bitmap indexed by these ids makes enqueueing a node that is already
+ * on the worklist a constant time no-op.
+ * <p>
+ * Nodes are removed either in FIFO order, or in priority order, in which the
+ * pending node with the smallest id is removed first. With ids assigned in
+ * reverse postorder from the initial node, the priority order visits a node
+ * only after its predecessors (ignoring back edges), which reduces the number
+ * of times a node has to be re-visited before the fixpoint is reached.
+ * </p>
+ * <p>
+ * The worklist also counts the number of visits (removals) and re-visits
+ * (removals of a node that was removed before), which are reported to
+ * PerformanceMetrics by recordVisits().
+ * </p>
+ * 
+ * @param <Node>
+ *            the type of nodes in the graph
+ */
+public class NodeWorkList<Node extends INode<Node>> {
+    private final Map<Node, Integer> ids;
+    private final List<Node> nodes;
+    private final boolean priorityOrder;
+
+    /**
+     * The ids of the nodes that are currently on the worklist.
+     */
+    private final BitSet inQueue;
+
+    /**
+     * In FIFO order, the circular queue of node ids. Since a node is on the
+     * worklist at most once, it never holds more than nodes.size() ids.
+     */
+    private final int[] queue;
+    private int head = 0;
+    private int size = 0;
+
+    private final BitSet visited;
+    private long numVisits = 0;
+    private long numRevisits = 0;
+
+    private NodeWorkList(List<Node> nodes, boolean priorityOrder) {
+        this.nodes = nodes;
+        this.priorityOrder = priorityOrder;
+        ids = new LinkedHashMap<Node, Integer>();
+        for (int i = 0; i < nodes.size(); i++) {
+            ids.put(nodes.get(i), i);
+        }
+        inQueue = new BitSet(nodes.size());
+        visited = new BitSet(nodes.size());
+        queue = priorityOrder ? null : new int[nodes.size()];
+    }
+
+    /**
+     * Creates a FIFO worklist over the nodes of graph.
+     */
+    public static <Node extends INode<Node>> NodeWorkList<Node> fifo(
+            IGraph<Node> graph) {
+        return new NodeWorkList<Node>(new ArrayList<Node>(graph.getNodes()),
+                false);
+    }
+
+    /**
+     * Creates a worklist over the nodes of graph that removes nodes in reverse
+     * postorder from the initial node. Nodes that are unreachable from the
+     * initial node are ordered last.
+     */
+    public static <Node extends INode<Node>> NodeWorkList<Node> reversePostorder(
+            IGraph<Node> graph) {
+        List<Node> postorder = new ArrayList<Node>(graph.getNodes().size());
+        Map<Node, Iterator<Node>> discovered = new LinkedHashMap<Node, Iterator<Node>>();
+        LinkedList<Node> stack = new LinkedList<Node>();
+
+        // Iterative depth-first search, so that long traces do not overflow
+        // the call stack.
+        Node initial = graph.getDummyInitialNode();
+        stack.push(initial);
+        discovered.put(initial, graph.getAdjacentNodes(initial).iterator());
+        while (!stack.isEmpty()) {
+            Node node = stack.peek();
+            Iterator<Node> successors = discovered.get(node);
+            if (successors.hasNext()) {
+                Node next = successors.next();
+                if (!discovered.containsKey(next)) {
+                    stack.push(next);
+                    discovered.put(next, graph.getAdjacentNodes(next).iterator());
+                }
+            } else {
+                stack.pop();
+                postorder.add(node);
+            }
+        }
+        Collections.reverse(postorder);
+
+        for (Node node : graph.getNodes()) {
+            if (!discovered.containsKey(node)) {
+                postorder.add(node);
+            }
+        }
+        return new NodeWorkList<Node>(postorder, true);
+    }
+
+    /**
+     * Adds node to the worklist, unless it is already on it.
+     */
+    public void add(Node node) {
+        int id = ids.get(node);
+        if (inQueue.get(id)) {
+            return;
+        }
+        inQueue.set(id);
+        if (!priorityOrder) {
+            queue[(head + size) % queue.length] = id;
+            size++;
+        }
+    }
+
+    public boolean isEmpty() {
+        return inQueue.isEmpty();
+    }
+
+    /**
+     * Removes and returns the next node from the worklist.
+     */
+    public Node remove() {
+        int id;
+        if (priorityOrder) {
+            id = inQueue.nextSetBit(0);
+        } else {
+            id = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+        }
+        inQueue.clear(id);
+
+        numVisits++;
+        if (visited.get(id)) {
+            numRevisits++;
+        } else {
+            visited.set(id);
+        }
+        return nodes.get(id);
+    }
+
+    public long getNumVisits() {
+        return numVisits;
+    }
+
+    public long getNumRevisits() {
+        return numRevisits;
+    }
+
+    /**
+     * Records the number of node visits and re-visits performed so far with
+     * PerformanceMetrics, under the given key prefix.
+     */
+    public void recordVisits(String keyPrefix) {
+        PerformanceMetrics.get().record(keyPrefix + "NodeVisits", numVisits);
+        PerformanceMetrics.get()
+                .record(keyPrefix + "NodeRevisits", numRevisits);
+    }
+}
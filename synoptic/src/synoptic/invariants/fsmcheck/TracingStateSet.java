@@ -27,7 +27,11 @@ public abstract class TracingStateSet<T extends INode<T>> implements
     }
 
     /*
-     * Helper to yield the shortest non-null path of the two passed in.
+     * Helper to yield the shortest non-null path of the two passed in. Of two
+     * paths of the same length, the one that is first in
+     * HistoryNode.compareCanonically() order is yielded, so that the
+     * counter-example that the checker finds does not depend on the order in
+     * which it explores the graph.
      */
     public <HNode extends HistoryNode<T>> HNode preferShorter(HNode a, HNode b) {
         if (b == null) {
@@ -36,10 +40,30 @@ public abstract class TracingStateSet<T extends INode<T>> implements
         if (a == null) {
             return b;
         }
-        if (a.count < b.count) {
-            return a;
+        if (a.count != b.count) {
+            return a.count < b.count ? a : b;
+        }
+        return a.compareCanonically(b) < 0 ? a : b;
+    }
+
+    /*
+     * Helper for isSubset: returns true if merging the path a into a state
+     * whose path is b would not give the state a better path, i.e. if a is
+     * null, or if b is shorter than a, or as long as a and not after it in
+     * canonical order.
+     */
+    protected static <T extends INode<T>> boolean isCovered(HistoryNode<T> a,
+            HistoryNode<T> b) {
+        if (a == null) {
+            return true;
+        }
+        if (b == null) {
+            return false;
+        }
+        if (a.count != b.count) {
+            return a.count > b.count;
         }
-        return b;
+        return b.compareCanonically(a) <= 0;
     }
 
     /**
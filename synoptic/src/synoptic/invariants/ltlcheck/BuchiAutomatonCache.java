@@ -0,0 +1,85 @@
+package synoptic.invariants.ltlcheck;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import gov.nasa.ltl.graph.Graph;
+import gov.nasa.ltl.trans.LTL2Buchi;
+import gov.nasa.ltl.trans.ParseErrorException;
+
+/**
+ * A cache of the Buchi automata of LTL formulas, keyed by formula. The cache is
+ * shared by all invariants and refinement rounds, so that a formula is only
+ * translated once per run, and it can be used from any number of threads.
+ * <p>
+ * The cache keeps the MAX_SIZE most recently used automata, so that it does
+ * not grow with the number of formulas translated over the life of the JVM
+ * (e.g., by a server that mines many logs). Invariants keep their automata, so
+ * an evicted automaton is only translated again for a new invariant.
+ * <p>
+ * The transition labels of a cached automaton are parsed (see
+ * GraphActionParser) before the automaton is cached. Cached automata are shared
+ * between model checking runs, so they must not be modified.
+ */
+public class BuchiAutomatonCache {
+    /**
+     * The maximum number of cached automata.
+     */
+    public static final int MAX_SIZE = 1024;
+
+    // Accessed only while synchronized on automata.
+    private static final Map<String, Graph> automata = new LinkedHashMap<String, Graph>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Graph> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    /**
+     * Returns the Buchi automaton of the LTL formula, translating the formula
+     * if it is not already cached.
+     */
+    public static Graph getAutomaton(String formula) throws ParseErrorException {
+        synchronized (automata) {
+            Graph automaton = automata.get(formula);
+            if (automaton != null) {
+                return automaton;
+            }
+        }
+
+        // Formulas are translated outside the lock, so two threads may
+        // translate the same formula concurrently, in which case the automaton
+        // of the first one to finish is kept.
+        Graph automaton = LTL2Buchi.translate(formula);
+        GraphActionParser.parseTransitions(automaton);
+        synchronized (automata) {
+            Graph cached = automata.get(formula);
+            if (cached != null) {
+                return cached;
+            }
+            automata.put(formula, automaton);
+            return automaton;
+        }
+    }
+
+    /**
+     * Returns the number of cached automata.
+     */
+    public static int size() {
+        synchronized (automata) {
+            return automata.size();
+        }
+    }
+
+    /**
+     * Discards all cached automata.
+     */
+    public static void clear() {
+        synchronized (automata) {
+            automata.clear();
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package synoptic.invariants.ltlcheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import gov.nasa.ltl.graph.Edge;
+import gov.nasa.ltl.graph.Graph;
+import gov.nasa.ltl.graph.Node;
+
+/**
+ * Checks a transition system against a Buchi automaton without translating
+ * them into a product graph first. The did/can expansion of the transition
+ * system (see DidCanTranslator), without deadlocks (see
+ * GraphTransformations.removeDeadlock), and its product with the automaton
+ * (see ProductTranslator) are explored on the fly by the nested depth-first
+ * search of PersistenceChecker. Only the product states that the search
+ * reaches are created, and edges are only created for the counter-example.
+ * <p>
+ * The search visits states and transitions in the same order as
+ * PersistenceChecker does on the translated product, so it finds the same
+ * counter-examples. The transition system and the automaton are only read, so
+ * several checkers may share them.
+ */
+public class OnTheFlyPersistenceChecker {
+    /** A state of the did/can expanded transition system. */
+    private static final class DidCanState {
+        /** The transition system node, null for the deadlock state. */
+        final Node node;
+        final List<AtomicProposition> label;
+        /** Transitions out of this state, created on the first visit. */
+        List<DidCanStep> steps = null;
+
+        DidCanState(Node node, List<AtomicProposition> label) {
+            this.node = node;
+            this.label = label;
+        }
+    }
+
+    /** A transition of the did/can expanded transition system. */
+    private static final class DidCanStep {
+        final DidCanState target;
+        final String action;
+        /** The transition system edge, null for deadlock transitions. */
+        final Edge edge;
+
+        DidCanStep(DidCanState target, String action, Edge edge) {
+            this.target = target;
+            this.action = action;
+            this.edge = edge;
+        }
+    }
+
+    /** A state of the product of the did/can graph and the automaton. */
+    private static final class ProductState {
+        final DidCanState dcState;
+        final Node baNode;
+        /** Successors, and the did/can transitions that lead to them. */
+        List<ProductState> successors = null;
+        List<DidCanStep> successorSteps = null;
+
+        ProductState(DidCanState dcState, Node baNode) {
+            this.dcState = dcState;
+            this.baNode = baNode;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(dcState)
+                    + System.identityHashCode(baNode);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ProductState)) {
+                return false;
+            }
+            ProductState other = (ProductState) obj;
+            return dcState == other.dcState && baNode == other.baNode;
+        }
+    }
+
+    private final Graph transitionSystem;
+    private final Graph ba;
+
+    /** Did/can states by the action they did and their transition node. */
+    private final Map<Pair<String, Node>, DidCanState> dcStates = new HashMap<Pair<String, Node>, DidCanState>();
+    private DidCanState deadlockState = null;
+    private final Map<ProductState, ProductState> states = new HashMap<ProductState, ProductState>();
+    /** Outgoing edges of automaton nodes, which Node copies on every call. */
+    private final Map<Node, List<Edge>> baEdges = new HashMap<Node, List<Edge>>();
+
+    private final Set<ProductState> unvisitedInitials = new LinkedHashSet<ProductState>();
+    private final Set<ProductState> visitedOuter = new HashSet<ProductState>();
+    private final List<ProductState> outerDFS = new ArrayList<ProductState>();
+    private final Set<ProductState> visitedInner = new HashSet<ProductState>();
+    private final List<ProductState> innerDFS = new ArrayList<ProductState>();
+    private boolean cycleFound = false;
+
+    private Counterexample counterexample = null;
+
+    /**
+     * Creates a checker of transitionSystem against ba, whose transitions must
+     * have been parsed by GraphActionParser.
+     */
+    public OnTheFlyPersistenceChecker(Graph transitionSystem, Graph ba) {
+        this.transitionSystem = transitionSystem;
+        this.ba = ba;
+    }
+
+    public void run() {
+        // The initial product states pair the start state with the automaton
+        // states that the initial automaton state moves to on its label.
+        List<AtomicProposition> startLabel = new ArrayList<AtomicProposition>();
+        startLabel.add(new AtomicProposition("__init",
+                AtomicProposition.PropositionType.Unknown));
+        Node init = transitionSystem.getInit();
+        for (Edge edge : init.getOutgoingEdges()) {
+            startLabel.add(new AtomicProposition(edge.getAction(),
+                    AtomicProposition.PropositionType.Can));
+        }
+        DidCanState start = new DidCanState(init, startLabel);
+        for (Node baNode : ba.getNodes()) {
+            for (Edge edge : baNode.getIncomingEdges()) {
+                if (edge.getSource() == ba.getInit()
+                        && getConjunction(edge).allows(startLabel)) {
+                    unvisitedInitials.add(getState(start, baNode));
+                    break;
+                }
+            }
+        }
+
+        while (!unvisitedInitials.isEmpty() && !cycleFound) {
+            reachableCycle(unvisitedInitials.iterator().next());
+        }
+        if (!cycleFound) {
+            counterexample = null;
+            return;
+        }
+
+        // Collect the transitions of the prefix and the cycle, as source
+        // states and indices into their successors.
+        List<Pair<ProductState, Integer>> prefix = new ArrayList<Pair<ProductState, Integer>>();
+        for (int i = 0; i < outerDFS.size() - 1; ++i) {
+            prefix.add(getTransition(outerDFS.get(i), outerDFS.get(i + 1)));
+        }
+        // Add the transition from the last state of the prefix to the first
+        // state of the cycle.
+        if (!outerDFS.isEmpty() && !innerDFS.isEmpty()) {
+            prefix.add(getTransition(outerDFS.get(outerDFS.size() - 1),
+                    innerDFS.get(0)));
+        }
+        List<Pair<ProductState, Integer>> cycle = new ArrayList<Pair<ProductState, Integer>>();
+        for (int i = 0; i < innerDFS.size() - 1; ++i) {
+            cycle.add(getTransition(innerDFS.get(i), innerDFS.get(i + 1)));
+        }
+
+        // If a suffix of the prefix is a suffix of the cycle, move it to the
+        // front of the cycle.
+        while (!prefix.isEmpty()
+                && cycle.get(cycle.size() - 1).equals(
+                        prefix.get(prefix.size() - 1))) {
+            cycle.add(0, cycle.remove(cycle.size() - 1));
+            prefix.remove(prefix.size() - 1);
+        }
+
+        Map<Pair<ProductState, Integer>, Edge> edges = new HashMap<Pair<ProductState, Integer>, Edge>();
+        Map<ProductState, Node> nodes = new HashMap<ProductState, Node>();
+        Graph path = new Graph();
+        counterexample = new Counterexample(toEdges(prefix, edges, nodes,
+                path), toEdges(cycle, edges, nodes, path));
+    }
+
+    public Counterexample getCounterexample() {
+        return counterexample;
+    }
+
+    private void reachableCycle(ProductState n) {
+        outerDFS.add(n);
+        visitedOuter.add(n);
+        unvisitedInitials.remove(n);
+
+        do {
+            ProductState nn = outerDFS.get(outerDFS.size() - 1);
+
+            // Find an unvisited successor of nn
+            ProductState unvisitedSuccessor = null;
+            for (ProductState succ : getSuccessors(nn)) {
+                if (!visitedOuter.contains(succ)) {
+                    unvisitedSuccessor = succ;
+                    break;
+                }
+            }
+
+            if (unvisitedSuccessor != null) {
+                outerDFS.add(unvisitedSuccessor);
+                visitedOuter.add(unvisitedSuccessor);
+                unvisitedInitials.remove(unvisitedSuccessor);
+            } else {
+                // The outer DFS is finished for nn, so proceed with the inner
+                // DFS in nn if it is accepting.
+                outerDFS.remove(outerDFS.size() - 1);
+                if (nn.baNode.getBooleanAttribute("accepting")) {
+                    cycleFound = cycleCheck(nn);
+                }
+            }
+        } while (!outerDFS.isEmpty() && !cycleFound);
+    }
+
+    private boolean cycleCheck(ProductState n) {
+        innerDFS.add(n);
+        visitedInner.add(n);
+
+        do {
+            ProductState nn = innerDFS.get(innerDFS.size() - 1);
+            List<ProductState> successors = getSuccessors(nn);
+
+            // If n is a successor of nn, a cycle is found
+            if (successors.contains(n)) {
+                innerDFS.add(n);
+                return true;
+            }
+
+            // Find an unvisited successor of nn
+            ProductState unvisitedSuccessor = null;
+            for (ProductState succ : successors) {
+                if (!visitedInner.contains(succ)) {
+                    unvisitedSuccessor = succ;
+                    break;
+                }
+            }
+
+            if (unvisitedSuccessor != null) {
+                innerDFS.add(unvisitedSuccessor);
+                visitedInner.add(unvisitedSuccessor);
+            } else {
+                // Cycle search unsuccessful for nn
+                innerDFS.remove(innerDFS.size() - 1);
+            }
+        } while (!innerDFS.isEmpty());
+
+        return false;
+    }
+
+    /**
+     * Returns the interned product state of dcState and baNode.
+     */
+    private ProductState getState(DidCanState dcState, Node baNode) {
+        ProductState state = new ProductState(dcState, baNode);
+        ProductState interned = states.get(state);
+        if (interned != null) {
+            return interned;
+        }
+        states.put(state, state);
+        return state;
+    }
+
+    /**
+     * Returns the successors of state, in the order of the product edges that
+     * ProductTranslator creates: by did/can transition, then by automaton
+     * edge.
+     */
+    private List<ProductState> getSuccessors(ProductState state) {
+        if (state.successors != null) {
+            return state.successors;
+        }
+        state.successors = new ArrayList<ProductState>();
+        state.successorSteps = new ArrayList<DidCanStep>();
+        for (DidCanStep step : getSteps(state.dcState)) {
+            for (Edge baEdge : getBAEdges(state.baNode)) {
+                if (getConjunction(baEdge).allows(step.target.label)) {
+                    state.successors.add(getState(step.target,
+                            baEdge.getNext()));
+                    state.successorSteps.add(step);
+                }
+            }
+        }
+        return state.successors;
+    }
+
+    /**
+     * Returns the transitions out of a did/can state. Like removeDeadlock,
+     * links the states without transitions to a deadlock state.
+     */
+    private List<DidCanStep> getSteps(DidCanState dcState) {
+        if (dcState.steps != null) {
+            return dcState.steps;
+        }
+        dcState.steps = new ArrayList<DidCanStep>();
+        if (dcState.node != null) {
+            for (Edge edge : dcState.node.getOutgoingEdges()) {
+                dcState.steps.add(new DidCanStep(getDidCanState(
+                        edge.getAction(), edge.getNext()), edge.getAction(),
+                        edge));
+            }
+        }
+        if (dcState.steps.isEmpty()) {
+            dcState.steps.add(new DidCanStep(getDeadlockState(),
+                    "__deadlock", null));
+        }
+        return dcState.steps;
+    }
+
+    /**
+     * Returns the did/can state of node, reached by an edge labeled action.
+     */
+    private DidCanState getDidCanState(String action, Node node) {
+        Pair<String, Node> key = new Pair<String, Node>(action, node);
+        DidCanState dcState = dcStates.get(key);
+        if (dcState == null) {
+            List<AtomicProposition> label = new ArrayList<AtomicProposition>();
+            label.add(new AtomicProposition(action,
+                    AtomicProposition.PropositionType.Did));
+            for (Edge edge : node.getOutgoingEdges()) {
+                label.add(new AtomicProposition(edge.getAction(),
+                        AtomicProposition.PropositionType.Can));
+            }
+            dcState = new DidCanState(node, label);
+            dcStates.put(key, dcState);
+        }
+        return dcState;
+    }
+
+    private DidCanState getDeadlockState() {
+        if (deadlockState == null) {
+            deadlockState = new DidCanState(null,
+                    Collections.singletonList(new AtomicProposition(
+                            "__deadlock",
+                            AtomicProposition.PropositionType.Unknown)));
+            deadlockState.steps = new ArrayList<DidCanStep>(1);
+            deadlockState.steps.add(new DidCanStep(deadlockState,
+                    "__deadlock", null));
+        }
+        return deadlockState;
+    }
+
+    private List<Edge> getBAEdges(Node baNode) {
+        List<Edge> edges = baEdges.get(baNode);
+        if (edges == null) {
+            edges = baNode.getOutgoingEdges();
+            baEdges.put(baNode, edges);
+        }
+        return edges;
+    }
+
+    private static Conjunction getConjunction(Edge baEdge) {
+        return (Conjunction) baEdge.getAttribute("parsedaction");
+    }
+
+    /**
+     * Returns the first transition from source to target, like
+     * PersistenceChecker does for the edges of the product.
+     */
+    private static Pair<ProductState, Integer> getTransition(
+            ProductState source, ProductState target) {
+        return new Pair<ProductState, Integer>(source,
+                source.successors.indexOf(target));
+    }
+
+    /**
+     * Creates the product edges of transitions in path, with the guards and
+     * attributes that ProductTranslator gives them. A transition that occurs
+     * more than once is created once.
+     */
+    private static List<Edge> toEdges(
+            List<Pair<ProductState, Integer>> transitions,
+            Map<Pair<ProductState, Integer>, Edge> edges,
+            Map<ProductState, Node> nodes, Graph path) {
+        List<Edge> result = new ArrayList<Edge>(transitions.size());
+        for (Pair<ProductState, Integer> transition : transitions) {
+            Edge e = edges.get(transition);
+            if (e == null) {
+                ProductState source = transition.getFirst();
+                int i = transition.getSecond();
+                DidCanStep step = source.successorSteps.get(i);
+                e = new Edge(getNode(source, nodes, path), getNode(
+                        source.successors.get(i), nodes, path), step.action);
+                if (step.edge != null) {
+                    e.setAttributes(step.edge.getAttributes());
+                }
+                edges.put(transition, e);
+            }
+            result.add(e);
+        }
+        return result;
+    }
+
+    private static Node getNode(ProductState state,
+            Map<ProductState, Node> nodes, Graph path) {
+        Node node = nodes.get(state);
+        if (node == null) {
+            node = new Node(path);
+            nodes.put(state, node);
+        }
+        return node;
+    }
+}
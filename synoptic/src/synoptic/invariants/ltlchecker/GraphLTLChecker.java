@@ -22,18 +22,24 @@ import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.ltlcheck.Counterexample;
 import synoptic.invariants.ltlcheck.LtlModelChecker;
 import synoptic.main.AbstractMain;
+import synoptic.model.PartitionGraph;
 import synoptic.model.export.GraphExporter;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.InternalSynopticException;
 
+/**
+ * Model checks invariants against graphs by translating the graphs to
+ * transition systems and the invariants to Buchi automata. A checker may be
+ * used to check invariants concurrently, from several threads.
+ */
 public class GraphLTLChecker<T extends INode<T>> {
     private static Logger logger = Logger.getLogger("GraphLTLChecker Logger");
 
     private static final boolean DEBUG = false;
     /**
-     * Cache for that last target graphs.
+     * Cache for that last target graphs. The caches are guarded by this.
      */
     private final LinkedHashMap<String, Graph> lastTargetGraph = new LinkedHashMap<String, Graph>();
     // CACHE:
@@ -61,9 +67,36 @@ public class GraphLTLChecker<T extends INode<T>> {
         // formula = LTLFormulaPreprocessor.preprocessFormula(formula);
         // monitor.subTask("Preprocessed LTL formula: " + formula);
         TimedTask transToMC = PerformanceMetrics.createTask("transToMC");
+        String relation = invariant.getRelation();
+        Graph targetGraph = getTargetGraph(sourceGraph, relation);
+        transToMC.stop();
+        if (DEBUG) {
+            AbstractMain.getInstance().exportNonInitialGraph(
+                    "output/sourceGraph-" + relation, sourceGraph);
+            writeDot(targetGraph, "output/targetGraph-" + relation + ".dot");
+        }
+        // Run the LTL model-checker on this graph structure.
+        Counterexample c = LtlModelChecker.check(targetGraph, invariant);
+
+        return c;
+    }
+
+    /**
+     * Returns the transition-based graph of sourceGraph with respect to
+     * relation, converting sourceGraph if it is not already cached. The
+     * conversions are serialized, so that sourceGraph is only traversed by one
+     * thread at a time. The target graphs of partition graphs are shared by
+     * all checkers, and patched as the partition graphs change (see
+     * IncrementalTargetGraph).
+     */
+    private synchronized Graph getTargetGraph(IGraph<T> sourceGraph,
+            String relation) {
+        if (sourceGraph instanceof PartitionGraph) {
+            return IncrementalTargetGraph.getTargetGraph(
+                    (PartitionGraph) sourceGraph, relation);
+        }
 
         Graph targetGraph = null;
-        String relation = invariant.getRelation();
         // If we've already converted this source graph before then just look up
         // the target in the cache.
         if (lastSourceGraph.containsKey(relation)
@@ -85,16 +118,7 @@ public class GraphLTLChecker<T extends INode<T>> {
             lastSourceGraph.put(relation, sourceGraph);
             lastTargetGraph.put(relation, targetGraph);
         }
-        transToMC.stop();
-        if (DEBUG) {
-            AbstractMain.getInstance().exportNonInitialGraph(
-                    "output/sourceGraph-" + relation, sourceGraph);
-            writeDot(targetGraph, "output/targetGraph-" + relation + ".dot");
-        }
-        // Run the LTL model-checker on this graph structure.
-        Counterexample c = LtlModelChecker.check(targetGraph, invariant);
-
-        return c;
+        return targetGraph;
     }
 
     // TODO: refactor this code to instead use the GraphVizExporter
@@ -0,0 +1,205 @@
+package synoptic.invariants.ltlchecker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import gov.nasa.ltl.graph.Edge;
+import gov.nasa.ltl.graph.Graph;
+import gov.nasa.ltl.graph.Node;
+
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * The transition-based target graph of a partition graph with respect to a
+ * relation (see GraphLTLChecker.convertGraph), which is patched when the
+ * partition graph is refined or coarsened instead of being converted again.
+ * An update only rebuilds the edges out of the partitions that changed since
+ * the previous update (see PartitionGraph.getChangedPartitionsSince), and out
+ * of their predecessors.
+ * <p>
+ * The edges out of every state are in the order of their targets in the
+ * partition graph, as in a converted graph, so that model checking finds the
+ * same counter-examples in a patched graph as in a converted one. The graph
+ * keeps the rank of every partition in that order. PartitionGraph only
+ * appends new partitions to its node set and removes partitions from it,
+ * which preserves the relative order of the other partitions, so new
+ * partitions are ranked after all others and no ranks are recomputed.
+ * <p>
+ * The target graphs of a partition graph are kept by the partition graph
+ * (see PartitionGraph.getLtlTargetGraphs()), so they are discarded with it.
+ */
+public class IncrementalTargetGraph {
+    private final Set<String> relationSet;
+    private final Graph graph;
+    private final Node initialState;
+    private final Map<Partition, Node> states = new HashMap<Partition, Node>();
+    private final Map<Node, Partition> partitions = new HashMap<Node, Partition>();
+    /** The ranks of the partitions in the node set of the partition graph. */
+    private final Map<Partition, Integer> order = new HashMap<Partition, Integer>();
+    private final Comparator<Partition> byOrder = new Comparator<Partition>() {
+        @Override
+        public int compare(Partition p1, Partition p2) {
+            return order.get(p1).compareTo(order.get(p2));
+        }
+    };
+    private int nextRank = 0;
+    /** The version of the partition graph that graph was last updated to. */
+    private long version;
+
+    /**
+     * Returns the target graph of sourceGraph with respect to relation,
+     * converting sourceGraph on the first call and updating the graph returned
+     * by the previous call on later ones. The returned graph is shared by all
+     * callers, so sourceGraph must not be modified while it is being checked.
+     */
+    public static Graph getTargetGraph(PartitionGraph sourceGraph,
+            String relation) {
+        Map<String, IncrementalTargetGraph> byRelation = sourceGraph
+                .getLtlTargetGraphs();
+        synchronized (byRelation) {
+            IncrementalTargetGraph targetGraph = byRelation.get(relation);
+            if (targetGraph == null) {
+                targetGraph = new IncrementalTargetGraph(sourceGraph, relation);
+                byRelation.put(relation, targetGraph);
+            } else {
+                targetGraph.update(sourceGraph);
+            }
+            return targetGraph.getGraph();
+        }
+    }
+
+    /**
+     * Converts sourceGraph into its target graph with respect to relation.
+     * Does not keep a reference to sourceGraph.
+     */
+    public IncrementalTargetGraph(PartitionGraph sourceGraph, String relation) {
+        relationSet = Collections.singleton(relation);
+        graph = new Graph();
+        initialState = new Node(graph);
+        initialState.setAttribute("post", "P:initial");
+        version = sourceGraph.getVersion();
+
+        for (Partition p : sourceGraph.getNodes()) {
+            addState(p);
+        }
+        addEdges(sourceGraph.getNodes());
+
+        Partition initial = sourceGraph.getDummyInitialNode();
+        Edge e = new Edge(initialState, states.get(initial), "-", initial
+                .getEType().toString(), null);
+        e.setAttribute("inode", initial);
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Patches the target graph to match sourceGraph, which must be the graph
+     * that it was converted from.
+     */
+    public void update(PartitionGraph sourceGraph) {
+        long newVersion = sourceGraph.getVersion();
+        if (newVersion == version) {
+            return;
+        }
+        Set<Partition> changed = sourceGraph.getChangedPartitionsSince(version);
+        version = newVersion;
+        if (changed == null) {
+            // The changes are no longer recorded, so patch every state, and
+            // rank the partitions again.
+            changed = new LinkedHashSet<Partition>(states.keySet());
+            changed.addAll(sourceGraph.getNodes());
+            order.clear();
+            nextRank = 0;
+            for (Partition p : sourceGraph.getNodes()) {
+                order.put(p, nextRank++);
+            }
+        }
+
+        // The edges out of the changed partitions, and out of their old
+        // predecessors, have to be rebuilt. Partitions only gain a transition
+        // to a partition whose events changed, so the new predecessors of the
+        // changed partitions are among these.
+        Set<Partition> present = sourceGraph.getNodes();
+        Set<Partition> dirty = new LinkedHashSet<Partition>();
+        for (Partition p : changed) {
+            Node state = states.get(p);
+            if (state != null) {
+                for (Edge e : state.getIncomingEdges()) {
+                    Partition pred = partitions.get(e.getSource());
+                    if (pred != null) {
+                        dirty.add(pred);
+                    }
+                }
+            }
+            if (present.contains(p)) {
+                if (state == null) {
+                    addState(p);
+                }
+                dirty.add(p);
+            } else if (state != null) {
+                states.remove(p);
+                partitions.remove(state);
+                order.remove(p);
+                state.remove();
+            }
+        }
+
+        dirty.retainAll(states.keySet());
+        if (dirty.isEmpty()) {
+            return;
+        }
+        for (Partition p : dirty) {
+            for (Edge e : states.get(p).getOutgoingEdges()) {
+                e.remove();
+            }
+        }
+        addEdges(dirty);
+    }
+
+    /**
+     * Adds a state for p, which is ranked after all partitions that have
+     * states, unless it is already ranked.
+     */
+    private void addState(Partition p) {
+        Node state = new Node(graph);
+        state.setAttribute("post", "P:" + p.getEType());
+        states.put(p, state);
+        partitions.put(state, p);
+        if (!order.containsKey(p)) {
+            order.put(p, nextRank++);
+        }
+    }
+
+    /**
+     * Adds an edge from the state of every partition in sources to the state
+     * of every partition that it has a transition to, in order of the targets.
+     */
+    private void addEdges(Set<Partition> sources) {
+        for (Partition p : sources) {
+            Set<Partition> targetSet = new LinkedHashSet<Partition>();
+            for (ITransition<Partition> t : p
+                    .getTransitionsWithExactRelations(relationSet)) {
+                targetSet.add(t.getTarget());
+            }
+            List<Partition> targets = new ArrayList<Partition>(targetSet);
+            Collections.sort(targets, byOrder);
+
+            Node state = states.get(p);
+            for (Partition target : targets) {
+                Edge e = new Edge(state, states.get(target), "-", target
+                        .getEType().toString(), null);
+                e.setAttribute("inode", target);
+            }
+        }
+    }
+}
@@ -1,22 +1,40 @@
 package synoptic.invariants.miners;
 
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Set;
 
+import synoptic.algorithms.CompactTransitiveClosure;
+import synoptic.algorithms.ITransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.model.EventNode;
 import synoptic.model.TraceGraph;
 
 /**
  * This class keeps a set of transitive closures for an IGraph, one transitive
- * closure per relation in the IGraph.
+ * closure per relation in the IGraph. The closures are either those computed
+ * by the graph, or CompactTransitiveClosures.
  */
 public class AllRelationsTransitiveClosure {
-    private final LinkedHashMap<String, TransitiveClosure> tcs = new LinkedHashMap<String, TransitiveClosure>();
+    private final LinkedHashMap<String, ITransitiveClosure> tcs = new LinkedHashMap<String, ITransitiveClosure>();
 
     public AllRelationsTransitiveClosure(TraceGraph<?> g) {
+        this(g, false);
+    }
+
+    /**
+     * @param compact
+     *            whether to keep CompactTransitiveClosures instead of the
+     *            closures computed by g
+     */
+    public AllRelationsTransitiveClosure(TraceGraph<?> g, boolean compact) {
         for (String relation : g.getRelations()) {
-            tcs.put(relation, g.getTransitiveClosure(relation));
+            if (compact) {
+                tcs.put(relation, new CompactTransitiveClosure(g,
+                        Collections.singleton(relation)));
+            } else {
+                tcs.put(relation, g.getTransitiveClosure(relation));
+            }
         }
     }
 
@@ -27,7 +45,28 @@ public class AllRelationsTransitiveClosure {
         return tcs.get(relation).isReachable(m, n);
     }
 
+    /**
+     * Returns the transitive closure for relation, which must not be compact.
+     * 
+     * @throws IllegalStateException
+     *             if the closures are CompactTransitiveClosures (see the
+     *             compactTransitiveClosure option); use getReachability()
+     *             instead
+     */
     public TransitiveClosure get(String relation) {
+        ITransitiveClosure tc = tcs.get(relation);
+        if (tc instanceof CompactTransitiveClosure) {
+            throw new IllegalStateException("The transitive closure of "
+                    + relation + " is compact (compactTransitiveClosure is "
+                    + "set); use getReachability() instead");
+        }
+        return (TransitiveClosure) tc;
+    }
+
+    /**
+     * Returns the transitive closure for relation, compact or not.
+     */
+    public ITransitiveClosure getReachability(String relation) {
         return tcs.get(relation);
     }
 
@@ -1,10 +1,13 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -27,11 +30,39 @@ import synoptic.model.interfaces.IRelationPath;
  * on partition sizes. A more detailed complexity break-down is given below. <br/>
  * <br/>
  * This algorithm has lower space usage than the transitive-closure-based
- * algorithms.
+ * algorithms. <br/>
+ * <br/>
+ * The counts of each relation path are independent of the other paths, so the
+ * paths can be counted in parallel: with more than one thread, the paths are
+ * split across a fork-join pool, and the count summaries of the splits are
+ * merged.
  */
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
 
+    /**
+     * The number of paths below which a split of the paths is counted by a
+     * single task, rather than split further.
+     */
+    private static final int minPathsPerSplit = 64;
+
+    /** The number of threads to count relation paths with. */
+    private final int numThreads;
+
+    public ChainWalkingTOInvMiner() {
+        this(1);
+    }
+
+    /**
+     * @param numThreads
+     *            the number of threads to count relation paths with (1
+     *            counts the paths serially)
+     */
+    public ChainWalkingTOInvMiner(int numThreads) {
+        assert numThreads > 0;
+        this.numThreads = numThreads;
+    }
+
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             boolean multipleRelations, boolean supportCount) {
         TemporalInvariantSet result = new TemporalInvariantSet();
@@ -102,16 +133,6 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         // Stores generated RelationPaths
         Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
 
-        // Tracks event counts globally -- across all traces.
-        Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
-
-        /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
-         */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
         for (Trace trace : g.getTraces()) {
 
             if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
@@ -131,27 +152,19 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
 
         }
 
-        for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
-            Map<EventType, Integer> relationPathEventCounts = relationPath
-                    .getEventCounts();
-            for (EventType eventType : relationPathEventCounts.keySet()) {
-                int count = relationPathEventCounts.get(eventType);
-
-                if (gEventCnts.containsKey(eventType)) {
-                    count += gEventCnts.get(eventType);
-                }
-
-                gEventCnts.put(eventType, count);
-            }
-        }
+        /*
+         * Sum up the event, followed-by, and precedes counts of the
+         * RelationPaths, and intersect their possible interrupts and the sets
+         * of events seen in them.
+         */
+        PathCountSummary summary = summarize(new ArrayList<IRelationPath>(
+                relationPaths));
+        Set<EventType> eTypes = summary.eTypes;
 
         // Tracks followed-by counts.
         Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
         // Tracks precedence counts.
         Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks interrupted-by counts.
-        Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
 
         // Initialize the event-type contents of the maps that persist
         // across traces (global counts maps).
@@ -166,79 +179,78 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
             }
         }
 
-        // Tracks which events were observed across all RelationPaths.
-        Set<EventType> AlwaysFollowsINITIALSet = null;
-
-        /*
-         * Iterates over each RelationPath in the graph and aggregates the
-         * individual Occurrences, Follows, and Precedes counts.
-         */
-        for (IRelationPath relationPath : relationPaths) {
-
-            /*
-             * Adds the Precedes count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathPrecedesCounts = relationPath
-                    .getPrecedesCounts();
-            addCounts(relationPathPrecedesCounts, gPrecedesCnts);
-
-            /*
-             * Adds the FollowedBy count from the RelationPath into the graph
-             * global count.
-             */
-
-            Map<EventType, Map<EventType, Integer>> relationPathFollowedByCounts = relationPath
-                    .getFollowedByCounts();
-            addCounts(relationPathFollowedByCounts, gFollowedByCnts);
-
-            /*
-             * Updates the graph global InterruptedBy counts with the
-             * RelationPath counts
-             */
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts = relationPath
-                    .getPossibleInterrupts();
-            intersectInterrupts(relationPathPossibleInterrupts,
-                    gPossibleInterrupts);
-
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this RelationPath.
-            Set<EventType> relationPathSeen = relationPath.getSeen();
-            if (AlwaysFollowsINITIALSet == null) {
-                // This is the first RelationPath we are processing.
-                AlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        relationPathSeen);
-            } else {
-                AlwaysFollowsINITIALSet.retainAll(relationPathSeen);
-            }
-
-            // At this point, we've completed all counts computation for the
-            // current RelationPath.
-        }
+        addCounts(summary.precedesCnts, gPrecedesCnts);
+        addCounts(summary.followedByCnts, gFollowedByCnts);
 
         return new TemporalInvariantSet(extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts,
-                gPossibleInterrupts, null, AlwaysFollowsINITIALSet,
+                relation, summary.eventCnts, gFollowedByCnts, gPrecedesCnts,
+                summary.possibleInterrupts, null, summary.alwaysFollowsInitial,
                 multipleRelations, supportCount));
     }
 
     /**
-     * Prune and update global possible InterruptedBy invariant counts by
-     * retaining only those that are valid in this RelationPath and updating
-     * their counts
+     * Returns the summary of the counts of relationPaths, which is computed in
+     * a fork-join pool of numThreads threads if there are enough paths to
+     * split.
      */
-    private static void intersectInterrupts(
-            Map<EventType, Set<EventType>> relationPathPossibleInterrupts,
-            Map<EventType, Set<EventType>> gPossibleInterrupts) {
-        for (EventType et : relationPathPossibleInterrupts.keySet()) {
-            if (gPossibleInterrupts.containsKey(et)) {
-                gPossibleInterrupts.get(et).retainAll(
-                        relationPathPossibleInterrupts.get(et));
-            } else {
-                gPossibleInterrupts.put(et,
-                        relationPathPossibleInterrupts.get(et));
+    private PathCountSummary summarize(List<IRelationPath> relationPaths) {
+        if (numThreads == 1 || relationPaths.size() < 2 * minPathsPerSplit) {
+            return new SummarizeTask(relationPaths, 0, relationPaths.size(),
+                    relationPaths.size()).compute();
+        }
+        // Split into a few tasks per thread, to balance the load when the
+        // paths have different lengths.
+        int pathsPerSplit = Math.max(minPathsPerSplit, relationPaths.size()
+                / (4 * numThreads));
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            return pool.invoke(new SummarizeTask(relationPaths, 0,
+                    relationPaths.size(), pathsPerSplit));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Summarizes the counts of the paths in [from, to) of a list of paths, by
+     * recursively summarizing the two halves of the range in parallel and
+     * merging their summaries, until the range has at most pathsPerSplit
+     * paths.
+     */
+    private static final class SummarizeTask extends
+            RecursiveTask<PathCountSummary> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<IRelationPath> relationPaths;
+        private final int from;
+        private final int to;
+        private final int pathsPerSplit;
+
+        SummarizeTask(List<IRelationPath> relationPaths, int from, int to,
+                int pathsPerSplit) {
+            this.relationPaths = relationPaths;
+            this.from = from;
+            this.to = to;
+            this.pathsPerSplit = pathsPerSplit;
+        }
+
+        @Override
+        protected PathCountSummary compute() {
+            if (to - from <= pathsPerSplit) {
+                PathCountSummary summary = new PathCountSummary();
+                for (int i = from; i < to; i++) {
+                    summary.add(relationPaths.get(i));
+                }
+                return summary;
             }
+            int mid = (from + to) >>> 1;
+            SummarizeTask second = new SummarizeTask(relationPaths, mid, to,
+                    pathsPerSplit);
+            second.fork();
+            PathCountSummary summary = new SummarizeTask(relationPaths, from,
+                    mid, pathsPerSplit).compute();
+            summary.merge(second.join());
+            return summary;
         }
     }
 
@@ -1,7 +1,13 @@
 package synoptic.invariants.miners;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -15,7 +21,6 @@ import synoptic.invariants.constraints.LowerBoundConstraint;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.constraints.UpperBoundConstraint;
 import synoptic.model.ChainsTraceGraph;
-import synoptic.model.EventNode;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -37,23 +42,45 @@ import synoptic.util.time.ITime;
  * <p>
  * Uses other totally ordered invariant miners to first mine the unconstrained
  * invariants (if not given these explicitly). Mines constraints for these
- * unconstrained invariants by walking the trace directly. Walking the trace
- * consists of traversing the log for every constrained AFby, AP, and IntrBy
- * invariant. Each traversal finds a lower bound and upper bound constraint for
- * an unconstrained invariant. Two constrained invariants are then created (for
- * lower bound and upper bound) and added in the resulting constrained invariant
- * set.
+ * unconstrained invariants by walking the trace directly. The log is walked
+ * once for all constrained AFby, AP, and IntrBy invariants (see
+ * PathConstraintSummary), which finds a lower bound and upper bound constraint
+ * for each of these unconstrained invariants. Two constrained invariants are
+ * then created (for lower bound and upper bound) and added in the resulting
+ * constrained invariant set.
+ * </p>
+ * <p>
+ * With more than one thread, the relation paths are walked in a fork-join
+ * pool, and the bounds of the paths are merged. The mined invariants are the
+ * same.
  * </p>
  */
 public class ConstrainedInvMiner extends InvariantMiner {
 
-    // Stores generated RelationPaths
-    private final Set<IRelationPath> relationPaths;
+    /**
+     * The number of paths below which a split of the paths is walked by a
+     * single task, rather than split further.
+     */
+    private static final int minPathsPerSplit = 64;
+
+    /** The number of threads to walk relation paths with. */
+    private final int numThreads;
+
     // The set of constrained invariants that we will be returning.
     private TemporalInvariantSet constrainedInvs;
 
     public ConstrainedInvMiner() {
-        this.relationPaths = new HashSet<IRelationPath>();
+        this(1);
+    }
+
+    /**
+     * @param numThreads
+     *            the number of threads to walk relation paths with (1 walks
+     *            the paths serially)
+     */
+    public ConstrainedInvMiner(int numThreads) {
+        assert numThreads > 0;
+        this.numThreads = numThreads;
     }
 
     /**
@@ -101,8 +128,14 @@ public class ConstrainedInvMiner extends InvariantMiner {
         // generated constrained invariants.
         this.constrainedInvs = new TemporalInvariantSet();
 
+        // The relation paths of the relations of the invariants. The bounds of
+        // every invariant are computed over all of these paths.
+        Set<String> relations = new LinkedHashSet<String>();
         for (ITemporalInvariant inv : invs.getSet()) {
-            String relation = inv.getRelation();
+            relations.add(inv.getRelation());
+        }
+        List<IRelationPath> relationPaths = new ArrayList<IRelationPath>();
+        for (String relation : relations) {
             boolean isTimeRelation = relation.equals(Event.defTimeRelationStr);
 
             // Loop through the traces.
@@ -124,54 +157,167 @@ public class ConstrainedInvMiner extends InvariantMiner {
             }
         }
 
+        // The event type pairs to bound, as the first types of the pairs by
+        // second type. IntrBy's constraints are between a&a, not a&b. If
+        // an invariant contains INITIAL node, we can't compute bound
+        // constraints.
+        Map<EventType, Set<EventType>> firstsBySecond = new LinkedHashMap<EventType, Set<EventType>>();
+        Set<EventType> firsts = new LinkedHashSet<EventType>();
+        for (ITemporalInvariant inv : invs.getSet()) {
+            if (!isConstrainable(inv)) {
+                continue;
+            }
+            EventType a = ((BinaryInvariant) inv).getFirst();
+            EventType b = getSecondPredicate((BinaryInvariant) inv);
+            if (!firstsBySecond.containsKey(b)) {
+                firstsBySecond.put(b, new LinkedHashSet<EventType>());
+            }
+            firstsBySecond.get(b).add(a);
+            firsts.add(a);
+        }
+        PathConstraintSummary summary = summarize(relationPaths,
+                firstsBySecond, firsts);
+
         for (ITemporalInvariant inv : invs.getSet()) {
             if (inv instanceof NeverFollowedInvariant) {
                 constrainedInvs.add(inv);
             }
 
-            if (!(inv instanceof AlwaysFollowedInvariant
-                    || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant)) {
+            if (!isConstrainable(inv)) {
                 continue;
             }
-            computeInvariants((BinaryInvariant) inv);
+            computeInvariants((BinaryInvariant) inv, summary);
         }
 
-        relationPaths.clear();
         return constrainedInvs;
     }
 
     /**
-     * Walks each relation path to compute a lower and upper bound constraint
-     * for the given invariant. Augments the given invariant with the two
-     * constraints and returns them within a TemporalInvariantSet.
+     * Returns whether inv is an AFby, AP, or IntrBy invariant whose first
+     * predicate is not INITIAL.
+     */
+    private static boolean isConstrainable(ITemporalInvariant inv) {
+        if (!(inv instanceof AlwaysFollowedInvariant
+                || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant)) {
+            return false;
+        }
+        return !((BinaryInvariant) inv).getFirst().isInitialEventType();
+    }
+
+    /**
+     * Returns the event type whose events' times, minus the times of earlier
+     * events of the first predicate, bound inv: the first predicate for IntrBy
+     * (between a&a), and the second predicate otherwise (between a&b).
+     */
+    private static EventType getSecondPredicate(BinaryInvariant inv) {
+        if (inv instanceof InterruptedByInvariant) {
+            return inv.getFirst();
+        }
+        return inv.getSecond();
+    }
+
+    /**
+     * Returns the summary of the deltas of relationPaths, which is computed in
+     * a fork-join pool of numThreads threads if there are enough paths to
+     * split.
+     */
+    private PathConstraintSummary summarize(List<IRelationPath> relationPaths,
+            Map<EventType, Set<EventType>> firstsBySecond,
+            Set<EventType> firsts) {
+        if (numThreads == 1 || relationPaths.size() < 2 * minPathsPerSplit) {
+            return new SummarizeTask(relationPaths, firstsBySecond, firsts, 0,
+                    relationPaths.size(), relationPaths.size()).compute();
+        }
+        // Split into a few tasks per thread, to balance the load when the
+        // paths have different lengths.
+        int pathsPerSplit = Math.max(minPathsPerSplit, relationPaths.size()
+                / (4 * numThreads));
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            return pool.invoke(new SummarizeTask(relationPaths,
+                    firstsBySecond, firsts, 0, relationPaths.size(),
+                    pathsPerSplit));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Summarizes the deltas of the paths in [from, to) of a list of paths, by
+     * recursively summarizing the two halves of the range in parallel and
+     * merging their summaries, until the range has at most pathsPerSplit
+     * paths.
+     */
+    private static final class SummarizeTask extends
+            RecursiveTask<PathConstraintSummary> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<IRelationPath> relationPaths;
+        private final Map<EventType, Set<EventType>> firstsBySecond;
+        private final Set<EventType> firsts;
+        private final int from;
+        private final int to;
+        private final int pathsPerSplit;
+
+        SummarizeTask(List<IRelationPath> relationPaths,
+                Map<EventType, Set<EventType>> firstsBySecond,
+                Set<EventType> firsts, int from, int to, int pathsPerSplit) {
+            this.relationPaths = relationPaths;
+            this.firstsBySecond = firstsBySecond;
+            this.firsts = firsts;
+            this.from = from;
+            this.to = to;
+            this.pathsPerSplit = pathsPerSplit;
+        }
+
+        @Override
+        protected PathConstraintSummary compute() {
+            if (to - from <= pathsPerSplit) {
+                PathConstraintSummary summary = new PathConstraintSummary(
+                        firstsBySecond, firsts);
+                for (int i = from; i < to; i++) {
+                    summary.add(relationPaths.get(i));
+                }
+                return summary;
+            }
+            int mid = (from + to) >>> 1;
+            SummarizeTask second = new SummarizeTask(relationPaths,
+                    firstsBySecond, firsts, mid, to, pathsPerSplit);
+            second.fork();
+            PathConstraintSummary summary = new SummarizeTask(relationPaths,
+                    firstsBySecond, firsts, from, mid, pathsPerSplit)
+                    .compute();
+            summary.merge(second.join());
+            return summary;
+        }
+    }
+
+    /**
+     * Looks up the lower and upper bound constraint of the given invariant in
+     * the summary of the relation paths. Augments the given invariant with the
+     * two constraints and adds them to the constrained invariants.
      * 
      * @param inv
      *            the invariant that is being augmented with constraints
+     * @param summary
+     *            the deltas of all relation paths
      */
-    public void computeInvariants(BinaryInvariant inv) {
+    private void computeInvariants(BinaryInvariant inv,
+            PathConstraintSummary summary) {
 
-        assert (inv instanceof AlwaysFollowedInvariant
-                || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant);
+        assert isConstrainable(inv);
 
-        EventType a = inv.getFirst();
-        EventType b = inv.getSecond();
-
-        // If invariant contains INITIAL node, we can't compute bound
-        // constraints.
-        if (a.isInitialEventType()) {
-            return;
-        }
+        // The bounds are null if the log has no (a,b) pair.
+        ITime[] bounds = summary.getBounds(inv.getFirst(),
+                getSecondPredicate(inv));
+        ITime lowerBound = bounds == null ? null : bounds[0];
+        ITime upperBound = bounds == null ? null : bounds[1];
 
         // constraints.left represents lower bound constraint.
         // constraints.right represents upper bound constraint.
-        Pair<IThresholdConstraint, IThresholdConstraint> constraints;
-
-        if (inv instanceof InterruptedByInvariant) {
-            // IntrBy's constraints are between a&a, not a&b
-            constraints = computeUpperLowerConstraints(a, a, true);
-        } else {
-            constraints = computeUpperLowerConstraints(a, b, false);
-        }
+        Pair<IThresholdConstraint, IThresholdConstraint> constraints = new Pair<IThresholdConstraint, IThresholdConstraint>(
+                new LowerBoundConstraint(lowerBound), new UpperBoundConstraint(
+                        upperBound));
 
         // Create two TempConstrainedInvariant objects using the lower bound and
         // upper bound computed.
@@ -190,113 +336,4 @@ public class ConstrainedInvMiner extends InvariantMiner {
         constrainedInvs.add(lowerConstrInv);
         constrainedInvs.add(upperConstrInv);
     }
-
-    /**
-     * Walks each relationPath and checks for nodes either of EventType a or b.
-     * Uses ITime values of these nodes to update and compute a lower and upper
-     * bound constraint for an invariant with predicates a and b. The algorithm
-     * for computing the bounds is as follows: For every type 'a' in each path,
-     * walk all subsequent nodes and retrieve the delta to this node (if 'a' or
-     * 'b' pair). For lower bound, take the minimal value of all deltas, and the
-     * max value for the upper bound. Returns the computed lower and upper bound
-     * constraints as a pair. The left is the lower bound constraint and the
-     * right is the upper bound constraint. This method provides an additional
-     * param to the overloaded computeConstraints method: The IntrBy varies as
-     * it must compute lower bounds between two a's. The upper bound is also
-     * computed that way, but can reuse the original implementation. TODO:
-     * refactor this at some point
-     * 
-     * @param a
-     *            first invariant predicate
-     * @param b
-     *            second invariant predicate
-     * @param betweenFirstAndFirstPredicate
-     *            If the invariant's bounds are calculated between two instances
-     *            of the first predicate (between a&a) instead of between an
-     *            instance of the first predicate and an instance of the second
-     *            predicate (between a&b). This currently only applies to
-     *            IntrBy.
-     * @return IThresholdConstraint pair where the left represents the lower
-     *         bound constraint and the right represents the upper bound
-     *         constraint
-     */
-    private Pair<IThresholdConstraint, IThresholdConstraint> computeUpperLowerConstraints(
-            EventType a, EventType b, boolean betweenFirstAndFirstPredicate) {
-
-        ITime lowerBound = null;
-        ITime upperBound = null;
-
-        // For each relationPath.
-        // Go through each node in path.
-        // Find nodes that match event types for invariant.
-        // Find upperBound.
-        // Find lowerBound
-        // create ConstrainedInvariants.
-        for (IRelationPath relationPath : relationPaths) {
-            EventNode start = relationPath.getFirstNode();
-            EventNode end = relationPath.getLastNode();
-
-            EventNode curr = start;
-
-            // Iterate over each node in path
-            while (true) {
-                // Reached ending node in path.
-                if (curr.equals(end)) {
-                    break;
-                }
-
-                // Current node we're at as we walk the trace.
-                assert (curr.getAllTransitions().size() == 1);
-                EventNode next = curr.getAllTransitions().get(0).getTarget();
-
-                // for each node (of type a, else there will be no bound), walk
-                // every subsequent node and check bounds
-                while (curr.getEType().equals(a)) {
-                    // Found (a,a) pair, compute constraints (IntrBy)
-                    if (next.getEType().equals(a)
-                            && betweenFirstAndFirstPredicate) {
-                        ITime delta = next.getTime().computeDelta(
-                                curr.getTime());
-                        if (lowerBound == null || delta.lessThan(lowerBound)) {
-                            lowerBound = delta;
-                        }
-
-                        if (upperBound == null || upperBound.lessThan(delta)) {
-                            upperBound = delta;
-                        }
-                    }
-
-                    // Found (a,b) pair, compute constraints
-                    if (next.getEType().equals(b)
-                            && !betweenFirstAndFirstPredicate) {
-                        ITime delta = next.getTime().computeDelta(
-                                curr.getTime());
-                        if (lowerBound == null || delta.lessThan(lowerBound)) {
-                            lowerBound = delta;
-                        }
-
-                        if (upperBound == null || upperBound.lessThan(delta)) {
-                            upperBound = delta;
-                        }
-                    }
-
-                    // Reached ending node in path.
-                    if (next.equals(end)) {
-                        break;
-                    }
-
-                    assert (next.getAllTransitions().size() == 1);
-                    next = next.getAllTransitions().get(0).getTarget();
-                }
-
-                assert (curr.getAllTransitions().size() == 1);
-                curr = curr.getAllTransitions().get(0).getTarget();
-            }
-        }
-
-        IThresholdConstraint l = new LowerBoundConstraint(lowerBound);
-        IThresholdConstraint u = new UpperBoundConstraint(upperBound);
-
-        return new Pair<IThresholdConstraint, IThresholdConstraint>(l, u);
-    }
 }
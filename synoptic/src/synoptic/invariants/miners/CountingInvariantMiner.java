@@ -72,77 +72,27 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                     if (gEventCoOccurrences == null
                             || !alwaysConcurrentWith(gFollowedByCnts,
                                     gEventCoOccurrences, e1, e2)) {
-                        if (multipleRelations) {
-                            NFBiRelationInvariant invariant = new NFBiRelationInvariant(
-                                    e1, e2, relation, Event.defTimeRelationStr);
-                            if (supportCount) {
-                                invariant
-                                        .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
-                            }
-                            invariants.add(invariant);
-                        } else {
-
-                            NeverFollowedInvariant invariant = new NeverFollowedInvariant(
-                                    e1, e2, relation);
-                            if (supportCount) {
-                                invariant
-                                        .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
-                            }
-                            invariants.add(invariant);
-                        }
+                        invariants.add(newNeverFollowedBy(relation, e1, e2,
+                                multipleRelations, supportCount,
+                                gEventCnts.get(e1)));
                     }
                 }
 
                 if (alwaysFollowedBy(gEventCnts, gFollowedByCnts, e1, e2)) {
-                    if (multipleRelations) {
-
-                        AFBiRelationInvariant invariant = new AFBiRelationInvariant(
-                                e1, e2, relation, Event.defTimeRelationStr);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
-                        }
-                        invariants.add(invariant);
-
-                    } else {
-                        AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
-                                e1, e2, relation);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
-                        }
-                        invariants.add(invariant);
-                    }
+                    invariants.add(newAlwaysFollowedBy(relation, e1, e2,
+                            multipleRelations, supportCount,
+                            gEventCnts.get(e1)));
                 }
 
                 if (alwaysPrecedes(gEventCnts, gPrecedesCnts, e1, e2)) {
-                    if (multipleRelations) {
-                        APBiRelationInvariant invariant = new APBiRelationInvariant(
-                                e1, e2, relation, Event.defTimeRelationStr);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
-                        }
-                        invariants.add(invariant);
-                    } else {
-                        AlwaysPrecedesInvariant invariant = new AlwaysPrecedesInvariant(
-                                e1, e2, relation);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
-                        }
-                        invariants.add(invariant);
-                    }
+                    invariants.add(newAlwaysPrecedes(relation, e1, e2,
+                            multipleRelations, supportCount,
+                            gEventCnts.get(e2)));
                 }
 
                 if (interruptedBy(gPossibleInterrupts, e1, e2)) {
-                    if (multipleRelations) {
-                        throw new NotImplementedException();
-                    }
-                    invariants
-                            .add(new InterruptedByInvariant(e1, e2, relation));
+                    invariants.add(newInterruptedBy(relation, e1, e2,
+                            multipleRelations));
                 }
             }
         }
@@ -150,29 +100,117 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         // Determine all the INITIAL AFby x invariants to represent
         // "eventually x"
         for (EventType label : AlwaysFollowsINITIALSet) {
-            if (multipleRelations) {
-                AFBiRelationInvariant invariant = new AFBiRelationInvariant(
-                        StringEventType.newInitialStringEventType(), label,
-                        relation);
-                if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
-                }
-                invariants.add(invariant);
-            } else {
-                AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
-                        StringEventType.newInitialStringEventType(), label,
-                        relation);
-                if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
-                }
-                invariants.add(invariant);
-            }
+            invariants.add(newEventually(relation, label, multipleRelations,
+                    supportCount, gEventCnts.get(label)));
         }
         return invariants;
     }
 
+    /**
+     * Returns a new e1 NFby e2 invariant over relation, with the given support
+     * count if supportCount is set.
+     */
+    protected static ITemporalInvariant newNeverFollowedBy(String relation,
+            EventType e1, EventType e2, boolean multipleRelations,
+            boolean supportCount, int support) {
+        if (multipleRelations) {
+            NFBiRelationInvariant invariant = new NFBiRelationInvariant(e1, e2,
+                    relation, Event.defTimeRelationStr);
+            if (supportCount) {
+                invariant.setStatistics(new InvariantStatistics(support));
+            }
+            return invariant;
+        }
+        NeverFollowedInvariant invariant = new NeverFollowedInvariant(e1, e2,
+                relation);
+        if (supportCount) {
+            invariant.setStatistics(new InvariantStatistics(support));
+        }
+        return invariant;
+    }
+
+    /**
+     * Returns a new e1 AFby e2 invariant over relation, with the given support
+     * count if supportCount is set.
+     */
+    protected static ITemporalInvariant newAlwaysFollowedBy(String relation,
+            EventType e1, EventType e2, boolean multipleRelations,
+            boolean supportCount, int support) {
+        if (multipleRelations) {
+            AFBiRelationInvariant invariant = new AFBiRelationInvariant(e1, e2,
+                    relation, Event.defTimeRelationStr);
+            if (supportCount) {
+                invariant.setStatistics(new InvariantStatistics(support));
+            }
+            return invariant;
+        }
+        AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(e1, e2,
+                relation);
+        if (supportCount) {
+            invariant.setStatistics(new InvariantStatistics(support));
+        }
+        return invariant;
+    }
+
+    /**
+     * Returns a new e1 AP e2 invariant over relation, with the given support
+     * count if supportCount is set.
+     */
+    protected static ITemporalInvariant newAlwaysPrecedes(String relation,
+            EventType e1, EventType e2, boolean multipleRelations,
+            boolean supportCount, int support) {
+        if (multipleRelations) {
+            APBiRelationInvariant invariant = new APBiRelationInvariant(e1, e2,
+                    relation, Event.defTimeRelationStr);
+            if (supportCount) {
+                invariant.setStatistics(new InvariantStatistics(support));
+            }
+            return invariant;
+        }
+        AlwaysPrecedesInvariant invariant = new AlwaysPrecedesInvariant(e1, e2,
+                relation);
+        if (supportCount) {
+            invariant.setStatistics(new InvariantStatistics(support));
+        }
+        return invariant;
+    }
+
+    /**
+     * Returns a new e1 IntrBy e2 invariant over relation.
+     */
+    protected static ITemporalInvariant newInterruptedBy(String relation,
+            EventType e1, EventType e2, boolean multipleRelations) {
+        if (multipleRelations) {
+            throw new NotImplementedException();
+        }
+        return new InterruptedByInvariant(e1, e2, relation);
+    }
+
+    /**
+     * Returns a new INITIAL AFby label invariant over relation, which
+     * represents "eventually label", with the given support count if
+     * supportCount is set.
+     */
+    protected static ITemporalInvariant newEventually(String relation,
+            EventType label, boolean multipleRelations, boolean supportCount,
+            int support) {
+        if (multipleRelations) {
+            AFBiRelationInvariant invariant = new AFBiRelationInvariant(
+                    StringEventType.newInitialStringEventType(), label,
+                    relation);
+            if (supportCount) {
+                invariant.setStatistics(new InvariantStatistics(support));
+            }
+            return invariant;
+        }
+        AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
+                StringEventType.newInitialStringEventType(), label, relation);
+        if (supportCount) {
+            invariant.setStatistics(new InvariantStatistics(support));
+        }
+        return invariant;
+    }
+
     /**
      * Returns true if and only if <code>e1</code> gets interrupted by
      * <code>e2</code>.
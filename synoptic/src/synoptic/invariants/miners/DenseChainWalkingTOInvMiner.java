@@ -0,0 +1,226 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Trace;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventTypeInterner;
+import synoptic.model.interfaces.IRelationPath;
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * A variant of {@link ChainWalkingTOInvMiner} that mines the same invariants
+ * -- AFby, AP, NFby, IntrBy, and INITIAL AFby x -- from the same counts, but
+ * keeps the counts in arrays rather than in maps keyed by event type. The
+ * event types of the log are first interned to dense int ids, and each
+ * relation path is translated to the sequence of ids of its events' types.
+ * The followed-by and precedes counts are then accumulated into int matrices
+ * indexed by pairs of ids, and the types seen in a path, and the types that
+ * possibly interrupt a type, are kept as bit sets over the ids.
+ * <p>
+ * Paths over a relation other than the time relation, when mining
+ * bi-relational invariants, are not chains over the relation, and are mined
+ * by ChainWalkingTOInvMiner.
+ * </p>
+ */
+public class DenseChainWalkingTOInvMiner extends ChainWalkingTOInvMiner {
+
+    @Override
+    public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
+            String relation, boolean multipleRelations, boolean supportCount) {
+        if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
+            return super.computeInvariants(g, relation, multipleRelations,
+                    supportCount);
+        }
+
+        // Intern the event types, and translate the relation paths to
+        // sequences of event type ids.
+        EventTypeInterner eTypes = new EventTypeInterner();
+        List<int[]> paths = new ArrayList<int[]>();
+        for (Trace trace : g.getTraces()) {
+            Set<IRelationPath> subgraphs = trace
+                    .getSingleRelationPaths(relation);
+            if (relation.equals(Event.defTimeRelationStr)
+                    && subgraphs.size() != 1) {
+                throw new IllegalStateException(
+                        "Multiple relation subraphs for ordering relation graph");
+            }
+            for (IRelationPath path : subgraphs) {
+                paths.add(internPath(path, relation, eTypes));
+            }
+        }
+
+        int n = eTypes.size();
+        int words = (n + 63) >>> 6;
+
+        // Counts across all paths. followedByCnts[a * n + b] is the number of
+        // a's followed by a b, and precedesCnts[a * n + b] is the number of
+        // b's preceded by an a.
+        int[] eventCnts = new int[n];
+        int[] followedByCnts = new int[n * n];
+        int[] precedesCnts = new int[n * n];
+        // The types that interrupt each type in every path, or null for types
+        // that never occur twice in a path.
+        long[][] possibleInterrupts = new long[n][];
+        // The types that occur in every path.
+        long[] alwaysFollowsInitial = null;
+
+        // Per-path state, which is reset at the end of each path.
+        int[] pathCnts = new int[n];
+        int[] pathFollowedByCnts = new int[n * n];
+        int[] lastPos = new int[n];
+        long[][] pathInterrupts = new long[n][];
+        long[] seen = new long[words];
+        int[] seenList = new int[n];
+
+        for (int[] path : paths) {
+            int numSeen = 0;
+            for (int i = 0; i < path.length; i++) {
+                int b = path[i];
+                for (int j = 0; j < numSeen; j++) {
+                    int ab = seenList[j] * n + b;
+                    precedesCnts[ab]++;
+                    // The a's followed by a b in this path are exactly the
+                    // a's before the last b.
+                    int cnt = pathCnts[seenList[j]];
+                    followedByCnts[ab] += cnt - pathFollowedByCnts[ab];
+                    pathFollowedByCnts[ab] = cnt;
+                }
+
+                if (pathCnts[b] != 0) {
+                    // The types between this b and the previous b possibly
+                    // interrupt b.
+                    long[] between = new long[words];
+                    for (int p = lastPos[b] + 1; p < i; p++) {
+                        between[path[p] >>> 6] |= 1L << path[p];
+                    }
+                    if (pathInterrupts[b] == null) {
+                        pathInterrupts[b] = between;
+                    } else {
+                        and(pathInterrupts[b], between);
+                    }
+                }
+
+                if ((seen[b >>> 6] & (1L << b)) == 0) {
+                    seen[b >>> 6] |= 1L << b;
+                    seenList[numSeen++] = b;
+                }
+                pathCnts[b]++;
+                lastPos[b] = i;
+            }
+
+            for (int j = 0; j < numSeen; j++) {
+                int a = seenList[j];
+                eventCnts[a] += pathCnts[a];
+                pathCnts[a] = 0;
+                for (int k = 0; k < numSeen; k++) {
+                    pathFollowedByCnts[a * n + seenList[k]] = 0;
+                }
+                if (pathInterrupts[a] != null) {
+                    if (possibleInterrupts[a] == null) {
+                        possibleInterrupts[a] = pathInterrupts[a];
+                    } else {
+                        and(possibleInterrupts[a], pathInterrupts[a]);
+                    }
+                    pathInterrupts[a] = null;
+                }
+            }
+
+            if (alwaysFollowsInitial == null) {
+                alwaysFollowsInitial = seen.clone();
+            } else {
+                and(alwaysFollowsInitial, seen);
+            }
+            for (int j = 0; j < numSeen; j++) {
+                seen[seenList[j] >>> 6] = 0;
+            }
+        }
+
+        Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
+        for (int e1 = 0; e1 < n; e1++) {
+            for (int e2 = 0; e2 < n; e2++) {
+                int fby = followedByCnts[e1 * n + e2];
+                if (fby == 0) {
+                    invariants.add(newNeverFollowedBy(relation,
+                            eTypes.getEventType(e1), eTypes.getEventType(e2),
+                            multipleRelations, supportCount, eventCnts[e1]));
+                }
+                if (fby == eventCnts[e1]) {
+                    invariants.add(newAlwaysFollowedBy(relation,
+                            eTypes.getEventType(e1), eTypes.getEventType(e2),
+                            multipleRelations, supportCount, eventCnts[e1]));
+                }
+                if (precedesCnts[e1 * n + e2] == eventCnts[e2]) {
+                    invariants.add(newAlwaysPrecedes(relation,
+                            eTypes.getEventType(e1), eTypes.getEventType(e2),
+                            multipleRelations, supportCount, eventCnts[e2]));
+                }
+                if (possibleInterrupts[e1] != null
+                        && (possibleInterrupts[e1][e2 >>> 6] & (1L << e2)) != 0) {
+                    invariants.add(newInterruptedBy(relation,
+                            eTypes.getEventType(e1), eTypes.getEventType(e2),
+                            multipleRelations));
+                }
+            }
+        }
+
+        // Determine all the INITIAL AFby x invariants to represent
+        // "eventually x"
+        for (int e = 0; alwaysFollowsInitial != null && e < n; e++) {
+            if ((alwaysFollowsInitial[e >>> 6] & (1L << e)) != 0) {
+                invariants.add(newEventually(relation, eTypes.getEventType(e),
+                        multipleRelations, supportCount, eventCnts[e]));
+            }
+        }
+        return new TemporalInvariantSet(invariants);
+    }
+
+    /**
+     * Returns the ids of the types of the events in path, in order, interning
+     * the types in eTypes. Walks the path in the same way as
+     * ChainRelationPath.
+     */
+    private static int[] internPath(IRelationPath path, String relation,
+            EventTypeInterner eTypes) {
+        Set<String> relationSet = new HashSet<String>();
+        relationSet.add(relation);
+        EventNode curNode = path.getFirstNode();
+        EventNode eFinal = path.getLastNode();
+
+        int[] ids = new int[16];
+        int length = 0;
+        List<? extends ITransition<EventNode>> transitions = curNode
+                .getTransitionsWithIntersectingRelations(relationSet);
+        while (!transitions.isEmpty() || curNode.equals(eFinal)) {
+            if (length == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * length);
+            }
+            ids[length++] = eTypes.intern(curNode.getEType());
+            if (curNode.equals(eFinal)) {
+                break;
+            }
+            curNode = transitions.get(0).getTarget();
+            transitions = curNode
+                    .getTransitionsWithIntersectingRelations(relationSet);
+        }
+        return Arrays.copyOf(ids, length);
+    }
+
+    /**
+     * Sets dst to the intersection of dst and src.
+     */
+    private static void and(long[] dst, long[] src) {
+        for (int i = 0; i < dst.length; i++) {
+            dst[i] &= src[i];
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package synoptic.invariants.miners;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+import synoptic.util.time.ITime;
+import synoptic.util.time.NonComparableTimesException;
+import synoptic.util.time.TotalTimeType;
+import synoptic.util.time.WrongTimeTypeException;
+
+/**
+ * The smallest and largest time deltas between pairs of event types in a
+ * number of relation paths, for ConstrainedInvMiner. A delta of a pair (a, b)
+ * is the time of a b event minus the time of an earlier a event in the same
+ * path. Each path is walked once for all pairs: for every event whose type is
+ * the second type of a pair, the smallest delta is to the latest earlier event
+ * of the first type, and the largest delta is to the earliest one.
+ * <p>
+ * The deltas of each path are independent of the other paths', so the
+ * summaries of runs of paths can be computed separately and merged.
+ * <p>
+ * The times must all be of one TotalTimeType, and are handled in their
+ * encoded form (see TotalTimeType), so that no time objects are created for
+ * the deltas.
+ */
+final class PathConstraintSummary {
+    /**
+     * The first types of the pairs, by second type. Shared by all summaries
+     * of a mining run, and not modified.
+     */
+    private final Map<EventType, Set<EventType>> firstsBySecond;
+    /** The types that are the first type of a pair. */
+    private final Set<EventType> firsts;
+    /** The smallest and largest delta of each pair, by second type. */
+    private final Map<EventType, Map<EventType, long[]>> bounds = new HashMap<EventType, Map<EventType, long[]>>();
+    /** The type of the times, or null if no time has been seen yet. */
+    private TotalTimeType timeType;
+
+    PathConstraintSummary(Map<EventType, Set<EventType>> firstsBySecond,
+            Set<EventType> firsts) {
+        this.firstsBySecond = firstsBySecond;
+        this.firsts = firsts;
+    }
+
+    /**
+     * Adds the deltas of relationPath to this summary.
+     */
+    void add(IRelationPath relationPath) {
+        // The earliest and latest times of the events of each first type seen
+        // so far in the path.
+        Map<EventType, long[]> seen = new HashMap<EventType, long[]>();
+        EventNode curr = relationPath.getFirstNode();
+        EventNode end = relationPath.getLastNode();
+        while (true) {
+            EventType eType = curr.getEType();
+            Set<EventType> pairedFirsts = firstsBySecond.get(eType);
+            boolean isFirst = firsts.contains(eType);
+            if (pairedFirsts != null || isFirst) {
+                long time = encode(curr.getTime());
+                if (pairedFirsts != null) {
+                    for (EventType first : pairedFirsts) {
+                        long[] firstTimes = seen.get(first);
+                        if (firstTimes != null) {
+                            update(first, eType,
+                                    timeType.computeDelta(time, firstTimes[1]),
+                                    timeType.computeDelta(time, firstTimes[0]));
+                        }
+                    }
+                }
+                // An (a, a) pair is only bounded by earlier a events, so
+                // the event is recorded after its deltas are taken.
+                if (isFirst) {
+                    long[] times = seen.get(eType);
+                    if (times == null) {
+                        seen.put(eType, new long[] { time, time });
+                    } else {
+                        if (timeType.lessThan(time, times[0])) {
+                            times[0] = time;
+                        }
+                        if (timeType.lessThan(times[1], time)) {
+                            times[1] = time;
+                        }
+                    }
+                }
+            }
+
+            if (curr.equals(end)) {
+                break;
+            }
+            assert (curr.getAllTransitions().size() == 1);
+            curr = curr.getAllTransitions().get(0).getTarget();
+        }
+    }
+
+    /**
+     * Merges the deltas of other, a summary of other paths, into this
+     * summary.
+     */
+    void merge(PathConstraintSummary other) {
+        if (other.timeType == null) {
+            return;
+        }
+        if (timeType == null) {
+            timeType = other.timeType;
+        } else if (timeType != other.timeType) {
+            throw new NonComparableTimesException(timeType.decode(0),
+                    other.timeType.decode(0));
+        }
+        for (Map.Entry<EventType, Map<EventType, long[]>> bySecond : other.bounds
+                .entrySet()) {
+            for (Map.Entry<EventType, long[]> byFirst : bySecond.getValue()
+                    .entrySet()) {
+                long[] deltas = byFirst.getValue();
+                update(byFirst.getKey(), bySecond.getKey(), deltas[0],
+                        deltas[1]);
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest and largest delta of the pair (first, second), or
+     * null if no path has an event of the first type followed by an event of
+     * the second type.
+     */
+    ITime[] getBounds(EventType first, EventType second) {
+        Map<EventType, long[]> byFirst = bounds.get(second);
+        long[] deltas = byFirst == null ? null : byFirst.get(first);
+        if (deltas == null) {
+            return null;
+        }
+        return new ITime[] { timeType.decode(deltas[0]),
+                timeType.decode(deltas[1]) };
+    }
+
+    /**
+     * Returns the encoding of time, which must be of the same TotalTimeType
+     * as the times seen before.
+     */
+    private long encode(ITime time) {
+        TotalTimeType type = TotalTimeType.of(time);
+        if (type == null) {
+            throw new WrongTimeTypeException();
+        }
+        if (timeType == null) {
+            timeType = type;
+        } else if (type != timeType) {
+            throw new NonComparableTimesException(timeType.decode(0), time);
+        }
+        return type.encode(time);
+    }
+
+    private void update(EventType first, EventType second, long lower,
+            long upper) {
+        Map<EventType, long[]> byFirst = bounds.get(second);
+        if (byFirst == null) {
+            byFirst = new HashMap<EventType, long[]>();
+            bounds.put(second, byFirst);
+        }
+        long[] deltas = byFirst.get(first);
+        if (deltas == null) {
+            byFirst.put(first, new long[] { lower, upper });
+            return;
+        }
+        if (timeType.lessThan(lower, deltas[0])) {
+            deltas[0] = lower;
+        }
+        if (timeType.lessThan(deltas[1], upper)) {
+            deltas[1] = upper;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package synoptic.invariants.miners;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * Summarizes the counts that ChainWalkingTOInvMiner mines invariants from --
+ * event counts, followed-by and precedes counts, possible interrupts, and the
+ * event types seen in every path -- over a sequence of relation paths. Each
+ * path's counts are independent of the other paths', so the summaries of
+ * consecutive runs of paths can be computed separately and merged: merging the
+ * summary of paths p1..pi with the summary of paths pi+1..pn results in the
+ * summary of p1..pn, including the iteration order of its maps.
+ */
+final class PathCountSummary {
+    /** The event types seen in the paths, in the order first seen. */
+    final Set<EventType> eTypes = new LinkedHashSet<EventType>();
+    /** Event counts across the paths. */
+    final Map<EventType, Integer> eventCnts = new LinkedHashMap<EventType, Integer>();
+    /** Followed-by counts across the paths. */
+    final Map<EventType, Map<EventType, Integer>> followedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+    /** Precedes counts across the paths. */
+    final Map<EventType, Map<EventType, Integer>> precedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
+    /**
+     * The types that interrupt each type in every path in which the type
+     * occurs twice.
+     */
+    final Map<EventType, Set<EventType>> possibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
+    /**
+     * The event types seen in every path, or null if no paths have been
+     * added.
+     */
+    Set<EventType> alwaysFollowsInitial = null;
+
+    /**
+     * Adds the counts of relationPath to this summary.
+     */
+    void add(IRelationPath relationPath) {
+        eTypes.addAll(relationPath.getSeen());
+        addCounts(relationPath.getEventCounts(), eventCnts);
+        addPairCounts(relationPath.getFollowedByCounts(), followedByCnts);
+        addPairCounts(relationPath.getPrecedesCounts(), precedesCnts);
+        intersectInterrupts(relationPath.getPossibleInterrupts());
+        intersectSeen(relationPath.getSeen());
+    }
+
+    /**
+     * Adds the counts of the paths summarized by other, which must follow the
+     * paths summarized by this summary, to this summary.
+     */
+    void merge(PathCountSummary other) {
+        eTypes.addAll(other.eTypes);
+        addCounts(other.eventCnts, eventCnts);
+        addPairCounts(other.followedByCnts, followedByCnts);
+        addPairCounts(other.precedesCnts, precedesCnts);
+        intersectInterrupts(other.possibleInterrupts);
+        if (other.alwaysFollowsInitial != null) {
+            intersectSeen(other.alwaysFollowsInitial);
+        }
+    }
+
+    /**
+     * Prunes possibleInterrupts, retaining only the interrupts that are valid
+     * in src as well. The sets of src are not modified.
+     */
+    private void intersectInterrupts(Map<EventType, Set<EventType>> src) {
+        for (EventType et : src.keySet()) {
+            Set<EventType> interrupts = possibleInterrupts.get(et);
+            if (interrupts != null) {
+                interrupts.retainAll(src.get(et));
+            } else {
+                possibleInterrupts.put(et,
+                        new LinkedHashSet<EventType>(src.get(et)));
+            }
+        }
+    }
+
+    private void intersectSeen(Set<EventType> seen) {
+        if (alwaysFollowsInitial == null) {
+            alwaysFollowsInitial = new LinkedHashSet<EventType>(seen);
+        } else {
+            alwaysFollowsInitial.retainAll(seen);
+        }
+    }
+
+    private static void addCounts(Map<EventType, Integer> src,
+            Map<EventType, Integer> dst) {
+        for (Map.Entry<EventType, Integer> entry : src.entrySet()) {
+            Integer count = dst.get(entry.getKey());
+            dst.put(entry.getKey(), count == null ? entry.getValue() : count
+                    + entry.getValue());
+        }
+    }
+
+    private static void addPairCounts(Map<EventType, Map<EventType, Integer>> src,
+            Map<EventType, Map<EventType, Integer>> dst) {
+        for (Map.Entry<EventType, Map<EventType, Integer>> entry : src
+                .entrySet()) {
+            Map<EventType, Integer> dstBValues = dst.get(entry.getKey());
+            if (dstBValues == null) {
+                dstBValues = new LinkedHashMap<EventType, Integer>();
+                dst.put(entry.getKey(), dstBValues);
+            }
+            addCounts(entry.getValue(), dstBValues);
+        }
+    }
+}
@@ -9,7 +9,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import synoptic.algorithms.TransitiveClosure;
+import synoptic.algorithms.ITransitiveClosure;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.AlwaysFollowedInvariant;
@@ -46,10 +46,19 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
 
     /**
      * Whether or not to use iterative version of warshall's algorithm for TC
-     * computation. Yes/true by default.
+     * computation. Yes/true by default. It does not apply to
+     * CompactTransitiveClosures (see useCompactClosure), which are not computed
+     * with Warshall's algorithm, so it must then be left at its default.
      */
     public boolean useWarshall = true;
 
+    /**
+     * Whether or not to mine from CompactTransitiveClosures, which take space
+     * linear in the number of events of totally ordered traces, instead of the
+     * transitive closures computed by the trace graph. No/false by default.
+     */
+    public boolean useCompactClosure = false;
+
     public TransitiveClosureInvMiner() {
         // Empty constructor for testing.
     }
@@ -58,6 +67,16 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         this.useWarshall = useWarshall;
     }
 
+    public TransitiveClosureInvMiner(boolean useWarshall,
+            boolean useCompactClosure) {
+        if (useCompactClosure && !useWarshall) {
+            throw new IllegalArgumentException(
+                    "useWarshall does not apply to compact transitive closures");
+        }
+        this.useWarshall = useWarshall;
+        this.useCompactClosure = useCompactClosure;
+    }
+
     @Override
     public TemporalInvariantSet computeInvariants(DAGsTraceGraph g) {
         return computeTransClosureInvariants(g, true);
@@ -99,7 +118,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
 
             // Compute the transitive closure.
             AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
-                    g);
+                    g, useCompactClosure);
 
             // Get the over-approximation.
             itc.stop();
@@ -115,7 +134,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
             overapproximatedInvariantsSet = new LinkedHashSet<ITemporalInvariant>();
             for (String relation : g.getRelations()) {
                 overapproximatedInvariantsSet.addAll(extractInvariantsFromTC(g,
-                        transitiveClosure.get(relation), relation,
+                        transitiveClosure.getReachability(relation), relation,
                         mineConcurrencyInvariants));
             }
 
@@ -171,7 +190,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
     private EventOrderingSummary summarizeOrderings(
             Map<Integer, List<EventNode>> traceIdToEventNodesE1,
             Map<Integer, List<EventNode>> traceIdToEventNodesE2,
-            TransitiveClosure tc) {
+            ITransitiveClosure tc) {
         EventOrderingSummary order = new EventOrderingSummary();
 
         for (int tid : traceIdToEventNodesE1.keySet()) {
@@ -251,7 +270,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
      * @throws Exception
      */
     private Set<ITemporalInvariant> extractInvariantsFromTC(TraceGraph<?> g,
-            TransitiveClosure tc, String relation,
+            ITransitiveClosure tc, String relation,
             boolean mineConcurrencyInvariants) {
 
         // This maintains the mapping from event type to a map of trace ids ->
@@ -23,6 +23,8 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -30,6 +32,7 @@ import synoptic.invariants.concurrency.NeverConcurrentInvariant;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.invariants.miners.DenseChainWalkingTOInvMiner;
 import synoptic.invariants.miners.IPOInvariantMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
@@ -429,7 +432,9 @@ public abstract class AbstractMain {
 
     /**
      * Parses all the log filenames, constructing and returning a list of parsed
-     * events.
+     * events. With more than one parser thread, the files are parsed
+     * concurrently by TraceParser.parseTraceFiles. The parse throughput is
+     * recorded with PerformanceMetrics.
      * 
      * @param parser
      * @param logFilenames
@@ -439,8 +444,9 @@ public abstract class AbstractMain {
     static public List<EventNode> parseEvents(TraceParser parser,
             List<String> logFilenames) throws Exception {
         long startTime = loggerInfoStart("Parsing input files..");
+        TimedTask parsing = PerformanceMetrics.createTask("parsing", false);
 
-        List<EventNode> parsedEvents = new ArrayList<EventNode>();
+        List<File> allFiles = new ArrayList<File>();
         for (String fileArg : logFilenames) {
             logger.fine("\tprocessing fileArg: " + fileArg);
             File[] files = getFiles(fileArg);
@@ -448,14 +454,43 @@ public abstract class AbstractMain {
                 throw new ParseException(
                         "The set of input files is empty. Please specify a set of existing files to parse.");
             }
-            for (File file : files) {
+            allFiles.addAll(Arrays.asList(files));
+        }
+
+        List<EventNode> parsedEvents;
+        int numThreads = getInstance().options.numParserThreads;
+        if (numThreads > 1) {
+            if (getInstance().options.mapInputFiles) {
+                logger.warning("Ignoring flag --mapInputFiles, which only applies when the input files are parsed serially (--numParserThreads 1).");
+            }
+            logger.fine("\tcalling parseTraceFiles with " + allFiles.size()
+                    + " files and " + numThreads + " threads");
+            parsedEvents = parser.parseTraceFiles(allFiles, -1, numThreads);
+        } else {
+            parsedEvents = new ArrayList<EventNode>();
+            boolean mapInputFiles = getInstance().options.mapInputFiles;
+            for (File file : allFiles) {
                 logger.fine("\tcalling parseTraceFile with file: "
                         + file.getAbsolutePath());
-                parsedEvents.addAll(parser.parseTraceFile(file, -1));
+                if (mapInputFiles) {
+                    parsedEvents.addAll(parser.parseMappedTraceFile(file, -1));
+                } else {
+                    parsedEvents.addAll(parser.parseTraceFile(file, -1));
+                }
             }
         }
+        parsing.stop();
         loggerInfoEnd("Parsing took ", startTime);
 
+        long numBytes = 0;
+        for (File file : allFiles) {
+            numBytes += file.length();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - startTime);
+        PerformanceMetrics.get().record("parseBytes", numBytes);
+        PerformanceMetrics.get().record("parseBytesPerSec",
+                numBytes * 1000 / millis);
+
         return parsedEvents;
     }
 
@@ -495,9 +530,12 @@ public abstract class AbstractMain {
         ITOInvariantMiner miner;
 
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true,
+                    options.compactTransitiveClosure);
+        } else if (options.denseInvMining) {
+            miner = new DenseChainWalkingTOInvMiner();
         } else {
-            miner = new ChainWalkingTOInvMiner();
+            miner = new ChainWalkingTOInvMiner(options.numMinerThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants ["
@@ -537,7 +575,8 @@ public abstract class AbstractMain {
 
         IPOInvariantMiner miner;
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true,
+                    options.compactTransitiveClosure);
         } else {
             miner = new DAGWalkingPOInvMiner(options.mineNeverConcurrentWithInv);
         }
@@ -703,6 +742,9 @@ public abstract class AbstractMain {
         // Create the initial partitioning graph.
         long startTime = loggerInfoStart("Creating initial partition graph.");
         PartitionGraph pGraph = new PartitionGraph(traceGraph, true, minedInvs);
+        if (options.denseGraphView) {
+            pGraph.getDenseView();
+        }
         loggerInfoEnd("Creating partition graph took ", startTime);
         // //////////////////
 
@@ -892,4 +934,17 @@ public abstract class AbstractMain {
                     + (System.currentTimeMillis() - startTime) + "ms");
         }
     }
+
+    /**
+     * Writes the performance metrics recorded so far to the metricsReportFile,
+     * if one was specified.
+     */
+    public void exportMetricsReport() {
+        if (options.metricsReportFile == null) {
+            return;
+        }
+        logger.info("Writing performance metrics report to "
+                + options.metricsReportFile);
+        PerformanceMetrics.get().writeReport(options.metricsReportFile);
+    }
 }
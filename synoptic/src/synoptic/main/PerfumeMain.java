@@ -50,6 +50,7 @@ public class PerfumeMain extends AbstractMain {
             if (pGraph != null) {
                 mainInstance.runSynoptic(pGraph);
             }
+            mainInstance.exportMetricsReport();
         } catch (ParseException e) {
             throw e;
         } catch (Exception e) {
@@ -126,7 +127,8 @@ public class PerfumeMain extends AbstractMain {
 
         // Mine performance-constrained invariants
         long startTime = loggerInfoStart("Mining performance-constrained invariants...");
-        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner();
+        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner(
+                options.numMinerThreads);
 
         // Augment unconstrained invariants with performance information. A
         // 'false' parameter is hard-coded because Perfume does not support the
@@ -48,6 +48,7 @@ public class SynopticMain extends AbstractMain {
             if (pGraph != null) {
                 mainInstance.runSynoptic(pGraph);
             }
+            mainInstance.exportMetricsReport();
         } catch (ParseException e) {
             throw e;
         } catch (Exception e) {
@@ -69,6 +69,30 @@ public class AbstractOptions {
     static final String ignoreIntrByInvsStr = "Ignore IntrBy Invariants. Synoptic currently doesn't support IntrBy Invariants.";
     public boolean ignoreIntrByInvs = true;
 
+    static final String incrementalRefinementStr = "During refinement, only re-check invariants whose previous counter-example passes through a split partition. Produces the same model as a full re-check";
+    public boolean incrementalRefinement = false;
+
+    static final String numCheckerThreadsStr = "Number of threads to use when model checking invariants (1 checks invariants serially)";
+    public int numCheckerThreads = 1;
+
+    static final String bitSetPrecheckStr = "Before building counter-examples, find the violated AFby, AP, NFby, and IntrBy invariants with one bit-parallel FSM checker pass";
+    public boolean bitSetPrecheck = false;
+
+    static final String localMergeChecksStr = "During coarsening, only re-check the invariants over event types that occur on paths through the merged partition";
+    public boolean localMergeChecks = false;
+
+    static final String denseGraphViewStr = "Index the partition graph with int arrays, which maintain partition adjacency incrementally and speed up the FSM checker, at the cost of memory in proportion to the log";
+    public boolean denseGraphView = false;
+
+    static final String denseInvMiningStr = "Mine totally ordered invariants by counting into int matrices indexed by interned event types (unless useTransitiveClosureMining is set)";
+    public boolean denseInvMining = false;
+
+    static final String numMinerThreadsStr = "Number of threads to use when counting the traces of a totally ordered log with the chain walking miner, and when mining performance constraints (1 walks the traces serially)";
+    public int numMinerThreads = 1;
+
+    static final String compactTransitiveClosureStr = "When mining invariants from the transitive closure, use a chain-decomposition closure that is linear in the size of totally ordered traces (it is not computed with Warshall's algorithm)";
+    public boolean compactTransitiveClosure = false;
+
     // ////////////////////////////
     // Parser Options
     // ////////////////////////////
@@ -105,6 +129,12 @@ public class AbstractOptions {
     static final String dateFormatStr = "Format of the dates contained in the log (required by DATETIME)";
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
 
+    static final String numParserThreadsStr = "Number of threads to use when parsing the input files (1 parses the files serially)";
+    public int numParserThreads = 1;
+
+    static final String mapInputFilesStr = "Read the input files through memory-mapped buffers, decoding only the parts of each line that are needed (only applies when the files are parsed serially, i.e. numParserThreads is 1)";
+    public boolean mapInputFiles = false;
+
     // ////////////////////////////
     // Input options
     // ////////////////////////////
@@ -198,6 +228,9 @@ public class AbstractOptions {
     static final String doBenchmarkingStr = "Perform benchmarking and output benchmark information";
     public boolean doBenchmarking = false;
 
+    static final String metricsReportFileStr = "Write the performance metrics of the run to this file at the end of the run, as CSV if the file name ends with .csv and as JSON otherwise";
+    public String metricsReportFile = null;
+
     static final String internCommonStringsStr = "Intern commonly occurring strings, such as event types, as a memory-usage optimization";
     public boolean internCommonStrings = true;
 
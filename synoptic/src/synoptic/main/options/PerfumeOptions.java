@@ -96,6 +96,81 @@ public class PerfumeOptions extends Options {
      */
     public boolean ignoreIntrByInvs = false;
 
+    /**
+     * Re-use counter-examples across refinement rounds: an invariant is only
+     * re-checked if its previous counter-example path passes through a
+     * partition that was split in the last round. Counter-examples are
+     * chosen canonically, so the refined model is the same as without this
+     * option.
+     */
+    @Option(AbstractOptions.incrementalRefinementStr)
+    public boolean incrementalRefinement = false;
+
+    /**
+     * Number of worker threads used to model check invariants, with either
+     * checker. Each invariant is checked independently, so with more than one
+     * thread the invariants are checked concurrently. The resulting
+     * counter-examples are identical to those of a serial check.
+     */
+    @Option(AbstractOptions.numCheckerThreadsStr)
+    public int numCheckerThreads = 1;
+
+    /**
+     * Run a bit-parallel pass of the FSM checker over all untimed invariants
+     * before model checking them one at a time. Only the invariants that this
+     * pass finds to be violated (and constrained invariants, which it cannot
+     * check) are then checked for counter-examples.
+     */
+    @Option(AbstractOptions.bitSetPrecheckStr)
+    public boolean bitSetPrecheck = false;
+
+    /**
+     * After each merge during coarsening, only model check the invariants
+     * that the merge may have violated: those that predicate on the event
+     * type of a partition that can reach, or be reached from, the merged
+     * partition. This is only done if the graph satisfies all invariants
+     * before coarsening.
+     */
+    @Option(AbstractOptions.localMergeChecksStr)
+    public boolean localMergeChecks = false;
+
+    /**
+     * Index the partition graph with a DenseGraphView, which keeps int arrays
+     * of event transitions and partition membership. The view maintains
+     * partition adjacency incrementally as the graph is refined and coarsened,
+     * and the FSM checker runs over it, but it holds these arrays in addition
+     * to the partition graph.
+     */
+    @Option(AbstractOptions.denseGraphViewStr)
+    public boolean denseGraphView = false;
+
+    /**
+     * Mine invariants from totally ordered logs with
+     * DenseChainWalkingTOInvMiner, which keeps the event type pair counts in
+     * int matrices instead of nested maps. The mined invariants are the same.
+     */
+    @Option(AbstractOptions.denseInvMiningStr)
+    public boolean denseInvMining = false;
+
+    /**
+     * Count the traces of totally ordered logs with this many threads when
+     * mining invariants with ChainWalkingTOInvMiner, and walk them with this
+     * many threads when mining performance constraints with
+     * ConstrainedInvMiner. The per-trace counts and bounds are merged in a
+     * fork-join pool; the mined invariants are the same.
+     */
+    @Option(AbstractOptions.numMinerThreadsStr)
+    public int numMinerThreads = 1;
+
+    /**
+     * Mine invariants with useTransitiveClosureMining from
+     * CompactTransitiveClosures, which decompose each trace into chains
+     * instead of keeping a set of reachable nodes per node. The mined
+     * invariants are the same.
+     */
+    @Option(AbstractOptions.compactTransitiveClosureStr)
+    public boolean compactTransitiveClosure = false;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -177,6 +252,24 @@ public class PerfumeOptions extends Options {
      */
     @Option(value = AbstractOptions.dateFormatStr, aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Number of worker threads used to parse the input files. With more than
+     * one thread, the files (and large files in line-aligned chunks) are
+     * matched against the regular expressions concurrently. The resulting
+     * events are identical to those of a serial parse.
+     */
+    @Option(AbstractOptions.numParserThreadsStr)
+    public int numParserThreads = 1;
+
+    /**
+     * Read each input file through memory-mapped buffers instead of a Reader.
+     * Lines of ASCII text are matched against the regular expressions in
+     * place, and only their captured groups (and the lines of parsed events)
+     * are decoded. Only used when the input files are parsed serially.
+     */
+    @Option(AbstractOptions.mapInputFilesStr)
+    public boolean mapInputFiles = false;
     // end option group "Parser Options"
 
     // //////////////////////////////////////////////////
@@ -365,6 +458,17 @@ public class PerfumeOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * Write the performance metrics recorded during the run -- values, and
+     * histograms of the durations of tasks such as parsing, refinement,
+     * coarsening and invariant checking -- to this file at the end of the run.
+     * The report is CSV if the file name ends with .csv, and JSON otherwise.
+     * This option is <i>unpublicized</i>; it will not appear in the default
+     * usage message
+     */
+    @Option(AbstractOptions.metricsReportFileStr)
+    public String metricsReportFile = null;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -477,6 +581,14 @@ public class PerfumeOptions extends Options {
         absOpts.stateProcessing = stateProcessing;
         absOpts.testGeneration = testGeneration;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
+        absOpts.incrementalRefinement = incrementalRefinement;
+        absOpts.numCheckerThreads = numCheckerThreads;
+        absOpts.bitSetPrecheck = bitSetPrecheck;
+        absOpts.localMergeChecks = localMergeChecks;
+        absOpts.denseGraphView = denseGraphView;
+        absOpts.denseInvMining = denseInvMining;
+        absOpts.numMinerThreads = numMinerThreads;
+        absOpts.compactTransitiveClosure = compactTransitiveClosure;
 
         // Parser options
 
@@ -489,6 +601,8 @@ public class PerfumeOptions extends Options {
         absOpts.recoverFromParseErrors = recoverFromParseErrors;
         absOpts.debugParse = debugParse;
         absOpts.dateFormat = dateFormat;
+        absOpts.numParserThreads = numParserThreads;
+        absOpts.mapInputFiles = mapInputFiles;
 
         // Input options
 
@@ -524,6 +638,7 @@ public class PerfumeOptions extends Options {
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsReportFile = metricsReportFile;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
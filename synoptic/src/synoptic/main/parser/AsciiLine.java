@@ -0,0 +1,65 @@
+package synoptic.main.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A CharSequence view of a line of ASCII text in a ByteBuffer, such as a
+ * memory-mapped log file. Matching a regular expression against the view reads
+ * the bytes in place: only the sub-sequences that are converted to Strings,
+ * such as the groups captured by the match, are decoded.
+ */
+final class AsciiLine implements CharSequence {
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int end;
+
+    /**
+     * The decoded line, once toString() has been called.
+     */
+    private String string = null;
+
+    /**
+     * Creates a view of the bytes of buffer from start (inclusive) to end
+     * (exclusive), which must all be ASCII characters.
+     */
+    AsciiLine(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return end - start;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= end - start) {
+            throw new IndexOutOfBoundsException("index: " + index);
+        }
+        return (char) buffer.get(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to > end - start || from > to) {
+            throw new IndexOutOfBoundsException("from: " + from + ", to: "
+                    + to);
+        }
+        return new AsciiLine(buffer, start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) {
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(start);
+            view.get(bytes);
+            string = new String(bytes, StandardCharsets.US_ASCII);
+        }
+        return string;
+    }
+}
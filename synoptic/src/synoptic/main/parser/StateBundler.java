@@ -0,0 +1,129 @@
+package synoptic.main.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import synoptic.model.EventNode;
+import synoptic.model.state.State;
+
+/**
+ * Bundles the states parsed from a log with the events around them, as the
+ * parsed nodes are added in log order. A node that represents a state (i.e.,
+ * whose post-event state is set) is never kept: its state becomes the
+ * post-event state of the preceding event and the pre-event state of the
+ * following node, when these belong to the same trace. Since a state is
+ * bundled as soon as the node after it is added, at most one state is held at
+ * a time, and only the events are accumulated.
+ * <p>
+ * Assumptions:
+ * <ol>
+ * <li>A trace cannot have 2 consecutive states.</li>
+ * <li>If a trace contains a state, it also contains at least 1 event.</li>
+ * </ol>
+ * </p>
+ */
+public class StateBundler {
+    private final ArrayList<EventNode> events = new ArrayList<EventNode>();
+
+    /**
+     * The number of nodes added, including the nodes of states.
+     */
+    private int numAdded = 0;
+
+    /**
+     * The last event added, or null if no event has been added yet.
+     */
+    private EventNode lastEvent = null;
+
+    /**
+     * The node of the last state added, if the node after it has not been
+     * added yet.
+     */
+    private EventNode pendingState = null;
+
+    /**
+     * Whether pendingState was bundled with the event before it.
+     */
+    private boolean pendingMergedFront = false;
+
+    /**
+     * Adds the next parsed node of the log.
+     *
+     * @throws ParseException
+     *             if a trace has 2 consecutive states, or a state without any
+     *             event
+     */
+    public void add(EventNode node) throws ParseException {
+        numAdded++;
+        if (pendingState != null) {
+            boolean mergedBack = false;
+            if (node.getTraceID() == pendingState.getTraceID()) {
+                node.setPreEventState(pendingState.getPostEventState());
+                mergedBack = true;
+            }
+            resolvePending(mergedBack);
+        }
+
+        State state = node.getPostEventState();
+        if (state == null) {
+            // This node represents an event.
+            events.add(node);
+            lastEvent = node;
+            return;
+        }
+
+        // This node represents a state: bundle it with the preceding event of
+        // the same trace, and keep it until the node after it is added.
+        pendingMergedFront = false;
+        int traceID = node.getTraceID();
+        if (lastEvent != null && lastEvent.getTraceID() == traceID) {
+            if (lastEvent.getPostEventState() != null) {
+                // This trace has 2 consecutive states.
+                throw new ParseException("Found 2 consecutive states: "
+                        + lastEvent.getPostEventState() + " and " + state
+                        + " in trace ID: " + traceID);
+            }
+            lastEvent.setPostEventState(state);
+            pendingMergedFront = true;
+        }
+        pendingState = node;
+    }
+
+    /**
+     * Completes the bundling of the last added state, if any, and returns the
+     * events added.
+     *
+     * @throws ParseException
+     *             if the last state added has no event of its trace around it
+     */
+    public ArrayList<EventNode> finish() throws ParseException {
+        if (pendingState != null) {
+            resolvePending(false);
+        }
+        return events;
+    }
+
+    /**
+     * Returns the number of nodes added so far, including the nodes of states.
+     */
+    public int getNumAdded() {
+        return numAdded;
+    }
+
+    /**
+     * Returns the events added so far.
+     */
+    public List<EventNode> getEvents() {
+        return events;
+    }
+
+    private void resolvePending(boolean mergedBack) throws ParseException {
+        EventNode node = pendingState;
+        pendingState = null;
+        if (!pendingMergedFront && !mergedBack) {
+            throw new ParseException("Trace ID: " + node.getTraceID()
+                    + " contains a state: " + node.getPostEventState()
+                    + " but does not contain any event");
+        }
+    }
+}
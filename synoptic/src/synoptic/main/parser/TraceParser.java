@@ -1,12 +1,19 @@
 package synoptic.main.parser;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +26,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -37,6 +49,7 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.state.State;
 import synoptic.util.InternalSynopticException;
+import synoptic.util.matching.LiteralPrefilter;
 import synoptic.util.matching.NamedMatcher;
 import synoptic.util.matching.NamedPattern;
 import synoptic.util.matching.NamedSubstitution;
@@ -58,6 +71,12 @@ public class TraceParser {
     private static Logger logger = Logger.getLogger("Parser Logger");
 
     private final List<NamedPattern> parsers;
+    /**
+     * The literal prefilter of each of the parsers, which rules out most of
+     * the parsers that cannot match a line without running their matchers.
+     */
+    private final List<LiteralPrefilter> prefilters;
+    private boolean usePrefilters = true;
     private final List<LinkedHashMap<String, NamedSubstitution>> constantFields;
     private final List<Map<String, Boolean>> incrementors;
 
@@ -148,6 +167,7 @@ public class TraceParser {
      */
     public TraceParser() {
         parsers = new ArrayList<NamedPattern>();
+        prefilters = new ArrayList<LiteralPrefilter>();
         constantFields = new ArrayList<LinkedHashMap<String, NamedSubstitution>>();
         incrementors = new ArrayList<Map<String, Boolean>>();
         filter = new NamedSubstitution("");
@@ -397,6 +417,7 @@ public class TraceParser {
             throw parseException;
         }
         parsers.add(parser);
+        prefilters.add(new LiteralPrefilter(parser));
         // A list of all named groups i.e., fields that have no assignment.
         List<String> groups = parser.groupNames();
 
@@ -571,6 +592,7 @@ public class TraceParser {
             throw internalSynopticException;
         }
         cycle(parsers);
+        cycle(prefilters);
         cycle(incrementors);
         cycle(constantFields);
         filter.concat(new NamedSubstitution("\\k<SEPCOUNT>"));
@@ -584,6 +606,15 @@ public class TraceParser {
         filter = new NamedSubstitution(f);
     }
 
+    /**
+     * Sets whether lines are checked against the literals that each regular
+     * expression requires before running its matcher (the default). This
+     * does not change the result of a parse, only its speed.
+     */
+    public void setUseLiteralPrefilters(boolean usePrefilters) {
+        this.usePrefilters = usePrefilters;
+    }
+
     /**
      * Parses a trace file into a list of log events.
      * 
@@ -614,6 +645,397 @@ public class TraceParser {
         }
     }
 
+    /**
+     * The default size in bytes of the regions of a file that
+     * parseMappedTraceFile maps into memory at a time.
+     */
+    public static final long defaultMappedRegionSize = 1L << 30;
+
+    /**
+     * Parses a log file into a list of log events, in the same way as
+     * parseTraceFile, but reads the file through memory-mapped regions rather
+     * than a Reader. Line boundaries are found directly in the mapped bytes,
+     * and lines of ASCII text are matched in place, so only the groups
+     * captured by the regular expressions, and the lines of the parsed events,
+     * are decoded into Strings. Other lines are decoded with the default
+     * charset, as by parseTraceFile.
+     * 
+     * @param file
+     *            The file to parse.
+     * @param linesToRead
+     *            Bound on the number of lines to read. Negatives indicate
+     *            unbounded.
+     * @return The parsed log events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseMappedTraceFile(File file, int linesToRead)
+            throws ParseException, InternalSynopticException {
+        return parseMappedTraceFile(file, linesToRead, defaultMappedRegionSize);
+    }
+
+    /**
+     * Parses a log file into a list of log events, in the same way as
+     * parseTraceFile, by mapping regions of up to regionSize bytes of the file
+     * into memory at a time. Each region starts at the start of a line, so no
+     * line may be longer than regionSize bytes.
+     * 
+     * @param file
+     *            The file to parse.
+     * @param linesToRead
+     *            Bound on the number of lines to read. Negatives indicate
+     *            unbounded.
+     * @param regionSize
+     *            The maximum number of bytes to map at a time, at most
+     *            Integer.MAX_VALUE.
+     * @return The parsed log events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseMappedTraceFile(File file,
+            int linesToRead, long regionSize) throws ParseException,
+            InternalSynopticException {
+        String fileName = file.getAbsolutePath();
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                return parseMappedTrace(raf.getChannel(), fileName,
+                        linesToRead, regionSize);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            String error = "Error while attempting to read log file ["
+                    + fileName + "]: " + e.getMessage();
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+    }
+
+    /**
+     * Parses the lines of the file open in channel as event instances.
+     */
+    private ArrayList<EventNode> parseMappedTrace(FileChannel channel,
+            String traceName, int linesToRead, long regionSize)
+            throws ParseException, IOException, InternalSynopticException {
+        Map<String, Integer> context = newIncrementorContext();
+
+        StateBundler results = new StateBundler();
+
+        String tName = traceName;
+        if (AbstractMain.getInstance().options.internCommonStrings) {
+            tName = tName.intern();
+        }
+
+        lastTime = null;
+
+        Charset charset = Charset.defaultCharset();
+        long length = channel.size();
+        long regionStart = 0;
+        int lineNum = 0;
+        // Whether the previous line ended with a '\r' at the end of a region,
+        // so that a '\n' at the start of the next region ends no line.
+        boolean skipNewline = false;
+        scan: while (regionStart < length) {
+            int size = (int) Math.min(length - regionStart, regionSize);
+            boolean lastRegion = regionStart + size == length;
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY,
+                    regionStart, size);
+
+            int lineStart = 0;
+            if (skipNewline && buffer.get(0) == '\n') {
+                lineStart = 1;
+            }
+            skipNewline = false;
+            boolean ascii = true;
+            int i = lineStart;
+            // Process each line in sequence. As in BufferedReader.readLine(),
+            // a line is terminated by '\n', '\r', or "\r\n", and the last line
+            // of the file need not be terminated.
+            while (i < size || (lastRegion && lineStart < size)) {
+                byte b = i < size ? buffer.get(i) : (byte) '\n';
+                if (b != '\n' && b != '\r') {
+                    // Bytes of non-ASCII characters are negative.
+                    ascii &= b >= 0;
+                    i++;
+                    continue;
+                }
+
+                if (results.getNumAdded() == linesToRead) {
+                    break scan;
+                }
+                lineNum++;
+                CharSequence line;
+                if (ascii) {
+                    line = new AsciiLine(buffer, lineStart, i);
+                } else {
+                    ByteBuffer bytes = buffer.duplicate();
+                    bytes.position(lineStart);
+                    bytes.limit(i);
+                    line = charset.decode(bytes).toString();
+                }
+                EventNode node = parseLine(line, matchLine(line, 0), tName,
+                        context, lineNum);
+                if (node != null) {
+                    results.add(node);
+                }
+
+                i++;
+                if (b == '\r') {
+                    if (i < size) {
+                        if (buffer.get(i) == '\n') {
+                            i++;
+                        }
+                    } else {
+                        skipNewline = true;
+                    }
+                }
+                lineStart = i;
+                ascii = true;
+            }
+
+            if (lastRegion) {
+                break;
+            }
+            if (lineStart == 0) {
+                throw new ParseException("Line #" + (lineNum + 1)
+                        + " from file [" + traceName + "] is longer than "
+                        + regionSize + " bytes.");
+            }
+            // Map the next region from the start of the unterminated line.
+            regionStart += lineStart;
+        }
+        return finishTrace(results.finish(), tName);
+    }
+
+    /**
+     * The default size in bytes of the chunks into which parseTraceFiles
+     * splits large files.
+     */
+    public static final int defaultChunkSize = 4 * 1024 * 1024;
+
+    /**
+     * Parses a list of log files into a list of log events, in the same way
+     * as calling parseTraceFile on each of the files in turn, but with the
+     * lines of the files matched against the regular expressions by a pool of
+     * numThreads worker threads.
+     * 
+     * @param files
+     *            The files to parse, in order.
+     * @param linesToRead
+     *            Bound on the number of lines to read from each file.
+     *            Negatives indicate unbounded.
+     * @param numThreads
+     *            The number of worker threads.
+     * @return The parsed log events of all the files, in file order.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseTraceFiles(List<File> files,
+            int linesToRead, int numThreads) throws ParseException,
+            InternalSynopticException {
+        return parseTraceFiles(files, linesToRead, numThreads,
+                defaultChunkSize);
+    }
+
+    /**
+     * Parses a list of log files into a list of log events, in the same way
+     * as calling parseTraceFile on each of the files in turn. The files are
+     * split into line-aligned chunks of about chunkSize bytes, and the lines of
+     * up to numThreads chunks are matched against the regular expressions
+     * concurrently. Everything else depends on the lines that precede a line
+     * -- the incrementor context, delta times, and the partition and trace ID
+     * of its event -- and is done on the calling thread, in file and line
+     * order.
+     * 
+     * @param files
+     *            The files to parse, in order.
+     * @param linesToRead
+     *            Bound on the number of lines to read from each file.
+     *            Negatives indicate unbounded.
+     * @param numThreads
+     *            The number of worker threads.
+     * @param chunkSize
+     *            The size in bytes above which a file is split into chunks.
+     * @return The parsed log events of all the files, in file order.
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public ArrayList<EventNode> parseTraceFiles(List<File> files,
+            int linesToRead, int numThreads, int chunkSize)
+            throws ParseException, InternalSynopticException {
+        List<TraceChunk> chunks = new ArrayList<TraceChunk>();
+        for (File file : files) {
+            try {
+                splitIntoChunks(file, chunkSize, chunks);
+            } catch (IOException e) {
+                String error = "Error while attempting to read log file ["
+                        + file.getAbsolutePath() + "]: " + e.getMessage();
+                logger.severe(error);
+                throw new ParseException(error);
+            }
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            // Keep only a few chunks per thread in flight, so that the lines of
+            // at most that many chunks are held in memory at once.
+            int maxPending = 4 * numThreads;
+            LinkedList<Future<TraceChunk>> pending = new LinkedList<Future<TraceChunk>>();
+            int numSubmitted = 0;
+
+            ArrayList<EventNode> allResults = new ArrayList<EventNode>();
+            StateBundler results = null;
+            Map<String, Integer> context = null;
+            String tName = null;
+            int lineNum = 0;
+            for (int c = 0; c < chunks.size(); c++) {
+                while (numSubmitted < chunks.size()
+                        && numSubmitted < c + maxPending) {
+                    pending.add(pool.submit(chunks.get(numSubmitted)));
+                    numSubmitted++;
+                }
+                TraceChunk chunk = pending.removeFirst().get();
+
+                if (chunk.start == 0) {
+                    // The first chunk of a file: start a new trace.
+                    if (results != null) {
+                        allResults.addAll(finishTrace(results.finish(), tName));
+                    }
+                    results = new StateBundler();
+                    context = newIncrementorContext();
+                    tName = chunk.file.getAbsolutePath();
+                    if (AbstractMain.getInstance().options.internCommonStrings) {
+                        tName = tName.intern();
+                    }
+                    lastTime = null;
+                    lineNum = 0;
+                }
+
+                for (int l = 0; l < chunk.lines.size(); l++) {
+                    if (results.getNumAdded() == linesToRead) {
+                        break;
+                    }
+                    lineNum++;
+                    EventNode node = parseLine(chunk.lines.get(l),
+                            chunk.matches.get(l), tName, context, lineNum);
+                    if (node == null) {
+                        continue;
+                    }
+                    results.add(node);
+                }
+                chunks.set(c, null);
+            }
+            if (results != null) {
+                allResults.addAll(finishTrace(results.finish(), tName));
+            }
+            return allResults;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                String error = "Error while attempting to read log file: "
+                        + e.getCause().getMessage();
+                logger.severe(error);
+                throw new ParseException(error);
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new InternalSynopticException(e);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * A line-aligned byte range of a log file. Calling the chunk reads its
+     * lines and matches each of them with matchLine.
+     */
+    private class TraceChunk implements Callable<TraceChunk> {
+        final File file;
+        final long start;
+        final long end;
+
+        List<String> lines;
+        /**
+         * The match of each line in lines, or null for lines that do not match
+         * any regular expression.
+         */
+        List<LineMatch> matches;
+
+        TraceChunk(File file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public TraceChunk call() throws IOException {
+            byte[] bytes = new byte[(int) (end - start)];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(start);
+                raf.readFully(bytes);
+            } finally {
+                raf.close();
+            }
+
+            lines = new ArrayList<String>();
+            matches = new ArrayList<LineMatch>();
+            BufferedReader br = new BufferedReader(new InputStreamReader(
+                    new ByteArrayInputStream(bytes)));
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+                matches.add(matchLine(line, 0));
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Splits file into chunks of about chunkSize bytes that each end just
+     * after a newline (or at the end of the file), and appends them to chunks.
+     * An empty file is a single empty chunk.
+     */
+    private void splitIntoChunks(File file, int chunkSize,
+            List<TraceChunk> chunks) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            byte[] buf = new byte[8192];
+            long start = 0;
+            do {
+                long end = Math.min(start + chunkSize, length);
+                // Extend the chunk to the end of the line it ends in.
+                raf.seek(end);
+                scan: while (end < length) {
+                    int n = raf.read(buf);
+                    for (int k = 0; k < n; k++) {
+                        end++;
+                        if (buf[k] == '\n') {
+                            break scan;
+                        }
+                    }
+                }
+                chunks.add(new TraceChunk(file, start, end));
+                start = end;
+            } while (start < length);
+        } finally {
+            raf.close();
+        }
+    }
+
     /**
      * Parses a string containing a log into a list of log events.
      * 
@@ -670,15 +1092,11 @@ public class TraceParser {
             IOException, InternalSynopticException {
         BufferedReader br = new BufferedReader(traceReader);
 
-        // Initialize incrementor context.
-        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
-        for (Map<String, Boolean> incs : incrementors) {
-            for (String incField : incs.keySet()) {
-                context.put(incField, 0);
-            }
-        }
+        Map<String, Integer> context = newIncrementorContext();
 
-        ArrayList<EventNode> results = new ArrayList<EventNode>();
+        // State nodes are bundled with the events around them as they are
+        // parsed.
+        StateBundler results = new StateBundler();
         String strLine = null;
 
         String tName = traceName;
@@ -691,7 +1109,7 @@ public class TraceParser {
         int lineNum = 0;
         // Process each line in sequence.
         while ((strLine = br.readLine()) != null) {
-            if (results.size() == linesToRead) {
+            if (results.getNumAdded() == linesToRead) {
                 break;
             }
             lineNum++;
@@ -702,14 +1120,34 @@ public class TraceParser {
             results.add(node);
         }
         br.close();
-        // TODO: this is a hacky solution, should refactor the parseTrace and
-        // parseLine methods so that State is separated from EventNode.
-        // At this point, each node in results either represents an event or
-        // a state. We need to bundle pre- and post-event states and events.
-        if (AbstractMain.getInstance().options.stateProcessing) {
-            mergeStatesWithEventNodes(results);
+        return finishTrace(results.finish(), tName);
+    }
+
+    /**
+     * Returns a new incrementor context, in which every incrementor field is
+     * 0.
+     */
+    private Map<String, Integer> newIncrementorContext() {
+        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
+        for (Map<String, Boolean> incs : incrementors) {
+            for (String incField : incs.keySet()) {
+                context.put(incField, 0);
+            }
         }
+        return context;
+    }
 
+    /**
+     * Completes the parse of the trace tName, once all of its lines have been
+     * parsed into results, with states bundled into the events: assigns or
+     * checks the PIDs of VTIME events.
+     * 
+     * @return results
+     * @throws ParseException
+     *             when user supplied expressions are the problem
+     */
+    private ArrayList<EventNode> finishTrace(ArrayList<EventNode> results,
+            String tName) throws ParseException {
         if (selectedTimeGroup.equals("VTIME") && !parsePIDs) {
             // Infer the PID (process ID) corresponding to each of the parsed
             // events, if PIDs were not parsed explicitly from the trace.
@@ -811,59 +1249,6 @@ public class TraceParser {
         return results;
     }
 
-    /**
-     * Merge each state node in results with its surrounding event nodes of the
-     * same traceID.
-     * 
-     * @throws ParseException
-     */
-    private void mergeStatesWithEventNodes(List<EventNode> results)
-            throws ParseException {
-        int i = 0;
-        while (i < results.size()) {
-            EventNode node = results.get(i);
-            State state = node.getPostEventState();
-            if (state != null) {
-                // This node represents a state, not an event.
-                // Merge this node with surrounding event nodes of the same
-                // traceID.
-                // Assumptions:
-                // (1) A trace cannot have 2 consecutive states.
-                // (2) If a trace contains a state, it also contains at least 1
-                // event.
-                EventNode prevNode = i > 0 ? results.get(i - 1) : null;
-                EventNode nextNode = i < results.size() - 1 ? results
-                        .get(i + 1) : null;
-                int traceID = node.getTraceID();
-                boolean mergeFront = false;
-                boolean mergeBack = false;
-                if (prevNode != null && prevNode.getTraceID() == traceID) {
-                    if (prevNode.getPostEventState() != null) {
-                        // This trace has 2 consecutive states.
-                        throw new ParseException("Found 2 consecutive states: "
-                                + prevNode.getPostEventState() + " and "
-                                + state + " in trace ID: " + traceID);
-                    }
-                    prevNode.setPostEventState(state);
-                    mergeFront = true;
-                }
-                if (nextNode != null && nextNode.getTraceID() == traceID) {
-                    nextNode.setPreEventState(state);
-                    mergeBack = true;
-                }
-                if (!mergeFront && !mergeBack) {
-                    throw new ParseException("Trace ID: " + traceID
-                            + " contains a state: " + state
-                            + " but does not contain any event");
-                }
-                results.remove(i);
-            } else {
-                // This node represents an event -- do nothing.
-                i++;
-            }
-        }
-    }
-
     /**
      * Builds a generic string to describe a location of an error on a line in
      * some input file.
@@ -891,22 +1276,67 @@ public class TraceParser {
     private EventNode parseLine(String line, String fileName,
             Map<String, Integer> context, int lineNum) throws ParseException,
             InternalSynopticException {
+        return parseLine(line, matchLine(line, 0), fileName, context, lineNum);
+    }
+
+    /**
+     * The match of a log line against one of the parser's regular expressions.
+     */
+    private static class LineMatch {
+        /**
+         * The index of the matching regular expression in parsers.
+         */
+        final int pattern;
+        final Map<String, String> groups;
+
+        LineMatch(int pattern, Map<String, String> groups) {
+            this.pattern = pattern;
+            this.groups = groups;
+        }
+    }
+
+    /**
+     * Returns the match of line against the first regular expression at index
+     * fromPattern or later in parsers, or null if none of them match. Regular
+     * expressions whose required literals do not occur in line are skipped
+     * without running their matchers. This does not depend on or change the
+     * state of the parser, so it may be called concurrently.
+     */
+    private LineMatch matchLine(CharSequence line, int fromPattern) {
+        for (int i = fromPattern; i < parsers.size(); i++) {
+            if (usePrefilters && !prefilters.get(i).mayMatch(line)) {
+                continue;
+            }
+            NamedMatcher matcher = parsers.get(i).matcher(line);
+            if (matcher.matches()) {
+                return new LineMatch(i, matcher.toMatchResult().namedGroups());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse an individual line, given its first match, as returned by
+     * matchLine(logLine, 0). The line is only converted to a String once it
+     * is known to not be hidden.
+     */
+    private EventNode parseLine(CharSequence logLine, LineMatch firstMatch,
+            String fileName, Map<String, Integer> context, int lineNum)
+            throws ParseException, InternalSynopticException {
 
         Event event = null;
         ITime nextTime = null;
 
         AbstractMain main = AbstractMain.getInstance();
 
-        for (int i = 0; i < parsers.size(); i++) {
-            NamedMatcher matcher = parsers.get(i).matcher(line);
-            if (!matcher.matches()) {
-                continue;
-            }
+        for (LineMatch match = firstMatch; match != null; match = matchLine(
+                logLine, match.pattern + 1)) {
+            int i = match.pattern;
 
             @SuppressWarnings("unchecked")
             Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
                     .get(i).clone();
-            Map<String, String> matched = matcher.toMatchResult().namedGroups();
+            Map<String, String> matched = match.groups;
 
             // Perform pre-increments.
             for (Map.Entry<String, Boolean> inc : incrementors.get(i)
@@ -955,6 +1385,8 @@ public class TraceParser {
             // ////////////
             // Only non-hidden regexes from this point on.
 
+            String line = logLine.toString();
+
             String eTypeLabel;
             EventType eType;
             // Check if this line contains event type or state.
@@ -1200,6 +1632,7 @@ public class TraceParser {
             return eventNode;
         }
 
+        String line = logLine.toString();
         if (main.options.recoverFromParseErrors) {
             logger.warning(buildLineErrorLocString(line, fileName, lineNum)
                     + " Failed to parse trace line. Using entire line as type.");
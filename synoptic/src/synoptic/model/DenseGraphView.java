@@ -0,0 +1,751 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.model.interfaces.IGraph;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * An array-backed view of a PartitionGraph, in which partitions and events are
+ * identified by dense integer ids:
+ * <ul>
+ * <li>The event-level transitions of the trace graph, which never change, are
+ * stored once in compressed sparse row (CSR) form: one offsets array and one
+ * targets array per relation, plus a reverse (predecessor) CSR over all
+ * relations.</li>
+ * <li>Partition membership is an int array mapping each event id to the id of
+ * the partition that contains it.</li>
+ * <li>The adjacency index records, for every partition, the ids of the
+ * partitions that its events have transitions to, along with the number of
+ * event-level transitions to each.</li>
+ * </ul>
+ * Traversals over the view touch only int arrays, instead of following
+ * Partition.events and EventNode.transitionsWithRelation through hash
+ * lookups.
+ * <p>
+ * The view is maintained by the PartitionGraph that created it: every
+ * partition that is added, removed, or whose events change under apply() is
+ * reported to markChanged(), and the view re-indexes these partitions the next
+ * time it is queried. Re-indexing moves each event whose partition changed,
+ * and updates the transition counts of the adjacency index for the event's
+ * transitions only, so that splits, merges, and their rewinds cost time
+ * proportional to the number of events they move rather than to the size of
+ * the graph. The successor arrays and sets handed out by the view are cached,
+ * and rebuilt only for partitions whose set of successors changed, as
+ * detected by the index; the view counts these cache hits and rebuilds.
+ * </p>
+ * <p>
+ * The ids of removed partitions are re-used, so that partition ids always stay
+ * below (roughly) the number of partitions in the graph. Like PartitionGraph,
+ * the view is not thread-safe.
+ * </p>
+ */
+public class DenseGraphView implements IGraph<Partition> {
+    /**
+     * Compressed sparse row adjacency: the targets of id are
+     * targets[offsets[id]] to targets[offsets[id + 1] - 1].
+     */
+    private static class Csr {
+        final int[] offsets;
+        final int[] targets;
+
+        Csr(int[] offsets, int[] targets) {
+            this.offsets = offsets;
+            this.targets = targets;
+        }
+    }
+
+    private static final int[] noIds = new int[0];
+
+    private final PartitionGraph pGraph;
+
+    /** Maps an event id to its event. */
+    private final EventNode[] events;
+
+    /** The relations of the trace graph, in the order of relationCsrs. */
+    private final List<String> relations;
+
+    /** Event-level adjacency, per relation. */
+    private final Csr[] relationCsrs;
+
+    /** Event-level adjacency over all relations. */
+    private final Csr allCsr;
+
+    /** Event-level reverse adjacency over all relations. */
+    private final Csr predCsr;
+
+    /** Maps an event id to the id of the partition that contains it. */
+    private final int[] eventPartition;
+
+    /** Maps a partition id to its partition, null for free ids. */
+    private Partition[] partitions;
+
+    /**
+     * The adjacency index: maps a partition id to the ids of its successors,
+     * in the order in which they became successors, and to the number of
+     * event-level transitions to each. Only the first numSuccs entries are
+     * in use.
+     */
+    private int[][] succIds;
+    private int[][] succCounts;
+    private int[] numSuccs;
+
+    /**
+     * Cached successor arrays and sets, built from the adjacency index. Null
+     * if the set of successors of the partition changed since they were last
+     * built.
+     */
+    private int[][] successors;
+    private Set<Partition>[] adjacentSets;
+
+    private long numAdjacencyHits = 0;
+    private long numAdjacencyRebuilds = 0;
+
+    /** Partition ids freed by removed partitions, available for re-use. */
+    private int[] freeIds = new int[16];
+    private int numFreeIds = 0;
+
+    /** One past the largest partition id assigned so far. */
+    private int idBound = 0;
+
+    /** Partitions reported to markChanged() since the last sync(). */
+    private final Set<Partition> changed = new LinkedHashSet<Partition>();
+
+    /** Stamps used to de-duplicate successors while computing them. */
+    private int[] seenStamp;
+    private int stamp = 0;
+
+    /**
+     * Creates a view of pGraph, which must be a partitioning of the events of
+     * traceGraph. Assigns every event of traceGraph an id, in the iteration
+     * order of traceGraph.getNodes(), so that all views over the same trace
+     * graph agree on event ids.
+     */
+    DenseGraphView(PartitionGraph pGraph, ChainsTraceGraph traceGraph) {
+        this.pGraph = pGraph;
+
+        Set<EventNode> eNodes = traceGraph.getNodes();
+        events = eNodes.toArray(new EventNode[eNodes.size()]);
+        for (int i = 0; i < events.length; i++) {
+            events[i].denseId = i;
+        }
+
+        relations = new ArrayList<String>(traceGraph.getRelations());
+        relationCsrs = new Csr[relations.size()];
+        for (int r = 0; r < relationCsrs.length; r++) {
+            relationCsrs[r] = buildEventCsr(relations.get(r));
+        }
+        if (relationCsrs.length == 1) {
+            allCsr = relationCsrs[0];
+        } else {
+            allCsr = buildEventCsr(null);
+        }
+        predCsr = reverse(allCsr);
+
+        eventPartition = new int[events.length];
+        Arrays.fill(eventPartition, -1);
+        int capacity = Math.max(16, pGraph.getNodes().size());
+        partitions = new Partition[capacity];
+        succIds = new int[capacity][];
+        succCounts = new int[capacity][];
+        numSuccs = new int[capacity];
+        successors = new int[capacity][];
+        adjacentSets = newSetArray(capacity);
+        seenStamp = new int[capacity];
+        changed.addAll(pGraph.getNodes());
+        sync();
+    }
+
+    /**
+     * Builds the event-level CSR of the transitions with the given relation,
+     * or of all transitions if relation is null. Parallel transitions to the
+     * same event are stored once.
+     */
+    private Csr buildEventCsr(String relation) {
+        int[] offsets = new int[events.length + 1];
+        int[] targets = new int[events.length];
+        int numTargets = 0;
+        for (int i = 0; i < events.length; i++) {
+            offsets[i] = numTargets;
+            for (Transition<EventNode> t : events[i].getAllTransitions()) {
+                if (relation != null && !t.getRelation().contains(relation)) {
+                    continue;
+                }
+                int target = eventId(t.getTarget());
+                boolean duplicate = false;
+                for (int j = offsets[i]; j < numTargets; j++) {
+                    if (targets[j] == target) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if (duplicate) {
+                    continue;
+                }
+                if (numTargets == targets.length) {
+                    targets = Arrays.copyOf(targets, 2 * targets.length + 1);
+                }
+                targets[numTargets++] = target;
+            }
+        }
+        offsets[events.length] = numTargets;
+        return new Csr(offsets, Arrays.copyOf(targets, numTargets));
+    }
+
+    /**
+     * Returns the CSR with all edges of csr reversed.
+     */
+    private Csr reverse(Csr csr) {
+        int[] offsets = new int[events.length + 1];
+        for (int target : csr.targets) {
+            offsets[target + 1]++;
+        }
+        for (int i = 0; i < events.length; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] next = Arrays.copyOf(offsets, events.length);
+        int[] targets = new int[csr.targets.length];
+        for (int i = 0; i < events.length; i++) {
+            for (int j = csr.offsets[i]; j < csr.offsets[i + 1]; j++) {
+                targets[next[csr.targets[j]]++] = i;
+            }
+        }
+        return new Csr(offsets, targets);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Set<Partition>[] newSetArray(int capacity) {
+        return new Set[capacity];
+    }
+
+    private int eventId(EventNode event) {
+        int id = event.denseId;
+        if (id < 0 || id >= events.length || events[id] != event) {
+            throw new InternalSynopticException("Event " + event
+                    + " is not part of the trace graph of this view.");
+        }
+        return id;
+    }
+
+    /**
+     * Records that partition was added to or removed from the partition
+     * graph, or that its set of events changed. Called by PartitionGraph.
+     */
+    void markChanged(Partition partition) {
+        changed.add(partition);
+    }
+
+    /**
+     * Re-indexes the partitions that changed since the last sync: assigns ids
+     * to new partitions, moves the events whose partition changed, and frees
+     * the ids of removed partitions.
+     */
+    private void sync() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        Set<Partition> nodes = pGraph.getNodes();
+
+        // Removed partitions keep their ids until all of their events have
+        // been moved out below, so that the counts of the transitions of these
+        // events can be updated.
+        List<Partition> removed = new ArrayList<Partition>();
+        for (Partition p : changed) {
+            if (isIndexed(p)) {
+                if (!nodes.contains(p)) {
+                    removed.add(p);
+                }
+            } else if (nodes.contains(p)) {
+                int id = allocateId();
+                partitions[id] = p;
+                p.denseId = id;
+                p.view = this;
+            }
+        }
+
+        for (Partition p : changed) {
+            if (!nodes.contains(p)) {
+                continue;
+            }
+            int id = p.denseId;
+            for (EventNode e : p.getEventNodes()) {
+                int eId = eventId(e);
+                if (eventPartition[eId] != id) {
+                    moveEvent(eId, id);
+                }
+            }
+        }
+
+        for (Partition p : removed) {
+            int id = p.denseId;
+            assert numSuccs[id] == 0 : "Removed partition still has transitions";
+            partitions[id] = null;
+            successors[id] = null;
+            adjacentSets[id] = null;
+            if (numFreeIds == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, 2 * freeIds.length);
+            }
+            freeIds[numFreeIds++] = id;
+            p.denseId = -1;
+            p.view = null;
+        }
+        changed.clear();
+    }
+
+    private boolean isIndexed(Partition p) {
+        return p.denseId >= 0 && p.denseId < idBound
+                && partitions[p.denseId] == p;
+    }
+
+    /**
+     * Moves the event with id eId to the partition with id to, and updates
+     * the transition counts of the event's outgoing and incoming transitions.
+     * Transitions to or from events that are not yet in a partition are
+     * counted once the other event is moved into one.
+     */
+    private void moveEvent(int eId, int to) {
+        int from = eventPartition[eId];
+        for (int j = allCsr.offsets[eId]; j < allCsr.offsets[eId + 1]; j++) {
+            addCount(from, eventPartition[allCsr.targets[j]], -1);
+        }
+        eventPartition[eId] = to;
+        for (int j = allCsr.offsets[eId]; j < allCsr.offsets[eId + 1]; j++) {
+            addCount(to, eventPartition[allCsr.targets[j]], 1);
+        }
+        for (int j = predCsr.offsets[eId]; j < predCsr.offsets[eId + 1]; j++) {
+            int pred = predCsr.targets[j];
+            if (pred == eId) {
+                // Self-loops were updated as outgoing transitions above.
+                continue;
+            }
+            addCount(eventPartition[pred], from, -1);
+            addCount(eventPartition[pred], to, 1);
+        }
+    }
+
+    /**
+     * Adds delta to the number of transitions from partition src to partition
+     * dst in the adjacency index, and invalidates the cached successors of src
+     * if dst becomes, or stops being, a successor of src.
+     */
+    private void addCount(int src, int dst, int delta) {
+        if (src < 0 || dst < 0) {
+            return;
+        }
+        int[] ids = succIds[src];
+        int num = numSuccs[src];
+        for (int i = 0; i < num; i++) {
+            if (ids[i] != dst) {
+                continue;
+            }
+            int[] counts = succCounts[src];
+            counts[i] += delta;
+            assert counts[i] >= 0;
+            if (counts[i] == 0) {
+                System.arraycopy(ids, i + 1, ids, i, num - i - 1);
+                System.arraycopy(counts, i + 1, counts, i, num - i - 1);
+                numSuccs[src]--;
+                successors[src] = null;
+                adjacentSets[src] = null;
+            }
+            return;
+        }
+
+        assert delta > 0;
+        if (ids == null) {
+            succIds[src] = ids = new int[4];
+            succCounts[src] = new int[4];
+        } else if (num == ids.length) {
+            succIds[src] = ids = Arrays.copyOf(ids, 2 * num);
+            succCounts[src] = Arrays.copyOf(succCounts[src], 2 * num);
+        }
+        ids[num] = dst;
+        succCounts[src][num] = delta;
+        numSuccs[src]++;
+        successors[src] = null;
+        adjacentSets[src] = null;
+    }
+
+    private int allocateId() {
+        if (numFreeIds > 0) {
+            return freeIds[--numFreeIds];
+        }
+        if (idBound == partitions.length) {
+            int capacity = 2 * partitions.length;
+            partitions = Arrays.copyOf(partitions, capacity);
+            succIds = Arrays.copyOf(succIds, capacity);
+            succCounts = Arrays.copyOf(succCounts, capacity);
+            numSuccs = Arrays.copyOf(numSuccs, capacity);
+            successors = Arrays.copyOf(successors, capacity);
+            adjacentSets = Arrays.copyOf(adjacentSets, capacity);
+            seenStamp = Arrays.copyOf(seenStamp, capacity);
+        }
+        return idBound++;
+    }
+
+    /**
+     * Returns the partition graph of which this is a view.
+     */
+    public PartitionGraph getPartitionGraph() {
+        return pGraph;
+    }
+
+    /**
+     * Returns one past the largest partition id in use. Ids below the bound
+     * for which getPartition() returns null are unused.
+     */
+    public int getPartitionIdBound() {
+        sync();
+        return idBound;
+    }
+
+    /**
+     * Returns the partition with the given id, or null if the id is unused.
+     */
+    public Partition getPartition(int id) {
+        sync();
+        return partitions[id];
+    }
+
+    /**
+     * Returns the id of a partition in the graph.
+     */
+    public int getPartitionId(Partition partition) {
+        sync();
+        int id = partition.denseId;
+        if (id < 0 || id >= idBound || partitions[id] != partition) {
+            throw new InternalSynopticException("Partition " + partition
+                    + " is not part of the graph of this view.");
+        }
+        return id;
+    }
+
+    /**
+     * Returns the number of events in the trace graph.
+     */
+    public int getNumEvents() {
+        return events.length;
+    }
+
+    public EventNode getEvent(int eventId) {
+        return events[eventId];
+    }
+
+    public int getEventId(EventNode event) {
+        return eventId(event);
+    }
+
+    /**
+     * Returns the id of the partition that contains the event with the given
+     * id.
+     */
+    public int getEventPartitionId(int eventId) {
+        sync();
+        return eventPartition[eventId];
+    }
+
+    /**
+     * Returns the ids of the events that the event with the given id has a
+     * transition to, with the given relation.
+     */
+    public int[] getEventSuccessorIds(int eventId, String relation) {
+        int r = relations.indexOf(relation);
+        if (r < 0) {
+            return noIds;
+        }
+        Csr csr = relationCsrs[r];
+        return Arrays.copyOfRange(csr.targets, csr.offsets[eventId],
+                csr.offsets[eventId + 1]);
+    }
+
+    /**
+     * Returns the ids of the successors of the partition with the given id,
+     * over all relations. The returned array is cached by the view and must
+     * not be modified.
+     */
+    public int[] getSuccessorIds(int id) {
+        sync();
+        int[] succ = successors[id];
+        if (succ != null) {
+            numAdjacencyHits++;
+            return succ;
+        }
+        numAdjacencyRebuilds++;
+        succ = numSuccs[id] == 0 ? noIds : Arrays.copyOf(succIds[id],
+                numSuccs[id]);
+        successors[id] = succ;
+        return succ;
+    }
+
+    /**
+     * Returns the number of event-level transitions from the partition with
+     * id src to the partition with id dst, over all relations.
+     */
+    public int getNumTransitions(int src, int dst) {
+        sync();
+        for (int i = 0; i < numSuccs[src]; i++) {
+            if (succIds[src][i] == dst) {
+                return succCounts[src][i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of successor queries that were answered from a
+     * cached successor array or set.
+     */
+    public long getNumAdjacencyHits() {
+        return numAdjacencyHits;
+    }
+
+    /**
+     * Returns the number of successor queries for which the successor array
+     * or set had to be rebuilt from the adjacency index, because it was not
+     * built yet or the partition's successors changed.
+     */
+    public long getNumAdjacencyRebuilds() {
+        return numAdjacencyRebuilds;
+    }
+
+    /**
+     * Records the number of adjacency cache hits and rebuilds so far with
+     * PerformanceMetrics.
+     */
+    public void recordAdjacencyStats() {
+        PerformanceMetrics.get().record("partitionAdjacencyHits",
+                numAdjacencyHits);
+        PerformanceMetrics.get().record("partitionAdjacencyRebuilds",
+                numAdjacencyRebuilds);
+    }
+
+    /**
+     * Returns the ids of the successors of the partition with the given id,
+     * with respect to a single relation.
+     */
+    public int[] getSuccessorIds(int id, String relation) {
+        sync();
+        int r = relations.indexOf(relation);
+        if (r < 0) {
+            return noIds;
+        }
+        if (relationCsrs[r] == allCsr) {
+            return getSuccessorIds(id);
+        }
+        return computeSuccessorIds(id, relationCsrs[r]);
+    }
+
+    private int[] computeSuccessorIds(int id, Csr csr) {
+        stamp++;
+        if (stamp == 0) {
+            Arrays.fill(seenStamp, 0);
+            stamp = 1;
+        }
+        int[] succ = new int[4];
+        int numSucc = 0;
+        for (EventNode e : partitions[id].getEventNodes()) {
+            int eId = e.denseId;
+            for (int j = csr.offsets[eId]; j < csr.offsets[eId + 1]; j++) {
+                int target = eventPartition[csr.targets[j]];
+                if (seenStamp[target] == stamp) {
+                    continue;
+                }
+                seenStamp[target] = stamp;
+                if (numSucc == succ.length) {
+                    succ = Arrays.copyOf(succ, 2 * succ.length);
+                }
+                succ[numSucc++] = target;
+            }
+        }
+        return numSucc == 0 ? noIds : Arrays.copyOf(succ, numSucc);
+    }
+
+    /**
+     * Returns the ids of all partitions, in reverse postorder of a depth-first
+     * search from the initial partition: every partition appears after its
+     * predecessors, ignoring back edges. Partitions that are unreachable from
+     * the initial partition are ordered last.
+     */
+    public int[] getReversePostorder() {
+        sync();
+        int[] order = new int[idBound];
+        int numOrdered = 0;
+        BitSet discovered = new BitSet(idBound);
+
+        // Iterative depth-first search, with the stack holding partition ids
+        // and the index of the next successor to explore.
+        int[] stack = new int[idBound];
+        int[] nextSucc = new int[idBound];
+        int depth = 0;
+        int initial = getPartitionId(getDummyInitialNode());
+        stack[depth++] = initial;
+        discovered.set(initial);
+        while (depth > 0) {
+            int id = stack[depth - 1];
+            int[] succ = getSuccessorIds(id);
+            if (nextSucc[depth - 1] < succ.length) {
+                int next = succ[nextSucc[depth - 1]++];
+                if (!discovered.get(next)) {
+                    discovered.set(next);
+                    stack[depth] = next;
+                    nextSucc[depth] = 0;
+                    depth++;
+                }
+            } else {
+                depth--;
+                order[numOrdered++] = id;
+            }
+        }
+        for (int i = 0, j = numOrdered - 1; i < j; i++, j--) {
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+
+        for (int id = 0; id < idBound; id++) {
+            if (partitions[id] != null && !discovered.get(id)) {
+                order[numOrdered++] = id;
+            }
+        }
+        return Arrays.copyOf(order, numOrdered);
+    }
+
+    /**
+     * Returns the ids of the partitions that lie on some path through the
+     * partition with the given id: the partition itself, the partitions that
+     * it can reach, and the partitions that can reach it.
+     */
+    public BitSet getConnectedIds(int id) {
+        sync();
+        // The predecessors of each partition, in CSR form.
+        int[] predOffsets = new int[idBound + 1];
+        for (int src = 0; src < idBound; src++) {
+            if (partitions[src] != null) {
+                for (int dst : getSuccessorIds(src)) {
+                    predOffsets[dst + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < idBound; i++) {
+            predOffsets[i + 1] += predOffsets[i];
+        }
+        int[] preds = new int[predOffsets[idBound]];
+        int[] fill = Arrays.copyOf(predOffsets, idBound);
+        for (int src = 0; src < idBound; src++) {
+            if (partitions[src] != null) {
+                for (int dst : getSuccessorIds(src)) {
+                    preds[fill[dst]++] = src;
+                }
+            }
+        }
+
+        BitSet connected = new BitSet(idBound);
+        connected.set(id);
+        int[] stack = new int[idBound];
+
+        // Partitions reachable from id.
+        BitSet seen = new BitSet(idBound);
+        seen.set(id);
+        int depth = 0;
+        stack[depth++] = id;
+        while (depth > 0) {
+            for (int next : getSuccessorIds(stack[--depth])) {
+                if (!seen.get(next)) {
+                    seen.set(next);
+                    stack[depth++] = next;
+                }
+            }
+        }
+        connected.or(seen);
+
+        // Partitions that reach id.
+        seen.clear();
+        seen.set(id);
+        stack[depth++] = id;
+        while (depth > 0) {
+            int cur = stack[--depth];
+            for (int i = predOffsets[cur]; i < predOffsets[cur + 1]; i++) {
+                int prev = preds[i];
+                if (!seen.get(prev)) {
+                    seen.set(prev);
+                    stack[depth++] = prev;
+                }
+            }
+        }
+        connected.or(seen);
+        return connected;
+    }
+
+    @Override
+    public Set<Partition> getNodes() {
+        return pGraph.getNodes();
+    }
+
+    @Override
+    public Set<String> getRelations() {
+        return pGraph.getRelations();
+    }
+
+    @Override
+    public Partition getDummyInitialNode() {
+        return pGraph.getDummyInitialNode();
+    }
+
+    /**
+     * Returns the successors of node. The returned set is cached by the view
+     * and cannot be modified.
+     */
+    @Override
+    public Set<Partition> getAdjacentNodes(Partition node) {
+        int id = getPartitionId(node);
+        Set<Partition> adjacent = adjacentSets[id];
+        if (adjacent != null) {
+            numAdjacencyHits++;
+            return adjacent;
+        }
+        numAdjacencyRebuilds++;
+        // List the successors in the order of the partition's events and their
+        // transitions, which is the order in which Partition.getAllSuccessors()
+        // has always listed them: the tracing model checker explores
+        // successors in this order, and its shortest counter-examples depend
+        // on it.
+        Set<Partition> succ = new LinkedHashSet<Partition>();
+        for (EventNode e : node.getEventNodes()) {
+            int eId = e.denseId;
+            for (int j = allCsr.offsets[eId]; j < allCsr.offsets[eId + 1]; j++) {
+                succ.add(partitions[eventPartition[allCsr.targets[j]]]);
+            }
+        }
+        assert succ.size() == numSuccs[id];
+        adjacent = Collections.unmodifiableSet(succ);
+        adjacentSets[id] = adjacent;
+        return adjacent;
+    }
+
+    /**
+     * Returns the successors of partition if it is in the graph, and null
+     * otherwise. Used by Partition.getAllSuccessors().
+     */
+    Set<Partition> getIndexedSuccessors(Partition partition) {
+        sync();
+        if (!isIndexed(partition)) {
+            return null;
+        }
+        return getAdjacentNodes(partition);
+    }
+
+    /**
+     * Partitions can only be added to the underlying PartitionGraph.
+     */
+    @Override
+    public void add(Partition node) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -48,6 +48,14 @@ public class EventNode implements INode<EventNode> {
 	 */
 	private int traceID = 0;
 
+	/**
+	 * The id of this node in the DenseGraphView of its trace graph, -1 if it
+	 * has not been indexed by a view. Views are only created on request (see
+	 * PartitionGraph.getDenseView()), after the log has been parsed and mined,
+	 * so per-event data that is needed before then cannot be keyed by this id.
+	 */
+	int denseId = -1;
+
 	List<Transition<EventNode>> transitions = new ArrayList<Transition<EventNode>>();
 
 	/**
@@ -388,6 +396,30 @@ public class EventNode implements INode<EventNode> {
 		return event.getLineNum();
 	}
 
+	/**
+	 * Compares the positions of this and other in the log: by file name, and
+	 * then by line number. Events that were not parsed from a file come first.
+	 * Nodes at the same position (for example, the dummy initial and terminal
+	 * nodes) compare as equal.
+	 */
+	public int compareLogPosition(EventNode other) {
+		String fileName = getFullFileName();
+		String otherFileName = other.getFullFileName();
+		if (fileName != otherFileName) {
+			if (fileName == null) {
+				return -1;
+			}
+			if (otherFileName == null) {
+				return 1;
+			}
+			int fileCmp = fileName.compareTo(otherFileName);
+			if (fileCmp != 0) {
+				return fileCmp;
+			}
+		}
+		return Integer.compare(getLineNum(), other.getLineNum());
+	}
+
 	/**
 	 * This method returns the set of transitions augmenting each transition
 	 * with information about frequency and number of observations.
@@ -62,6 +62,24 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * The id of this partition in the DenseGraphView of its partition graph,
+     * -1 if it has not been indexed by a view.
+     */
+    int denseId = -1;
+
+    /**
+     * The DenseGraphView that indexes this partition, if any. Its adjacency
+     * index is used to answer getAllSuccessors().
+     */
+    DenseGraphView view = null;
+
+    /**
+     * The event node of this partition that comes first in the log (see
+     * EventNode.compareLogPosition()), or null if it must be recomputed.
+     */
+    private EventNode firstEventNode = null;
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -103,6 +121,7 @@ public class Partition implements INode<Partition> {
         }
 
         events.addAll(eNodes);
+        firstEventNode = null;
         for (final EventNode e : eNodes) {
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
@@ -125,6 +144,7 @@ public class Partition implements INode<Partition> {
         }
         eNode.setParent(this);
         events.add(eNode);
+        firstEventNode = null;
     }
 
     /**
@@ -134,6 +154,24 @@ public class Partition implements INode<Partition> {
         return events;
     }
 
+    /**
+     * Returns the event node of this partition that comes first in the log.
+     * Splitting a partition never moves the first event node of a part
+     * earlier, so the model checker uses these nodes to order paths in a way
+     * that is stable across refinement rounds.
+     */
+    public EventNode getFirstEventNode() {
+        if (firstEventNode == null) {
+            for (EventNode e : events) {
+                if (firstEventNode == null
+                        || e.compareLogPosition(firstEventNode) < 0) {
+                    firstEventNode = e;
+                }
+            }
+        }
+        return firstEventNode;
+    }
+
     /**
      * Removes a set of event nodes. NOTE: this method cannot be used to remove
      * all the messages in the partition. For this, use the removeAllMessages()
@@ -143,6 +181,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeEventNodes(Set<EventNode> eventNodes) {
         events.removeAll(eventNodes);
+        firstEventNode = null;
         assert events.size() > 0;
     }
 
@@ -151,6 +190,7 @@ public class Partition implements INode<Partition> {
      */
     public void removeAllEventNodes() {
         events.clear();
+        firstEventNode = null;
         initialized = false;
     }
 
@@ -550,6 +590,13 @@ public class Partition implements INode<Partition> {
 
     @Override
     public Set<Partition> getAllSuccessors() {
+        if (view != null) {
+            Set<Partition> indexed = view.getIndexedSuccessors(this);
+            if (indexed != null) {
+                return new LinkedHashSet<Partition>(indexed);
+            }
+        }
+
         Set<Partition> successors = new LinkedHashSet<Partition>();
         for (EventNode e : events) {
             for (EventNode eSucc : e.getAllSuccessors()) {
@@ -18,6 +18,7 @@ import java.util.logging.Logger;
 import synoptic.algorithms.graphops.IOperation;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.ltlchecker.IncrementalTargetGraph;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
@@ -59,7 +60,10 @@ public class PartitionGraph implements IGraph<Partition> {
     /** Holds all relations known to exist in this graph. */
     private final Set<String> relations = new LinkedHashSet<String>();
 
-    /** A cache of inter-partition transitions. */
+    /**
+     * A cache of inter-partition transitions, used when the graph has no dense
+     * view.
+     */
     private final LinkedHashMap<Partition, Set<Partition>> transitionCache = new LinkedHashMap<Partition, Set<Partition>>();
 
     /** An ordered list of all partition splits applied to the graph so far. */
@@ -68,6 +72,31 @@ public class PartitionGraph implements IGraph<Partition> {
     /** Initial trace graph. */
     private ChainsTraceGraph traceGraph;
 
+    /**
+     * The dense view of this graph, created on the first call to
+     * getDenseView() and kept up to date by the methods that operations use to
+     * modify the graph. Once created, its adjacency index answers
+     * getAdjacentNodes() in place of transitionCache. The view costs memory
+     * in proportion to the trace graph, so it is only created on request (see
+     * the denseGraphView option).
+     */
+    private DenseGraphView denseView = null;
+
+    /**
+     * The partitions reported to markChanged(), oldest first, for
+     * getChangedPartitionsSince(). The log is dropped when it grows much
+     * larger than the graph, and changeLogStart is the version of its first
+     * entry.
+     */
+    private final List<Partition> changeLog = new ArrayList<Partition>();
+    private long changeLogStart = 0;
+
+    /**
+     * The LTL target graphs of this graph, by relation, which are patched as
+     * the graph changes (see IncrementalTargetGraph). Guarded by itself.
+     */
+    private final Map<String, IncrementalTargetGraph> ltlTargetGraphs = new LinkedHashMap<String, IncrementalTargetGraph>();
+
     // /////////////////////////////////////////////////////////////////////////
     // This part is for the purpose of test generation.
     /**
@@ -112,6 +141,29 @@ public class PartitionGraph implements IGraph<Partition> {
         partitionByIndexSetsAndLabels(g.getNodes(), partitioningIndexSets);
     }
 
+    /**
+     * Construct a PartitionGraph whose partitions are the given sets of event
+     * nodes of {@code g}, in the given order. The sets must be disjoint, must
+     * cover all the nodes of {@code g} (including its dummy INITIAL and
+     * TERMINAL nodes), and must each contain event nodes of a single event
+     * type.
+     * 
+     * @param g
+     *            The initial graph
+     * @param partitioning
+     *            The event nodes of each partition
+     */
+    public PartitionGraph(ChainsTraceGraph g,
+            Collection<? extends Set<EventNode>> partitioning,
+            TemporalInvariantSet invariants) {
+        this(g, invariants);
+
+        partitions = new LinkedHashSet<Partition>();
+        for (Set<EventNode> eNodes : partitioning) {
+            partitions.add(new Partition(eNodes));
+        }
+    }
+
     /**
      * Creates a partition graph without any partitions. Takes care of setting
      * up the internal initialEvents, invariants, and traceGraph data
@@ -144,6 +196,71 @@ public class PartitionGraph implements IGraph<Partition> {
         return op.commit(this);
     }
 
+    /**
+     * Returns the array-backed view of this graph, which identifies partitions
+     * and events by dense integer ids. The view is created on the first call,
+     * and is maintained under apply() from then on.
+     */
+    public DenseGraphView getDenseView() {
+        if (denseView == null) {
+            denseView = new DenseGraphView(this, traceGraph);
+            transitionCache.clear();
+        }
+        return denseView;
+    }
+
+    /**
+     * Returns true if getDenseView() has created the dense view of this graph.
+     */
+    public boolean hasDenseView() {
+        return denseView != null;
+    }
+
+    /**
+     * Reports a partition that was added, removed, or whose events changed to
+     * the dense view, if there is one, and records it in the change log.
+     */
+    private void markChanged(Partition node) {
+        if (denseView != null) {
+            denseView.markChanged(node);
+        }
+        if (changeLog.size() > 4 * partitions.size() + 64) {
+            changeLogStart += changeLog.size();
+            changeLog.clear();
+        }
+        changeLog.add(node);
+    }
+
+    /**
+     * Returns the version of this graph, which increases whenever a partition
+     * is added, removed, or its events change.
+     */
+    public long getVersion() {
+        return changeLogStart + changeLog.size();
+    }
+
+    /**
+     * Returns the LTL target graphs of this graph, by relation. Callers must
+     * synchronize on the returned map.
+     */
+    public Map<String, IncrementalTargetGraph> getLtlTargetGraphs() {
+        return ltlTargetGraphs;
+    }
+
+    /**
+     * Returns the partitions that were added, removed, or whose events changed
+     * since this graph had the given version, or null if these changes are no
+     * longer recorded. Some of the returned partitions may no longer be in the
+     * graph.
+     */
+    public Set<Partition> getChangedPartitionsSince(long version) {
+        if (version < changeLogStart) {
+            return null;
+        }
+        return new LinkedHashSet<Partition>(changeLog.subList(
+                (int) (version - changeLogStart), changeLog.size()));
+    }
+
     /**
      * Returns the most recently applied PartitionMultiSplit, null if no splits
      * have been made
@@ -153,14 +270,20 @@ public class PartitionGraph implements IGraph<Partition> {
     }
 
     /**
-     * Returns a set of partitions that are adjacent to pNode. Uses the internal
-     * transitionCache for speed.
+     * Returns a set of partitions that are adjacent to pNode. Uses the
+     * adjacency index of the dense view, which is updated incrementally as
+     * operations are applied, if the graph has a view, and the internal
+     * transitionCache otherwise, for speed. The returned set must not be
+     * modified.
      * 
      * @param pNode
      * @return set of adjacent partitions to pNode
      */
     @Override
     public Set<Partition> getAdjacentNodes(Partition pNode) {
+        if (denseView != null) {
+            return denseView.getAdjacentNodes(pNode);
+        }
         if (transitionCache.containsKey(pNode)) {
             return transitionCache.get(pNode);
         }
@@ -194,8 +317,6 @@ public class PartitionGraph implements IGraph<Partition> {
         for (Set<EventNode> eNodes : prepartitions.values()) {
             partitions.add(new Partition(eNodes));
         }
-
-        transitionCache.clear();
     }
 
     private void partitionByIndexSetsAndLabels(Collection<EventNode> events,
@@ -306,7 +427,6 @@ public class PartitionGraph implements IGraph<Partition> {
             partitions.add(partition);
             seenENodes.add(e);
         }
-        transitionCache.clear();
     }
 
     @Override
@@ -369,7 +489,15 @@ public class PartitionGraph implements IGraph<Partition> {
         clearNodeAdjacentsCache(node);
     }
 
+    // The following three methods are called by operations for every
+    // partition whose events they changed. The dense view moves the events of
+    // these partitions in its adjacency index, which updates the adjacency of
+    // these partitions and of their predecessors. Without a view, the
+    // transitionCache entries that may have changed are dropped instead.
+
     public void mergeAdjacentsCache(Partition from, Partition to) {
+        markChanged(from);
+        markChanged(to);
         for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
                 .entrySet().iterator(); pIter.hasNext();) {
             Set<Partition> parts = pIter.next().getValue();
@@ -381,24 +509,24 @@ public class PartitionGraph implements IGraph<Partition> {
     }
 
     public void clearNodeAdjacentsCache(Partition node) {
+        markChanged(node);
         transitionCache.remove(node);
-        // System.out.println("Cache size: " + transitionCache.size());
         for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
                 .entrySet().iterator(); pIter.hasNext();) {
             if (pIter.next().getValue().contains(node)) {
-                // System.out.println("cache rm");
                 pIter.remove();
             }
         }
-        // System.out.println("Cache' size: " + transitionCache.size());
     }
 
     public void removeFromCache(Partition node) {
+        markChanged(node);
         transitionCache.remove(node);
     }
 
     public void removePartition(Partition node) {
         partitions.remove(node);
+        markChanged(node);
     }
 
     /**
@@ -31,7 +31,9 @@ public class Event {
     private final EventType eType;
 
     /**
-     * The time this event occurred.
+     * The time this event occurred. Each event holds its own time object;
+     * TimeSeries and PathConstraintSummary keep the totally ordered times that
+     * they collect from events as encoded longs (see TotalTimeType).
      */
     private ITime time;
 
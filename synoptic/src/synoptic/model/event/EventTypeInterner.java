@@ -0,0 +1,53 @@
+package synoptic.model.event;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns dense int ids to event types, in the order in which the types are
+ * first interned, so that per-type data can be kept in arrays indexed by id
+ * rather than in maps keyed by EventType.
+ */
+public class EventTypeInterner {
+    private final Map<EventType, Integer> ids = new HashMap<EventType, Integer>();
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+
+    /**
+     * Returns the id of eType, assigning it the next id if it does not have
+     * one yet.
+     */
+    public int intern(EventType eType) {
+        Integer id = ids.get(eType);
+        if (id == null) {
+            id = eTypes.size();
+            ids.put(eType, id);
+            eTypes.add(eType);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of eType, or -1 if it has not been interned.
+     */
+    public int getId(EventType eType) {
+        Integer id = ids.get(eType);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Returns the event type with the given id.
+     */
+    public EventType getEventType(int id) {
+        return eTypes.get(id);
+    }
+
+    /**
+     * Returns the number of event types interned, which is one past the
+     * largest id.
+     */
+    public int size() {
+        return eTypes.size();
+    }
+}
@@ -15,6 +15,7 @@ import org.json.simple.JSONValue;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.model.DenseGraphView;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
@@ -57,14 +58,16 @@ public class JsonExporter {
      *            The filename to which the JSON object should be written sans
      *            file extension
      * @param graph
-     *            The partition graph to output
+     *            The partition graph to output, or its dense view
      */
     public static <T extends INode<T>> void exportJsonObject(
             String baseFilename, IGraph<T> graph) {
 
-        // The graph must be a partition graph
-        assert graph instanceof PartitionGraph;
-        PartitionGraph pGraph = (PartitionGraph) graph;
+        // The graph must be a partition graph, or its dense view
+        assert graph instanceof PartitionGraph
+                || graph instanceof DenseGraphView;
+        PartitionGraph pGraph = graph instanceof DenseGraphView ? ((DenseGraphView) graph)
+                .getPartitionGraph() : (PartitionGraph) graph;
 
         Map<String, Object> finalModelMap = new LinkedHashMap<String, Object>();
 
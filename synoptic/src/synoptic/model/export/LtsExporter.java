@@ -6,6 +6,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.concurrent.LinkedBlockingQueue;
 
+import synoptic.model.DenseGraphView;
 import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.interfaces.IGraph;
@@ -24,14 +25,16 @@ public class LtsExporter {
      *            The filename to which the LTS should be written sans file
      *            extension
      * @param graph
-     *            The partition graph to output
+     *            The partition graph to output, or its dense view
      */
     public static <T extends INode<T>> void exportLTS(String baseFilename,
             IGraph<T> graph) {
 
-        // The graph must be a partition graph
-        assert graph instanceof PartitionGraph;
-        PartitionGraph pGraph = (PartitionGraph) graph;
+        // The graph must be a partition graph, or its dense view
+        assert graph instanceof PartitionGraph
+                || graph instanceof DenseGraphView;
+        PartitionGraph pGraph = graph instanceof DenseGraphView ? ((DenseGraphView) graph)
+                .getPartitionGraph() : (PartitionGraph) graph;
 
         // Output the final model map as an LTS model
         try {
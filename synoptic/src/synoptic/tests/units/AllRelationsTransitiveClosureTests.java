@@ -124,4 +124,21 @@ public class AllRelationsTransitiveClosureTests extends SynopticTest {
 
         assertTrue(r.equals(tcs.getRelations()));
     }
+
+    /**
+     * Compact closures are only available through getReachability().
+     */
+    @Test(expected = IllegalStateException.class)
+    public void getCompactTest() {
+        a.addTransition(new Transition<EventNode>(a, b, "followed by"));
+        g.add(a);
+        g.add(b);
+        g.tagInitial(a, "followed by");
+        g.tagTerminal(b, "followed by");
+        AllRelationsTransitiveClosure tcs = new AllRelationsTransitiveClosure(
+                g, true);
+
+        assertTrue(tcs.getReachability("followed by").isReachable(a, b));
+        tcs.get("followed by");
+    }
 }
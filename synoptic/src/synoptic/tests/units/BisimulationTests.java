@@ -1,8 +1,13 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -136,6 +141,193 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Refines a fresh partition graph over inputGraph, using either the
+     * incremental or the full counter-example recomputation mode, and returns
+     * the resulting partitioning of events.
+     */
+    private Set<Set<EventNode>> refine(ChainsTraceGraph inputGraph,
+            TemporalInvariantSet invariants, boolean incremental) {
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.incrementalRefinement = incremental;
+        main.random = new Random(main.options.randomSeed);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        // The refined graph must satisfy all of the invariants.
+        assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+
+        Set<Set<EventNode>> partitioning = new HashSet<Set<EventNode>>();
+        for (Partition p : pGraph.getNodes()) {
+            partitioning.add(new HashSet<EventNode>(p.getEventNodes()));
+        }
+        return partitioning;
+    }
+
+    /**
+     * Checks that incremental counter-example recomputation during refinement
+     * produces exactly the same model as recomputing all counter-examples in
+     * every round.
+     */
+    private void incrementalRefinementEquivalence(String[] traceStrArray)
+            throws Exception {
+        incrementalRefinementEquivalence(traceStrArray, false);
+    }
+
+    /**
+     * Same as incrementalRefinementEquivalence(traceStrArray), but if
+     * ignoreIntrBy is set, then the IntrBy invariants, which refinement cannot
+     * always satisfy, are not mined.
+     */
+    private void incrementalRefinementEquivalence(String[] traceStrArray,
+            boolean ignoreIntrBy) throws Exception {
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                concatinateWithNewlines(traceStrArray), getTestName()
+                        .getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+        if (ignoreIntrBy) {
+            invariants = filterIntrByInvariants(invariants);
+        }
+
+        Set<Set<EventNode>> fullPartitioning = refine(inputGraph, invariants,
+                false);
+        Set<Set<EventNode>> incrPartitioning = refine(inputGraph, invariants,
+                true);
+        assertEquals(fullPartitioning, incrPartitioning);
+    }
+
+    /**
+     * Incremental refinement on the log used by splittablePartitionsTest.
+     */
+    @Test
+    public void incrementalRefinementSplittableTest() throws Exception {
+        incrementalRefinementEquivalence(new String[] { "a", "x", "y", "z",
+                "b", "--", "c", "x", "y", "z", "d" });
+    }
+
+    /**
+     * Incremental refinement on a log with loops and shared sub-sequences.
+     */
+    @Test
+    public void incrementalRefinementLoopsTest() throws Exception {
+        incrementalRefinementEquivalence(new String[] { "a", "b", "c", "b",
+                "c", "d", "--", "a", "b", "d", "--", "e", "b", "c", "f", "--",
+                "e", "c", "b", "f", "--", "a", "c", "b", "c", "d" });
+    }
+
+    /**
+     * Incremental refinement on larger, pseudo-randomly generated logs. Each
+     * trace draws its events from one of three groups of event types, so that
+     * splits in one group leave counter-examples in the other groups intact.
+     */
+    @Test
+    public void incrementalRefinementRandomLogTest() throws Exception {
+        for (int seed = 0; seed < 20; seed++) {
+            Random rand = new Random(seed);
+            List<String> log = new ArrayList<String>();
+            for (int trace = 0; trace < 30 + rand.nextInt(30); trace++) {
+                if (trace != 0) {
+                    log.add("--");
+                }
+                int traceLen = 3 + rand.nextInt(10);
+                for (int i = 0; i < traceLen; i++) {
+                    log.add("g" + (trace % 3) + "e" + rand.nextInt(6));
+                }
+            }
+            incrementalRefinementEquivalence(
+                    log.toArray(new String[log.size()]), true);
+        }
+    }
+
+    /**
+     * Refinement that rules out satisfied invariants with the bit-parallel FSM
+     * checker must produce the same model as refinement without it.
+     */
+    @Test
+    public void bitSetPrecheckRefinementTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "b", "c", "b", "c", "d",
+                "--", "a", "b", "d", "--", "e", "b", "c", "f", "--", "e", "c",
+                "b", "f", "--", "a", "c", "b", "c", "d" };
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                concatinateWithNewlines(traceStrArray), getTestName()
+                        .getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.bitSetPrecheck = false;
+        Set<Set<EventNode>> fullPartitioning = refine(inputGraph, invariants,
+                false);
+        main.options.bitSetPrecheck = true;
+        Set<Set<EventNode>> precheckPartitioning = refine(inputGraph,
+                invariants, false);
+        assertEquals(fullPartitioning, precheckPartitioning);
+    }
+
+    /**
+     * Coarsening that only re-checks the invariants local to each merge must
+     * produce the same model as coarsening that re-checks all invariants. As
+     * in incrementalRefinementRandomLogTest, each trace draws its events from
+     * one of three groups of event types, so that the invariants over the
+     * other groups are not local to a merge.
+     */
+    @Test
+    public void localMergeChecksTest() throws Exception {
+        Random rand = new Random(11);
+        List<String> log = new ArrayList<String>();
+        for (int trace = 0; trace < 30; trace++) {
+            if (trace != 0) {
+                log.add("--");
+            }
+            int traceLen = 2 + rand.nextInt(5);
+            for (int i = 0; i < traceLen; i++) {
+                log.add("g" + (trace % 3) + "e" + rand.nextInt(6));
+            }
+        }
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                concatinateWithNewlines(log.toArray(new String[log.size()])),
+                getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = filterIntrByInvariants(miner
+                .computeInvariants(inputGraph, false, false));
+
+        AbstractMain main = AbstractMain.getInstance();
+        List<Set<Set<EventNode>>> partitionings = new ArrayList<Set<Set<EventNode>>>();
+        for (boolean local : new boolean[] { false, true }) {
+            main.options.localMergeChecks = local;
+            main.random = new Random(main.options.randomSeed);
+            PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                    invariants);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            Bisimulation.mergePartitions(pGraph);
+            assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+
+            Set<Set<EventNode>> partitioning = new HashSet<Set<EventNode>>();
+            for (Partition p : pGraph.getNodes()) {
+                partitioning.add(new HashSet<EventNode>(p.getEventNodes()));
+            }
+            partitionings.add(partitioning);
+        }
+        assertEquals(partitionings.get(0), partitionings.get(1));
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
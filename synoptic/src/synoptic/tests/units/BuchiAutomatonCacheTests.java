@@ -0,0 +1,172 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import gov.nasa.ltl.graph.Edge;
+import gov.nasa.ltl.graph.Graph;
+import gov.nasa.ltl.graph.Node;
+import gov.nasa.ltl.trans.LTL2Buchi;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.ltlcheck.BuchiAutomatonCache;
+import synoptic.invariants.ltlchecker.LTLFormula;
+import synoptic.model.event.Event;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that LTL formulas are translated into the same Buchi automata
+ * concurrently as serially, and that BuchiAutomatonCache shares the automata
+ * of identical formulas.
+ */
+public class BuchiAutomatonCacheTests extends SynopticTest {
+
+    /**
+     * Returns the negated LTL formulas of invariants of every type over a few
+     * event types.
+     */
+    private static List<String> getFormulas() {
+        String[] eTypes = new String[] { "a", "b", "c" };
+        List<String> formulas = new ArrayList<String>();
+        for (String a : eTypes) {
+            for (String b : eTypes) {
+                if (a.equals(b)) {
+                    continue;
+                }
+                BinaryInvariant[] invs = new BinaryInvariant[] {
+                        new AlwaysFollowedInvariant(a, b,
+                                Event.defTimeRelationStr),
+                        new AlwaysPrecedesInvariant(a, b,
+                                Event.defTimeRelationStr),
+                        new NeverFollowedInvariant(a, b,
+                                Event.defTimeRelationStr),
+                        new InterruptedByInvariant(a, b,
+                                Event.defTimeRelationStr) };
+                for (BinaryInvariant inv : invs) {
+                    formulas.add("! ("
+                            + LTLFormula.prepare(inv.getLTLString()) + ")");
+                }
+            }
+        }
+        return formulas;
+    }
+
+    /**
+     * Returns a description of an automaton that does not depend on the
+     * identities of its nodes: its node and edge counts, and the sorted guards
+     * of its edges.
+     */
+    private static String describe(Graph automaton) {
+        TreeSet<String> guards = new TreeSet<String>();
+        for (Node n : automaton.getNodes()) {
+            for (Edge e : n.getOutgoingEdges()) {
+                guards.add(e.getGuard());
+            }
+        }
+        return automaton.getNodeCount() + " " + automaton.getEdgeCount() + " "
+                + guards;
+    }
+
+    /**
+     * Tests that translating formulas on several threads at once produces the
+     * same automata as translating them one at a time.
+     */
+    @Test
+    public void concurrentTranslationTest() throws Exception {
+        List<String> formulas = getFormulas();
+        List<String> expected = new ArrayList<String>();
+        for (String formula : formulas) {
+            expected.add(describe(LTL2Buchi.translate(formula)));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 4; i++) {
+                for (final String formula : formulas) {
+                    futures.add(pool.submit(new Callable<String>() {
+                        @Override
+                        public String call() throws Exception {
+                            return describe(LTL2Buchi.translate(formula));
+                        }
+                    }));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(expected.get(i % formulas.size()), futures.get(i)
+                        .get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests that the cache returns the same automaton for identical formulas,
+     * and that invariants with identical formulas share it.
+     */
+    @Test
+    public void cacheTest() throws Exception {
+        BuchiAutomatonCache.clear();
+        String formula = getFormulas().get(0);
+        Graph automaton = BuchiAutomatonCache.getAutomaton(formula);
+        assertSame(automaton, BuchiAutomatonCache.getAutomaton(new String(
+                formula)));
+        assertEquals(1, BuchiAutomatonCache.size());
+        assertEquals(describe(LTL2Buchi.translate(formula)),
+                describe(automaton));
+
+        BinaryInvariant inv1 = new AlwaysFollowedInvariant("x", "y",
+                Event.defTimeRelationStr);
+        BinaryInvariant inv2 = new AlwaysFollowedInvariant("x", "y",
+                Event.defTimeRelationStr);
+        assertSame(inv1.getAutomaton(), inv2.getAutomaton());
+        assertEquals(2, BuchiAutomatonCache.size());
+    }
+
+    /**
+     * Tests that the cache keeps only the MAX_SIZE most recently used
+     * automata.
+     */
+    @Test
+    public void cacheBoundTest() throws Exception {
+        BuchiAutomatonCache.clear();
+        List<String> formulas = new ArrayList<String>();
+        for (int i = 0; i <= BuchiAutomatonCache.MAX_SIZE; i++) {
+            BinaryInvariant inv = new AlwaysFollowedInvariant("x" + i, "y",
+                    Event.defTimeRelationStr);
+            formulas.add("! (" + LTLFormula.prepare(inv.getLTLString()) + ")");
+        }
+
+        // Use the first formula again before the cache is full, so that the
+        // second one is the least recently used when the last one is added.
+        Graph first = BuchiAutomatonCache.getAutomaton(formulas.get(0));
+        Graph second = BuchiAutomatonCache.getAutomaton(formulas.get(1));
+        for (int i = 2; i < BuchiAutomatonCache.MAX_SIZE; i++) {
+            BuchiAutomatonCache.getAutomaton(formulas.get(i));
+        }
+        assertSame(first, BuchiAutomatonCache.getAutomaton(formulas.get(0)));
+        BuchiAutomatonCache.getAutomaton(formulas.get(formulas.size() - 1));
+
+        assertEquals(BuchiAutomatonCache.MAX_SIZE, BuchiAutomatonCache.size());
+        assertSame(first, BuchiAutomatonCache.getAutomaton(formulas.get(0)));
+        assertNotSame(second,
+                BuchiAutomatonCache.getAutomaton(formulas.get(1)));
+        BuchiAutomatonCache.clear();
+    }
+}
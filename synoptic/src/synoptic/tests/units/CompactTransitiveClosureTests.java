@@ -0,0 +1,154 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.CompactTransitiveClosure;
+import synoptic.algorithms.TransitiveClosure;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.event.Event;
+import synoptic.model.interfaces.IGraph;
+import synoptic.tests.DAGsTraceGraphBaseTest;
+
+/**
+ * Tests that CompactTransitiveClosure has the same reachability as the
+ * transitive closures computed by ChainsTraceGraph and DAGsTraceGraph.
+ */
+public class CompactTransitiveClosureTests extends DAGsTraceGraphBaseTest {
+
+    /**
+     * Asserts that tc and compact agree on the reachability of every pair of
+     * nodes of g.
+     */
+    private static void assertSameReachability(IGraph<EventNode> g,
+            TransitiveClosure tc, CompactTransitiveClosure compact) {
+        for (EventNode m : g.getNodes()) {
+            for (EventNode n : g.getNodes()) {
+                assertEquals(m + " -> " + n, tc.isReachable(m, n),
+                        compact.isReachable(m, n));
+            }
+        }
+    }
+
+    /**
+     * Asserts that the compact closure of g agrees with the closures computed
+     * by Floyd Warshall and, if useGoralcikova, by the Goralcikova algorithm.
+     */
+    private static void assertSameReachability(DAGsTraceGraph g,
+            Set<String> relations, boolean useGoralcikova) {
+        CompactTransitiveClosure compact = new CompactTransitiveClosure(g,
+                relations);
+        assertSameReachability(g, g.getTransitiveClosure(relations, true),
+                compact);
+        if (useGoralcikova) {
+            assertSameReachability(g,
+                    g.getTransitiveClosure(relations, false), compact);
+        }
+    }
+
+    /**
+     * Generates a partially ordered log of numTraces traces, each of numEvents
+     * events at numProcesses processes, in which an event receives a message
+     * from the last event at another process with probability 1/3.
+     */
+    private static String[] genRandomPOLog(Random random, int numTraces,
+            int numEvents, int numProcesses) {
+        List<String> log = new ArrayList<String>();
+        for (int t = 0; t < numTraces; t++) {
+            if (t != 0) {
+                log.add("--");
+            }
+            int[][] clocks = new int[numProcesses][numProcesses];
+            for (int i = 0; i < numEvents; i++) {
+                int p = random.nextInt(numProcesses);
+                if (random.nextInt(3) == 0) {
+                    int sender = random.nextInt(numProcesses);
+                    for (int q = 0; q < numProcesses; q++) {
+                        clocks[p][q] = Math.max(clocks[p][q],
+                                clocks[sender][q]);
+                    }
+                }
+                clocks[p][p]++;
+                StringBuilder event = new StringBuilder();
+                for (int q = 0; q < numProcesses; q++) {
+                    event.append(q == 0 ? "" : ",").append(clocks[p][q]);
+                }
+                event.append(" " + p + " e" + random.nextInt(3));
+                log.add(event.toString());
+            }
+        }
+        return log.toArray(new String[log.size()]);
+    }
+
+    /**
+     * Tests a DAG that looks like:
+     * 
+     * <pre>
+     * a -> b ---> d -> e
+     *  \-> c -/    \-> f
+     * </pre>
+     */
+    @Test
+    public void complexForkDAGTest() {
+        dag = buildComplexForkDAG();
+        assertSameReachability(dag, FollowedByRelationsSet, true);
+    }
+
+    /**
+     * Tests a DAG with two sources.
+     */
+    @Test
+    public void twoSourcesComplexDAGTest() {
+        dag = buildTwoSourcesComplexDAG();
+        assertSameReachability(dag, FollowedByRelationsSet, true);
+    }
+
+    /**
+     * Tests random totally ordered logs, in which every trace is a single
+     * chain.
+     */
+    @Test
+    public void chainsTest() throws Exception {
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d" };
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add(Event.defTimeRelationStr);
+        for (int i = 0; i < 20; i++) {
+            ChainsTraceGraph g = genInitialLinearGraph(TOLogInvariantMiningTests
+                    .genRandomLog(eventTypes));
+            CompactTransitiveClosure compact = new CompactTransitiveClosure(g,
+                    relations);
+            assertSameReachability(g, g.getTransitiveClosure(relations),
+                    compact);
+            assertEquals(g.getNumTraces(), compact.getNumChains());
+        }
+    }
+
+    /**
+     * Tests random partially ordered logs, with messages between processes.
+     */
+    @Test
+    public void vectorClockDAGsTest() throws Exception {
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add(Event.defTimeRelationStr);
+
+        Random random = new Random(0);
+        for (int i = 0; i < 20; i++) {
+            TraceParser parser = new TraceParser();
+            parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+            parser.addPartitionsSeparator("^--$");
+            DAGsTraceGraph g = genDAGsTraceGraph(
+                    genRandomPOLog(random, 3, 15, 3), parser);
+            assertSameReachability(g, relations, false);
+        }
+    }
+}
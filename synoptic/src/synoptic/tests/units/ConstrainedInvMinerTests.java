@@ -4,14 +4,21 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.LowerBoundConstraint;
 import synoptic.invariants.constraints.TempConstrainedInvariant;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ConstrainedInvMiner;
@@ -19,8 +26,12 @@ import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Trace;
 import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.IRelationPath;
 import synoptic.tests.PynopticTest;
 import synoptic.util.time.DTotalTime;
 import synoptic.util.time.ITime;
@@ -447,4 +458,99 @@ public class ConstrainedInvMinerTests extends PynopticTest {
 
         assertEquals(aAFbyc_time, aAFbyb_time.incrBy(bAFbyc_time));
     }
+
+    /**
+     * Returns the smallest (if lower) or largest delta between an event of type
+     * a and a later event of type b in the same trace, walking every pair of
+     * events.
+     */
+    private static ITime getPairwiseBound(List<List<EventNode>> traces,
+            EventType a, EventType b, boolean lower) {
+        ITime bound = null;
+        for (List<EventNode> trace : traces) {
+            for (int i = 0; i < trace.size(); i++) {
+                for (int j = i + 1; j < trace.size(); j++) {
+                    if (!trace.get(i).getEType().equals(a)
+                            || !trace.get(j).getEType().equals(b)) {
+                        continue;
+                    }
+                    ITime delta = trace.get(j).getTime()
+                            .computeDelta(trace.get(i).getTime());
+                    if (bound == null || (lower ? delta.lessThan(bound)
+                            : bound.lessThan(delta))) {
+                        bound = delta;
+                    }
+                }
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Tests that the constraints mined by walking a log once, serially and
+     * with several threads, are the bounds of the deltas of all pairs of
+     * events of each invariant.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void singlePassMatchesPairwiseBounds() throws Exception {
+        Random rand = new Random(17);
+        List<String> log = new ArrayList<String>();
+        for (int trace = 0; trace < 200; trace++) {
+            if (trace != 0) {
+                log.add("--");
+            }
+            // Every trace starts with s and ends with t, so that s AFby t and
+            // s AP t are mined, among others.
+            log.add("s " + rand.nextInt(100));
+            int traceLen = rand.nextInt(6);
+            for (int i = 0; i < traceLen; i++) {
+                log.add("e" + rand.nextInt(4) + " " + rand.nextInt(100));
+            }
+            log.add("t " + rand.nextInt(100));
+        }
+        ChainsTraceGraph inputGraph = (ChainsTraceGraph) genChainsTraceGraph(
+                log.toArray(new String[log.size()]), genITimeParser());
+        TemporalInvariantSet invs = miner.computeInvariants(inputGraph, false,
+                false);
+
+        TemporalInvariantSet serialInvs = new ConstrainedInvMiner(1)
+                .computeInvariants(inputGraph, false, invs);
+        TemporalInvariantSet parallelInvs = new ConstrainedInvMiner(4)
+                .computeInvariants(inputGraph, false, invs);
+        assertEquals(new ArrayList<ITemporalInvariant>(serialInvs.getSet()),
+                new ArrayList<ITemporalInvariant>(parallelInvs.getSet()));
+
+        List<List<EventNode>> traces = new ArrayList<List<EventNode>>();
+        for (Trace trace : inputGraph.getTraces()) {
+            for (IRelationPath path : trace
+                    .getSingleRelationPaths(Event.defTimeRelationStr)) {
+                List<EventNode> events = new ArrayList<EventNode>();
+                EventNode curr = path.getFirstNode();
+                events.add(curr);
+                while (!curr.equals(path.getLastNode())) {
+                    curr = curr.getAllTransitions().get(0).getTarget();
+                    events.add(curr);
+                }
+                traces.add(events);
+            }
+        }
+
+        int numConstrained = 0;
+        for (ITemporalInvariant inv : serialInvs) {
+            if (!(inv instanceof TempConstrainedInvariant<?>)) {
+                continue;
+            }
+            TempConstrainedInvariant<?> constrInv = (TempConstrainedInvariant<?>) inv;
+            BinaryInvariant binInv = constrInv.getInv();
+            EventType b = binInv instanceof InterruptedByInvariant ? binInv
+                    .getFirst() : binInv.getSecond();
+            assertEquals(getPairwiseBound(traces, binInv.getFirst(), b,
+                    constrInv.getConstraint() instanceof LowerBoundConstraint),
+                    constrInv.getConstraint().getThreshold());
+            numConstrained++;
+        }
+        assertTrue(numConstrained > 0);
+    }
 }
@@ -1,5 +1,6 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -17,6 +18,7 @@ import synoptic.invariants.fsmcheck.TracingStateSet;
 import synoptic.model.EventNode;
 import synoptic.model.Partition;
 import synoptic.model.event.Event;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.PynopticTest;
 import synoptic.util.time.ITime;
 import synoptic.util.time.ITotalTime;
@@ -389,4 +391,48 @@ public class ConstrainedTracingSetTests extends PynopticTest {
         assertTrue(cTSubset.isSubset(cTSet));
         assertFalse(cTSet.isSubset(cTSubset));
     }
+
+    /**
+     * Check that a path set with setStates() is reported unchanged by
+     * failpath(), including by copies of the tracing set, which share its
+     * paths
+     */
+    @Test
+    public void setStatesFailpathTest() throws Exception {
+        Partition first = new Partition(new EventNode(new Event("x")));
+        Partition second = new Partition(new EventNode(new Event("y")));
+        ConstrainedHistoryNode<Partition> root = new ConstrainedHistoryNode<Partition>(
+                first, new ITotalTime(0));
+        root.startViolationHere();
+        ConstrainedHistoryNode<Partition> end = new ConstrainedHistoryNode<Partition>(
+                second, root, 1, new ArrayList<ITransition<EventNode>>(),
+                new ITotalTime(5));
+        end.endViolationHere();
+
+        // Inhabit states 0 and 4, the permanent reject state of AFbyLower
+        List<ConstrainedHistoryNode<Partition>> states = new ArrayList<ConstrainedHistoryNode<Partition>>();
+        states.add(root);
+        states.add(null);
+        states.add(null);
+        states.add(null);
+        states.add(end);
+        ConstrainedTracingSet<Partition> cTSet = new AFbyLowerTracingSet<Partition>();
+        cTSet.setStates(states);
+        List<ConstrainedTracingSet<Partition>> sets = new ArrayList<ConstrainedTracingSet<Partition>>();
+        sets.add(cTSet);
+        sets.add(cTSet.copy());
+
+        for (ConstrainedTracingSet<Partition> set : sets) {
+            assertTrue(set.isFail());
+            CExamplePath<Partition> cExPath = set.failpath()
+                    .toCounterexample(null);
+            assertEquals(2, cExPath.path.size());
+            assertEquals(first, cExPath.path.get(0));
+            assertEquals(second, cExPath.path.get(1));
+            assertEquals(new ITotalTime(0), cExPath.tDeltas.get(0));
+            assertEquals(new ITotalTime(5), cExPath.tDeltas.get(1));
+            assertEquals(0, cExPath.violationStart);
+            assertEquals(1, cExPath.violationEnd);
+        }
+    }
 }
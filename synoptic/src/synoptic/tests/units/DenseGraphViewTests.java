@@ -0,0 +1,270 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DenseGraphView;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.StringEventType;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for DenseGraphView, and its maintenance by PartitionGraph.
+ */
+public class DenseGraphViewTests extends SynopticTest {
+
+    /**
+     * Returns the initial partition graph of a small log, with all mined
+     * invariants but the IntrBy invariants, which refinement cannot always
+     * satisfy.
+     */
+    private PartitionGraph genGraph() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "a", "b", "c", "--", "a", "a", "c" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                concatinateWithNewlines(events), testName.getMethodName(), -1);
+        ChainsTraceGraph traceGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        TemporalInvariantSet invariants = new ChainWalkingTOInvMiner()
+                .computeInvariants(traceGraph, false, false);
+        return new PartitionGraph(traceGraph, true,
+                filterIntrByInvariants(invariants));
+    }
+
+    private static Partition getPartition(PartitionGraph pGraph, String label) {
+        for (Partition p : pGraph.getNodes()) {
+            if (p.getEType().equals(new StringEventType(label))) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks that the view agrees with pGraph on partition ids, event
+     * membership, and adjacency.
+     */
+    private static void checkView(PartitionGraph pGraph, DenseGraphView view) {
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        for (Partition p : pGraph.getNodes()) {
+            int id = view.getPartitionId(p);
+            assertTrue(id < view.getPartitionIdBound());
+            assertEquals(p, view.getPartition(id));
+            ids.add(id);
+
+            for (EventNode e : p.getEventNodes()) {
+                assertEquals(id,
+                        view.getEventPartitionId(view.getEventId(e)));
+            }
+
+            Set<Partition> adjacent = new LinkedHashSet<Partition>();
+            for (int succ : view.getSuccessorIds(id)) {
+                adjacent.add(view.getPartition(succ));
+            }
+            assertEquals(p.getAllSuccessors(), adjacent);
+            assertEquals(pGraph.getAdjacentNodes(p), view.getAdjacentNodes(p));
+
+            // The adjacency index counts every event-level transition.
+            for (Partition succ : adjacent) {
+                int numTransitions = 0;
+                for (EventNode e : p.getEventNodes()) {
+                    for (EventNode eSucc : e.getAllSuccessors()) {
+                        if (eSucc.getParent() == succ) {
+                            numTransitions++;
+                        }
+                    }
+                }
+                assertEquals(numTransitions, view.getNumTransitions(id,
+                        view.getPartitionId(succ)));
+            }
+        }
+        assertEquals(pGraph.getNodes().size(), ids.size());
+        assertEquals(pGraph.getNodes().size(),
+                view.getReversePostorder().length);
+    }
+
+    /**
+     * Tests that the view of an initial partition graph has the graph's
+     * partitions and transitions.
+     */
+    @Test
+    public void initialViewTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        DenseGraphView view = pGraph.getDenseView();
+        checkView(pGraph, view);
+        assertEquals(view.getPartitionId(pGraph.getDummyInitialNode()),
+                view.getReversePostorder()[0]);
+    }
+
+    /**
+     * Tests that successors are answered from the cache until a split changes
+     * them, and that only the partitions whose successors changed are rebuilt.
+     */
+    @Test
+    public void adjacencyCacheTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        DenseGraphView view = pGraph.getDenseView();
+        Partition a = getPartition(pGraph, "a");
+        Partition b = getPartition(pGraph, "b");
+        Partition c = getPartition(pGraph, "c");
+
+        long rebuilds = view.getNumAdjacencyRebuilds();
+        pGraph.getAdjacentNodes(a);
+        pGraph.getAdjacentNodes(b);
+        pGraph.getAdjacentNodes(c);
+        assertEquals(rebuilds + 3, view.getNumAdjacencyRebuilds());
+        long hits = view.getNumAdjacencyHits();
+        pGraph.getAdjacentNodes(a);
+        pGraph.getAdjacentNodes(b);
+        pGraph.getAdjacentNodes(c);
+        assertEquals(hits + 3, view.getNumAdjacencyHits());
+        assertEquals(rebuilds + 3, view.getNumAdjacencyRebuilds());
+
+        // Split off the c of the trace "a c b", which is the only c that is
+        // followed by b. Only the successors of a (which gains a successor) and
+        // of c (which loses b) change; those of b stay the same.
+        EventNode cEvent = null;
+        for (EventNode e : c.getEventNodes()) {
+            for (EventNode eSucc : e.getAllSuccessors()) {
+                if (eSucc.getParent() == b) {
+                    cEvent = e;
+                }
+            }
+        }
+        PartitionSplit split = new PartitionSplit(c);
+        split.addEventToSplit(cEvent);
+        pGraph.apply(split);
+
+        rebuilds = view.getNumAdjacencyRebuilds();
+        hits = view.getNumAdjacencyHits();
+        pGraph.getAdjacentNodes(a);
+        pGraph.getAdjacentNodes(b);
+        pGraph.getAdjacentNodes(c);
+        assertEquals(rebuilds + 2, view.getNumAdjacencyRebuilds());
+        assertEquals(hits + 1, view.getNumAdjacencyHits());
+        checkView(pGraph, view);
+    }
+
+    /**
+     * Tests that the view is maintained when partitions are split and merged
+     * with apply().
+     */
+    @Test
+    public void splitAndMergeTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        DenseGraphView view = pGraph.getDenseView();
+
+        Partition a = getPartition(pGraph, "a");
+        PartitionSplit split = new PartitionSplit(a);
+        split.addEventToSplit(a.getEventNodes().iterator().next());
+        IOperation rewind = pGraph.apply(split);
+        checkView(pGraph, view);
+
+        // The merge frees the id of the split-off partition.
+        int idBound = view.getPartitionIdBound();
+        pGraph.apply(rewind);
+        checkView(pGraph, view);
+        assertEquals(idBound, view.getPartitionIdBound());
+
+        // Refine the graph, which re-uses the freed id.
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        checkView(pGraph, view);
+    }
+
+    /**
+     * Tests that a graph is refined without a view unless one is requested,
+     * and that a view created afterwards agrees with the adjacency that the
+     * graph maintained without it.
+     */
+    @Test
+    public void optInTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        assertFalse(pGraph.hasDenseView());
+
+        Map<Partition, Set<Partition>> adjacent = new HashMap<Partition, Set<Partition>>();
+        for (Partition p : pGraph.getNodes()) {
+            adjacent.put(p, new HashSet<Partition>(pGraph.getAdjacentNodes(p)));
+        }
+        DenseGraphView view = pGraph.getDenseView();
+        assertTrue(pGraph.hasDenseView());
+        checkView(pGraph, view);
+        for (Partition p : pGraph.getNodes()) {
+            assertEquals(adjacent.get(p),
+                    new HashSet<Partition>(view.getAdjacentNodes(p)));
+        }
+    }
+
+    /**
+     * Returns the ids of the partitions reachable from p, including p, found
+     * by walking Partition.getAllSuccessors().
+     */
+    private static Set<Integer> reachable(DenseGraphView view, Partition p) {
+        Set<Integer> ids = new LinkedHashSet<Integer>();
+        ArrayList<Partition> stack = new ArrayList<Partition>();
+        stack.add(p);
+        ids.add(view.getPartitionId(p));
+        while (!stack.isEmpty()) {
+            for (Partition succ : stack.remove(stack.size() - 1)
+                    .getAllSuccessors()) {
+                if (ids.add(view.getPartitionId(succ))) {
+                    stack.add(succ);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Tests that the connected ids of a partition are those of the partitions
+     * that it reaches or that reach it, in the initial and refined graphs.
+     */
+    @Test
+    public void connectedIdsTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        DenseGraphView view = pGraph.getDenseView();
+        for (int round = 0; round < 2; round++) {
+            for (Partition p : pGraph.getNodes()) {
+                int id = view.getPartitionId(p);
+                Set<Integer> expected = reachable(view, p);
+                for (Partition q : pGraph.getNodes()) {
+                    if (reachable(view, q).contains(id)) {
+                        expected.add(view.getPartitionId(q));
+                    }
+                }
+
+                BitSet connected = view.getConnectedIds(id);
+                Set<Integer> actual = new LinkedHashSet<Integer>();
+                for (int i = connected.nextSetBit(0); i >= 0; i = connected
+                        .nextSetBit(i + 1)) {
+                    actual.add(i);
+                }
+                assertEquals(expected, actual);
+            }
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        }
+    }
+}
@@ -11,10 +11,12 @@ import org.junit.Test;
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.fsmcheck.AFbyInvFsms;
 import synoptic.invariants.fsmcheck.APInvFsms;
 import synoptic.invariants.fsmcheck.FsmStateSet;
+import synoptic.invariants.fsmcheck.IntrByInvFsms;
 import synoptic.invariants.fsmcheck.NFbyInvFsms;
 import synoptic.model.EventNode;
 import synoptic.model.event.Event;
@@ -469,4 +471,192 @@ public class FsmStateSetTests extends SynopticTest {
 
         // TODO: test multiple simultaneous AP machines
     }
+
+    @Test
+    public void IntrByInvFsmsTest() {
+        iInvSpecificGenerator invGen = new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new InterruptedByInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new IntrByInvFsms<EventNode>(invs);
+            }
+        };
+
+        FsmStateSet<EventNode> f1, f2;
+
+        // ////////
+        // Simulate a single "a IntrBy b" invariant.
+
+        // z != a, and neither is fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgZ);
+        f2 = initStateSet("1 1", invGen);
+        f2.setInitial(msgA);
+        assertTrue(!f1.equals(f2));
+        assertTrue(!f1.isFail());
+        assertTrue(!f2.isFail());
+
+        // z->a == a
+        f1.transition(msgA);
+        assertTrue(f1.equals(f2));
+
+        // a->b == z
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgB);
+        f2 = initStateSet("1 1", invGen);
+        f2.setInitial(msgZ);
+        assertTrue(f1.equals(f2));
+
+        // a->b->a is not fail
+        f1.transition(msgA);
+        assertTrue(!f1.isFail());
+
+        // a->z->a is fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgZ);
+        f1.transition(msgA);
+        assertTrue(f1.isFail());
+
+        // a->a->b is (permanently) fail
+        f1 = initStateSet("1 1", invGen);
+        f1.setInitial(msgA);
+        f1.transition(msgA);
+        f1.transition(msgB);
+        assertTrue(f1.isFail());
+        assertTrue(f1.whichPermanentFail().get(0));
+    }
+
+    /**
+     * Generators for all kinds of FsmStateSets.
+     */
+    private static List<iInvSpecificGenerator> allGenerators() {
+        List<iInvSpecificGenerator> generators = new LinkedList<iInvSpecificGenerator>();
+        generators.add(new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new AlwaysFollowedInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new AFbyInvFsms<EventNode>(invs);
+            }
+        });
+        generators.add(new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new AlwaysPrecedesInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new APInvFsms<EventNode>(invs);
+            }
+        });
+        generators.add(new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new NeverFollowedInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new NFbyInvFsms<EventNode>(invs);
+            }
+        });
+        generators.add(new iInvSpecificGenerator() {
+            @Override
+            public BinaryInvariant genInv(EventType a, EventType b,
+                    String relation) {
+                return new InterruptedByInvariant(a, b, relation);
+            }
+
+            @Override
+            public FsmStateSet<EventNode> genFsmStateSet(
+                    List<BinaryInvariant> invs) {
+                return new IntrByInvFsms<EventNode>(invs);
+            }
+        });
+        return generators;
+    }
+
+    /**
+     * Tests that a copy has the same type and states as the original, and
+     * that transitioning the copy leaves the original unchanged.
+     */
+    @Test
+    public void copyTest() {
+        for (iInvSpecificGenerator invGen : allGenerators()) {
+            FsmStateSet<EventNode> f1, f2, f3;
+            f1 = initStateSet("10 01", invGen);
+            f1.setInitial(msgZ);
+            f2 = f1.copy();
+            assertTrue(f2.getClass() == f1.getClass());
+            assertTrue(f1.equals(f2));
+
+            f2.transition(msgA);
+            f2.transition(msgB);
+            f3 = initStateSet("10 01", invGen);
+            f3.setInitial(msgZ);
+            assertTrue(f1.equals(f3));
+        }
+    }
+
+    /**
+     * Tests that transitionInto() is equivalent to transitioning a copy and
+     * merging it in, for state sets with more than one word of machines.
+     */
+    @Test
+    public void transitionIntoTest() {
+        // 150 machines, spanning three words, with various a/b patterns.
+        StringBuilder aPattern = new StringBuilder();
+        StringBuilder bPattern = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            aPattern.append(i % 3 == 0 ? '1' : '0');
+            bPattern.append(i % 5 < 2 ? '1' : '0');
+        }
+        String pattern = aPattern + " " + bPattern;
+        EventNode[][] paths = new EventNode[][] { { msgA, msgZ, msgB },
+                { msgB, msgA }, { msgZ, msgA, msgA }, { msgA, msgB, msgB } };
+
+        for (iInvSpecificGenerator invGen : allGenerators()) {
+            for (EventNode[] path : paths) {
+                FsmStateSet<EventNode> current = initStateSet(pattern, invGen);
+                current.setInitial(path[0]);
+                FsmStateSet<EventNode> expected = initStateSet(pattern, invGen);
+                expected.setInitial(msgB);
+                FsmStateSet<EventNode> target = expected.copy();
+
+                for (int i = 1; i < path.length; i++) {
+                    FsmStateSet<EventNode> updates = current.copy();
+                    updates.transition(path[i]);
+                    boolean expectChange = !updates.isSubset(expected);
+                    expected.mergeWith(updates);
+
+                    FsmStateSet<EventNode> before = current.copy();
+                    assertTrue(expectChange == current.transitionInto(
+                            path[i], target));
+                    assertTrue(before.equals(current));
+                    assertTrue(expected.equals(target));
+                    assertTrue(expected.whichFail().equals(target.whichFail()));
+
+                    current.transition(path[i]);
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,207 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import gov.nasa.ltl.graph.Edge;
+import gov.nasa.ltl.graph.Graph;
+import gov.nasa.ltl.graph.Node;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.ltlcheck.Counterexample;
+import synoptic.invariants.ltlcheck.DidCanTranslator;
+import synoptic.invariants.ltlcheck.GraphTransformations;
+import synoptic.invariants.ltlcheck.LtlModelChecker;
+import synoptic.invariants.ltlcheck.PersistenceChecker;
+import synoptic.invariants.ltlcheck.ProductTranslator;
+import synoptic.invariants.ltlchecker.IncrementalTargetGraph;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.Event;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that target graphs that are patched as a partition graph is refined
+ * and coarsened match target graphs converted from scratch, and that checking
+ * invariants on the fly finds the same counter-examples as checking them on a
+ * translated product graph.
+ */
+public class IncrementalTargetGraphTests extends SynopticTest {
+
+    @Override
+    public void setUp() throws ParseException {
+        super.setUp();
+        AbstractMain.getInstance().options.useFSMChecker = false;
+    }
+
+    private PartitionGraph genRandomPartitionGraph(long seed) throws Exception {
+        Random rand = new Random(seed);
+        List<String> log = new ArrayList<String>();
+        for (int trace = 0; trace < 20; trace++) {
+            if (trace != 0) {
+                log.add("--");
+            }
+            int traceLen = 2 + rand.nextInt(5);
+            for (int i = 0; i < traceLen; i++) {
+                log.add("e" + rand.nextInt(5));
+            }
+        }
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                concatinateWithNewlines(log.toArray(new String[log.size()])),
+                getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+        TemporalInvariantSet invariants = new ChainWalkingTOInvMiner()
+                .computeInvariants(inputGraph, false, false);
+        return new PartitionGraph(inputGraph, true, invariants);
+    }
+
+    /**
+     * Returns the targets of the edges out of every state of a target graph,
+     * by the partition of the state (null for the initial state).
+     */
+    private static Map<Partition, List<Partition>> describe(Graph targetGraph) {
+        Map<Partition, List<Partition>> edges = new HashMap<Partition, List<Partition>>();
+        for (Node state : targetGraph.getNodes()) {
+            Partition source = null;
+            for (Edge e : state.getIncomingEdges()) {
+                source = (Partition) e.getAttribute("inode");
+            }
+            List<Partition> targets = new ArrayList<Partition>();
+            for (Edge e : state.getOutgoingEdges()) {
+                targets.add((Partition) e.getAttribute("inode"));
+            }
+            edges.put(source, targets);
+        }
+        return edges;
+    }
+
+    private static void assertMatchesConversion(IncrementalTargetGraph graph,
+            PartitionGraph pGraph) {
+        graph.update(pGraph);
+        Graph converted = new IncrementalTargetGraph(pGraph,
+                Event.defTimeRelationStr).getGraph();
+        assertEquals(converted.getNodeCount(), graph.getGraph()
+                .getNodeCount());
+        assertEquals(describe(converted), describe(graph.getGraph()));
+    }
+
+    /**
+     * Returns the guards and partitions of the edges of a counter-example.
+     */
+    private static List<String> describe(Counterexample c) {
+        List<String> edges = new ArrayList<String>();
+        if (c == null) {
+            return edges;
+        }
+        for (Edge e : c.getPrefix()) {
+            edges.add(e.getGuard() + " " + e.getAttribute("inode"));
+        }
+        edges.add("cycle");
+        for (Edge e : c.getCycle()) {
+            edges.add(e.getGuard() + " " + e.getAttribute("inode"));
+        }
+        return edges;
+    }
+
+    /**
+     * Tests that a target graph that is updated after every split, and after
+     * coarsening, matches a graph converted from the refined partition graph.
+     */
+    @Test
+    public void updateMatchesConversionTest() throws Exception {
+        PartitionGraph pGraph = genRandomPartitionGraph(5);
+        TemporalInvariantSet invariants = pGraph.getInvariants();
+        IncrementalTargetGraph graph = new IncrementalTargetGraph(pGraph,
+                Event.defTimeRelationStr);
+
+        int numSplitSteps = 0;
+        List<CExamplePath<Partition>> cExamples = invariants
+                .getAllCounterExamples(pGraph);
+        while (cExamples != null) {
+            numSplitSteps = Bisimulation.performSplits(numSplitSteps, pGraph,
+                    cExamples);
+            assertMatchesConversion(graph, pGraph);
+            cExamples = invariants.getAllCounterExamples(pGraph);
+        }
+        assertTrue(numSplitSteps > 0);
+
+        Bisimulation.mergePartitions(pGraph);
+        assertMatchesConversion(graph, pGraph);
+        assertTrue(invariants.getAllCounterExamples(pGraph) == null);
+    }
+
+    /**
+     * Tests that the target graph of a partition graph is kept by the
+     * partition graph, and patched rather than converted again after a split.
+     */
+    @Test
+    public void targetGraphKeptByPartitionGraphTest() throws Exception {
+        PartitionGraph pGraph = genRandomPartitionGraph(5);
+        assertTrue(pGraph.getLtlTargetGraphs().isEmpty());
+        Graph graph = IncrementalTargetGraph.getTargetGraph(pGraph,
+                Event.defTimeRelationStr);
+        assertEquals(1, pGraph.getLtlTargetGraphs().size());
+
+        List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                .getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null);
+        Bisimulation.performSplits(0, pGraph, cExamples);
+        assertTrue(graph == IncrementalTargetGraph.getTargetGraph(pGraph,
+                Event.defTimeRelationStr));
+        assertMatchesConversion(pGraph.getLtlTargetGraphs().get(
+                Event.defTimeRelationStr), pGraph);
+    }
+
+    /**
+     * Tests that LtlModelChecker, which explores the product on the fly, finds
+     * the same counter-examples as PersistenceChecker on the translated
+     * product graph.
+     */
+    @Test
+    public void onTheFlyMatchesProductTest() throws Exception {
+        PartitionGraph pGraph = genRandomPartitionGraph(7);
+        List<CExamplePath<Partition>> cExamples = pGraph.getInvariants()
+                .getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null);
+        Bisimulation.performSplits(0, pGraph, cExamples);
+
+        Graph targetGraph = new IncrementalTargetGraph(pGraph,
+                Event.defTimeRelationStr).getGraph();
+        Graph didCanGraph = DidCanTranslator.translate(targetGraph);
+        GraphTransformations.removeDeadlock(didCanGraph);
+        int numViolated = 0;
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            PersistenceChecker pc = new PersistenceChecker(
+                    ProductTranslator.translate(didCanGraph,
+                            inv.getAutomaton()));
+            pc.run();
+            Counterexample expected = pc.getCounterexample();
+            if (expected != null) {
+                numViolated++;
+            }
+            assertEquals(describe(expected), describe(LtlModelChecker.check(
+                    targetGraph, inv)));
+        }
+        assertTrue(numViolated > 0);
+    }
+}
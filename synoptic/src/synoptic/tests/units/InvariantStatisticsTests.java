@@ -18,6 +18,7 @@ import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DenseChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
@@ -47,8 +48,10 @@ public class InvariantStatisticsTests extends SynopticTest {
     @Parameters
     public static Collection<Object[]> data() {
         Object[][] data = new Object[][] {
-        // Currently, only the chain walking miner supports InvariantStatistics.
-        { new ChainWalkingTOInvMiner() } };
+        // Currently, only the chain walking miners support InvariantStatistics.
+        { new ChainWalkingTOInvMiner() },
+                { new ChainWalkingTOInvMiner(4) },
+                { new DenseChainWalkingTOInvMiner() } };
         return Arrays.asList(data);
     }
 
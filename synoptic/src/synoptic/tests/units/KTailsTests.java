@@ -1,21 +1,27 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.KTailSignatures;
 import synoptic.algorithms.KTails;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
@@ -541,4 +547,61 @@ public class KTailsTests extends SynopticTest {
         }
     }
 
+    /**
+     * Checks that two partitions of pGraph have the same k-tail signature
+     * exactly if they are k-equal.
+     */
+    private static void checkSignatures(PartitionGraph pGraph, int k) {
+        KTailSignatures signatures = new KTailSignatures(pGraph, k);
+        List<Partition> partitions = new ArrayList<Partition>(
+                pGraph.getNodes());
+        for (int i = 0; i < partitions.size(); i++) {
+            Partition p = partitions.get(i);
+            for (Partition q : partitions.subList(i, partitions.size())) {
+                assertEquals(KTails.kEquals(p, q, k),
+                        signatures.getSignature(p) == signatures
+                                .getSignature(q));
+            }
+        }
+    }
+
+    /**
+     * Tests that k-tail signatures agree with kEquals on the partition graphs
+     * of a random log: the graph with a partition per event, whose partitions
+     * form chains, and the graph with a partition per event type, and its
+     * refinement, whose partitions form loops. (kEquals enumerates the paths
+     * from a partition, whose number grows exponentially with k in graphs
+     * with loops, so k is kept small for these.)
+     */
+    @Test
+    public void kTailSignaturesTest() throws Exception {
+        Random rand = new Random(5);
+        List<String> log = new ArrayList<String>();
+        for (int trace = 0; trace < 15; trace++) {
+            if (trace != 0) {
+                log.add("--");
+            }
+            int traceLen = 1 + rand.nextInt(6);
+            for (int i = 0; i < traceLen; i++) {
+                log.add("e" + rand.nextInt(4));
+            }
+        }
+        String[] events = log.toArray(new String[log.size()]);
+
+        ChainsTraceGraph g = (ChainsTraceGraph) genChainsTraceGraph(events,
+                genDefParser());
+        PartitionGraph perEvent = new PartitionGraph(g, false, null);
+        PartitionGraph refined = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        for (int k = 1; k < 7; k++) {
+            checkSignatures(perEvent, k);
+        }
+        for (int k = 1; k < 4; k++) {
+            checkSignatures(refined, k);
+        }
+        Bisimulation.splitUntilAllInvsSatisfied(refined);
+        for (int k = 1; k < 4; k++) {
+            checkSignatures(refined, k);
+        }
+    }
 }
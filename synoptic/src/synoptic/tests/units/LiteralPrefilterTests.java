@@ -0,0 +1,96 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import synoptic.util.matching.LiteralPrefilter;
+import synoptic.util.matching.NamedPattern;
+
+/**
+ * Tests for the LiteralPrefilter of regular expressions.
+ */
+public class LiteralPrefilterTests {
+
+    private static LiteralPrefilter prefilter(String regex) throws Exception {
+        return new LiteralPrefilter(NamedPattern.compile(regex));
+    }
+
+    private static void checkLiterals(String regex, String prefix,
+            String required) throws Exception {
+        LiteralPrefilter filter = prefilter(regex);
+        assertEquals(prefix, filter.getPrefix());
+        assertEquals(required, filter.getRequired());
+    }
+
+    /**
+     * Tests the literals extracted from a variety of regular expressions.
+     */
+    @Test
+    public void extractLiteralsTest() throws Exception {
+        checkLiterals("^--$", "--", "--");
+        checkLiterals("abc", "abc", "abc");
+        checkLiterals("^(?<TYPE>.+) xyz (?<TIME>\\d+)$", "", " xyz ");
+        checkLiterals("(?<ip>\\S+) - - \\[(?<DATETIME>\\S+) -.+\\] \"GET "
+                + "/images/(?<TYPE>.*) HTTP/1\\.0\".+", "",
+                "] \"GET /images/");
+        // Quantified characters are optional.
+        checkLiterals("abc?de", "ab", "ab");
+        checkLiterals("ab*cdef", "a", "cdef");
+        checkLiterals("a{2}bc", "", "bc");
+        // Escapes and quoting.
+        checkLiterals("\\[x\\]\\d+y", "[x]", "[x]");
+        checkLiterals("\\Qa.b\\E.c", "a.b", "a.b");
+        checkLiterals("\\x41bc", "", "bc");
+        checkLiterals("\\p{Alpha}bc", "", "bc");
+        // Character classes, including ones containing brackets and parens.
+        checkLiterals("[]()]ab[^\\]x]cde", "", "cde");
+        // Groups are skipped, including the alternations within them.
+        checkLiterals("start (?:x|y)+ end", "start ", "start ");
+    }
+
+    /**
+     * Tests that alternations outside of groups and inline flags disable the
+     * prefilter.
+     */
+    @Test
+    public void noLiteralsTest() throws Exception {
+        checkLiterals("abc|def", "", "");
+        checkLiterals("(?i)abc", "", "");
+        checkLiterals("x(?i:abc)", "", "");
+        assertTrue(prefilter("abc|def").mayMatch("def"));
+        assertTrue(prefilter("(?i)abc").mayMatch("ABC"));
+    }
+
+    /**
+     * Tests that mayMatch is true for every input that the pattern matches,
+     * and false for inputs that lack the required literals.
+     */
+    @Test
+    public void mayMatchTest() throws Exception {
+        String regex = "^(?<TIME>\\d+) GET /(?<TYPE>\\S+) HTTP/1\\.0$";
+        LiteralPrefilter filter = prefilter(regex);
+        NamedPattern pattern = NamedPattern.compile(regex);
+
+        String[] inputs = new String[] { "1 GET /a HTTP/1.0",
+                "12 GET /b/c HTTP/1.0", "1 POST /a HTTP/1.0", "GET /",
+                "1 GET /a HTTP/1.1", "", "HTTP/1.0" };
+        for (String input : inputs) {
+            if (pattern.matcher(input).matches()) {
+                assertTrue(input, filter.mayMatch(input));
+            }
+        }
+        assertFalse(filter.mayMatch("1 GET /a HTTP/1.1"));
+        assertFalse(filter.mayMatch(""));
+
+        LiteralPrefilter separator = prefilter("^--$");
+        assertTrue(separator.mayMatch("--"));
+        assertFalse(separator.mayMatch("-"));
+        assertFalse(separator.mayMatch("a--"));
+        // Non-String character sequences are checked in the same way.
+        assertTrue(filter.mayMatch(new StringBuilder("3 GET /x HTTP/1.0")));
+        assertFalse(filter.mayMatch(new StringBuilder("3 GET /x HTTP/2")));
+    }
+}
@@ -1,11 +1,19 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -16,10 +24,13 @@ import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
@@ -429,6 +440,143 @@ public class ModelCheckersTests extends SynopticTest {
 
     // /////////////////////////
 
+    /**
+     * Tests that checking invariants with multiple threads produces exactly
+     * the same counter-examples, in the same order, as checking them serially,
+     * also when the calls share a pool of threads.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void ConcurrentCheckingMatchesSerialTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "b", "c", "d", "--",
+                "a", "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b",
+                "f", "--", "a", "c", "b", "c", "d" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new TransitiveClosureInvMiner(), false);
+        TemporalInvariantSet invs = pGraph.getInvariants();
+
+        AbstractMain.getInstance().options.numCheckerThreads = 1;
+        List<CExamplePath<Partition>> serial = invs
+                .getAllCounterExamples(pGraph);
+        AbstractMain.getInstance().options.numCheckerThreads = 4;
+        List<CExamplePath<Partition>> concurrent = invs
+                .getAllCounterExamples(pGraph);
+
+        assertTrue(serial != null && serial.size() > 1);
+        assertSameCounterExamples(serial, concurrent);
+
+        // A pool that is passed in is used by each call, and not shut down.
+        Map<ITemporalInvariant, CExamplePath<Partition>> noKnownCExamples = Collections
+                .emptyMap();
+        ExecutorService pool = TemporalInvariantSet.newCheckerPool();
+        try {
+            for (int i = 0; i < 2; i++) {
+                List<CExamplePath<Partition>> pooled = invs
+                        .getAllCounterExamples(pGraph, noKnownCExamples, pool);
+                assertFalse(pool.isShutdown());
+                assertSameCounterExamples(serial, pooled);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void assertSameCounterExamples(
+            List<CExamplePath<Partition>> expected,
+            List<CExamplePath<Partition>> actual) {
+        assertTrue(actual != null);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).invariant, actual.get(i).invariant);
+            assertEquals(expected.get(i).path, actual.get(i).path);
+        }
+    }
+
+    /**
+     * Tests that the BitSet checker finds exactly those invariants to be
+     * violated for which the tracing checker produces a counter-example.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void BitSetCheckerMatchesTracingCheckerTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "b", "c", "d", "--",
+                "a", "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b",
+                "f", "--", "a", "c", "b", "c", "d" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new TransitiveClosureInvMiner(), false);
+
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            invs.add((BinaryInvariant) inv);
+        }
+        // Add IntrBy invariants between all pairs of distinct event types.
+        String[] eTypes = new String[] { "a", "b", "c", "d", "e", "f" };
+        for (String a : eTypes) {
+            for (String b : eTypes) {
+                if (!a.equals(b)) {
+                    invs.add(new InterruptedByInvariant(a, b,
+                            Event.defTimeRelationStr));
+                }
+            }
+        }
+
+        Set<BinaryInvariant> expectedViolated = new HashSet<BinaryInvariant>();
+        for (BinaryInvariant inv : invs) {
+            if (FsmModelChecker.getCounterExample(inv, pGraph) != null) {
+                expectedViolated.add(inv);
+            }
+        }
+        assertTrue(!expectedViolated.isEmpty());
+
+        List<BinaryInvariant> violated = FsmModelChecker.runBitSetChecker(
+                invs, pGraph);
+        assertEquals(expectedViolated, new HashSet<BinaryInvariant>(violated));
+    }
+
+    /**
+     * Tests that ruling out satisfied invariants with the BitSet checker does
+     * not change the counter-examples that are produced.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void BitSetPrecheckMatchesFullCheckTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "b", "c", "d", "--",
+                "a", "b", "d", "--", "e", "b", "c", "f", "--", "e", "c", "b",
+                "f", "--", "a", "c", "b", "c", "d" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new TransitiveClosureInvMiner(), false);
+        TemporalInvariantSet invs = new TemporalInvariantSet(pGraph
+                .getInvariants().getSet());
+        invs.add(new InterruptedByInvariant("b", "c", Event.defTimeRelationStr));
+        invs.add(new InterruptedByInvariant("a", "d", Event.defTimeRelationStr));
+
+        AbstractMain.getInstance().options.bitSetPrecheck = false;
+        List<CExamplePath<Partition>> full = invs.getAllCounterExamples(pGraph);
+        AbstractMain.getInstance().options.bitSetPrecheck = true;
+        List<CExamplePath<Partition>> prechecked = invs
+                .getAllCounterExamples(pGraph);
+
+        assertTrue(full != null && !full.isEmpty());
+        assertTrue(full.size() < invs.numInvariants());
+        assertEquals(full.size(), prechecked.size());
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.get(i).invariant, prechecked.get(i).invariant);
+            assertEquals(full.get(i).path, prechecked.get(i).path);
+        }
+    }
+
     // compareViolations is not used above because the NASA and FSM checkers
     // often produce different, but correct, violating paths. This function
     // might be useful for testing for violations before and after modifying a
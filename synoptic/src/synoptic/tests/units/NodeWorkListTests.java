@@ -0,0 +1,113 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.invariants.fsmcheck.NodeWorkList;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.event.StringEventType;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the model checkers' NodeWorkList.
+ */
+public class NodeWorkListTests extends SynopticTest {
+
+    /**
+     * Returns the initial partition graph for the log "a b c -- a c", which has
+     * the edges INITIAL->a, a->b, a->c, b->c, c->TERMINAL.
+     */
+    private PartitionGraph genGraph() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        return genInitialPartitionGraph(events, parser,
+                new ChainWalkingTOInvMiner(), false);
+    }
+
+    private static Partition getPartition(PartitionGraph pGraph, String label) {
+        for (Partition p : pGraph.getNodes()) {
+            if (p.getEType().equals(new StringEventType(label))) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tests that a FIFO worklist removes nodes in insertion order, and ignores
+     * nodes that are already on it.
+     */
+    @Test
+    public void fifoOrderTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        Partition a = getPartition(pGraph, "a");
+        Partition b = getPartition(pGraph, "b");
+        Partition c = getPartition(pGraph, "c");
+
+        NodeWorkList<Partition> workList = NodeWorkList.fifo(pGraph);
+        assertTrue(workList.isEmpty());
+        workList.add(c);
+        workList.add(a);
+        workList.add(c);
+        workList.add(b);
+        assertEquals(c, workList.remove());
+        workList.add(c);
+        assertEquals(a, workList.remove());
+        assertEquals(b, workList.remove());
+        assertEquals(c, workList.remove());
+        assertTrue(workList.isEmpty());
+
+        assertEquals(4, workList.getNumVisits());
+        assertEquals(1, workList.getNumRevisits());
+    }
+
+    /**
+     * Tests that a reverse postorder worklist removes every node after its
+     * predecessors, regardless of the order in which nodes were added.
+     */
+    @Test
+    public void reversePostorderTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        Partition initial = pGraph.getDummyInitialNode();
+        Partition a = getPartition(pGraph, "a");
+        Partition b = getPartition(pGraph, "b");
+        Partition c = getPartition(pGraph, "c");
+        Partition terminal = null;
+        for (Partition p : pGraph.getNodes()) {
+            if (p.isTerminal()) {
+                terminal = p;
+            }
+        }
+
+        NodeWorkList<Partition> workList = NodeWorkList
+                .reversePostorder(pGraph);
+        workList.add(terminal);
+        workList.add(c);
+        workList.add(b);
+        workList.add(a);
+        workList.add(initial);
+
+        List<Partition> order = new ArrayList<Partition>();
+        while (!workList.isEmpty()) {
+            order.add(workList.remove());
+        }
+        List<Partition> expected = new ArrayList<Partition>();
+        expected.add(initial);
+        expected.add(a);
+        expected.add(b);
+        expected.add(c);
+        expected.add(terminal);
+        assertEquals(expected, order);
+        assertEquals(0, workList.getNumRevisits());
+    }
+}
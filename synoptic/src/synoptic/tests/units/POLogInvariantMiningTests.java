@@ -57,6 +57,7 @@ public class POLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, true) },
                 { new DAGWalkingPOInvMiner(true) },
                 { new DAGWalkingPOInvMiner(false) } };
         return Arrays.asList(data);
@@ -0,0 +1,100 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+import org.junit.Test;
+
+import synoptic.benchmarks.DurationHistogram;
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.TimedTask;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for synoptic.benchmarks.PerformanceMetrics and DurationHistogram.
+ */
+public class PerformanceMetricsTests extends SynopticTest {
+
+    /**
+     * Tests that the durations are counted in power-of-two buckets.
+     */
+    @Test
+    public void histogramTest() {
+        DurationHistogram histogram = new DurationHistogram();
+        for (long duration : new long[] { 0, 1, 2, 3, 4, 5, 100 }) {
+            histogram.add(duration);
+        }
+        assertEquals(7, histogram.getCount());
+        assertEquals(115, histogram.getTotal());
+        assertEquals(0, histogram.getMin());
+        assertEquals(100, histogram.getMax());
+        Map<Long, Long> buckets = histogram.getBuckets();
+        assertEquals(Long.valueOf(2), buckets.get(1L));
+        assertEquals(Long.valueOf(1), buckets.get(2L));
+        assertEquals(Long.valueOf(2), buckets.get(4L));
+        assertEquals(Long.valueOf(1), buckets.get(8L));
+        assertEquals(Long.valueOf(1), buckets.get(128L));
+        assertEquals(5, buckets.size());
+    }
+
+    /**
+     * Tests that tasks are nested within the tasks of their own thread only,
+     * and that values and tasks recorded concurrently are all accounted for.
+     */
+    @Test
+    public void concurrentTasksTest() throws InterruptedException {
+        PerformanceMetrics.clear();
+        TimedTask outer = PerformanceMetrics.createTask("outer");
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        TimedTask task = PerformanceMetrics.createTask("work");
+                        TimedTask inner = PerformanceMetrics
+                                .createTask("inner");
+                        PerformanceMetrics.get().record("count", 1);
+                        inner.stop();
+                        task.stop();
+                    }
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        TimedTask nested = PerformanceMetrics.createTask("nested");
+        nested.stop();
+        outer.stop();
+
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> report = (Map<String, Map<String, Object>>) JSONValue
+                .parse(PerformanceMetrics.get().getJsonReport());
+        Map<String, Object> values = report.get("values");
+        Map<String, Object> tasks = report.get("tasks");
+
+        assertEquals(400L, ((Map<?, ?>) values.get("count")).get("total"));
+        assertEquals(400L, ((Map<?, ?>) tasks.get("work")).get("count"));
+        assertEquals(400L, ((Map<?, ?>) tasks.get("work/inner")).get("count"));
+        assertEquals(1L, ((Map<?, ?>) tasks.get("outer/nested")).get("count"));
+        assertEquals(1L, ((Map<?, ?>) tasks.get("outer")).get("count"));
+        assertEquals(4, tasks.size());
+        assertEquals(1, values.size());
+
+        String csv = PerformanceMetrics.get().getCsvReport();
+        assertTrue(csv.startsWith("key,count,total,minMs,maxMs,histogram\n"));
+        assertTrue(csv.contains("\ncount,400,400,,,\n"));
+        assertEquals(6, csv.split("\n").length);
+        PerformanceMetrics.clear();
+    }
+}
@@ -16,6 +16,7 @@ import synoptic.invariants.AlwaysPrecedesInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DenseChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
@@ -69,7 +70,9 @@ public class SingleRelationSubgraphsInvariantMiningTests extends SynopticTest {
     @Parameters
     public static Collection<Object[]> data() {
         // Currently, only the chain walking miner supports multiple relations.
-        Object[][] data = new Object[][] { { new ChainWalkingTOInvMiner() } };
+        Object[][] data = new Object[][] { { new ChainWalkingTOInvMiner() },
+                { new ChainWalkingTOInvMiner(4) },
+                { new DenseChainWalkingTOInvMiner() } };
         return Arrays.asList(data);
     }
 
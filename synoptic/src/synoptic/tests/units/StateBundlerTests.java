@@ -0,0 +1,174 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.StateBundler;
+import synoptic.model.EventNode;
+import synoptic.model.event.Event;
+import synoptic.model.state.State;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that StateBundler bundles states with events in the same way as
+ * TraceParser did once all the nodes of a log were parsed, by removing each
+ * state node from the list of parsed nodes in turn.
+ */
+public class StateBundlerTests extends SynopticTest {
+
+    /**
+     * The bundling of states with events that TraceParser used to perform on
+     * the complete list of parsed nodes, which StateBundler replaces.
+     */
+    private static void mergeStatesWithEventNodes(List<EventNode> results)
+            throws ParseException {
+        int i = 0;
+        while (i < results.size()) {
+            EventNode node = results.get(i);
+            State state = node.getPostEventState();
+            if (state != null) {
+                EventNode prevNode = i > 0 ? results.get(i - 1) : null;
+                EventNode nextNode = i < results.size() - 1 ? results
+                        .get(i + 1) : null;
+                int traceID = node.getTraceID();
+                boolean mergeFront = false;
+                boolean mergeBack = false;
+                if (prevNode != null && prevNode.getTraceID() == traceID) {
+                    if (prevNode.getPostEventState() != null) {
+                        throw new ParseException("Found 2 consecutive states: "
+                                + prevNode.getPostEventState() + " and "
+                                + state + " in trace ID: " + traceID);
+                    }
+                    prevNode.setPostEventState(state);
+                    mergeFront = true;
+                }
+                if (nextNode != null && nextNode.getTraceID() == traceID) {
+                    nextNode.setPreEventState(state);
+                    mergeBack = true;
+                }
+                if (!mergeFront && !mergeBack) {
+                    throw new ParseException("Trace ID: " + traceID
+                            + " contains a state: " + state
+                            + " but does not contain any event");
+                }
+                results.remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Returns the nodes of a log of the given length, in which each node is in
+     * one of numTraces traces, and is a state with probability stateRate.
+     */
+    private static List<EventNode> genNodes(long seed, int length,
+            int numTraces, double stateRate) throws ParseException {
+        Random random = new Random(seed);
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        for (int i = 0; i < length; i++) {
+            EventNode node = new EventNode(new Event("e" + random.nextInt(3)));
+            node.setTraceID(random.nextInt(numTraces));
+            if (random.nextDouble() < stateRate) {
+                node.setPostEventState(new State("x=" + i));
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /**
+     * Checks that bundling the nodes generated from seed with StateBundler
+     * has the same result as bundling them with mergeStatesWithEventNodes:
+     * the same events with the same states, or the same exception.
+     */
+    private static void checkSameBundling(long seed, int length,
+            int numTraces, double stateRate) throws ParseException {
+        List<EventNode> expected = genNodes(seed, length, numTraces, stateRate);
+        String expectedError = null;
+        try {
+            mergeStatesWithEventNodes(expected);
+        } catch (ParseException e) {
+            expectedError = e.getMessage();
+        }
+
+        StateBundler bundler = new StateBundler();
+        List<EventNode> events = null;
+        String error = null;
+        try {
+            for (EventNode node : genNodes(seed, length, numTraces, stateRate)) {
+                bundler.add(node);
+            }
+            events = bundler.finish();
+        } catch (ParseException e) {
+            error = e.getMessage();
+        }
+
+        assertEquals(expectedError, error);
+        if (expectedError != null) {
+            return;
+        }
+        assertEquals(length, bundler.getNumAdded());
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            EventNode expectedEvent = expected.get(i);
+            EventNode event = events.get(i);
+            assertEquals(expectedEvent.getEType(), event.getEType());
+            assertEquals(expectedEvent.getTraceID(), event.getTraceID());
+            assertEquals(expectedEvent.getPreEventState(),
+                    event.getPreEventState());
+            assertEquals(expectedEvent.getPostEventState(),
+                    event.getPostEventState());
+        }
+    }
+
+    /**
+     * Tests that a state between two events of its trace becomes the
+     * post-event state of the first and the pre-event state of the second.
+     */
+    @Test
+    public void bundleTest() throws ParseException {
+        EventNode a = new EventNode(new Event("a"));
+        EventNode s = new EventNode(new Event("s"));
+        EventNode b = new EventNode(new Event("b"));
+        State state = new State("x=1");
+        s.setPostEventState(state);
+
+        StateBundler bundler = new StateBundler();
+        bundler.add(a);
+        bundler.add(s);
+        bundler.add(b);
+        List<EventNode> events = bundler.finish();
+
+        assertEquals(2, events.size());
+        assertSame(a, events.get(0));
+        assertSame(b, events.get(1));
+        assertSame(state, a.getPostEventState());
+        assertSame(state, b.getPreEventState());
+        assertEquals(3, bundler.getNumAdded());
+    }
+
+    /**
+     * Tests that StateBundler agrees with the list-based bundling on random
+     * logs, with and without interleaved traces, and both on logs that satisfy
+     * the bundling's assumptions and on logs that do not.
+     */
+    @Test
+    public void sameAsListBundlingTest() throws ParseException {
+        for (long seed = 0; seed < 200; seed++) {
+            // Logs that alternate between events and states.
+            checkSameBundling(seed, 40, 1, 0.3);
+            // Logs with interleaved traces.
+            checkSameBundling(seed, 40, 3, 0.3);
+            checkSameBundling(seed, 40, 3, 0.6);
+            checkSameBundling(seed, 5, 2, 0.5);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import synoptic.benchmarks.SyntheticLogGenerator;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that the logs of SyntheticLogGenerator are deterministic and are
+ * parsed by TraceParser into the requested number of traces.
+ */
+public class SyntheticLogGeneratorTests extends SynopticTest {
+
+    private static TraceParser newParser(SyntheticLogGenerator generator)
+            throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex(generator.getRegex());
+        parser.addPartitionsSeparator(SyntheticLogGenerator.separatorRegex);
+        return parser;
+    }
+
+    /**
+     * Tests that generators with the same seed generate the same logs, and
+     * generators with different seeds different logs.
+     */
+    @Test
+    public void deterministicTest() {
+        String log = new SyntheticLogGenerator(5, 4, 3, 0, 7).generate(20, 5,
+                15);
+        assertEquals(log,
+                new SyntheticLogGenerator(5, 4, 3, 0, 7).generate(20, 5, 15));
+        assertFalse(log.equals(new SyntheticLogGenerator(5, 4, 3, 0, 8)
+                .generate(20, 5, 15)));
+    }
+
+    /**
+     * Tests that a totally ordered log has the requested number of traces,
+     * each with a length in the requested range.
+     */
+    @Test
+    public void totallyOrderedTest() throws Exception {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(5, 4, 0);
+        String log = generator.generate(30, 5, 15);
+        int numEvents = 0;
+        for (String trace : log.split("--\n")) {
+            int length = trace.split("\n").length;
+            assertTrue(length >= 5 && length <= 15);
+            numEvents += length;
+        }
+
+        TraceParser parser = newParser(generator);
+        List<EventNode> events = parser.parseTraceString(log, "synthetic", -1);
+        assertEquals(numEvents, events.size());
+        ChainsTraceGraph graph = parser.generateDirectTORelation(events);
+        assertEquals(30, graph.getNumTraces());
+    }
+
+    /**
+     * Tests that a log with vector timestamps is parsed as a partially
+     * ordered log with the requested number of traces.
+     */
+    @Test
+    public void vectorTimeTest() throws Exception {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(5, 4, 2,
+                3, 0);
+        TraceParser parser = newParser(generator);
+        List<EventNode> events = parser.parseTraceString(
+                generator.generate(10, 20), "synthetic", -1);
+        assertFalse(parser.logTimeTypeIsTotallyOrdered());
+        assertEquals(200, events.size());
+
+        DAGsTraceGraph graph = parser.generateDirectPORelation(events);
+        assertEquals(10, graph.getNumTraces());
+    }
+}
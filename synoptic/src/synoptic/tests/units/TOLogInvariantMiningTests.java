@@ -1,5 +1,6 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -14,6 +15,7 @@ import org.junit.runners.Parameterized.Parameters;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.CExamplePath;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
@@ -21,6 +23,7 @@ import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.invariants.miners.DenseChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.AbstractMain;
@@ -53,7 +56,10 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, true) },
                 { new ChainWalkingTOInvMiner() },
+                { new ChainWalkingTOInvMiner(4) },
+                { new DenseChainWalkingTOInvMiner() },
                 { new DAGWalkingPOInvMiner() } };
         return Arrays.asList(data);
     }
@@ -69,9 +75,18 @@ public class TOLogInvariantMiningTests extends SynopticTest {
      * @return The randomly generated log.
      */
     public static String[] genRandomLog(String[] eventTypes) {
-        ArrayList<String> log = new ArrayList<String>();
         // Arbitrary partition limit.
-        int numPartitions = 5;
+        return genRandomLog(eventTypes, 5);
+    }
+
+    /**
+     * Generates a random log of the given event types, in which the first
+     * event type separates partitions, with numPartitions partitions.
+     * 
+     * @return The randomly generated log.
+     */
+    public static String[] genRandomLog(String[] eventTypes, int numPartitions) {
+        ArrayList<String> log = new ArrayList<String>();
 
         // Generate a random log.
         AbstractMain main = AbstractMain.getInstance();
@@ -478,4 +493,38 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         }
         assertTrue(cExamples == null);
     }
+
+    /**
+     * Tests that the chain walking miners -- DenseChainWalkingTOInvMiner, and
+     * ChainWalkingTOInvMiner with several threads -- mine the same invariants,
+     * with the same support counts, as the serial ChainWalkingTOInvMiner on
+     * random logs, including logs with enough traces to be split across
+     * threads.
+     */
+    @Test
+    public void sameAsChainWalkingTest() throws Exception {
+        if (!(miner instanceof ChainWalkingTOInvMiner)) {
+            return;
+        }
+        String[] eventTypes = new String[] { "--", "a", "b", "c", "d", "e" };
+        ITOInvariantMiner chainWalking = new ChainWalkingTOInvMiner();
+        for (int i = 0; i < 20; i++) {
+            int numPartitions = (i % 4 == 0) ? 1000 : 5;
+            ChainsTraceGraph inputGraph = genInitialLinearGraph(genRandomLog(
+                    eventTypes, numPartitions));
+            TemporalInvariantSet expected = chainWalking.computeInvariants(
+                    inputGraph, false, true);
+            TemporalInvariantSet mined = miner.computeInvariants(inputGraph,
+                    false, true);
+            assertTrue(expected.sameInvariants(mined));
+            for (ITemporalInvariant inv : expected) {
+                for (ITemporalInvariant minedInv : mined) {
+                    if (inv.equals(minedInv)) {
+                        assertEquals(((BinaryInvariant) inv).getStatistics(),
+                                ((BinaryInvariant) minedInv).getStatistics());
+                    }
+                }
+            }
+        }
+    }
 }
@@ -2,14 +2,27 @@ package synoptic.tests.units;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import synoptic.tests.SynopticTest;
 import synoptic.util.time.DTotalTime;
+import synoptic.util.time.FTotalTime;
+import synoptic.util.time.ITime;
 import synoptic.util.time.ITotalTime;
+import synoptic.util.time.LTotalTime;
 import synoptic.util.time.TimeSeries;
+import synoptic.util.time.VectorTime;
 
 public class TimesSeriesTests extends SynopticTest {
 
@@ -101,4 +114,165 @@ public class TimesSeriesTests extends SynopticTest {
         times.addDelta(new ITotalTime(8));
         assertEquals(new ITotalTime(4), times.computeMean());
     }
+
+    @Test
+    public void quantileTestEmpty() {
+        assertNull(times.computeQuantile(0.5));
+    }
+
+    @Test
+    public void quantileTestManyValues() {
+        for (int i = 10; i >= 1; i--) {
+            times.addDelta(new ITotalTime(i));
+        }
+        assertEquals(new ITotalTime(1), times.computeQuantile(0));
+        assertEquals(new ITotalTime(1), times.computeQuantile(0.1));
+        assertEquals(new ITotalTime(5), times.computeQuantile(0.5));
+        assertEquals(new ITotalTime(10), times.computeQuantile(0.95));
+        assertEquals(new ITotalTime(10), times.computeQuantile(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileTestOutOfRange() {
+        times.addDelta(new ITotalTime(1));
+        times.computeQuantile(1.5);
+    }
+
+    /**
+     * Returns the mode, median, mean, min, max and med of times, computed on
+     * time objects as TimeSeries computes them when its times are stored as
+     * objects. The mode is computed on the times in their current order, and
+     * the others after sorting times, as computeMedian() does.
+     */
+    private static List<ITime> computeStats(List<ITime> times) {
+        Map<ITime, Integer> counts = new HashMap<ITime, Integer>();
+        ITime mode = null;
+        int maxCount = 0;
+        for (ITime t : times) {
+            Integer count = counts.get(t);
+            count = count == null ? 1 : count + 1;
+            counts.put(t, count);
+            if (count > maxCount) {
+                mode = t;
+                maxCount = count;
+            }
+        }
+
+        Collections.sort(times);
+        int size = times.size();
+        int middle = size / 2;
+        ITime median = size % 2 == 1 ? times.get(middle) : times
+                .get(middle - 1).incrBy(times.get(middle)).divBy(2);
+
+        ITime mean = times.get(0).getZeroTime();
+        ITime min = times.get(0);
+        ITime max = times.get(0);
+        for (ITime t : times) {
+            mean = mean.incrBy(t);
+            if (t.lessThan(min)) {
+                min = t;
+            }
+            if (max.lessThan(t)) {
+                max = t;
+            }
+        }
+        mean = mean.divBy(size);
+
+        int medPos = (size - 1) / 2;
+        ITime med = size % 2 == 1 ? times.get(medPos) : times.get(medPos)
+                .incrBy(times.get(medPos + 1)).divBy(2);
+
+        return Arrays.asList(mode, median, mean, min, max, med);
+    }
+
+    private static List<ITime> getStats(TimeSeries<ITime> series) {
+        // The median is computed second, as computeStats() does, because it
+        // sorts the times.
+        ITime mode = series.computeMode();
+        ITime median = series.computeMedian();
+        return Arrays.asList(mode, median, series.computeMean(),
+                series.computeMin(), series.computeMax(), series.computeMed());
+    }
+
+    /**
+     * Returns a random time of the same type as example, from a small range
+     * so that times repeat.
+     */
+    private static ITime randomTime(Random rand, ITime example) {
+        int i = rand.nextInt(21) - 10;
+        if (example instanceof ITotalTime) {
+            return new ITotalTime(i);
+        } else if (example instanceof LTotalTime) {
+            return new LTotalTime(i * 1000000000000L);
+        } else if (example instanceof FTotalTime) {
+            return new FTotalTime(i == 0 ? -0.0f : i / 3.0f);
+        }
+        return new DTotalTime(i == 0 ? -0.0 : i / 7.0);
+    }
+
+    /**
+     * Tests that series of total times, whose times are stored in columns,
+     * compute the same statistics as the time objects do, including after
+     * more times are added to a sorted series.
+     */
+    @Test
+    public void columnMatchesObjectsTest() {
+        Random rand = new Random(3);
+        ITime[] examples = { new ITotalTime(0), new LTotalTime(0),
+                new FTotalTime(0), new DTotalTime(0) };
+        for (ITime example : examples) {
+            for (int trial = 0; trial < 20; trial++) {
+                TimeSeries<ITime> series = new TimeSeries<ITime>();
+                List<ITime> expected = new ArrayList<ITime>();
+                for (int round = 0; round < 3; round++) {
+                    int n = 1 + rand.nextInt(30);
+                    for (int i = 0; i < n; i++) {
+                        ITime t = randomTime(rand, example);
+                        series.addDelta(t);
+                        expected.add(t);
+                    }
+                    assertEquals(expected.size(), series.size());
+                    assertEquals(expected, series.getAllDeltas());
+                    assertEquals(computeStats(expected), getStats(series));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compareToTest() {
+        TimeSeries<ITime> s1 = new TimeSeries<ITime>();
+        TimeSeries<ITime> s2 = new TimeSeries<ITime>();
+        for (int i = 0; i < 5; i++) {
+            s1.addDelta(new DTotalTime(i));
+            s2.addDelta(new DTotalTime(4 - i));
+        }
+        // Only the series being compared is sorted.
+        assertTrue(s1.compareTo(s2) < 0);
+        assertEquals(0, s2.compareTo(s1));
+
+        s2.addDelta(new DTotalTime(-1));
+        assertTrue(s1.compareTo(s2) < 0);
+        assertTrue(s2.compareTo(s1) > 0);
+    }
+
+    /**
+     * Tests that times that are not all of one totally ordered type are kept
+     * in the order in which they were added.
+     */
+    @Test
+    public void mixedTimesTest() {
+        TimeSeries<ITime> series = new TimeSeries<ITime>();
+        List<ITime> expected = new ArrayList<ITime>();
+        expected.add(new ITotalTime(2));
+        expected.add(new ITotalTime(2));
+        expected.add(new VectorTime(1));
+        expected.add(new VectorTime(1));
+        expected.add(new VectorTime(1));
+        for (ITime t : expected) {
+            series.addDelta(t);
+        }
+        assertEquals(expected, series.getAllDeltas());
+        assertEquals(new VectorTime(1), series.computeMode());
+    }
 }
@@ -6,6 +6,9 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -1492,4 +1495,165 @@ public class TraceParserTests extends SynopticTest {
 
         AbstractOptions.inputDelta = false;
     }
+
+    /**
+     * Writes lines to a new temporary file, which is deleted on exit.
+     */
+    private File writeTempLog(String[] lines) throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (String line : lines) {
+            log.append(line + "\n");
+        }
+        return writeTempLog(log.toString());
+    }
+
+    /**
+     * Writes log to a new temporary file, which is deleted on exit.
+     */
+    private File writeTempLog(String log) throws IOException {
+        File file = File.createTempFile(testName.getMethodName(), ".log");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(log);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    /**
+     * Tests that parsing several files concurrently, with the files split into
+     * many chunks, results in the same events, in the same traces, as parsing
+     * the files one by one. The traces are delimited by a separator, so the
+     * chunks of a file have to be processed in order for the separator
+     * incrementor to be correct.
+     */
+    @Test
+    public void parseTraceFilesTest() throws Exception {
+        List<File> files = new ArrayList<File>();
+        files.add(writeTempLog(new String[] { "1 a", "2 b", "--", "3 a",
+                "4 c", "5 b", "--", "6 a" }));
+        files.add(writeTempLog(new String[] {}));
+        files.add(writeTempLog(new String[] { "7 c", "--", "8 b", "9 a",
+                "--", "10 c", "11 c" }));
+
+        List<EventNode> expected = new ArrayList<EventNode>();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        for (File file : files) {
+            expected.addAll(parser.parseTraceFile(file, -1));
+        }
+
+        TraceParser parallelParser = new TraceParser();
+        parallelParser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parallelParser.addPartitionsSeparator("^--$");
+        List<EventNode> events = parallelParser.parseTraceFiles(files, -1, 3,
+                8);
+
+        assertEquals(11, expected.size());
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Event expectedEvent = expected.get(i).getEvent();
+            Event event = events.get(i).getEvent();
+            assertEquals(expectedEvent.getEType(), event.getEType());
+            assertEquals(expectedEvent.getTime(), event.getTime());
+            assertEquals(expectedEvent.getFileName(), event.getFileName());
+            assertEquals(expectedEvent.getLineNum(), event.getLineNum());
+            // Trace IDs are global, but are assigned in the same order.
+            assertEquals(expected.get(i).getTraceID()
+                    - expected.get(0).getTraceID(), events.get(i).getTraceID()
+                    - events.get(0).getTraceID());
+        }
+    }
+
+    /**
+     * Tests that the bound on the number of lines to read applies to each file
+     * when parsing files concurrently.
+     */
+    @Test
+    public void parseTraceFilesLinesToReadTest() throws Exception {
+        List<File> files = new ArrayList<File>();
+        files.add(writeTempLog(new String[] { "a", "b", "c", "d" }));
+        files.add(writeTempLog(new String[] { "e", "f", "g" }));
+
+        parser.addRegex("^(?<TYPE>)$");
+        List<EventNode> events = parser.parseTraceFiles(files, 2, 2, 4);
+        assertEquals(4, events.size());
+        assertEquals(new StringEventType("a"), events.get(0).getEType());
+        assertEquals(new StringEventType("b"), events.get(1).getEType());
+        assertEquals(new StringEventType("e"), events.get(2).getEType());
+        assertEquals(new StringEventType("f"), events.get(3).getEType());
+    }
+
+    /**
+     * Checks that the events parsed from file by parseMappedTraceFile, with
+     * the given region size, are the same as those parsed by parseTraceFile.
+     */
+    private void checkMappedParse(File file, long regionSize)
+            throws Exception {
+        TraceParser expectedParser = new TraceParser();
+        expectedParser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        expectedParser.addPartitionsSeparator("^--$");
+        List<EventNode> expected = expectedParser.parseTraceFile(file, -1);
+
+        TraceParser mappedParser = new TraceParser();
+        mappedParser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        mappedParser.addPartitionsSeparator("^--$");
+        List<EventNode> events = mappedParser.parseMappedTraceFile(file, -1,
+                regionSize);
+
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            Event expectedEvent = expected.get(i).getEvent();
+            Event event = events.get(i).getEvent();
+            assertEquals(expectedEvent.getEType(), event.getEType());
+            assertEquals(expectedEvent.getLine(), event.getLine());
+            assertEquals(expectedEvent.getTime(), event.getTime());
+            assertEquals(expectedEvent.getLineNum(), event.getLineNum());
+            assertEquals(expected.get(i).getTraceID()
+                    - expected.get(0).getTraceID(), events.get(i).getTraceID()
+                    - events.get(0).getTraceID());
+        }
+    }
+
+    /**
+     * Tests that reading a file through memory-mapped regions results in the
+     * same events as reading it with a Reader, for all the line terminators,
+     * non-ASCII lines, and regions that end at any point of a line.
+     */
+    @Test
+    public void parseMappedTraceFileTest() throws Exception {
+        String log = "1 a\n2 b\r\n--\r3 \u00e9t\u00e9\n4 c\r\n--\n5 a\r6 b";
+        File file = writeTempLog(log);
+        for (long regionSize = 8; regionSize <= file.length() + 1; regionSize++) {
+            checkMappedParse(file, regionSize);
+        }
+        checkMappedParse(writeTempLog(log + "\r\n"), 8);
+        checkMappedParse(writeTempLog(""), 8);
+    }
+
+    /**
+     * Tests that the bound on the number of lines to read applies to
+     * parseMappedTraceFile.
+     */
+    @Test
+    public void parseMappedTraceFileLinesToReadTest() throws Exception {
+        File file = writeTempLog(new String[] { "a", "b", "c", "d" });
+        parser.addRegex("^(?<TYPE>)$");
+        List<EventNode> events = parser.parseMappedTraceFile(file, 3);
+        assertEquals(3, events.size());
+        assertEquals(new StringEventType("c"), events.get(2).getEType());
+    }
+
+    /**
+     * Tests that parseMappedTraceFile rejects lines that do not fit in a
+     * mapped region.
+     */
+    @Test(expected = ParseException.class)
+    public void parseMappedTraceFileLongLineTest() throws Exception {
+        File file = writeTempLog(new String[] { "a", "0123456789", "b" });
+        parser.addRegex("^(?<TYPE>)$");
+        parser.parseMappedTraceFile(file, -1, 8);
+    }
 }
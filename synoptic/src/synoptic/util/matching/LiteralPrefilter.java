@@ -0,0 +1,312 @@
+package synoptic.util.matching;
+
+/**
+ * A cheap test that rules out inputs that a NamedPattern cannot match in their
+ * entirety, based on the literal text that the pattern requires: the literal
+ * that the pattern starts with, and the longest literal that the pattern
+ * contains outside of any group. Checking these with a few character
+ * comparisons is much cheaper than running the pattern's matcher, which
+ * TraceParser otherwise does for every regular expression that precedes the
+ * one that matches a line.
+ * <p>
+ * The literals are extracted conservatively. Only literal characters outside of
+ * groups and character classes, and that are not followed by a quantifier,
+ * count. Patterns with an alternation outside of any group, with inline flags
+ * (which may, e.g., make the match case-insensitive), or that are compiled with
+ * flags, require no literals, so every input passes the test.
+ * </p>
+ */
+public class LiteralPrefilter {
+    /**
+     * The literal that every input matched by the pattern starts with
+     * (possibly empty).
+     */
+    private final String prefix;
+
+    /**
+     * The longest literal that every input matched by the pattern contains
+     * (possibly empty).
+     */
+    private final String required;
+
+    public LiteralPrefilter(NamedPattern pattern) {
+        this(pattern.standardPattern(), pattern.flags());
+    }
+
+    LiteralPrefilter(String regex, int flags) {
+        Extractor extractor = new Extractor(regex);
+        if (flags != 0 || !extractor.extract()) {
+            prefix = "";
+            required = "";
+        } else {
+            prefix = extractor.prefix;
+            required = extractor.longest;
+        }
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String getRequired() {
+        return required;
+    }
+
+    /**
+     * Returns false if the pattern cannot match input in its entirety, and
+     * true if it might.
+     */
+    public boolean mayMatch(CharSequence input) {
+        int length = input.length();
+        if (length < prefix.length() || length < required.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        if (required.length() <= prefix.length()) {
+            // The prefix is at least as long as any other required literal.
+            return true;
+        }
+        if (input instanceof String) {
+            return ((String) input).contains(required);
+        }
+        return indexOf(input, required) >= 0;
+    }
+
+    private static int indexOf(CharSequence input, String literal) {
+        char first = literal.charAt(0);
+        int last = input.length() - literal.length();
+        for (int i = 0; i <= last; i++) {
+            if (input.charAt(i) != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < literal.length()
+                    && input.charAt(i + j) == literal.charAt(j)) {
+                j++;
+            }
+            if (j == literal.length()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Scans a regular expression, in java.util.regex syntax, for the runs of
+     * literal characters outside of any group.
+     */
+    private static class Extractor {
+        private final String regex;
+        private int pos = 0;
+        private int depth = 0;
+        private final StringBuilder run = new StringBuilder();
+
+        String prefix = null;
+        String longest = "";
+
+        Extractor(String regex) {
+            this.regex = regex;
+        }
+
+        /**
+         * Scans the expression, and returns false if it requires no literals
+         * because of an alternation or flags.
+         */
+        boolean extract() {
+            int n = regex.length();
+            if (n > 0 && regex.charAt(0) == '^') {
+                pos = 1;
+            }
+            while (pos < n) {
+                char c = regex.charAt(pos);
+                // The literal text of the next atom, or null if the atom is
+                // not a literal.
+                String literal = null;
+                if (c == '\\') {
+                    if (pos + 1 >= n) {
+                        return false;
+                    }
+                    char escaped = regex.charAt(pos + 1);
+                    if (escaped == 'Q') {
+                        int end = regex.indexOf("\\E", pos + 2);
+                        if (end < 0) {
+                            end = n;
+                        }
+                        literal = regex.substring(pos + 2, end);
+                        pos = Math.min(end + 2, n);
+                    } else if (Character.isLetterOrDigit(escaped)) {
+                        // A predefined class, a back reference, a boundary, or
+                        // a character code.
+                        pos = skipEscape(escaped);
+                    } else {
+                        literal = String.valueOf(escaped);
+                        pos += 2;
+                    }
+                } else if (c == '[') {
+                    pos = skipClass();
+                } else if (c == '(') {
+                    if (pos + 2 < n && regex.charAt(pos + 1) == '?') {
+                        char kind = regex.charAt(pos + 2);
+                        if (Character.isLetter(kind) || kind == '-') {
+                            // Inline flags.
+                            return false;
+                        }
+                    }
+                    depth++;
+                    pos++;
+                } else if (c == ')') {
+                    depth--;
+                    pos++;
+                } else if (c == '|') {
+                    if (depth == 0) {
+                        return false;
+                    }
+                    pos++;
+                } else if (c == '*' || c == '+' || c == '?' || c == '{') {
+                    // A quantifier of a non-literal atom.
+                    pos = skipQuantifier();
+                    continue;
+                } else if (c == '.' || c == '^' || c == '$') {
+                    pos++;
+                } else {
+                    literal = String.valueOf(c);
+                    pos++;
+                }
+
+                if (depth != 0) {
+                    continue;
+                }
+                if (literal == null) {
+                    endRun();
+                    continue;
+                }
+                if (pos < n && "*+?{".indexOf(regex.charAt(pos)) >= 0) {
+                    // The last character of the atom is optional (or
+                    // repeated), so the run ends before it.
+                    run.append(literal, 0, Math.max(0, literal.length() - 1));
+                    endRun();
+                } else {
+                    run.append(literal);
+                }
+            }
+            endRun();
+            return true;
+        }
+
+        private void endRun() {
+            if (prefix == null) {
+                prefix = run.toString();
+            }
+            if (run.length() > longest.length()) {
+                longest = run.toString();
+            }
+            run.setLength(0);
+        }
+
+        /**
+         * Returns the position just after the escape sequence at pos, which
+         * is a backslash followed by the letter or digit escaped.
+         */
+        private int skipEscape(char escaped) {
+            int n = regex.length();
+            int i = pos + 2;
+            switch (escaped) {
+            case 'x':
+                return i < n && regex.charAt(i) == '{' ? skipFrom(i, '}')
+                        : Math.min(i + 2, n);
+            case 'u':
+                return Math.min(i + 4, n);
+            case 'c':
+                return Math.min(i + 1, n);
+            case 'p':
+            case 'P':
+            case 'N':
+                return i < n && regex.charAt(i) == '{' ? skipFrom(i, '}')
+                        : Math.min(i + 1, n);
+            case 'k':
+                return i < n && regex.charAt(i) == '<' ? skipFrom(i, '>') : i;
+            case '0':
+                // Up to three octal digits.
+                for (int j = 0; j < 3 && i < n && regex.charAt(i) >= '0'
+                        && regex.charAt(i) <= '7'; j++) {
+                    i++;
+                }
+                return i;
+            default:
+                if (Character.isDigit(escaped)) {
+                    // A back reference.
+                    while (i < n && Character.isDigit(regex.charAt(i))) {
+                        i++;
+                    }
+                }
+                return i;
+            }
+        }
+
+        /**
+         * Returns the position just after the first occurrence of c at or
+         * after from.
+         */
+        private int skipFrom(int from, char c) {
+            int end = regex.indexOf(c, from);
+            return end < 0 ? regex.length() : end + 1;
+        }
+
+        /**
+         * Returns the position just after the next occurrence of c.
+         */
+        private int skipTo(char c) {
+            return skipFrom(pos, c);
+        }
+
+        /**
+         * Returns the position just after the quantifier at pos.
+         */
+        private int skipQuantifier() {
+            int i = regex.charAt(pos) == '{' ? skipTo('}') : pos + 1;
+            if (i < regex.length()
+                    && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                // A reluctant or possessive quantifier.
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Returns the position just after the character class at pos.
+         */
+        private int skipClass() {
+            int n = regex.length();
+            int i = pos + 1;
+            if (i < n && regex.charAt(i) == '^') {
+                i++;
+            }
+            if (i < n && regex.charAt(i) == ']') {
+                // A leading ']' is a literal.
+                i++;
+            }
+            int nesting = 1;
+            while (i < n) {
+                char c = regex.charAt(i);
+                if (c == '\\') {
+                    i += 2;
+                    continue;
+                }
+                i++;
+                if (c == '[') {
+                    nesting++;
+                } else if (c == ']') {
+                    nesting--;
+                    if (nesting == 0) {
+                        return i;
+                    }
+                }
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package synoptic.util.time;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of times of one TotalTimeType, stored as their encodings in
+ * a long array instead of as ITime objects.
+ */
+public class TimeColumn {
+    private final TotalTimeType type;
+    private long[] values;
+    private int size;
+
+    public TimeColumn(TotalTimeType type) {
+        this(type, 8);
+    }
+
+    public TimeColumn(TotalTimeType type, int initialCapacity) {
+        assert type != null;
+        this.type = type;
+        values = new long[Math.max(initialCapacity, 1)];
+        size = 0;
+    }
+
+    public TotalTimeType getType() {
+        return type;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends t, which must be a time of the type of this column.
+     */
+    public void add(ITime t) {
+        if (TotalTimeType.of(t) != type) {
+            throw new NonComparableTimesException(size == 0 ? null : get(0),
+                    t);
+        }
+        addEncoded(type.encode(t));
+    }
+
+    /**
+     * Appends a time of the type of this column from its encoding.
+     */
+    public void addEncoded(long v) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        values[size++] = v;
+    }
+
+    /**
+     * Returns a new time object for the time at index i.
+     */
+    public ITime get(int i) {
+        return type.decode(getEncoded(i));
+    }
+
+    /**
+     * Returns the encoding of the time at index i.
+     */
+    public long getEncoded(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(i));
+        }
+        return values[i];
+    }
+
+    /**
+     * Sorts the times in the column into ascending order (see
+     * ITime.compareTo()).
+     */
+    public void sort() {
+        Arrays.sort(values, 0, size);
+    }
+
+    /**
+     * Returns a copy of the encodings of the times in the column.
+     */
+    public long[] toEncodedArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -1,6 +1,7 @@
 package synoptic.util.time;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,15 +10,32 @@ import java.util.Map;
 
 /**
  * Encapsulates a list of time instances that extend ITime.
+ * <p>
+ * While all of the times are totally ordered times of one type (see
+ * TotalTimeType), they are stored in a TimeColumn, and the time objects
+ * returned by the methods below are created on demand. The minimum, maximum
+ * and mean are kept up to date as times are added. Other times are stored as
+ * objects.
  */
 public class TimeSeries<TimeType extends ITime> implements
         Comparable<TimeSeries<ITime>> {
+    /** The times, if they are all of one TotalTimeType, else null. */
+    private TimeColumn column;
+    /** The times, if column is null. */
     private List<TimeType> times;
     boolean isSorted;
 
+    // The encoded minimum, maximum and sum of the times in column, as
+    // computeMinMax() and computeMean() compute them, if statsValid.
+    private boolean statsValid;
+    private long min;
+    private long max;
+    private long sum;
+
     public TimeSeries() {
         times = new ArrayList<TimeType>();
         isSorted = true;
+        statsValid = true;
     }
 
     /**
@@ -25,21 +43,65 @@ public class TimeSeries<TimeType extends ITime> implements
      */
     private void sort() {
         if (!isSorted) {
-            Collections.sort(times);
+            if (column != null) {
+                column.sort();
+                // The minimum and maximum of float and double times (among
+                // times that are not less than each other, e.g. 0.0 and -0.0),
+                // and their sum, depend on the order of the times.
+                TotalTimeType type = column.getType();
+                if (type == TotalTimeType.FLOAT
+                        || type == TotalTimeType.DOUBLE) {
+                    statsValid = false;
+                }
+            } else {
+                Collections.sort(times);
+            }
             isSorted = true;
         }
     }
 
+    /**
+     * @return the number of times in the series
+     */
+    public int size() {
+        return column != null ? column.size() : times.size();
+    }
+
+    private boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the time at index i, creating it if the times are stored in a
+     * column.
+     */
+    @SuppressWarnings("unchecked")
+    private TimeType get(int i) {
+        if (column != null) {
+            return (TimeType) column.get(i);
+        }
+        return times.get(i);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TimeType decode(long v) {
+        return (TimeType) column.getType().decode(v);
+    }
+
     /**
      * @return mode delta time for transition, null if transition has zero delta
      *         times.
      */
     public TimeType computeMode() {
 
-        if (this.times.isEmpty()) {
+        if (isEmpty()) {
             return null;
         }
 
+        if (column != null) {
+            return computeColumnMode();
+        }
+
         Map<TimeType, Integer> counts = new HashMap<TimeType, Integer>();
         TimeType mostCommon = null;
         int max = 0;
@@ -63,41 +125,118 @@ public class TimeSeries<TimeType extends ITime> implements
         return mostCommon;
     }
 
+    /**
+     * The mode of the times in column. As above, if several times are the most
+     * common, returns the one whose count reaches the largest count first, in
+     * the current order of the times.
+     */
+    private TimeType computeColumnMode() {
+        // Find the largest count, and the times with that count, from a sorted
+        // copy of the times.
+        long[] sorted = column.toEncodedArray();
+        Arrays.sort(sorted);
+        int maxCount = 0;
+        int numCandidates = 0;
+        for (int i = 0; i < sorted.length;) {
+            int j = i + 1;
+            while (j < sorted.length && sorted[j] == sorted[i]) {
+                j++;
+            }
+            if (j - i > maxCount) {
+                maxCount = j - i;
+                numCandidates = 0;
+            }
+            if (j - i == maxCount) {
+                sorted[numCandidates++] = sorted[i];
+            }
+            i = j;
+        }
+        if (numCandidates == 1) {
+            return decode(sorted[0]);
+        }
+
+        // Count the candidates in order, until one reaches the largest count.
+        // The candidates are in ascending order, at the start of sorted.
+        int[] counts = new int[numCandidates];
+        for (int i = 0; i < column.size(); i++) {
+            long v = column.getEncoded(i);
+            int c = Arrays.binarySearch(sorted, 0, numCandidates, v);
+            if (c >= 0 && ++counts[c] == maxCount) {
+                return decode(v);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
     /**
      * @return median delta time for transition, null if transition has zero
      *         delta times.
      */
     @SuppressWarnings("unchecked")
     public TimeType computeMedian() {
-        if (this.times.isEmpty()) {
+        if (isEmpty()) {
             return null;
         }
 
         // Sort the list.
         sort();
 
-        int middle = times.size() / 2;
-        if (times.size() % 2 == 1) {
+        int size = size();
+        int middle = size / 2;
+        if (size % 2 == 1) {
             // Odd length.
-            return times.get(middle);
+            return get(middle);
         }
         // Event length.
+        if (column != null) {
+            TotalTimeType type = column.getType();
+            return decode(type.divBy(
+                    type.incrBy(column.getEncoded(middle - 1),
+                            column.getEncoded(middle)), 2));
+        }
         // TODO: make this a safe cast by having incrBy return a more concrete
         // time than ITime.
         return (TimeType) times.get(middle - 1).incrBy(times.get(middle))
                 .divBy(2);
     }
 
+    /**
+     * Returns the time at quantile q of the times: the smallest time that is
+     * not less than a fraction q of the times (the nearest-rank method).
+     * 
+     * @param q
+     *            a fraction between 0 and 1
+     * @return the time at quantile q, or null if there are no times
+     */
+    public TimeType computeQuantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile " + q
+                    + " is not between 0 and 1");
+        }
+        if (isEmpty()) {
+            return null;
+        }
+
+        sort();
+        int rank = (int) Math.ceil(q * size());
+        return get(Math.max(rank - 1, 0));
+    }
+
     /**
      * @return mean delta time for transition, null if transition has zero delta
      *         times.
      */
     @SuppressWarnings("unchecked")
     public TimeType computeMean() {
-        if (times.isEmpty()) {
+        if (isEmpty()) {
             return null;
         }
 
+        if (column != null) {
+            updateStats();
+            return decode(column.getType().divBy(sum, column.size()));
+        }
+
         // Create a zero valued starting point.
         TimeType initial = (TimeType) times.get(0).getZeroTime();
 
@@ -131,17 +270,24 @@ public class TimeSeries<TimeType extends ITime> implements
     @SuppressWarnings("unchecked")
     public TimeType computeMed() {
         // Check for empty or size-one time series
-        if (times.isEmpty()) {
+        int size = size();
+        if (size == 0) {
             return null;
-        } else if (times.size() == 1) {
-            return times.get(0);
+        } else if (size == 1) {
+            return get(0);
         }
 
         // Median position if odd, or lower median position if even
-        int medianPos = (times.size() - 1) / 2;
+        int medianPos = (size - 1) / 2;
 
         // Times size is even, so calculate and return median
-        if (times.size() % 2 == 0) {
+        if (size % 2 == 0) {
+            if (column != null) {
+                TotalTimeType type = column.getType();
+                return decode(type.divBy(
+                        type.incrBy(column.getEncoded(medianPos),
+                                column.getEncoded(medianPos + 1)), 2));
+            }
             TimeType lowMedian = times.get(medianPos);
             TimeType highMedian = times.get(medianPos + 1);
             return (TimeType) lowMedian.incrBy(highMedian).divBy(2);
@@ -149,7 +295,7 @@ public class TimeSeries<TimeType extends ITime> implements
 
         // Times size is odd, so just return median
         {
-            return times.get(medianPos);
+            return get(medianPos);
         }
     }
 
@@ -160,10 +306,15 @@ public class TimeSeries<TimeType extends ITime> implements
      */
     private TimeType computeMinMax(boolean findMax) {
         // Check for empty time series
-        if (times.isEmpty()) {
+        if (isEmpty()) {
             return null;
         }
 
+        if (column != null) {
+            updateStats();
+            return decode(findMax ? max : min);
+        }
+
         // Start the running min/max time with the first time delta
         TimeType minMaxTime = times.get(0);
 
@@ -188,6 +339,41 @@ public class TimeSeries<TimeType extends ITime> implements
         return minMaxTime;
     }
 
+    /**
+     * Recomputes the minimum, maximum and sum of the times in column, in their
+     * current order, if they are not valid.
+     */
+    private void updateStats() {
+        if (!statsValid) {
+            statsValid = true;
+            int size = column.size();
+            for (int i = 0; i < size; i++) {
+                addToStats(i, column.getEncoded(i));
+            }
+        }
+    }
+
+    /**
+     * Updates the minimum, maximum and sum with v, the time at index i of
+     * column.
+     */
+    private void addToStats(int i, long v) {
+        TotalTimeType type = column.getType();
+        if (i == 0) {
+            min = v;
+            max = v;
+            sum = type.incrBy(type.getZeroTime(), v);
+            return;
+        }
+        if (type.lessThan(v, min)) {
+            min = v;
+        }
+        if (type.lessThan(max, v)) {
+            max = v;
+        }
+        sum = type.incrBy(sum, v);
+    }
+
     /**
      * Adds a time for the transition between the source and target nodes.
      * 
@@ -196,7 +382,35 @@ public class TimeSeries<TimeType extends ITime> implements
      */
     public void addDelta(TimeType t) {
         assert t != null;
-        times.add(t);
+        if (times != null) {
+            TotalTimeType type = TotalTimeType.of(t);
+            if (times.isEmpty() && type != null) {
+                times = null;
+                column = new TimeColumn(type);
+            } else {
+                times.add(t);
+                isSorted = false;
+                return;
+            }
+        }
+
+        if (TotalTimeType.of(t) != column.getType()) {
+            // Store the times as objects from now on.
+            times = new ArrayList<TimeType>(column.size() + 1);
+            for (int i = 0; i < column.size(); i++) {
+                times.add(get(i));
+            }
+            column = null;
+            times.add(t);
+            isSorted = false;
+            return;
+        }
+
+        long v = column.getType().encode(t);
+        column.addEncoded(v);
+        if (statsValid) {
+            addToStats(column.size() - 1, v);
+        }
         isSorted = false;
     }
 
@@ -208,11 +422,23 @@ public class TimeSeries<TimeType extends ITime> implements
      */
     public void addAllDeltas(Collection<TimeType> deltas) {
         assert deltas != null;
-        times.addAll(deltas);
+        for (TimeType t : deltas) {
+            addDelta(t);
+        }
     }
 
+    /**
+     * @return a new list of the times in the series
+     */
     public List<TimeType> getAllDeltas() {
-        return times;
+        if (column == null) {
+            return new ArrayList<TimeType>(times);
+        }
+        List<TimeType> deltas = new ArrayList<TimeType>(column.size());
+        for (int i = 0; i < column.size(); i++) {
+            deltas.add(get(i));
+        }
+        return deltas;
     }
 
     @Override
@@ -220,18 +446,30 @@ public class TimeSeries<TimeType extends ITime> implements
         int cmp;
 
         sort();
-        cmp = ((Integer) times.size()).compareTo(o.times.size());
+        int size = size();
+        cmp = ((Integer) size).compareTo(o.size());
         if (cmp != 0) {
             return cmp;
         }
 
-        int i = 0;
-        for (ITime t : times) {
-            cmp = t.compareTo(o.times.get(i));
+        if (column != null && o.column != null
+                && column.getType() == o.column.getType()) {
+            TotalTimeType type = column.getType();
+            for (int i = 0; i < size; i++) {
+                cmp = type.compare(column.getEncoded(i),
+                        o.column.getEncoded(i));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        for (int i = 0; i < size; i++) {
+            cmp = get(i).compareTo(o.get(i));
             if (cmp != 0) {
                 return cmp;
             }
-            i += 1;
         }
         return 0;
     }
@@ -0,0 +1,238 @@
+package synoptic.util.time;
+
+/**
+ * The totally ordered time types, with their values encoded as longs so that
+ * many times can be stored and compared without an ITime object per time. The
+ * encoding of a time is ordered as the time's compareTo() orders times, so
+ * encoded times are compared, and sorted, as longs. Two times are equal if and
+ * only if their encodings are.
+ * <p>
+ * The arithmetic on encoded times is that of the time type: integer times
+ * overflow as ints do, and float times are rounded to floats.
+ */
+public enum TotalTimeType {
+    INT {
+        @Override
+        public long encode(ITime t) {
+            return ((ITotalTime) t).time;
+        }
+
+        @Override
+        public ITime decode(long v) {
+            return new ITotalTime((int) v);
+        }
+
+        @Override
+        public boolean lessThan(long v1, long v2) {
+            return v1 < v2;
+        }
+
+        @Override
+        public long computeDelta(long v, long other) {
+            return (int) v - (int) other;
+        }
+
+        @Override
+        public long incrBy(long v, long other) {
+            return (int) v + (int) other;
+        }
+
+        @Override
+        public long divBy(long v, int divisor) {
+            checkDivisor(divisor);
+            return (int) v / divisor;
+        }
+    },
+
+    LONG {
+        @Override
+        public long encode(ITime t) {
+            return ((LTotalTime) t).time;
+        }
+
+        @Override
+        public ITime decode(long v) {
+            return new LTotalTime(v);
+        }
+
+        @Override
+        public boolean lessThan(long v1, long v2) {
+            return v1 < v2;
+        }
+
+        @Override
+        public long computeDelta(long v, long other) {
+            return v - other;
+        }
+
+        @Override
+        public long incrBy(long v, long other) {
+            return v + other;
+        }
+
+        @Override
+        public long divBy(long v, int divisor) {
+            checkDivisor(divisor);
+            return v / divisor;
+        }
+    },
+
+    FLOAT {
+        @Override
+        public long encode(ITime t) {
+            return encodeFloat(((FTotalTime) t).time);
+        }
+
+        @Override
+        public ITime decode(long v) {
+            return new FTotalTime(decodeFloat(v));
+        }
+
+        @Override
+        public boolean lessThan(long v1, long v2) {
+            return decodeFloat(v1) < decodeFloat(v2);
+        }
+
+        @Override
+        public long computeDelta(long v, long other) {
+            return encodeFloat(decodeFloat(v) - decodeFloat(other));
+        }
+
+        @Override
+        public long incrBy(long v, long other) {
+            return encodeFloat(decodeFloat(v) + decodeFloat(other));
+        }
+
+        @Override
+        public long divBy(long v, int divisor) {
+            checkDivisor(divisor);
+            return encodeFloat(decodeFloat(v) / divisor);
+        }
+    },
+
+    DOUBLE {
+        @Override
+        public long encode(ITime t) {
+            return encodeDouble(((DTotalTime) t).time);
+        }
+
+        @Override
+        public ITime decode(long v) {
+            return new DTotalTime(decodeDouble(v));
+        }
+
+        @Override
+        public boolean lessThan(long v1, long v2) {
+            return decodeDouble(v1) < decodeDouble(v2);
+        }
+
+        @Override
+        public long computeDelta(long v, long other) {
+            return encodeDouble(decodeDouble(v) - decodeDouble(other));
+        }
+
+        @Override
+        public long incrBy(long v, long other) {
+            return encodeDouble(decodeDouble(v) + decodeDouble(other));
+        }
+
+        @Override
+        public long divBy(long v, int divisor) {
+            checkDivisor(divisor);
+            return encodeDouble(decodeDouble(v) / divisor);
+        }
+    };
+
+    /**
+     * Returns the type of t, or null if t is not a time of one of these types
+     * (e.g., a VectorTime).
+     */
+    public static TotalTimeType of(ITime t) {
+        Class<?> c = t.getClass();
+        if (c == ITotalTime.class) {
+            return INT;
+        } else if (c == LTotalTime.class) {
+            return LONG;
+        } else if (c == FTotalTime.class) {
+            return FLOAT;
+        } else if (c == DTotalTime.class) {
+            return DOUBLE;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the encoding of t, which must be a time of this type.
+     */
+    public abstract long encode(ITime t);
+
+    /**
+     * Returns a new time of this type from its encoding.
+     */
+    public abstract ITime decode(long v);
+
+    /**
+     * The encoded counterpart of ITime.lessThan().
+     */
+    public abstract boolean lessThan(long v1, long v2);
+
+    /**
+     * The encoded counterpart of ITime.compareTo().
+     */
+    public int compare(long v1, long v2) {
+        return Long.compare(v1, v2);
+    }
+
+    /**
+     * The encoded counterpart of ITime.computeDelta(): returns v - other.
+     */
+    public abstract long computeDelta(long v, long other);
+
+    /**
+     * The encoded counterpart of ITime.incrBy(): returns v + other.
+     */
+    public abstract long incrBy(long v, long other);
+
+    /**
+     * The encoded counterpart of ITime.divBy().
+     */
+    public abstract long divBy(long v, int divisor);
+
+    /**
+     * Returns the encoding of the zero time of this type, which is 0 for every
+     * type.
+     */
+    public long getZeroTime() {
+        return 0;
+    }
+
+    private static void checkDivisor(int divisor) {
+        if (divisor < 1) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    // The bits of a negative float or double are in the reverse order of its
+    // value, so they are flipped, except for the sign bit. Positive values,
+    // and the canonical NaN, which compareTo() orders above all other values,
+    // are encoded as their bits.
+
+    private static long encodeFloat(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private static float decodeFloat(long v) {
+        int bits = (int) v;
+        return Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7fffffff));
+    }
+
+    private static long encodeDouble(double d) {
+        long bits = Double.doubleToLongBits(d);
+        return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+    }
+
+    private static double decodeDouble(long v) {
+        return Double.longBitsToDouble(v ^ ((v >> 63) & 0x7fffffffffffffffL));
+    }
+}
@@ -1,6 +1,7 @@
 package synoptic.util.time;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -246,6 +247,13 @@ public class VectorTime implements ITime {
         return true;
     }
 
+    /**
+     * Returns the clocks of this vector time, in index order.
+     */
+    public List<Integer> getVector() {
+        return Collections.unmodifiableList(vector);
+    }
+
     /*
      * (non-Javadoc)
      * 
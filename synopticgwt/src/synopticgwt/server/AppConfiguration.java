@@ -44,6 +44,12 @@ public class AppConfiguration {
      */
     public final String uploadedLogFilesDir;
 
+    /**
+     * The directory to which the refinement state of sessions is saved, or
+     * null if the state is kept in the sessions.
+     */
+    public final String sessionSnapshotsDir;
+
     /**
      * Hg changeset id embedded in MANIFEST.MF corresponding to the SynopticGWT
      * project.
@@ -105,6 +111,15 @@ public class AppConfiguration {
             uploadedLogFilesDir = uploadedLogFilesDir_ + "/";
         }
 
+        String sessionSnapshotsDir_ = System.getProperty(
+                "sessionSnapshotsDir", null);
+        if (sessionSnapshotsDir_ == null) {
+            // Disabled session snapshots.
+            sessionSnapshotsDir = null;
+        } else {
+            sessionSnapshotsDir = sessionSnapshotsDir_ + "/";
+        }
+
         String derbyDBDir = System.getProperty("derbyDBDir", null);
         if (derbyDBDir == null) {
             // Disabled DerbyDB support.
@@ -0,0 +1,1077 @@
+package synopticgwt.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.concurrency.AlwaysConcurrentInvariant;
+import synoptic.invariants.concurrency.NeverConcurrentInvariant;
+import synoptic.invariants.constraints.IThresholdConstraint;
+import synoptic.invariants.constraints.LowerBoundConstraint;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.Relation;
+import synoptic.model.TraceGraph;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.InvariantStatistics;
+import synoptic.util.time.DTotalTime;
+import synoptic.util.time.FTotalTime;
+import synoptic.util.time.ITime;
+import synoptic.util.time.ITotalTime;
+import synoptic.util.time.LTotalTime;
+import synoptic.util.time.VectorTime;
+
+/**
+ * The refinement state that SynopticService keeps for a session -- the
+ * partition graph being refined, the active and unsatisfied invariants, and
+ * the current counter-examples -- along with a compact binary format for it.
+ * The format lets the service keep this state on disk instead of as live
+ * objects in the HttpSession. The state refers to a LogState -- the trace
+ * graph of the log and the mined invariants -- which does not change once the
+ * log is parsed, and so is written separately, once per session:
+ * <ul>
+ * <li>Strings, event types, and the sets of relations of events are interned:
+ * they are written once, in tables, and referred to by their index.</li>
+ * <li>The events of each trace are written in trace order, with their line
+ * numbers and integral times delta-encoded against the previous event of the
+ * trace, as variable-length integers. The transitions of totally ordered
+ * traces are not written: they are re-created by ChainsTraceGraph.addTrace()
+ * from the relations of each event. Those of partially ordered traces are
+ * written as the indices of their target events.</li>
+ * <li>Partitions are written as the sorted indices of their events, and
+ * invariants and counter-examples refer to event types, events, invariants,
+ * and partitions by index.</li>
+ * </ul>
+ * Both sections are gzipped. Partitions are identified to clients by ids
+ * (their hashCode() when they are created), which are kept in partitionIDs so
+ * that they survive a round trip through the format. Only logs with
+ * StringEventTypes, or with DistEventTypes that carry no CSight channel
+ * information, and the invariant types that the miners mine, can be written.
+ * Refinement states can only be written for totally ordered logs.
+ */
+public class RefinementStateSnapshot {
+    /** Identifies the log section format, and its version. */
+    private static final int logFormatVersion = 0x53594e02;
+    /** Identifies the refinement state section format, and its version. */
+    private static final int stateFormatVersion = 0x53595302;
+
+    /** The invariant types that can be written, by their tag. */
+    private static final List<Class<? extends BinaryInvariant>> invariantTypes = Arrays
+            .<Class<? extends BinaryInvariant>> asList(
+                    AlwaysFollowedInvariant.class,
+                    AlwaysPrecedesInvariant.class,
+                    NeverFollowedInvariant.class, InterruptedByInvariant.class,
+                    AlwaysConcurrentInvariant.class,
+                    NeverConcurrentInvariant.class,
+                    TempConstrainedInvariant.class);
+
+    // Tags of the time types that can be written.
+    private static final int noTime = 0;
+    private static final int intTime = 1;
+    private static final int longTime = 2;
+    private static final int floatTime = 3;
+    private static final int doubleTime = 4;
+    private static final int vectorTime = 5;
+
+    // Flags of event types.
+    private static final int initialFlag = 1;
+    private static final int terminalFlag = 2;
+    private static final int distFlag = 4;
+
+    /**
+     * The state of a session that is fixed once its log is parsed: the trace
+     * graph and the mined invariants. A LogState also numbers the events and
+     * invariants, so that the refinement states written against it can refer
+     * to them by index.
+     */
+    public static class LogState {
+        public final TraceGraph<?> traceGraph;
+        public final TemporalInvariantSet minedInvs;
+
+        /** The events of each trace, in the order in which they are written. */
+        private final List<List<EventNode>> traces;
+        /**
+         * The events by index. The dummy INITIAL and TERMINAL nodes have
+         * indices 0 and 1, and are followed by the events of traces.
+         */
+        private final List<EventNode> events;
+        private final Map<EventNode, Integer> eventIndices;
+        /** The invariants of minedInvs by index. */
+        private final List<ITemporalInvariant> invs;
+        private final Map<ITemporalInvariant, Integer> invIndices;
+
+        public LogState(TraceGraph<?> traceGraph,
+                TemporalInvariantSet minedInvs) {
+            this(traceGraph, minedInvs, getTraces(traceGraph),
+                    new ArrayList<ITemporalInvariant>(minedInvs.getSet()));
+        }
+
+        private LogState(TraceGraph<?> traceGraph,
+                TemporalInvariantSet minedInvs, List<List<EventNode>> traces,
+                List<ITemporalInvariant> invs) {
+            this.traceGraph = traceGraph;
+            this.minedInvs = minedInvs;
+            this.traces = traces;
+            this.invs = invs;
+
+            events = new ArrayList<EventNode>();
+            events.add(traceGraph.getDummyInitialNode());
+            events.add(traceGraph.getDummyTerminalNode());
+            for (List<EventNode> trace : traces) {
+                events.addAll(trace);
+            }
+            eventIndices = new IdentityHashMap<EventNode, Integer>();
+            for (int i = 0; i < events.size(); i++) {
+                eventIndices.put(events.get(i), i);
+            }
+            invIndices = new HashMap<ITemporalInvariant, Integer>();
+            for (int i = 0; i < invs.size(); i++) {
+                invIndices.put(invs.get(i), i);
+            }
+        }
+
+        /**
+         * Writes this log state to file.
+         */
+        public void save(File file) throws IOException {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                write(out);
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Writes this log state to out, which is left open.
+         * 
+         * @throws IllegalArgumentException
+         *             if the state cannot be written in this format
+         */
+        public void write(OutputStream out) throws IOException {
+            boolean chains = traceGraph instanceof ChainsTraceGraph;
+            if (!chains && !(traceGraph instanceof DAGsTraceGraph)) {
+                throw new IllegalArgumentException(
+                        "Cannot write trace graph type "
+                                + traceGraph.getClass());
+            }
+            Interner<String> strings = new Interner<String>();
+            Interner<EventType> eTypes = new Interner<EventType>();
+            Interner<Map<String, Boolean>> relationSets = new Interner<Map<String, Boolean>>();
+
+            // The body is written first, as it determines the tables.
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+
+            // Events, by trace.
+            Map<EventNode, Map<String, Boolean>> eventRelations = null;
+            if (chains) {
+                eventRelations = getEventRelations(traceGraph, traces);
+            }
+            body.writeBoolean(chains);
+            writeVarInt(body, traces.size());
+            for (List<EventNode> trace : traces) {
+                writeVarInt(body, trace.get(0).getTraceID());
+                writeVarInt(body, trace.size());
+                int prevLineNum = 0;
+                ITime prevTime = null;
+                for (EventNode node : trace) {
+                    Event event = node.getEvent();
+                    writeVarInt(body, eTypes.intern(event.getEType()));
+                    if (chains) {
+                        writeVarInt(body,
+                                relationSets.intern(eventRelations.get(node)));
+                    }
+                    writeVarInt(body, strings.intern(event.getFileName()));
+                    writeSignedVarInt(body, event.getLineNum() - prevLineNum);
+                    writeString(body, event.getLine());
+                    writeTime(body, event.getTime(), prevTime);
+                    prevLineNum = event.getLineNum();
+                    prevTime = event.getTime();
+                }
+            }
+
+            // The transitions of partially ordered traces, including those
+            // from the dummy INITIAL node and to the dummy TERMINAL node.
+            if (!chains) {
+                for (EventNode node : events) {
+                    List<? extends ITransition<EventNode>> transitions = node
+                            .getAllTransitions();
+                    writeVarInt(body, transitions.size());
+                    for (ITransition<EventNode> t : transitions) {
+                        writeVarInt(body,
+                                getIndex(eventIndices, t.getTarget()));
+                        writeVarInt(body, t.getRelation().size());
+                        for (String relation : t.getRelation()) {
+                            writeVarInt(body, strings.intern(relation));
+                        }
+                    }
+                }
+            }
+
+            // Invariants.
+            writeVarInt(body, invs.size());
+            for (ITemporalInvariant inv : invs) {
+                writeInvariant(body, inv, eTypes, strings);
+            }
+            body.flush();
+
+            // The tables, followed by the body.
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(gzip));
+            data.writeInt(logFormatVersion);
+            // Event types intern their labels, so they must precede the
+            // strings.
+            int[] eTypeLabels = new int[eTypes.values.size()];
+            int[] eTypeProcesses = new int[eTypeLabels.length];
+            for (int i = 0; i < eTypeLabels.length; i++) {
+                EventType eType = eTypes.values.get(i);
+                if (eType instanceof DistEventType) {
+                    DistEventType dType = (DistEventType) eType;
+                    if (dType.getPid() != -1 || dType.getChannelId() != null
+                            || dType.isCommEvent() || dType.isLocalEvent()) {
+                        throw new IllegalArgumentException(
+                                "Cannot write CSight event type " + eType);
+                    }
+                    eTypeProcesses[i] = strings.intern(dType
+                            .getProcessName());
+                } else if (!(eType instanceof StringEventType)) {
+                    throw new IllegalArgumentException(
+                            "Cannot write event type " + eType.getClass());
+                }
+                eTypeLabels[i] = strings.intern(eType.getETypeLabel());
+            }
+            for (Map<String, Boolean> relations : relationSets.values) {
+                for (String relation : relations.keySet()) {
+                    strings.intern(relation);
+                }
+            }
+
+            writeVarInt(data, strings.values.size());
+            for (String s : strings.values) {
+                writeString(data, s);
+            }
+            writeVarInt(data, eTypeLabels.length);
+            for (int i = 0; i < eTypeLabels.length; i++) {
+                EventType eType = eTypes.values.get(i);
+                boolean dist = eType instanceof DistEventType;
+                writeVarInt(data, eTypeLabels[i]);
+                data.writeByte((eType.isInitialEventType() ? initialFlag : 0)
+                        | (eType.isTerminalEventType() ? terminalFlag : 0)
+                        | (dist ? distFlag : 0));
+                if (dist) {
+                    writeVarInt(data, eTypeProcesses[i]);
+                }
+            }
+            writeVarInt(data, relationSets.values.size());
+            for (Map<String, Boolean> relations : relationSets.values) {
+                writeVarInt(data, relations.size());
+                for (Map.Entry<String, Boolean> entry : relations.entrySet()) {
+                    writeVarInt(data, strings.indices.get(entry.getKey()));
+                    data.writeBoolean(entry.getValue());
+                }
+            }
+            bodyBytes.writeTo(data);
+            data.flush();
+            gzip.finish();
+        }
+
+        /**
+         * Reads a log state from file.
+         */
+        public static LogState load(File file) throws IOException {
+            InputStream in = new FileInputStream(file);
+            try {
+                return read(in);
+            } finally {
+                in.close();
+            }
+        }
+
+        /**
+         * Reads a log state written by write() from in.
+         */
+        public static LogState read(InputStream in) throws IOException {
+            DataInputStream data = new DataInputStream(
+                    new BufferedInputStream(new GZIPInputStream(in)));
+            if (data.readInt() != logFormatVersion) {
+                throw new IOException("Not a log state snapshot");
+            }
+
+            String[] strings = new String[readVarInt(data)];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(data);
+            }
+            EventType[] eTypes = new EventType[readVarInt(data)];
+            for (int i = 0; i < eTypes.length; i++) {
+                eTypes[i] = readEventType(data, strings);
+            }
+            List<Set<Relation>> relationSets = new ArrayList<Set<Relation>>();
+            for (int i = readVarInt(data); i > 0; i--) {
+                Set<Relation> relations = new LinkedHashSet<Relation>();
+                for (int j = readVarInt(data); j > 0; j--) {
+                    relations.add(new Relation(Relation.anonName,
+                            strings[readVarInt(data)], data.readBoolean()));
+                }
+                relationSets.add(relations);
+            }
+
+            // Events, by trace.
+            boolean chains = data.readBoolean();
+            List<EventNode> events = new ArrayList<EventNode>();
+            List<List<EventNode>> traces = new ArrayList<List<EventNode>>();
+            Map<EventNode, Set<Relation>> eventRelations = new IdentityHashMap<EventNode, Set<Relation>>();
+            for (int t = readVarInt(data); t > 0; t--) {
+                int traceID = readVarInt(data);
+                List<EventNode> trace = new ArrayList<EventNode>();
+                int lineNum = 0;
+                ITime time = null;
+                for (int e = readVarInt(data); e > 0; e--) {
+                    EventType eType = eTypes[readVarInt(data)];
+                    Set<Relation> relations = chains ? relationSets
+                            .get(readVarInt(data)) : null;
+                    String fileName = strings[readVarInt(data)];
+                    lineNum += (int) readSignedVarLong(data);
+                    String line = readString(data);
+                    time = readTime(data, time);
+
+                    Event event = new Event(eType, line, fileName, lineNum);
+                    event.setTime(time);
+                    EventNode node = new EventNode(event);
+                    node.setTraceID(traceID);
+                    if (chains) {
+                        eventRelations.put(node, relations);
+                    }
+                    events.add(node);
+                    trace.add(node);
+                }
+                traces.add(trace);
+            }
+
+            TraceGraph<?> traceGraph;
+            if (chains) {
+                ChainsTraceGraph chainsGraph = new ChainsTraceGraph(events);
+                try {
+                    for (List<EventNode> trace : traces) {
+                        chainsGraph.addTrace(trace, eventRelations);
+                    }
+                } catch (ParseException e) {
+                    throw new IOException("Corrupt log state snapshot", e);
+                }
+                traceGraph = chainsGraph;
+            } else {
+                DAGsTraceGraph dagsGraph = new DAGsTraceGraph(events);
+                events.add(0, dagsGraph.getDummyInitialNode());
+                events.add(1, dagsGraph.getDummyTerminalNode());
+                for (int src = 0; src < events.size(); src++) {
+                    for (int t = readVarInt(data); t > 0; t--) {
+                        int target = readVarInt(data);
+                        Set<String> relations = new LinkedHashSet<String>();
+                        for (int r = readVarInt(data); r > 0; r--) {
+                            relations.add(strings[readVarInt(data)]);
+                        }
+                        if (src == 0) {
+                            dagsGraph.tagInitial(events.get(target), relations);
+                        } else if (target == 1) {
+                            dagsGraph.tagTerminal(events.get(src), relations);
+                        } else {
+                            events.get(src).addTransition(events.get(target),
+                                    relations);
+                        }
+                    }
+                }
+                traceGraph = dagsGraph;
+            }
+
+            // Invariants.
+            List<ITemporalInvariant> invs = new ArrayList<ITemporalInvariant>();
+            for (int i = readVarInt(data); i > 0; i--) {
+                invs.add(readInvariant(data, eTypes, strings));
+            }
+            TemporalInvariantSet minedInvs = new TemporalInvariantSet(
+                    new LinkedHashSet<ITemporalInvariant>(invs));
+
+            return new LogState(traceGraph, minedInvs, traces, invs);
+        }
+    }
+
+    public final LogState log;
+    public final PartitionGraph pGraph;
+    /** The invariants that pGraph is refined to satisfy, from minedInvs. */
+    public final Set<ITemporalInvariant> activeInvs;
+    /** The active invariants that pGraph does not satisfy. */
+    public final Set<ITemporalInvariant> unsatInvs;
+    /** Counter-examples to unsatInvs in pGraph, or null if there are none. */
+    public final List<CExamplePath<Partition>> counterExampleTraces;
+    public final int numSplitSteps;
+    /**
+     * The ids by which clients know the partitions of pGraph. Partitions that
+     * are not in the map are known by their hashCode().
+     */
+    public final Map<Partition, Integer> partitionIDs;
+
+    public RefinementStateSnapshot(LogState log, PartitionGraph pGraph,
+            Set<ITemporalInvariant> activeInvs,
+            Set<ITemporalInvariant> unsatInvs,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            int numSplitSteps, Map<Partition, Integer> partitionIDs) {
+        this.log = log;
+        this.pGraph = pGraph;
+        this.activeInvs = activeInvs;
+        this.unsatInvs = unsatInvs;
+        this.counterExampleTraces = counterExampleTraces;
+        this.numSplitSteps = numSplitSteps;
+        this.partitionIDs = partitionIDs;
+    }
+
+    /**
+     * Returns the id by which clients know partition p.
+     */
+    public int getPartitionID(Partition p) {
+        Integer id = partitionIDs.get(p);
+        return id == null ? p.hashCode() : id;
+    }
+
+    // //////////////////////////////////////////////////////////////////////////
+    // Writing.
+
+    /**
+     * Assigns consecutive indices to distinct values, in the order in which
+     * they are first seen.
+     */
+    private static class Interner<T> {
+        final Map<T, Integer> indices = new HashMap<T, Integer>();
+        final List<T> values = new ArrayList<T>();
+
+        int intern(T value) {
+            Integer index = indices.get(value);
+            if (index == null) {
+                index = values.size();
+                indices.put(value, index);
+                values.add(value);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Writes this snapshot, without its log state, to file.
+     */
+    public void save(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes this snapshot, without its log state, to out, which is left open.
+     * 
+     * @throws IllegalArgumentException
+     *             if the state cannot be written in this format
+     */
+    public void write(OutputStream out) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+                gzip));
+        data.writeInt(stateFormatVersion);
+
+        // Partitions.
+        Map<Partition, Integer> partitionIndices = new IdentityHashMap<Partition, Integer>();
+        writeVarInt(data, pGraph.getNodes().size());
+        for (Partition p : pGraph.getNodes()) {
+            partitionIndices.put(p, partitionIndices.size());
+            data.writeInt(getPartitionID(p));
+            int[] events = new int[p.size()];
+            int i = 0;
+            for (EventNode node : p.getEventNodes()) {
+                events[i++] = getIndex(log.eventIndices, node);
+            }
+            Arrays.sort(events);
+            writeVarInt(data, events.length);
+            int prev = 0;
+            for (int event : events) {
+                writeVarInt(data, event - prev);
+                prev = event;
+            }
+        }
+
+        // Invariants.
+        writeInvariantIndices(data, activeInvs, log.invIndices);
+        writeInvariantIndices(data, unsatInvs, log.invIndices);
+
+        // Counter-examples.
+        data.writeBoolean(counterExampleTraces != null);
+        if (counterExampleTraces != null) {
+            writeVarInt(data, counterExampleTraces.size());
+            for (CExamplePath<Partition> cExample : counterExampleTraces) {
+                writeVarInt(data,
+                        getIndex(log.invIndices, cExample.invariant));
+                writeVarInt(data, cExample.path.size());
+                for (Partition p : cExample.path) {
+                    writeVarInt(data, getIndex(partitionIndices, p));
+                }
+                writeSignedVarInt(data, cExample.violationStart);
+                writeSignedVarInt(data, cExample.violationEnd);
+                writeConstraintPath(data, cExample);
+            }
+        }
+        writeVarInt(data, numSplitSteps);
+        data.flush();
+        gzip.finish();
+    }
+
+    /**
+     * Writes the concrete transitions and the time deltas of a counter-example
+     * to a constrained invariant, if it has them.
+     */
+    private void writeConstraintPath(DataOutput out,
+            CExamplePath<Partition> cExample) throws IOException {
+        out.writeBoolean(cExample.transitionsList != null);
+        if (cExample.transitionsList != null) {
+            writeVarInt(out, cExample.transitionsList.size());
+            for (List<ITransition<EventNode>> transitions : cExample.transitionsList) {
+                // The first node of a path has no transitions into it.
+                if (transitions == null) {
+                    writeVarInt(out, 0);
+                    continue;
+                }
+                writeVarInt(out, transitions.size() + 1);
+                for (ITransition<EventNode> t : transitions) {
+                    writeVarInt(out, getIndex(log.eventIndices, t.getSource()));
+                    writeVarInt(out, getIndex(log.eventIndices, t.getTarget()));
+                    writeVarInt(out, t.getRelation().size());
+                    for (String relation : t.getRelation()) {
+                        writeString(out, relation);
+                    }
+                }
+            }
+        }
+        out.writeBoolean(cExample.tDeltas != null);
+        if (cExample.tDeltas != null) {
+            writeVarInt(out, cExample.tDeltas.size());
+            for (ITime tDelta : cExample.tDeltas) {
+                writeTime(out, tDelta, null);
+            }
+        }
+    }
+
+    private static <T> int getIndex(Map<T, Integer> indices, T value) {
+        Integer index = indices.get(value);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown " + value);
+        }
+        return index;
+    }
+
+    private static void writeInvariantIndices(DataOutput out,
+            Set<ITemporalInvariant> invs,
+            Map<ITemporalInvariant, Integer> invIndices) throws IOException {
+        writeVarInt(out, invs.size());
+        for (ITemporalInvariant inv : invs) {
+            writeVarInt(out, getIndex(invIndices, inv));
+        }
+    }
+
+    /**
+     * Writes an invariant by its tag. A constrained invariant is written as its
+     * constraint followed by the invariant that it constrains.
+     */
+    private static void writeInvariant(DataOutput out, ITemporalInvariant inv,
+            Interner<EventType> eTypes, Interner<String> strings)
+            throws IOException {
+        int tag = invariantTypes.indexOf(inv.getClass());
+        if (tag < 0) {
+            throw new IllegalArgumentException("Cannot write invariant type "
+                    + inv.getClass());
+        }
+        BinaryInvariant bInv = (BinaryInvariant) inv;
+        out.writeByte(tag);
+        if (inv instanceof TempConstrainedInvariant<?>) {
+            TempConstrainedInvariant<?> cInv = (TempConstrainedInvariant<?>) inv;
+            IThresholdConstraint constr = cInv.getConstraint();
+            if (!(constr instanceof UpperBoundConstraint)
+                    && !(constr instanceof LowerBoundConstraint)) {
+                throw new IllegalArgumentException(
+                        "Cannot write constraint type " + constr.getClass());
+            }
+            out.writeBoolean(constr instanceof UpperBoundConstraint);
+            writeTime(out, constr.getThreshold(), null);
+            writeInvariant(out, cInv.getInv(), eTypes, strings);
+        } else {
+            writeVarInt(out, eTypes.intern(bInv.getFirst()));
+            writeVarInt(out, eTypes.intern(bInv.getSecond()));
+            writeVarInt(out, strings.intern(bInv.getRelation()));
+        }
+        InvariantStatistics stats = bInv.getStatistics();
+        writeVarInt(out, stats == null ? 0 : stats.supportCount + 1);
+    }
+
+    /**
+     * Returns the events of each trace of g. The events of a totally ordered
+     * trace are in the order in which ChainsTraceGraph.addTrace() chains them.
+     */
+    private static List<List<EventNode>> getTraces(TraceGraph<?> g) {
+        Map<Integer, List<EventNode>> traces = new LinkedHashMap<Integer, List<EventNode>>();
+        for (EventNode node : g.getNodes()) {
+            if (node.isInitial() || node.isTerminal()) {
+                continue;
+            }
+            List<EventNode> trace = traces.get(node.getTraceID());
+            if (trace == null) {
+                trace = new ArrayList<EventNode>();
+                traces.put(node.getTraceID(), trace);
+            }
+            trace.add(node);
+        }
+        if (g instanceof ChainsTraceGraph && !AbstractOptions.keepOrder) {
+            for (List<EventNode> trace : traces.values()) {
+                Collections.sort(trace, new Comparator<EventNode>() {
+                    @Override
+                    public int compare(EventNode e1, EventNode e2) {
+                        return e1.getTime().compareTo(e2.getTime());
+                    }
+                });
+            }
+        }
+        return new ArrayList<List<EventNode>>(traces.values());
+    }
+
+    /**
+     * Returns the relations of every event of traces in g, mapped to whether they are
+     * closure relations, as recovered from the transitions into the event. A
+     * relation of an event is treated as a closure relation if the event has
+     * no transition with it from the previous event of its trace: with these
+     * relations, ChainsTraceGraph.addTrace() re-creates the transitions of g.
+     */
+    private static Map<EventNode, Map<String, Boolean>> getEventRelations(
+            TraceGraph<?> g, List<List<EventNode>> traces) {
+        Map<EventNode, Map<String, Boolean>> relations = new IdentityHashMap<EventNode, Map<String, Boolean>>();
+        for (List<EventNode> trace : traces) {
+            for (EventNode node : trace) {
+                relations.put(node, new LinkedHashMap<String, Boolean>());
+            }
+        }
+        Map<EventNode, EventNode> prevNodes = new IdentityHashMap<EventNode, EventNode>();
+        for (List<EventNode> trace : traces) {
+            for (int i = 1; i < trace.size(); i++) {
+                prevNodes.put(trace.get(i), trace.get(i - 1));
+            }
+        }
+
+        // First collect the relations of the transitions from previous events,
+        // as they are not closure relations.
+        for (EventNode src : g.getNodes()) {
+            for (ITransition<EventNode> t : src.getAllTransitions()) {
+                Map<String, Boolean> targetRelations = relations.get(t
+                        .getTarget());
+                if (targetRelations != null
+                        && prevNodes.get(t.getTarget()) == src) {
+                    for (String r : t.getRelation()) {
+                        targetRelations.put(r, false);
+                    }
+                }
+            }
+        }
+        for (EventNode src : g.getNodes()) {
+            for (ITransition<EventNode> t : src.getAllTransitions()) {
+                Map<String, Boolean> targetRelations = relations.get(t
+                        .getTarget());
+                if (targetRelations == null) {
+                    continue;
+                }
+                for (String r : t.getRelation()) {
+                    if (!targetRelations.containsKey(r)) {
+                        targetRelations.put(r,
+                                prevNodes.get(t.getTarget()) != null);
+                    }
+                }
+            }
+        }
+        return relations;
+    }
+
+    private static void writeTime(DataOutput out, ITime time, ITime prevTime)
+            throws IOException {
+        if (time == null) {
+            out.writeByte(noTime);
+        } else if (time instanceof ITotalTime) {
+            out.writeByte(intTime);
+            int prev = prevTime instanceof ITotalTime ? ((ITotalTime) prevTime).time
+                    : 0;
+            writeSignedVarInt(out, (long) ((ITotalTime) time).time - prev);
+        } else if (time instanceof LTotalTime) {
+            out.writeByte(longTime);
+            long prev = prevTime instanceof LTotalTime ? ((LTotalTime) prevTime).time
+                    : 0;
+            writeSignedVarInt(out, ((LTotalTime) time).time - prev);
+        } else if (time instanceof FTotalTime) {
+            out.writeByte(floatTime);
+            out.writeFloat(((FTotalTime) time).time);
+        } else if (time instanceof DTotalTime) {
+            out.writeByte(doubleTime);
+            out.writeDouble(((DTotalTime) time).time);
+        } else if (time instanceof VectorTime) {
+            out.writeByte(vectorTime);
+            List<Integer> vector = ((VectorTime) time).getVector();
+            writeVarInt(out, vector.size());
+            for (int clock : vector) {
+                writeSignedVarInt(out, clock);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot write time type "
+                    + time.getClass());
+        }
+    }
+
+    /**
+     * Writes a non-negative integer in 7-bit groups, least significant group
+     * first, with the high bit of each byte set if more groups follow.
+     */
+    private static void writeVarInt(DataOutput out, long value)
+            throws IOException {
+        assert value >= 0;
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Writes an integer as a varint of its zig-zag encoding, so that integers
+     * of small magnitude take few bytes.
+     */
+    private static void writeSignedVarInt(DataOutput out, long value)
+            throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeString(DataOutput out, String s)
+            throws IOException {
+        if (s == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    // //////////////////////////////////////////////////////////////////////////
+    // Reading.
+
+    /**
+     * Reads a snapshot of a refinement state of log from file.
+     */
+    public static RefinementStateSnapshot load(File file, LogState log)
+            throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return read(in, log);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot written by write() from in. The snapshot must have been
+     * written against a log state with the same contents as log. The events of
+     * log are moved to the partitions of the returned snapshot, so partition
+     * graphs read earlier against log must no longer be used.
+     */
+    public static RefinementStateSnapshot read(InputStream in, LogState log)
+            throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(in)));
+        if (data.readInt() != stateFormatVersion) {
+            throw new IOException("Not a refinement state snapshot");
+        }
+        if (!(log.traceGraph instanceof ChainsTraceGraph)) {
+            throw new IOException(
+                    "Refinement states require a totally ordered log");
+        }
+
+        // Partitions.
+        List<Set<EventNode>> partitioning = new ArrayList<Set<EventNode>>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int p = readVarInt(data); p > 0; p--) {
+            ids.add(data.readInt());
+            Set<EventNode> eNodes = new LinkedHashSet<EventNode>();
+            int event = 0;
+            for (int e = readVarInt(data); e > 0; e--) {
+                event += readVarInt(data);
+                eNodes.add(log.events.get(event));
+            }
+            partitioning.add(eNodes);
+        }
+
+        // Invariants.
+        Set<ITemporalInvariant> activeInvs = readInvariants(data, log.invs);
+        Set<ITemporalInvariant> unsatInvs = readInvariants(data, log.invs);
+
+        PartitionGraph pGraph = new PartitionGraph(
+                (ChainsTraceGraph) log.traceGraph, partitioning,
+                new TemporalInvariantSet(activeInvs));
+        List<Partition> partitions = new ArrayList<Partition>(
+                pGraph.getNodes());
+        Map<Partition, Integer> partitionIDs = new IdentityHashMap<Partition, Integer>();
+        for (int i = 0; i < partitions.size(); i++) {
+            partitionIDs.put(partitions.get(i), ids.get(i));
+        }
+
+        // Counter-examples.
+        List<CExamplePath<Partition>> counterExampleTraces = null;
+        if (data.readBoolean()) {
+            counterExampleTraces = new ArrayList<CExamplePath<Partition>>();
+            for (int c = readVarInt(data); c > 0; c--) {
+                ITemporalInvariant inv = log.invs.get(readVarInt(data));
+                List<Partition> path = new ArrayList<Partition>();
+                for (int i = readVarInt(data); i > 0; i--) {
+                    path.add(partitions.get(readVarInt(data)));
+                }
+                CExamplePath<Partition> cExample = new CExamplePath<Partition>(
+                        inv, path);
+                cExample.violationStart = (int) readSignedVarLong(data);
+                cExample.violationEnd = (int) readSignedVarLong(data);
+                readConstraintPath(data, cExample, log);
+                counterExampleTraces.add(cExample);
+            }
+        }
+        int numSplitSteps = readVarInt(data);
+
+        return new RefinementStateSnapshot(log, pGraph, activeInvs, unsatInvs,
+                counterExampleTraces, numSplitSteps, partitionIDs);
+    }
+
+    private static void readConstraintPath(DataInput in,
+            CExamplePath<Partition> cExample, LogState log) throws IOException {
+        if (in.readBoolean()) {
+            cExample.transitionsList = new ArrayList<List<ITransition<EventNode>>>();
+            for (int i = readVarInt(in); i > 0; i--) {
+                int numTransitions = readVarInt(in);
+                if (numTransitions == 0) {
+                    cExample.transitionsList.add(null);
+                    continue;
+                }
+                List<ITransition<EventNode>> transitions = new ArrayList<ITransition<EventNode>>();
+                for (int j = numTransitions - 1; j > 0; j--) {
+                    EventNode src = log.events.get(readVarInt(in));
+                    EventNode target = log.events.get(readVarInt(in));
+                    Set<String> relations = new LinkedHashSet<String>();
+                    for (int r = readVarInt(in); r > 0; r--) {
+                        relations.add(readString(in));
+                    }
+                    transitions.add(getTransition(src, target, relations));
+                }
+                cExample.transitionsList.add(transitions);
+            }
+        }
+        if (in.readBoolean()) {
+            cExample.tDeltas = new ArrayList<ITime>();
+            for (int i = readVarInt(in); i > 0; i--) {
+                cExample.tDeltas.add(readTime(in, null));
+            }
+        }
+    }
+
+    /**
+     * Returns the transition from src to target with exactly relations.
+     */
+    private static ITransition<EventNode> getTransition(EventNode src,
+            EventNode target, Set<String> relations) throws IOException {
+        for (ITransition<EventNode> t : src.getTransitionsWithExactRelations(
+                relations)) {
+            if (t.getTarget() == target) {
+                return t;
+            }
+        }
+        throw new IOException("Corrupt refinement state snapshot: no "
+                + relations + " transition from " + src + " to " + target);
+    }
+
+    private static EventType readEventType(DataInput in, String[] strings)
+            throws IOException {
+        String label = strings[readVarInt(in)];
+        int flags = in.readByte();
+        if ((flags & distFlag) != 0) {
+            String processName = strings[readVarInt(in)];
+            if ((flags & initialFlag) != 0) {
+                return DistEventType.newInitialDistEventType();
+            } else if ((flags & terminalFlag) != 0) {
+                return DistEventType.newTerminalDistEventType();
+            }
+            return new DistEventType(label, processName);
+        }
+        if ((flags & initialFlag) != 0) {
+            return StringEventType.newInitialStringEventType();
+        } else if ((flags & terminalFlag) != 0) {
+            return StringEventType.newTerminalStringEventType();
+        }
+        return new StringEventType(label);
+    }
+
+    private static BinaryInvariant readInvariant(DataInput in,
+            EventType[] eTypes, String[] strings) throws IOException {
+        int tag = in.readByte();
+        if (tag < 0 || tag >= invariantTypes.size()) {
+            throw new IOException("Unknown invariant type " + tag);
+        }
+        Class<? extends BinaryInvariant> type = invariantTypes.get(tag);
+        BinaryInvariant inv;
+        if (type == TempConstrainedInvariant.class) {
+            boolean upper = in.readBoolean();
+            ITime threshold = readTime(in, null);
+            inv = new TempConstrainedInvariant<BinaryInvariant>(readInvariant(
+                    in, eTypes, strings), upper ? new UpperBoundConstraint(
+                    threshold) : new LowerBoundConstraint(threshold));
+        } else {
+            inv = newInvariant(type, eTypes[readVarInt(in)],
+                    eTypes[readVarInt(in)], strings[readVarInt(in)]);
+        }
+        int supportCount = readVarInt(in);
+        if (supportCount != 0) {
+            inv.setStatistics(new InvariantStatistics(supportCount - 1));
+        }
+        return inv;
+    }
+
+    private static BinaryInvariant newInvariant(
+            Class<? extends BinaryInvariant> type, EventType first,
+            EventType second, String relation) throws IOException {
+        if (type == AlwaysFollowedInvariant.class) {
+            return new AlwaysFollowedInvariant(first, second, relation);
+        } else if (type == AlwaysPrecedesInvariant.class) {
+            return new AlwaysPrecedesInvariant(first, second, relation);
+        } else if (type == NeverFollowedInvariant.class) {
+            return new NeverFollowedInvariant(first, second, relation);
+        } else if (type == InterruptedByInvariant.class) {
+            return new InterruptedByInvariant(first, second, relation);
+        }
+        if (!(first instanceof DistEventType)
+                || !(second instanceof DistEventType)) {
+            throw new IOException("Concurrency invariant of non-distributed "
+                    + "event types");
+        }
+        if (type == AlwaysConcurrentInvariant.class) {
+            return new AlwaysConcurrentInvariant((DistEventType) first,
+                    (DistEventType) second, relation);
+        }
+        return new NeverConcurrentInvariant((DistEventType) first,
+                (DistEventType) second, relation);
+    }
+
+    private static Set<ITemporalInvariant> readInvariants(DataInput in,
+            List<ITemporalInvariant> invs) throws IOException {
+        Set<ITemporalInvariant> result = new LinkedHashSet<ITemporalInvariant>();
+        for (int i = readVarInt(in); i > 0; i--) {
+            result.add(invs.get(readVarInt(in)));
+        }
+        return result;
+    }
+
+    private static ITime readTime(DataInput in, ITime prevTime)
+            throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+        case noTime:
+            return null;
+        case intTime:
+            int prevInt = prevTime instanceof ITotalTime ? ((ITotalTime) prevTime).time
+                    : 0;
+            return new ITotalTime((int) (prevInt + readSignedVarLong(in)));
+        case longTime:
+            long prevLong = prevTime instanceof LTotalTime ? ((LTotalTime) prevTime).time
+                    : 0;
+            return new LTotalTime(prevLong + readSignedVarLong(in));
+        case floatTime:
+            return new FTotalTime(in.readFloat());
+        case doubleTime:
+            return new DTotalTime(in.readDouble());
+        case vectorTime:
+            List<Integer> vector = new ArrayList<Integer>();
+            for (int i = readVarInt(in); i > 0; i--) {
+                vector.add((int) readSignedVarLong(in));
+            }
+            return new VectorTime(vector);
+        default:
+            throw new IOException("Unknown time type " + tag);
+        }
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    private static long readSignedVarLong(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = readVarInt(in);
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
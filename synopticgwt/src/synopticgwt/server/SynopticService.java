@@ -2,15 +2,20 @@ package synopticgwt.server;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Serializable;
 import java.io.Writer;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -22,6 +27,8 @@ import java.util.logging.Logger;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
 
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
@@ -48,6 +55,7 @@ import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.time.ITime;
 import synopticgwt.client.ISynopticService;
+import synopticgwt.server.RefinementStateSnapshot.LogState;
 import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
@@ -79,6 +87,10 @@ public class SynopticService extends RemoteServiceServlet implements
     // Session attribute name storing path of client's uploaded log file.
     static final String logFileSessionAttribute = "logFilePath";
 
+    // Session attribute name storing the snapshot of the refinement state,
+    // when snapshots are enabled.
+    static final String snapshotSessionAttribute = "refinementState";
+
     static AppConfiguration config = null;
     HttpSession session;
 
@@ -90,13 +102,105 @@ public class SynopticService extends RemoteServiceServlet implements
     private Set<ITemporalInvariant> activeInvs;
     private List<CExamplePath<Partition>> counterExampleTraces;
     private ChainsTraceGraph traceGraph;
+    // The ids of partitions restored from a snapshot.
+    private Map<Partition, Integer> partitionIDs;
+    // The snapshot log state of traceGraph and minedInvs, once created.
+    private LogState logState;
     private int vID;
 
+    /**
+     * A refinement state snapshot saved to files for a session. The log state
+     * does not change during refinement, so it is saved to its own file only
+     * when the session starts refining a new log, and each step re-writes just
+     * the refinement state file. The files are deleted when the snapshot is
+     * unbound from the session, e.g., when the session expires. The last log
+     * state and snapshot saved or loaded are kept in memory until the garbage
+     * collector needs the space.
+     */
+    private static class SnapshotFiles implements HttpSessionBindingListener,
+            Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final File logFile;
+        private final File stateFile;
+        private transient SoftReference<LogState> cachedLog;
+        private transient SoftReference<RefinementStateSnapshot> cached;
+
+        public SnapshotFiles(File logFile, File stateFile) {
+            this.logFile = logFile;
+            this.stateFile = stateFile;
+        }
+
+        private LogState getCachedLog() {
+            return cachedLog == null ? null : cachedLog.get();
+        }
+
+        public synchronized void save(RefinementStateSnapshot snapshot)
+                throws IOException {
+            if (getCachedLog() != snapshot.log) {
+                snapshot.log.save(logFile);
+                cachedLog = new SoftReference<LogState>(snapshot.log);
+            }
+            snapshot.save(stateFile);
+            cached = new SoftReference<RefinementStateSnapshot>(snapshot);
+        }
+
+        public synchronized RefinementStateSnapshot load() throws IOException {
+            RefinementStateSnapshot snapshot = cached == null ? null : cached
+                    .get();
+            if (snapshot == null) {
+                LogState log = getCachedLog();
+                if (log == null) {
+                    log = LogState.load(logFile);
+                    cachedLog = new SoftReference<LogState>(log);
+                }
+                snapshot = RefinementStateSnapshot.load(stateFile, log);
+                cached = new SoftReference<RefinementStateSnapshot>(snapshot);
+            }
+            return snapshot;
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            // Nothing to do.
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            for (File file : new File[] { logFile, stateFile }) {
+                if (file.exists() && !file.delete()) {
+                    logger.info("Unable to delete session snapshot " + file);
+                }
+            }
+        }
+    }
+
     // //////////////////////////////////////////////////////////////////////////////
     // Helper methods.
 
     private GWTNode gwtNodeFromPartition(Partition p) {
-        return new GWTNode(p.getEType().toString(), p.hashCode());
+        return new GWTNode(p.getEType().toString(), partitionID(p));
+    }
+
+    /**
+     * Returns the id by which clients know partition p.
+     */
+    private int partitionID(Partition p) {
+        Integer id = partitionIDs == null ? null : partitionIDs.get(p);
+        return id == null ? p.hashCode() : id;
+    }
+
+    /**
+     * Returns the partition of pGraph with the given id, or null if there is
+     * no such partition.
+     */
+    private Partition partitionByID(int id) {
+        for (Partition p : pGraph.getNodes()) {
+            if (partitionID(p) == id) {
+                return p;
+            }
+        }
+        return null;
     }
 
     /**
@@ -104,6 +208,7 @@ public class SynopticService extends RemoteServiceServlet implements
      */
     private void initializeRefinementState(TemporalInvariantSet invs) {
         pGraph = new PartitionGraph(traceGraph, true, invs);
+        partitionIDs = new IdentityHashMap<Partition, Integer>();
         numSplitSteps = 0;
 
         unsatInvs = new LinkedHashSet<ITemporalInvariant>();
@@ -131,18 +236,40 @@ public class SynopticService extends RemoteServiceServlet implements
      * Save server state into the global session object. This function assumes
      * that this session is set appropriate.
      */
-    private void storeSessionState() {
+    private void storeSessionState() throws IOException {
         storeSessionState(session);
     }
 
     /**
      * Save server state into an explicitly given session object.
      */
-    private void storeSessionState(HttpSession dstSession) {
+    private void storeSessionState(HttpSession dstSession) throws IOException {
         if (dstSession == null) {
             return;
         }
 
+        if (config.sessionSnapshotsDir != null) {
+            SnapshotFiles snapshotFiles = (SnapshotFiles) dstSession
+                    .getAttribute(snapshotSessionAttribute);
+            if (snapshotFiles == null) {
+                String prefix = config.sessionSnapshotsDir
+                        + dstSession.getId();
+                snapshotFiles = new SnapshotFiles(new File(prefix
+                        + ".log.snapshot"), new File(prefix + ".snapshot"));
+                dstSession.setAttribute(snapshotSessionAttribute,
+                        snapshotFiles);
+            }
+            // A new log state is only created, and saved, for a new log.
+            if (logState == null || logState.traceGraph != traceGraph
+                    || logState.minedInvs != minedInvs) {
+                logState = new LogState(traceGraph, minedInvs);
+            }
+            snapshotFiles.save(new RefinementStateSnapshot(logState, pGraph,
+                    activeInvs, unsatInvs, counterExampleTraces,
+                    numSplitSteps, partitionIDs));
+            return;
+        }
+
         dstSession.setAttribute("partitionGraph", pGraph);
         dstSession.setAttribute("numSplitSteps", 0);
         dstSession.setAttribute("unsatInvs", unsatInvs);
@@ -183,6 +310,27 @@ public class SynopticService extends RemoteServiceServlet implements
         HttpServletRequest request = getThreadLocalRequest();
         session = request.getSession();
 
+        if (config.sessionSnapshotsDir != null) {
+            SnapshotFiles snapshotFiles = (SnapshotFiles) session
+                    .getAttribute(snapshotSessionAttribute);
+            if (snapshotFiles == null) {
+                throw new Exception("session attribute '"
+                        + snapshotSessionAttribute + "' missing");
+            }
+            RefinementStateSnapshot snapshot = snapshotFiles.load();
+            pGraph = snapshot.pGraph;
+            numSplitSteps = snapshot.numSplitSteps;
+            unsatInvs = snapshot.unsatInvs;
+            minedInvs = snapshot.log.minedInvs;
+            activeInvs = snapshot.activeInvs;
+            traceGraph = (ChainsTraceGraph) snapshot.log.traceGraph;
+            logState = snapshot.log;
+            counterExampleTraces = snapshot.counterExampleTraces;
+            partitionIDs = snapshot.partitionIDs;
+            return;
+        }
+        partitionIDs = null;
+
         // Retrieve stuff from storage, and if we can't find something then we
         // throw an error since we can't continue with refinement.
 
@@ -600,6 +748,9 @@ public class SynopticService extends RemoteServiceServlet implements
         }
 
         Bisimulation.mergePartitions(pGraph);
+        // Snapshots are copies of the state, so the coarsened graph must be
+        // stored explicitly.
+        storeSessionState();
         return PGraphToGWTGraph(pGraph);
     }
 
@@ -615,9 +766,11 @@ public class SynopticService extends RemoteServiceServlet implements
         // Refine.
         Bisimulation.splitUntilAllInvsSatisfied(pGraph);
         unsatInvs.clear();
+        counterExampleTraces = null;
 
         // Coarsen.
         Bisimulation.mergePartitions(pGraph);
+        storeSessionState();
         return PGraphToGWTGraph(pGraph);
     }
 
@@ -631,13 +784,7 @@ public class SynopticService extends RemoteServiceServlet implements
         retrieveSynopticSessionState();
 
         // Find partition
-        Partition requested = null;
-        for (Partition p : pGraph.getNodes()) {
-            if (p.hashCode() == nodeID) {
-                requested = p;
-                break;
-            }
-        }
+        Partition requested = partitionByID(nodeID);
 
         // Fetch log lines
         List<LogLine> validLines = new ArrayList<LogLine>();
@@ -703,7 +850,7 @@ public class SynopticService extends RemoteServiceServlet implements
         // Take the node IDs and create a set of partitions from them.
         Set<INode<Partition>> selectedNodes = new HashSet<INode<Partition>>();
         for (Integer id : selectedNodeIDs) {
-            Partition p = pGraph.getNodeByID(id);
+            Partition p = partitionByID(id);
             // Mandate that each node ID maps to a valid Partition.
             assert (p != null);
             selectedNodes.add(p);
@@ -0,0 +1,373 @@
+package synopticgwt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.concurrency.ConcurrencyInvariant;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ConstrainedInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.TraceGraph;
+import synoptic.model.export.DotExportFormatter;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.time.ITime;
+import synopticgwt.server.RefinementStateSnapshot.LogState;
+
+/**
+ * Tests that the refinement state of SynopticService survives a round trip
+ * through RefinementStateSnapshot.
+ */
+public class RefinementStateSnapshotTests {
+    private static final String log = "0 a\n1 b\n2 c\n--\n0 d\n1 b\n2 e\n--\n"
+            + "0 a\n1 b\n2 b\n3 c\n--\n0 d\n1 f\n2 e\n";
+
+    /** A log with events in a relation r, some of them closure events. */
+    private static final String multipleRelationsLog = "0 a\n1 r b\n"
+            + "2 r cl c\n3 d\n--\n0 a\n1 r cl b\n2 c\n3 r d\n--\n"
+            + "0 e\n1 r b\n2 d\n";
+
+    /** A partially ordered log of two processes. */
+    private static final String vectorTimeLog = "1,0 0 a\n2,0 0 b\n"
+            + "1,1 1 c\n2,2 1 d\n--\n1,0 0 a\n0,1 1 c\n2,0 0 b\n2,2 1 d\n";
+
+    /** A log whose time constraints the initial model violates. */
+    private static final String timedLog = "0 x\n11 y\n71 z\n72 w\n--\n"
+            + "100 x\n160 y\n171 z\n172 w\n--\n200 x\n201 u\n";
+
+    @BeforeClass
+    public static void setUpSynopticMain() throws Exception {
+        if (AbstractMain.instance == null) {
+            new SynopticMain(new SynopticOptions().toAbstractOptions(),
+                    new DotExportFormatter());
+        }
+    }
+
+    private static TraceParser newTOParser() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION*>)cl(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        return parser;
+    }
+
+    /**
+     * Creates the refinement state that SynopticService creates for a totally
+     * ordered log, after one refinement step. If constrained, the state is
+     * refined with the constrained invariants that Perfume mines.
+     */
+    private static RefinementStateSnapshot newRefinementState(String logStr,
+            boolean constrained) throws Exception {
+        TraceParser parser = newTOParser();
+        List<EventNode> events = parser.parseTraceString(logStr, "test", -1);
+        ChainsTraceGraph traceGraph = parser.generateDirectTORelation(events);
+        TemporalInvariantSet minedInvs;
+        if (constrained) {
+            minedInvs = new ConstrainedInvMiner().computeInvariants(
+                    new ChainWalkingTOInvMiner(), traceGraph, false);
+        } else {
+            minedInvs = SynopticMain.getInstance().mineTOInvariants(false,
+                    traceGraph);
+        }
+
+        PartitionGraph pGraph = new PartitionGraph(traceGraph, true,
+                minedInvs);
+        Set<ITemporalInvariant> activeInvs = new LinkedHashSet<ITemporalInvariant>(
+                minedInvs.getSet());
+        List<CExamplePath<Partition>> cExamples = new TemporalInvariantSet(
+                activeInvs).getAllCounterExamples(pGraph);
+        assertTrue(cExamples != null);
+        int numSplitSteps = Bisimulation.performSplits(0, pGraph, cExamples);
+
+        Set<ITemporalInvariant> unsatInvs = new LinkedHashSet<ITemporalInvariant>();
+        cExamples = new TemporalInvariantSet(activeInvs)
+                .getAllCounterExamples(pGraph);
+        if (cExamples != null) {
+            for (CExamplePath<Partition> cExample : cExamples) {
+                unsatInvs.add(cExample.invariant);
+            }
+        }
+        return new RefinementStateSnapshot(new LogState(traceGraph,
+                minedInvs), pGraph, activeInvs, unsatInvs, cExamples,
+                numSplitSteps, new IdentityHashMap<Partition, Integer>());
+    }
+
+    private static LogState roundTrip(LogState logState) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        logState.write(out);
+        return LogState.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    /**
+     * Round trips the refinement state of snapshot against restoredLog, a
+     * restored copy of the log state of snapshot.
+     */
+    private static RefinementStateSnapshot roundTrip(
+            RefinementStateSnapshot snapshot, LogState restoredLog)
+            throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out);
+        return RefinementStateSnapshot.read(
+                new ByteArrayInputStream(out.toByteArray()), restoredLog);
+    }
+
+    private static RefinementStateSnapshot roundTrip(
+            RefinementStateSnapshot snapshot) throws Exception {
+        return roundTrip(snapshot, roundTrip(snapshot.log));
+    }
+
+    private static String describeEvent(EventNode node) {
+        if (node.isInitial()) {
+            return "INITIAL";
+        } else if (node.isTerminal()) {
+            return "TERMINAL";
+        }
+        return node.getTraceID() + ":" + node.getLineNum();
+    }
+
+    private static String describeTransition(ITransition<EventNode> t) {
+        return describeEvent(t.getSource()) + " -" + t.getRelation() + "-> "
+                + describeEvent(t.getTarget());
+    }
+
+    /**
+     * Returns a description of every event of g, including the dummy nodes:
+     * its event type, log line, and time, and its transitions.
+     */
+    private static Map<String, String> describeEvents(TraceGraph<?> g) {
+        List<EventNode> nodes = new ArrayList<EventNode>(g.getNodes());
+        nodes.add(g.getDummyInitialNode());
+        nodes.add(g.getDummyTerminalNode());
+        Map<String, String> descriptions = new TreeMap<String, String>();
+        for (EventNode node : nodes) {
+            Set<String> transitions = new TreeSet<String>();
+            for (ITransition<EventNode> t : node.getAllTransitions()) {
+                transitions.add(describeTransition(t));
+            }
+            descriptions.put(describeEvent(node), node.getEType() + " "
+                    + node.getLine() + " " + node.getTime() + " "
+                    + transitions);
+        }
+        return descriptions;
+    }
+
+    /**
+     * Returns a description of every partition of the snapshot, by partition
+     * id: its event type, the log lines of its events, and the ids of the
+     * partitions it has transitions to.
+     */
+    private static Map<Integer, String> describePartitions(
+            RefinementStateSnapshot snapshot) {
+        Map<Integer, String> descriptions = new TreeMap<Integer, String>();
+        for (Partition p : snapshot.pGraph.getNodes()) {
+            Set<String> lines = new TreeSet<String>();
+            for (EventNode node : p.getEventNodes()) {
+                lines.add(node.getTraceID() + ":" + node.getLineNum() + ":"
+                        + node.getLine());
+            }
+            Set<Integer> targets = new TreeSet<Integer>();
+            for (ITransition<Partition> t : p.getAllTransitions()) {
+                targets.add(snapshot.getPartitionID(t.getTarget()));
+            }
+            descriptions.put(snapshot.getPartitionID(p), p.getEType()
+                    + " " + lines + " -> " + targets);
+        }
+        return descriptions;
+    }
+
+    /**
+     * Returns a description of every counter-example: its invariant, the
+     * partition ids of its path, its violation subpath, and any concrete
+     * transitions and time deltas.
+     */
+    private static List<String> describeCExamples(
+            RefinementStateSnapshot snapshot) {
+        List<String> descriptions = new ArrayList<String>();
+        for (CExamplePath<Partition> cExample : snapshot.counterExampleTraces) {
+            List<Integer> path = new ArrayList<Integer>();
+            for (Partition p : cExample.path) {
+                path.add(snapshot.getPartitionID(p));
+            }
+            String description = cExample.invariant + " " + path + " "
+                    + cExample.violationStart + " " + cExample.violationEnd;
+            if (cExample.transitionsList != null) {
+                for (List<ITransition<EventNode>> transitions : cExample.transitionsList) {
+                    List<String> step = null;
+                    if (transitions != null) {
+                        step = new ArrayList<String>();
+                        for (ITransition<EventNode> t : transitions) {
+                            step.add(describeTransition(t));
+                        }
+                    }
+                    description += " " + step;
+                }
+            }
+            if (cExample.tDeltas != null) {
+                for (ITime tDelta : cExample.tDeltas) {
+                    description += " " + tDelta;
+                }
+            }
+            descriptions.add(description);
+        }
+        return descriptions;
+    }
+
+    /**
+     * Checks that the restored state describes the same log, invariants,
+     * partitions, and counter-examples as the snapshot.
+     */
+    private static void assertRestored(RefinementStateSnapshot snapshot,
+            RefinementStateSnapshot restored) {
+        assertEquals(describeEvents(snapshot.log.traceGraph),
+                describeEvents(restored.log.traceGraph));
+        assertEquals(snapshot.log.traceGraph.getNumTraces(),
+                restored.log.traceGraph.getNumTraces());
+        assertEquals(describePartitions(snapshot),
+                describePartitions(restored));
+
+        assertEquals(snapshot.log.minedInvs.getSet(),
+                restored.log.minedInvs.getSet());
+        assertEquals(snapshot.activeInvs, restored.activeInvs);
+        assertEquals(snapshot.unsatInvs, restored.unsatInvs);
+        assertEquals(snapshot.numSplitSteps, restored.numSplitSteps);
+        if (snapshot.counterExampleTraces == null) {
+            assertNull(restored.counterExampleTraces);
+        } else {
+            assertEquals(describeCExamples(snapshot),
+                    describeCExamples(restored));
+        }
+    }
+
+    /**
+     * Tests that the partitions, their ids and transitions, the invariants,
+     * and the counter-examples of a refinement state are restored.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        RefinementStateSnapshot snapshot = newRefinementState(log, false);
+        RefinementStateSnapshot restored = roundTrip(snapshot);
+        assertRestored(snapshot, restored);
+
+        // A restored state must be restored again with the same ids.
+        assertEquals(describePartitions(restored),
+                describePartitions(roundTrip(restored)));
+    }
+
+    /**
+     * Tests that the transitions of a log with several relations, including
+     * closure relations, are restored.
+     */
+    @Test
+    public void multipleRelationsRoundTripTest() throws Exception {
+        RefinementStateSnapshot snapshot = newRefinementState(
+                multipleRelationsLog, false);
+        assertTrue(snapshot.log.traceGraph.getRelations().size() > 1);
+        assertRestored(snapshot, roundTrip(snapshot));
+    }
+
+    /**
+     * Tests that the concrete transitions and time deltas of counter-examples
+     * to constrained invariants, and the constrained invariants, are restored.
+     */
+    @Test
+    public void constrainedCExamplesRoundTripTest() throws Exception {
+        RefinementStateSnapshot snapshot = newRefinementState(timedLog, true);
+        boolean hasConstrainedCExample = false;
+        for (CExamplePath<Partition> cExample : snapshot.counterExampleTraces) {
+            if (cExample.invariant instanceof TempConstrainedInvariant<?>) {
+                assertTrue(cExample.transitionsList != null);
+                assertTrue(cExample.tDeltas != null);
+                hasConstrainedCExample = true;
+            }
+        }
+        assertTrue(hasConstrainedCExample);
+        assertRestored(snapshot, roundTrip(snapshot));
+    }
+
+    /**
+     * Tests that the trace graph, vector times, and concurrency invariants of a
+     * partially ordered log are restored.
+     */
+    @Test
+    public void vectorTimeRoundTripTest() throws Exception {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        List<EventNode> events = parser.parseTraceString(vectorTimeLog,
+                "test", -1);
+        DAGsTraceGraph traceGraph = parser.generateDirectPORelation(events);
+        TemporalInvariantSet minedInvs = SynopticMain.getInstance()
+                .minePOInvariants(false, traceGraph);
+        boolean hasConcurrencyInvariant = false;
+        for (ITemporalInvariant inv : minedInvs) {
+            hasConcurrencyInvariant |= inv instanceof ConcurrencyInvariant;
+        }
+        assertTrue(hasConcurrencyInvariant);
+
+        LogState logState = new LogState(traceGraph, minedInvs);
+        LogState restored = roundTrip(logState);
+        assertTrue(restored.traceGraph instanceof DAGsTraceGraph);
+        assertEquals(describeEvents(traceGraph),
+                describeEvents(restored.traceGraph));
+        assertEquals(traceGraph.getNumTraces(),
+                restored.traceGraph.getNumTraces());
+        assertEquals(minedInvs.getSet(), restored.minedInvs.getSet());
+    }
+
+    /**
+     * Tests that the refinement states of successive steps can be restored
+     * against one restored log state, and that refinement continues from a
+     * restored state as it does from the original state.
+     */
+    @Test
+    public void refinementTest() throws Exception {
+        RefinementStateSnapshot snapshot = newRefinementState(log, false);
+        LogState restoredLog = roundTrip(snapshot.log);
+        RefinementStateSnapshot restored = roundTrip(snapshot, restoredLog);
+
+        Bisimulation.splitUntilAllInvsSatisfied(snapshot.pGraph);
+        Bisimulation.mergePartitions(snapshot.pGraph);
+        Bisimulation.splitUntilAllInvsSatisfied(restored.pGraph);
+        Bisimulation.mergePartitions(restored.pGraph);
+        assertEquals(snapshot.pGraph.getNodes().size(), restored.pGraph
+                .getNodes().size());
+        assertTrue(new TemporalInvariantSet(restored.activeInvs)
+                .getAllCounterExamples(restored.pGraph) == null);
+
+        // The final state is restored against the same restored log state.
+        RefinementStateSnapshot coarsened = new RefinementStateSnapshot(
+                snapshot.log, snapshot.pGraph, snapshot.activeInvs,
+                new LinkedHashSet<ITemporalInvariant>(), null,
+                snapshot.numSplitSteps, snapshot.partitionIDs);
+        assertEquals(describePartitions(coarsened),
+                describePartitions(roundTrip(coarsened, restoredLog)));
+    }
+}